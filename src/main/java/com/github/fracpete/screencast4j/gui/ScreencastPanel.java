@@ -21,15 +21,23 @@
 
 package com.github.fracpete.screencast4j.gui;
 
+import com.github.fracpete.screencast4j.record.EncoderSettings;
 import com.github.fracpete.screencast4j.record.MultiRecorder;
 import com.github.fracpete.screencast4j.record.Recorder;
+import com.github.fracpete.screencast4j.record.VideoRecorder;
+import com.github.fracpete.screencast4j.record.screen.OverlayPosition;
+import com.github.fracpete.screencast4j.record.screen.PictureInPictureScreenRecorder;
 import com.github.fracpete.screencast4j.record.screen.ScreenRecorder;
 import com.github.fracpete.screencast4j.record.screen.XuggleScreenRecorder;
+import com.github.fracpete.screencast4j.record.sound.AudioLevelMeter;
 import com.github.fracpete.screencast4j.record.sound.SampledSoundRecorder;
 import com.github.fracpete.screencast4j.record.sound.SoundRecorder;
+import com.github.fracpete.screencast4j.record.sound.XuggleSoundRecorder;
 import com.github.fracpete.screencast4j.record.webcam.SarxosWebcamRecorder;
+import com.github.fracpete.screencast4j.record.webcam.WebcamInfo;
 import com.github.fracpete.screencast4j.record.webcam.WebcamRecorder;
-import com.github.sarxos.webcam.Webcam;
+import com.github.fracpete.screencast4j.record.webcam.WebcamRegistry;
+import com.github.fracpete.screencast4j.record.webcam.WebcamRegistryListener;
 import nz.ac.waikato.cms.gui.core.BaseDirectoryChooser;
 import nz.ac.waikato.cms.gui.core.BasePanel;
 
@@ -51,12 +59,15 @@ import javax.swing.JTabbedPane;
 import javax.swing.JTextField;
 import javax.swing.KeyStroke;
 import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import java.awt.BorderLayout;
 import java.awt.Desktop;
 import java.awt.Desktop.Action;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
+import java.awt.Frame;
 import java.awt.GraphicsDevice;
 import java.awt.GraphicsEnvironment;
 import java.awt.GridLayout;
@@ -65,7 +76,9 @@ import java.awt.event.ActionEvent;
 import java.io.File;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ScreencastPanel
   extends BasePanel {
@@ -82,6 +95,10 @@ public class ScreencastPanel
 
   public static final String SUFFIX_SCREEN = "-screen";
 
+  public static final String SUFFIX_MANIFEST = "-manifest";
+
+  public static final String PRESET_DEFAULT = "default";
+
   protected static boolean PREVIEW_ENABLED = false;
 
   /** directory chooser for selecting the project. */
@@ -129,6 +146,9 @@ public class ScreencastPanel
   /** the input for the sound frequency. */
   protected JTextField m_TextSoundFrequency;
 
+  /** whether to store the sound with the screen recording. */
+  protected JCheckBox m_CheckBoxSoundWithScreen;
+
   /** the panel for the webcam options. */
   protected JPanel m_PanelWebcam;
 
@@ -141,6 +161,12 @@ public class ScreencastPanel
   /** the button for refreshing the webcams. */
   protected JButton m_ButtonWebcamRefresh;
 
+  /** the panel with the checkboxes for the additional webcams. */
+  protected JPanel m_PanelWebcamAdditional;
+
+  /** the checkboxes for the additional webcams, with the webcam name as key. */
+  protected Map<String,JCheckBox> m_CheckBoxesWebcamAdditional;
+
   /** the combobox of the sizes available for the selected webcam. */
   protected JComboBox m_ComboBoxWebcamSizes;
 
@@ -150,9 +176,27 @@ public class ScreencastPanel
   /** the frames per second for the webcam. */
   protected JSpinner m_SpinnerWebcamFPS;
 
+  /** the encoder preset for the webcam. */
+  protected JComboBox<String> m_ComboBoxWebcamPreset;
+
+  /** whether to encode the webcam frames after recording. */
+  protected JCheckBox m_CheckBoxWebcamSpool;
+
+  /** whether to record the webcam frames as they get delivered. */
+  protected JCheckBox m_CheckBoxWebcamEventDriven;
+
+  /** whether to blend the webcam into the screen recording. */
+  protected JCheckBox m_CheckBoxWebcamPiP;
+
+  /** the corner of the screen to blend the webcam into. */
+  protected JComboBox<OverlayPosition> m_ComboBoxWebcamPosition;
+
   /** the preview for the webcam. */
   protected PreviewPanel m_PanelWebcamPreview;
 
+  /** the listener for changes in the available webcams. */
+  protected WebcamRegistryListener m_WebcamRegistryListener;
+
   /** the panel for the screen options. */
   protected JPanel m_PanelScreen;
 
@@ -168,12 +212,30 @@ public class ScreencastPanel
   /** the input for the height. */
   protected JSpinner m_SpinnerScreenHeight;
 
+  /** the width of the encoded screen frames. */
+  protected JSpinner m_SpinnerScreenOutputWidth;
+
+  /** the height of the encoded screen frames. */
+  protected JSpinner m_SpinnerScreenOutputHeight;
+
+  /** whether to preserve the aspect ratio when scaling the screen frames. */
+  protected JCheckBox m_CheckBoxScreenLetterbox;
+
   /** whether to capture the mouse cursor. */
   protected JCheckBox m_CheckBoxScreenCaptureMouse;
 
   /** the frames per second for the screen. */
   protected JSpinner m_SpinnerScreenFPS;
 
+  /** whether to only encode frames that changed. */
+  protected JCheckBox m_CheckBoxScreenOnlyChanges;
+
+  /** the encoder preset for the screen. */
+  protected JComboBox<String> m_ComboBoxScreenPreset;
+
+  /** whether to encode the screen frames after recording. */
+  protected JCheckBox m_CheckBoxScreenSpool;
+
   /** the preview for the screen. */
   protected PreviewPanel m_PanelScreenPreview;
 
@@ -183,6 +245,15 @@ public class ScreencastPanel
   /** the "new" counter. */
   protected int m_NewCounter;
 
+  /** the timer for monitoring the encoding of spooled frames. */
+  protected Timer m_TimerTranscoding;
+
+  /** the title of the frame before displaying the encoding progress. */
+  protected String m_FrameTitle;
+
+  /** the timer for displaying the sound level while recording. */
+  protected Timer m_TimerLevel;
+
   /**
    * Initializes the members.
    */
@@ -265,21 +336,84 @@ public class ScreencastPanel
    * Initializes the sound tab.
    */
   protected void initGUISound() {
-    JPanel	panel;
-    JPanel	panel2;
-    JLabel	label;
+    JPanel		panel;
+    JPanel		panel2;
+    JLabel		label;
+    List<JLabel>	labels;
+
+    labels = new ArrayList<>();
+    panel2 = new JPanel(new GridLayout(2, 1));
 
+    // frequency
     m_TextSoundFrequency = new JTextField(10);
     label = new JLabel("Frequency");
     label.setDisplayedMnemonic('q');
     label.setLabelFor(m_TextSoundFrequency);
+    labels.add(label);
     panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
     panel.add(label);
     panel.add(m_TextSoundFrequency);
-    panel2 = new JPanel(new GridLayout(1, 1));
+    panel2.add(panel);
+
+    // store with screen
+    m_CheckBoxSoundWithScreen = new JCheckBox();
+    m_CheckBoxSoundWithScreen.setSelected(false);
+    label = new JLabel("Store with screen");
+    label.setLabelFor(m_CheckBoxSoundWithScreen);
+    labels.add(label);
+    panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    panel.add(label);
+    panel.add(m_CheckBoxSoundWithScreen);
     panel2.add(panel);
 
     m_PanelSound.add(panel2, BorderLayout.NORTH);
+
+    // fix label sizes
+    m_PanelSound.doLayout();
+    GUIHelper.adjustLabelSizes(labels);
+  }
+
+  /**
+   * Creates a combobox with the encoder presets.
+   *
+   * @return		the combobox
+   * @see		EncoderSettings#PRESETS
+   */
+  protected JComboBox<String> createPresetComboBox() {
+    JComboBox<String>	result;
+
+    result = new JComboBox<>();
+    result.addItem(PRESET_DEFAULT);
+    for (String preset: EncoderSettings.PRESETS)
+      result.addItem(preset);
+
+    return result;
+  }
+
+  /**
+   * Selects the preset of the encoder settings in the combobox.
+   *
+   * @param combo	the combobox to update
+   * @param settings	the settings to get the preset from
+   */
+  protected void presetToField(JComboBox<String> combo, EncoderSettings settings) {
+    if (settings.getPreset().isEmpty())
+      combo.setSelectedItem(PRESET_DEFAULT);
+    else
+      combo.setSelectedItem(settings.getPreset());
+  }
+
+  /**
+   * Stores the preset selected in the combobox in the encoder settings.
+   *
+   * @param combo	the combobox to get the preset from
+   * @param settings	the settings to update
+   */
+  protected void fieldToPreset(JComboBox<String> combo, EncoderSettings settings) {
+    if (combo.getSelectedItem().equals(PRESET_DEFAULT))
+      settings.setPreset("");
+    else
+      settings.setPreset((String) combo.getSelectedItem());
   }
 
   /**
@@ -292,7 +426,7 @@ public class ScreencastPanel
     List<JLabel>	labels;
 
     labels = new ArrayList<>();
-    panel2 = new JPanel(new GridLayout(3, 1));
+    panel2 = new JPanel(new GridLayout(8, 1));
 
     // webcams
     m_ModelWebcamAvailable    = new DefaultComboBoxModel<>();
@@ -310,6 +444,16 @@ public class ScreencastPanel
     panel.add(m_ButtonWebcamRefresh);
     panel2.add(panel);
 
+    // additional webcams
+    m_CheckBoxesWebcamAdditional = new LinkedHashMap<>();
+    m_PanelWebcamAdditional      = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+    label = new JLabel("Also record");
+    labels.add(label);
+    panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    panel.add(label);
+    panel.add(m_PanelWebcamAdditional);
+    panel2.add(panel);
+
     // sizes
     m_ModelWebcamSizes    = new DefaultComboBoxModel<>();
     m_ComboBoxWebcamSizes = new JComboBox<>(m_ModelWebcamSizes);
@@ -335,6 +479,52 @@ public class ScreencastPanel
     panel.add(m_SpinnerWebcamFPS);
     panel2.add(panel);
 
+    // preset
+    m_ComboBoxWebcamPreset = createPresetComboBox();
+    label = new JLabel("Encoder preset");
+    label.setLabelFor(m_ComboBoxWebcamPreset);
+    labels.add(label);
+    panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    panel.add(label);
+    panel.add(m_ComboBoxWebcamPreset);
+    panel2.add(panel);
+
+    // spool
+    m_CheckBoxWebcamSpool = new JCheckBox();
+    m_CheckBoxWebcamSpool.setSelected(false);
+    label = new JLabel("Encode after recording");
+    label.setLabelFor(m_CheckBoxWebcamSpool);
+    labels.add(label);
+    panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    panel.add(label);
+    panel.add(m_CheckBoxWebcamSpool);
+    panel2.add(panel);
+
+    // event-driven
+    m_CheckBoxWebcamEventDriven = new JCheckBox();
+    m_CheckBoxWebcamEventDriven.setSelected(false);
+    label = new JLabel("Frames as delivered");
+    label.setLabelFor(m_CheckBoxWebcamEventDriven);
+    labels.add(label);
+    panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    panel.add(label);
+    panel.add(m_CheckBoxWebcamEventDriven);
+    panel2.add(panel);
+
+    // picture-in-picture
+    m_CheckBoxWebcamPiP = new JCheckBox();
+    m_CheckBoxWebcamPiP.setSelected(false);
+    m_ComboBoxWebcamPosition = new JComboBox<>(OverlayPosition.values());
+    m_ComboBoxWebcamPosition.setSelectedItem(OverlayPosition.BOTTOM_RIGHT);
+    label = new JLabel("Blend into screen");
+    label.setLabelFor(m_CheckBoxWebcamPiP);
+    labels.add(label);
+    panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    panel.add(label);
+    panel.add(m_CheckBoxWebcamPiP);
+    panel.add(m_ComboBoxWebcamPosition);
+    panel2.add(panel);
+
     m_PanelWebcam.add(panel2, BorderLayout.NORTH);
 
     // preview
@@ -362,7 +552,7 @@ public class ScreencastPanel
     Rectangle		bounds;
 
     labels = new ArrayList<>();
-    panel2 = new JPanel(new GridLayout(6, 1));
+    panel2 = new JPanel(new GridLayout(12, 1));
     device = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice();
     bounds = device.getDefaultConfiguration().getBounds();
 
@@ -418,6 +608,43 @@ public class ScreencastPanel
     panel.add(m_SpinnerScreenHeight);
     panel2.add(panel);
 
+    // output width
+    m_SpinnerScreenOutputWidth = new JSpinner();
+    ((SpinnerNumberModel) m_SpinnerScreenOutputWidth.getModel()).setMinimum(-1);
+    m_SpinnerScreenOutputWidth.setValue(-1);
+    m_SpinnerScreenOutputWidth.setPreferredSize(new Dimension(100, 20));
+    label = new JLabel("Output width");
+    label.setLabelFor(m_SpinnerScreenOutputWidth);
+    labels.add(label);
+    panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    panel.add(label);
+    panel.add(m_SpinnerScreenOutputWidth);
+    panel2.add(panel);
+
+    // output height
+    m_SpinnerScreenOutputHeight = new JSpinner();
+    ((SpinnerNumberModel) m_SpinnerScreenOutputHeight.getModel()).setMinimum(-1);
+    m_SpinnerScreenOutputHeight.setValue(-1);
+    m_SpinnerScreenOutputHeight.setPreferredSize(new Dimension(100, 20));
+    label = new JLabel("Output height");
+    label.setLabelFor(m_SpinnerScreenOutputHeight);
+    labels.add(label);
+    panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    panel.add(label);
+    panel.add(m_SpinnerScreenOutputHeight);
+    panel2.add(panel);
+
+    // letterbox
+    m_CheckBoxScreenLetterbox = new JCheckBox();
+    m_CheckBoxScreenLetterbox.setSelected(true);
+    label = new JLabel("Keep aspect ratio");
+    label.setLabelFor(m_CheckBoxScreenLetterbox);
+    labels.add(label);
+    panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    panel.add(label);
+    panel.add(m_CheckBoxScreenLetterbox);
+    panel2.add(panel);
+
     // capture
     m_CheckBoxScreenCaptureMouse = new JCheckBox();
     m_CheckBoxScreenCaptureMouse.setSelected(true);
@@ -442,6 +669,38 @@ public class ScreencastPanel
     panel.add(m_SpinnerScreenFPS);
     panel2.add(panel);
 
+    // only changes
+    m_CheckBoxScreenOnlyChanges = new JCheckBox();
+    m_CheckBoxScreenOnlyChanges.setSelected(false);
+    label = new JLabel("Encode changes only");
+    label.setLabelFor(m_CheckBoxScreenOnlyChanges);
+    labels.add(label);
+    panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    panel.add(label);
+    panel.add(m_CheckBoxScreenOnlyChanges);
+    panel2.add(panel);
+
+    // preset
+    m_ComboBoxScreenPreset = createPresetComboBox();
+    label = new JLabel("Encoder preset");
+    label.setLabelFor(m_ComboBoxScreenPreset);
+    labels.add(label);
+    panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    panel.add(label);
+    panel.add(m_ComboBoxScreenPreset);
+    panel2.add(panel);
+
+    // spool
+    m_CheckBoxScreenSpool = new JCheckBox();
+    m_CheckBoxScreenSpool.setSelected(false);
+    label = new JLabel("Encode after recording");
+    label.setLabelFor(m_CheckBoxScreenSpool);
+    labels.add(label);
+    panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    panel.add(label);
+    panel.add(m_CheckBoxScreenSpool);
+    panel2.add(panel);
+
     m_PanelScreen.add(panel2, BorderLayout.NORTH);
 
     // preview
@@ -497,7 +756,10 @@ public class ScreencastPanel
 
     newRecording();
     updateTabs();
-    refreshWebcams();
+    m_WebcamRegistryListener = (WebcamRegistry registry, List<String> added, List<String> removed) ->
+      SwingUtilities.invokeLater(this::updateWebcams);
+    WebcamRegistry.getSingleton().addListener(m_WebcamRegistryListener);
+    updateWebcams();
     updatePreviewRecorders();
   }
 
@@ -623,10 +885,14 @@ public class ScreencastPanel
    */
   protected void updatePreviewRecorders() {
     MultiRecorder	recorder;
+    boolean		webcam;
 
     recorder = fieldsToRecorder();
+    webcam   = false;
     for (Recorder rec: recorder.getRecorders()) {
-      if (rec instanceof WebcamRecorder) {
+      // only the first webcam gets previewed
+      if ((rec instanceof WebcamRecorder) && !webcam) {
+	webcam = true;
 	if (PREVIEW_ENABLED) {
 	  m_PanelWebcamPreview.setUpdate(m_ComboBoxWebcamAvailable.getSelectedIndex() > -1);
 	  if (m_PanelWebcamPreview.getRecorder() != null)
@@ -652,15 +918,33 @@ public class ScreencastPanel
    */
   protected void recorderToFields(MultiRecorder rec) {
     SoundRecorder	sound;
-    WebcamRecorder	webcam;
-    String		size;
-    ScreenRecorder	screen;
+    WebcamRecorder			webcam;
+    PictureInPictureScreenRecorder	pip;
+    boolean				additional;
+    ScreenRecorder			screen;
 
     m_TextProjectName.setText("New" + m_NewCounter);
+    m_CheckBoxSoundWithScreen.setSelected(false);
 
     m_CheckBoxSound.setSelected(false);
     m_CheckBoxWebcam.setSelected(false);
     m_CheckBoxScreen.setSelected(false);
+    m_CheckBoxWebcamPiP.setSelected(false);
+    for (JCheckBox checkBox: m_CheckBoxesWebcamAdditional.values())
+      checkBox.setSelected(false);
+    additional = false;
+
+    // webcam blended into screen is the primary one
+    for (Recorder r: rec.getRecorders()) {
+      if (r instanceof PictureInPictureScreenRecorder) {
+	pip = (PictureInPictureScreenRecorder) r;
+	selectWebcam(pip.getWebcamID(), pip.getWebcamSize());
+	m_ComboBoxWebcamPosition.setSelectedItem(pip.getPosition());
+	m_CheckBoxWebcamPiP.setSelected(true);
+	m_CheckBoxWebcam.setSelected(true);
+	additional = true;
+      }
+    }
 
     for (Recorder r: rec.getRecorders()) {
       if (r instanceof SoundRecorder) {
@@ -668,23 +952,21 @@ public class ScreencastPanel
 	m_TextSoundFrequency.setText("" + sound.getFrequency());
 	m_CheckBoxSound.setSelected(true);
       }
-      if (r instanceof WebcamRecorder) {
+      if ((r instanceof WebcamRecorder) && additional) {
 	webcam = (WebcamRecorder) r;
-	if (m_ModelWebcamAvailable.getSize() > 0) {
-	  if (m_ModelWebcamAvailable.getIndexOf(webcam.getWebcamID()) > -1)
-	    m_ComboBoxWebcamAvailable.setSelectedIndex(m_ModelWebcamAvailable.getIndexOf(webcam.getWebcamID()));
-	  else
-	    m_ComboBoxWebcamAvailable.setSelectedIndex(0);
-	  if (m_ModelWebcamSizes.getSize() > 0) {
-	    size = (int) webcam.getSize().getWidth() + SIZE_SEPARATOR + (int) webcam.getSize().getHeight();
-	    if (m_ModelWebcamSizes.getIndexOf(size) > -1)
-	      m_ComboBoxWebcamSizes.setSelectedIndex(m_ModelWebcamSizes.getIndexOf(size));
-	    else
-	      m_ComboBoxWebcamSizes.setSelectedIndex(0);
-	  }
-	}
+	if (m_CheckBoxesWebcamAdditional.containsKey(webcam.getWebcamID()))
+	  m_CheckBoxesWebcamAdditional.get(webcam.getWebcamID()).setSelected(true);
+      }
+      else if (r instanceof WebcamRecorder) {
+	webcam = (WebcamRecorder) r;
+	selectWebcam(webcam.getWebcamID(), webcam.getSize());
 	m_SpinnerWebcamFPS.setValue(webcam.getFramesPerSecond());
+	presetToField(m_ComboBoxWebcamPreset, webcam.getEncoderSettings());
+	m_CheckBoxWebcamSpool.setSelected(webcam.getSpoolFrames());
+	if (webcam instanceof SarxosWebcamRecorder)
+	  m_CheckBoxWebcamEventDriven.setSelected(((SarxosWebcamRecorder) webcam).getEventDriven());
 	m_CheckBoxWebcam.setSelected(true);
+	additional = true;
       }
       if (r instanceof ScreenRecorder) {
 	screen = (ScreenRecorder) r;
@@ -692,13 +974,51 @@ public class ScreencastPanel
 	m_SpinnerScreenY.setValue(screen.getY());
 	m_SpinnerScreenWidth.setValue(screen.getWidth());
 	m_SpinnerScreenHeight.setValue(screen.getHeight());
+	m_SpinnerScreenOutputWidth.setValue(screen.getOutputWidth());
+	m_SpinnerScreenOutputHeight.setValue(screen.getOutputHeight());
+	m_CheckBoxScreenLetterbox.setSelected(screen.getLetterbox());
 	m_CheckBoxScreenCaptureMouse.setSelected(screen.getCaptureMouse());
 	m_SpinnerScreenFPS.setValue(screen.getFramesPerSecond());
+	m_CheckBoxScreenOnlyChanges.setSelected(screen.getEncodeOnlyOnChange());
+	presetToField(m_ComboBoxScreenPreset, screen.getEncoderSettings());
+	m_CheckBoxScreenSpool.setSelected(screen.getSpoolFrames());
 	m_CheckBoxScreen.setSelected(true);
+	if ((r instanceof XuggleScreenRecorder) && (((XuggleScreenRecorder) r).getSoundRecorder() != null)) {
+	  sound = ((XuggleScreenRecorder) r).getSoundRecorder();
+	  m_TextSoundFrequency.setText("" + sound.getFrequency());
+	  m_CheckBoxSoundWithScreen.setSelected(true);
+	  m_CheckBoxSound.setSelected(true);
+	}
       }
     }
   }
 
+  /**
+   * Selects the webcam and its size in the comboboxes, falling back on the
+   * first ones if not available.
+   *
+   * @param id		the ID of the webcam
+   * @param size	the size of the webcam
+   */
+  protected void selectWebcam(String id, Dimension size) {
+    String	sizeStr;
+
+    if (m_ModelWebcamAvailable.getSize() == 0)
+      return;
+
+    if (m_ModelWebcamAvailable.getIndexOf(id) > -1)
+      m_ComboBoxWebcamAvailable.setSelectedIndex(m_ModelWebcamAvailable.getIndexOf(id));
+    else
+      m_ComboBoxWebcamAvailable.setSelectedIndex(0);
+    if (m_ModelWebcamSizes.getSize() > 0) {
+      sizeStr = (int) size.getWidth() + SIZE_SEPARATOR + (int) size.getHeight();
+      if (m_ModelWebcamSizes.getIndexOf(sizeStr) > -1)
+	m_ComboBoxWebcamSizes.setSelectedIndex(m_ModelWebcamSizes.getIndexOf(sizeStr));
+      else
+	m_ComboBoxWebcamSizes.setSelectedIndex(0);
+    }
+  }
+
   /**
    * Creates an output file using the specified suffix and extension.
    *
@@ -710,6 +1030,62 @@ public class ScreencastPanel
     return new File(m_TextOutputDir.getText() + File.separator + m_TextProjectName.getText() + suffix + "." + ext);
   }
 
+  /**
+   * Creates a webcam recorder using the current webcam settings.
+   *
+   * @param id		the ID of the webcam, null for default
+   * @param size	the size to use, null for default
+   * @param suffix	the suffix for the output file
+   * @return		the recorder
+   */
+  protected WebcamRecorder createWebcamRecorder(String id, Dimension size, String suffix) {
+    SarxosWebcamRecorder	result;
+
+    result = new SarxosWebcamRecorder();
+    result.setOutput(createOutputFile(suffix, result.getDefaultExtension()));
+    if (id != null)
+      result.setWebcamID(id);
+    if (size != null)
+      result.setSize(size);
+    result.setFramesPerSecond(((Number) m_SpinnerWebcamFPS.getValue()).intValue());
+    fieldToPreset(m_ComboBoxWebcamPreset, result.getEncoderSettings());
+    result.setSpoolFrames(m_CheckBoxWebcamSpool.isSelected());
+    result.setEventDriven(m_CheckBoxWebcamEventDriven.isSelected());
+
+    return result;
+  }
+
+  /**
+   * Returns the size supported by the webcam that is closest to the
+   * requested one, in terms of number of pixels.
+   *
+   * @param id		the ID of the webcam
+   * @param size	the requested size, null for default
+   * @return		the closest size, null for default
+   */
+  protected Dimension getClosestWebcamSize(String id, Dimension size) {
+    WebcamInfo	webcam;
+    Dimension	result;
+    long	diff;
+    long	minDiff;
+
+    webcam = WebcamRegistry.getSingleton().getCachedWebcam(id);
+    if ((size == null) || (webcam == null) || webcam.supportsViewSize(size))
+      return size;
+
+    result  = size;
+    minDiff = Long.MAX_VALUE;
+    for (Dimension dim: webcam.getViewSizes()) {
+      diff = Math.abs((long) dim.width * dim.height - (long) size.width * size.height);
+      if (diff < minDiff) {
+	result  = dim;
+	minDiff = diff;
+      }
+    }
+
+    return result;
+  }
+
   /**
    * Turns the input fields back into a recorder.
    *
@@ -719,39 +1095,52 @@ public class ScreencastPanel
     MultiRecorder	result;
     List<Recorder> 	recorders;
     SoundRecorder	sound;
-    WebcamRecorder	webcam;
+    boolean		soundWithScreen;
+    boolean		webcamInScreen;
     String[]		parts;
-    Dimension size;
+    Dimension 		size;
+    int			n;
     ScreenRecorder	screen;
+    PictureInPictureScreenRecorder	pip;
 
-    result    = new MultiRecorder();
-    recorders = new ArrayList<>();
+    result          = new MultiRecorder();
+    recorders       = new ArrayList<>();
+    sound           = null;
+    size            = null;
+    soundWithScreen = m_CheckBoxSoundWithScreen.isSelected() && m_CheckBoxScreen.isSelected();
+    webcamInScreen  = m_CheckBoxWebcamPiP.isSelected() && m_CheckBoxWebcam.isSelected() && m_CheckBoxScreen.isSelected();
 
     // webcam
     if (m_CheckBoxWebcam.isSelected()) {
-      webcam = new SarxosWebcamRecorder();
-      webcam.setOutput(createOutputFile(SUFFIX_WEBCAM, webcam.getDefaultExtension()));
-      if (m_ComboBoxWebcamAvailable.getSelectedIndex() > -1)
-	webcam.setWebcamID((String) m_ComboBoxWebcamAvailable.getSelectedItem());
       if (m_ComboBoxWebcamSizes.getSelectedIndex() > -1) {
 	try {
 	  parts = ((String) m_ComboBoxWebcamSizes.getSelectedItem()).split(SIZE_SEPARATOR);
-	  if (parts.length == 2) {
+	  if (parts.length == 2)
 	    size = new Dimension(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
-	    webcam.setSize(size);
-	  }
 	}
 	catch (Exception e) {
 	  JOptionPane.showMessageDialog(this, "Invalid size: " + m_ComboBoxWebcamAvailable.getSelectedItem(), "Error", JOptionPane.ERROR_MESSAGE);
 	}
       }
-      webcam.setFramesPerSecond(((Number) m_SpinnerWebcamFPS.getValue()).intValue());
-      recorders.add(webcam);
+      // gets blended into the screen recording instead
+      if (!webcamInScreen)
+	recorders.add(createWebcamRecorder((String) m_ComboBoxWebcamAvailable.getSelectedItem(), size, SUFFIX_WEBCAM));
+      // additional webcams share the settings, each with its own capture and encoder threads
+      n = 1;
+      for (String id: m_CheckBoxesWebcamAdditional.keySet()) {
+	if (!m_CheckBoxesWebcamAdditional.get(id).isSelected())
+	  continue;
+	n++;
+	recorders.add(createWebcamRecorder(id, getClosestWebcamSize(id, size), SUFFIX_WEBCAM + "-" + n));
+      }
     }
 
     // sound
     if (m_CheckBoxSound.isSelected()) {
-      sound = new SampledSoundRecorder();
+      if (soundWithScreen)
+	sound = new XuggleSoundRecorder();
+      else
+	sound = new SampledSoundRecorder();
       sound.setOutput(createOutputFile(SUFFIX_SOUND, sound.getDefaultExtension()));
       try {
 	sound.setFrequency(Float.valueOf(m_TextSoundFrequency.getText()));
@@ -759,23 +1148,45 @@ public class ScreencastPanel
       catch (Exception e) {
 	JOptionPane.showMessageDialog(this, "Invalid frequency: " + m_TextSoundFrequency.getText(), "Error", JOptionPane.ERROR_MESSAGE);
       }
-      recorders.add(sound);
+      // gets driven by the screen recorder instead
+      if (!soundWithScreen)
+	recorders.add(sound);
     }
 
     // screen
     if (m_CheckBoxScreen.isSelected()) {
-      screen = new XuggleScreenRecorder();
+      if (webcamInScreen) {
+	pip = new PictureInPictureScreenRecorder();
+	if (m_ComboBoxWebcamAvailable.getSelectedIndex() > -1)
+	  pip.setWebcamID((String) m_ComboBoxWebcamAvailable.getSelectedItem());
+	if (size != null)
+	  pip.setWebcamSize(size);
+	pip.setPosition((OverlayPosition) m_ComboBoxWebcamPosition.getSelectedItem());
+	screen = pip;
+      }
+      else {
+	screen = new XuggleScreenRecorder();
+      }
       screen.setOutput(createOutputFile(SUFFIX_SCREEN, screen.getDefaultExtension()));
       screen.setX(((Number) m_SpinnerScreenX.getValue()).intValue());
       screen.setY(((Number) m_SpinnerScreenY.getValue()).intValue());
       screen.setWidth(((Number) m_SpinnerScreenWidth.getValue()).intValue());
       screen.setHeight(((Number) m_SpinnerScreenHeight.getValue()).intValue());
+      screen.setOutputWidth(((Number) m_SpinnerScreenOutputWidth.getValue()).intValue());
+      screen.setOutputHeight(((Number) m_SpinnerScreenOutputHeight.getValue()).intValue());
+      screen.setLetterbox(m_CheckBoxScreenLetterbox.isSelected());
       screen.setCaptureMouse(m_CheckBoxScreenCaptureMouse.isSelected());
       screen.setFramesPerSecond(((Number) m_SpinnerScreenFPS.getValue()).intValue());
+      screen.setEncodeOnlyOnChange(m_CheckBoxScreenOnlyChanges.isSelected());
+      fieldToPreset(m_ComboBoxScreenPreset, screen.getEncoderSettings());
+      screen.setSpoolFrames(m_CheckBoxScreenSpool.isSelected());
+      if (soundWithScreen && (sound != null))
+	((XuggleScreenRecorder) screen).setSoundRecorder((XuggleSoundRecorder) sound);
       recorders.add(screen);
     }
 
     result.setRecorders(recorders.toArray(new Recorder[recorders.size()]));
+    result.setManifest(createOutputFile(SUFFIX_MANIFEST, "properties"));
 
     return result;
   }
@@ -831,6 +1242,7 @@ public class ScreencastPanel
     if (PREVIEW_ENABLED)
       m_PanelScreenPreview.setUpdate(false);
 
+    monitorLevel();
     minimizeFrame();
     updateMenu();
   }
@@ -854,6 +1266,8 @@ public class ScreencastPanel
    */
   public void stopRecording() {
     m_Recorder.stop();
+    stopMonitoringLevel();
+    monitorTranscoding();
     if (PREVIEW_ENABLED)
       m_PanelWebcamPreview.setUpdate(true);
     if (PREVIEW_ENABLED)
@@ -861,6 +1275,114 @@ public class ScreencastPanel
     updateMenu();
   }
 
+  /**
+   * Returns the progress of encoding spooled frames.
+   *
+   * @return		the lowest progress of the recorders still encoding (0-1), -1 if none encoding
+   */
+  protected double getTranscodeProgress() {
+    double		result;
+    VideoRecorder	video;
+
+    result = -1;
+    for (Recorder r: m_Recorder.getRecorders()) {
+      if (r instanceof VideoRecorder) {
+	video = (VideoRecorder) r;
+	if (video.isTranscoding() && ((result == -1) || (video.getTranscodeProgress() < result)))
+	  result = video.getTranscodeProgress();
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Displays the progress of encoding spooled frames in the title of the
+   * frame, until all recorders have finished.
+   */
+  protected void monitorTranscoding() {
+    final Frame		frame;
+
+    frame = GUIHelper.getParentFrame(this);
+    if ((frame == null) || (getTranscodeProgress() == -1))
+      return;
+
+    if (m_TimerTranscoding == null) {
+      m_FrameTitle       = frame.getTitle();
+      m_TimerTranscoding = new Timer(500, (ActionEvent e) -> {
+	double progress = getTranscodeProgress();
+	if (progress == -1) {
+	  m_TimerTranscoding.stop();
+	  m_TimerTranscoding = null;
+	  frame.setTitle(m_FrameTitle);
+	}
+	else {
+	  frame.setTitle(m_FrameTitle + " - encoding " + Math.round(progress * 100) + "%");
+	}
+      });
+      m_TimerTranscoding.start();
+    }
+  }
+
+  /**
+   * Returns the level meter of the sound recorder, if any.
+   *
+   * @return		the meter, null if not recording sound
+   */
+  protected AudioLevelMeter getLevelMeter() {
+    Recorder	sound;
+
+    for (Recorder r: m_Recorder.getRecorders()) {
+      sound = r;
+      if (r instanceof XuggleScreenRecorder)
+	sound = ((XuggleScreenRecorder) r).getSoundRecorder();
+      if (sound instanceof SampledSoundRecorder)
+	return ((SampledSoundRecorder) sound).getLevelMeter();
+    }
+
+    return null;
+  }
+
+  /**
+   * Displays the sound level in the title of the frame (and therefore in
+   * the taskbar while minimized), warning if the sound has been silent
+   * for too long.
+   */
+  protected void monitorLevel() {
+    final Frame			frame;
+    final AudioLevelMeter	meter;
+
+    frame = GUIHelper.getParentFrame(this);
+    meter = getLevelMeter();
+    if ((frame == null) || (meter == null) || (m_TimerLevel != null))
+      return;
+
+    m_FrameTitle = frame.getTitle();
+    m_TimerLevel = new Timer(250, (ActionEvent e) -> {
+      if (meter.isSilent())
+	frame.setTitle(m_FrameTitle + " - NO SOUND for " + Math.round(meter.getSilenceTime()) + "s!");
+      else
+	frame.setTitle(m_FrameTitle + " - sound " + Math.round(Math.max(-99, AudioLevelMeter.toDecibels(meter.getPeak()))) + "dB");
+    });
+    m_TimerLevel.start();
+  }
+
+  /**
+   * Stops displaying the sound level and restores the title of the frame.
+   */
+  protected void stopMonitoringLevel() {
+    Frame	frame;
+
+    if (m_TimerLevel == null)
+      return;
+
+    m_TimerLevel.stop();
+    m_TimerLevel = null;
+    frame        = GUIHelper.getParentFrame(this);
+    if (frame != null)
+      frame.setTitle(m_FrameTitle);
+  }
+
   /**
    * Launches browser with homepage.
    */
@@ -882,6 +1404,8 @@ public class ScreencastPanel
   public void close() {
     if (m_Recorder.isRecording() || m_Recorder.isPaused())
       m_Recorder.stop();
+    stopMonitoringLevel();
+    WebcamRegistry.getSingleton().removeListener(m_WebcamRegistryListener);
     if (PREVIEW_ENABLED)
       m_PanelScreenPreview.stop();
     if (PREVIEW_ENABLED)
@@ -903,13 +1427,27 @@ public class ScreencastPanel
   }
 
   /**
-   * Refreshes the combobox with the available
+   * Triggers a discovery of the available webcams in the background.
+   * The combobox gets updated once changes were discovered.
    */
   protected void refreshWebcams() {
+    WebcamRegistry.getSingleton().refresh();
+  }
+
+  /**
+   * Refreshes the combobox with the currently known webcams, keeping the
+   * selected webcam if still available.
+   */
+  protected void updateWebcams() {
+    String	selected;
+
+    selected = (String) m_ComboBoxWebcamAvailable.getSelectedItem();
     m_ModelWebcamAvailable.removeAllElements();
-    for (Webcam webcam: Webcam.getWebcams())
+    for (WebcamInfo webcam: WebcamRegistry.getSingleton().getWebcams())
       m_ModelWebcamAvailable.addElement(webcam.getName());
-    if (m_ModelWebcamAvailable.getSize() > 0)
+    if ((selected != null) && (m_ModelWebcamAvailable.getIndexOf(selected) > -1))
+      m_ComboBoxWebcamAvailable.setSelectedItem(selected);
+    else if (m_ModelWebcamAvailable.getSize() > 0)
       m_ComboBoxWebcamAvailable.setSelectedIndex(0);
     updatePreviewRecorders();
   }
@@ -919,20 +1457,45 @@ public class ScreencastPanel
    * webcam.
    */
   protected void refreshWebcamSizes() {
-    String 	id;
+    WebcamInfo 	webcam;
 
     if ((m_ModelWebcamAvailable.getSize() == 0 ) || (m_ComboBoxWebcamAvailable.getSelectedIndex() == -1))
       return;
 
     m_ModelWebcamSizes.removeAllElements();
-    id = (String) m_ComboBoxWebcamAvailable.getSelectedItem();
-    for (Webcam webcam: Webcam.getWebcams()) {
-      if (id.equals(webcam.getName())) {
-	for (Dimension dim: webcam.getViewSizes())
-	  m_ModelWebcamSizes.addElement((int) dim.getWidth() + SIZE_SEPARATOR + (int) dim.getHeight());
-	break;
-      }
+    webcam = WebcamRegistry.getSingleton().getCachedWebcam((String) m_ComboBoxWebcamAvailable.getSelectedItem());
+    if (webcam != null) {
+      for (Dimension dim: webcam.getViewSizes())
+	m_ModelWebcamSizes.addElement((int) dim.getWidth() + SIZE_SEPARATOR + (int) dim.getHeight());
     }
+    updateAdditionalWebcams();
     updatePreviewRecorders();
   }
+
+  /**
+   * Refreshes the checkboxes for the additional webcams, i.e., all known
+   * webcams apart from the selected one. Keeps the selection of webcams
+   * that are still available.
+   */
+  protected void updateAdditionalWebcams() {
+    Map<String,JCheckBox>	previous;
+    JCheckBox			checkBox;
+    String			selected;
+
+    previous = new LinkedHashMap<>(m_CheckBoxesWebcamAdditional);
+    selected = (String) m_ComboBoxWebcamAvailable.getSelectedItem();
+    m_CheckBoxesWebcamAdditional.clear();
+    m_PanelWebcamAdditional.removeAll();
+    for (WebcamInfo webcam: WebcamRegistry.getSingleton().getWebcams()) {
+      if (webcam.getName().equals(selected))
+	continue;
+      checkBox = new JCheckBox(webcam.getName());
+      if (previous.containsKey(webcam.getName()))
+	checkBox.setSelected(previous.get(webcam.getName()).isSelected());
+      m_CheckBoxesWebcamAdditional.put(webcam.getName(), checkBox);
+      m_PanelWebcamAdditional.add(checkBox);
+    }
+    m_PanelWebcamAdditional.revalidate();
+    m_PanelWebcamAdditional.repaint();
+  }
 }
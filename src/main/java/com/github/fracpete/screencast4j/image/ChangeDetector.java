@@ -0,0 +1,203 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ChangeDetector.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.WritableRaster;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Detects whether an image differs from the previous one by hashing the
+ * raster tile by tile and comparing the hashes with the ones of the
+ * previous image. Only interleaved byte images (eg TYPE_3BYTE_BGR) get
+ * hashed, all other images are always considered changed.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class ChangeDetector {
+
+  /** for reading eight bytes at once from a byte array. */
+  protected final static VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  /** the multiplier for mixing the hash. */
+  protected final static long MIX = 0x9E3779B97F4A7C15L;
+
+  /** the size of the tiles (in pixels). */
+  protected int m_TileSize;
+
+  /** the hashes of the previous image. */
+  protected long[] m_Hashes;
+
+  /** the width of the previous image. */
+  protected int m_Width;
+
+  /** the height of the previous image. */
+  protected int m_Height;
+
+  /** the number of tiles that changed with the last image. */
+  protected int m_NumChanged;
+
+  /**
+   * Initializes the detector.
+   *
+   * @param tileSize	the size of the tiles (in pixels)
+   */
+  public ChangeDetector(int tileSize) {
+    m_TileSize = tileSize;
+    reset();
+  }
+
+  /**
+   * Forgets the previous image.
+   */
+  public void reset() {
+    m_Hashes     = null;
+    m_Width      = -1;
+    m_Height     = -1;
+    m_NumChanged = 0;
+  }
+
+  /**
+   * Returns the size of the tiles.
+   *
+   * @return		the size (in pixels)
+   */
+  public int getTileSize() {
+    return m_TileSize;
+  }
+
+  /**
+   * Hashes a rectangular region of the data.
+   *
+   * @param data	the data to hash
+   * @param offset	the offset of the top-left corner
+   * @param stride	the scanline stride
+   * @param length	the number of bytes per row
+   * @param rows	the number of rows
+   * @return		the hash
+   */
+  protected static long hash(byte[] data, int offset, int stride, int length, int rows) {
+    long	result;
+    int		y;
+    int		i;
+    int		end;
+
+    result = 0;
+    for (y = 0; y < rows; y++) {
+      i   = offset + y * stride;
+      end = i + length;
+      for (; i + 8 <= end; i += 8)
+	result = (result ^ (long) LONG_VIEW.get(data, i)) * MIX;
+      for (; i < end; i++)
+	result = (result ^ data[i]) * MIX;
+    }
+
+    return result;
+  }
+
+  /**
+   * Checks whether the image differs from the previous one and remembers
+   * it as the new previous image.
+   *
+   * @param image	the image to check
+   * @return		true if changed (or not supported)
+   */
+  public boolean hasChanged(BufferedImage image) {
+    WritableRaster		raster;
+    PixelInterleavedSampleModel	model;
+    byte[]			data;
+    int				offset;
+    int				stride;
+    int				pixel;
+    int				tilesX;
+    int				tilesY;
+    int				tx;
+    int				ty;
+    int				w;
+    int				h;
+    int				n;
+    long			hash;
+    boolean			first;
+
+    raster = image.getRaster();
+    if (!(raster.getSampleModel() instanceof PixelInterleavedSampleModel) || !(raster.getDataBuffer() instanceof DataBufferByte)) {
+      m_NumChanged = -1;
+      return true;
+    }
+
+    model  = (PixelInterleavedSampleModel) raster.getSampleModel();
+    data   = ((DataBufferByte) raster.getDataBuffer()).getData();
+    stride = model.getScanlineStride();
+    pixel  = model.getPixelStride();
+    offset = raster.getDataBuffer().getOffset()
+      - raster.getSampleModelTranslateY() * stride
+      - raster.getSampleModelTranslateX() * pixel;
+    tilesX = (image.getWidth() + m_TileSize - 1) / m_TileSize;
+    tilesY = (image.getHeight() + m_TileSize - 1) / m_TileSize;
+
+    first = (m_Hashes == null) || (m_Width != image.getWidth()) || (m_Height != image.getHeight());
+    if (first) {
+      m_Hashes = new long[tilesX * tilesY];
+      m_Width  = image.getWidth();
+      m_Height = image.getHeight();
+    }
+
+    m_NumChanged = 0;
+    n = 0;
+    for (ty = 0; ty < tilesY; ty++) {
+      h = Math.min(m_TileSize, m_Height - ty * m_TileSize);
+      for (tx = 0; tx < tilesX; tx++) {
+	w    = Math.min(m_TileSize, m_Width - tx * m_TileSize);
+	hash = hash(data, offset + ty * m_TileSize * stride + tx * m_TileSize * pixel, stride, w * pixel, h);
+	if (first || (hash != m_Hashes[n]))
+	  m_NumChanged++;
+	m_Hashes[n] = hash;
+	n++;
+      }
+    }
+
+    return (m_NumChanged > 0);
+  }
+
+  /**
+   * Returns the number of tiles that changed with the last image.
+   *
+   * @return		the number of tiles, -1 if image not supported
+   */
+  public int getNumChangedTiles() {
+    return m_NumChanged;
+  }
+
+  /**
+   * Returns the number of tiles of the last image.
+   *
+   * @return		the number of tiles
+   */
+  public int getNumTiles() {
+    if (m_Hashes == null)
+      return 0;
+    return m_Hashes.length;
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CursorOverlay.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.image;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Alpha-blends a cursor image into frames. The cursor gets rasterized once
+ * into premultiplied ARGB values, which are then blended directly into the
+ * raster of interleaved byte images (eg TYPE_3BYTE_BGR) without any
+ * allocations. Other image types are drawn via Java2D.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class CursorOverlay {
+
+  /** the cursor image. */
+  protected BufferedImage m_Image;
+
+  /** the premultiplied ARGB pixels of the cursor. */
+  protected int[] m_Pixels;
+
+  /** the width of the cursor. */
+  protected int m_Width;
+
+  /** the height of the cursor. */
+  protected int m_Height;
+
+  /**
+   * Initializes the overlay.
+   *
+   * @param cursor	the cursor image
+   */
+  public CursorOverlay(Image cursor) {
+    Graphics2D	g;
+
+    m_Width  = cursor.getWidth(null);
+    m_Height = cursor.getHeight(null);
+    m_Image  = new BufferedImage(m_Width, m_Height, BufferedImage.TYPE_INT_ARGB_PRE);
+    g = m_Image.createGraphics();
+    g.drawImage(cursor, 0, 0, null);
+    g.dispose();
+    m_Pixels = ((DataBufferInt) m_Image.getRaster().getDataBuffer()).getData().clone();
+  }
+
+  /**
+   * Returns the width of the cursor.
+   *
+   * @return		the width
+   */
+  public int getWidth() {
+    return m_Width;
+  }
+
+  /**
+   * Returns the height of the cursor.
+   *
+   * @return		the height
+   */
+  public int getHeight() {
+    return m_Height;
+  }
+
+  /**
+   * Blends a premultiplied color component with the existing one.
+   *
+   * @param src		the premultiplied source component (0-255)
+   * @param dest	the destination component (0-255)
+   * @param inv		the inverted source alpha (0-255)
+   * @return		the blended component
+   */
+  protected static int blend(int src, int dest, int inv) {
+    return src + (dest * inv + 127) / 255;
+  }
+
+  /**
+   * Draws the cursor on the frame.
+   *
+   * @param frame	the frame to draw on
+   * @param x		the x position of the cursor in the frame
+   * @param y		the y position of the cursor in the frame
+   */
+  public void draw(BufferedImage frame, int x, int y) {
+    WritableRaster		raster;
+    PixelInterleavedSampleModel	model;
+    Graphics2D			g;
+    byte[]			data;
+    int[]			bands;
+    int				offset;
+    int				stride;
+    int				pixel;
+    int				fromX;
+    int				toX;
+    int				fromY;
+    int				toY;
+    int				cx;
+    int				cy;
+    int				d;
+    int				argb;
+    int				inv;
+
+    // outside frame?
+    if ((x >= frame.getWidth()) || (y >= frame.getHeight()) || (x + m_Width <= 0) || (y + m_Height <= 0))
+      return;
+
+    raster = frame.getRaster();
+    if (!(raster.getSampleModel() instanceof PixelInterleavedSampleModel)
+      || !(raster.getDataBuffer() instanceof DataBufferByte)
+      || (raster.getNumBands() != 3)) {
+      g = frame.createGraphics();
+      g.drawImage(m_Image, x, y, null);
+      g.dispose();
+      return;
+    }
+
+    model  = (PixelInterleavedSampleModel) raster.getSampleModel();
+    data   = ((DataBufferByte) raster.getDataBuffer()).getData();
+    bands  = model.getBandOffsets();
+    stride = model.getScanlineStride();
+    pixel  = model.getPixelStride();
+    offset = raster.getDataBuffer().getOffset()
+      - raster.getSampleModelTranslateY() * stride
+      - raster.getSampleModelTranslateX() * pixel;
+
+    // clip
+    fromX = Math.max(0, -x);
+    fromY = Math.max(0, -y);
+    toX   = Math.min(m_Width, frame.getWidth() - x);
+    toY   = Math.min(m_Height, frame.getHeight() - y);
+
+    for (cy = fromY; cy < toY; cy++) {
+      d = offset + (y + cy) * stride + (x + fromX) * pixel;
+      for (cx = fromX; cx < toX; cx++, d += pixel) {
+	argb = m_Pixels[cy * m_Width + cx];
+	if (argb == 0)
+	  continue;
+	inv = 255 - (argb >>> 24);
+	data[d + bands[0]] = (byte) blend((argb >> 16) & 0xFF, data[d + bands[0]] & 0xFF, inv);
+	data[d + bands[1]] = (byte) blend((argb >> 8) & 0xFF, data[d + bands[1]] & 0xFF, inv);
+	data[d + bands[2]] = (byte) blend(argb & 0xFF, data[d + bands[2]] & 0xFF, inv);
+      }
+    }
+  }
+}
@@ -0,0 +1,435 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ImageConverter.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.image;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Converts opaque packed-int images (TYPE_INT_RGB, TYPE_INT_BGR) into
+ * interleaved byte images (eg TYPE_3BYTE_BGR) by working directly on the
+ * underlying data arrays, bypassing the generic Java2D blit. Large images
+ * get converted in parallel, in horizontal stripes. When not converting in
+ * parallel, TYPE_INT_RGB to TYPE_3BYTE_BGR uses Java2D's native loop.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class ImageConverter {
+
+  /** for writing four bytes at once into a byte array. */
+  protected final static VarHandle INT_VIEW = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+  /** the minimum number of rows per stripe. */
+  public final static int MIN_ROWS_PER_STRIPE = 64;
+
+  /** the number of pixels from which on to convert in parallel. */
+  protected int m_ParallelThreshold;
+
+  /** the number of stripes to use for parallel conversion. */
+  protected int m_NumStripes;
+
+  /** whether to use Java2D's native loop when converting TYPE_INT_RGB single-threaded. */
+  protected boolean m_PreferNative;
+
+  /**
+   * Initializes the converter.
+   */
+  public ImageConverter() {
+    m_ParallelThreshold = 640 * 480;
+    m_NumStripes        = Runtime.getRuntime().availableProcessors();
+    m_PreferNative      = true;
+  }
+
+  /**
+   * Sets the number of pixels from which on to convert in parallel.
+   *
+   * @param value	the number of pixels, use Integer.MAX_VALUE to disable
+   */
+  public void setParallelThreshold(int value) {
+    m_ParallelThreshold = value;
+  }
+
+  /**
+   * Returns the number of pixels from which on to convert in parallel.
+   *
+   * @return		the number of pixels
+   */
+  public int getParallelThreshold() {
+    return m_ParallelThreshold;
+  }
+
+  /**
+   * Sets the number of stripes to use for parallel conversion.
+   *
+   * @param value	the number of stripes
+   */
+  public void setNumStripes(int value) {
+    if (value > 0)
+      m_NumStripes = value;
+    else
+      System.err.println("Number of stripes must be > 0, provided: " + value);
+  }
+
+  /**
+   * Returns the number of stripes to use for parallel conversion.
+   *
+   * @return		the number of stripes
+   */
+  public int getNumStripes() {
+    return m_NumStripes;
+  }
+
+  /**
+   * Sets whether to use Java2D's native loop when converting TYPE_INT_RGB
+   * to TYPE_3BYTE_BGR single-threaded.
+   *
+   * @param value	true if to use Java2D
+   */
+  public void setPreferNative(boolean value) {
+    m_PreferNative = value;
+  }
+
+  /**
+   * Returns whether to use Java2D's native loop when converting TYPE_INT_RGB
+   * to TYPE_3BYTE_BGR single-threaded.
+   *
+   * @return		true if to use Java2D
+   */
+  public boolean getPreferNative() {
+    return m_PreferNative;
+  }
+
+  /**
+   * Returns the shift for the 8-bit mask.
+   *
+   * @param mask	the mask to get the shift for
+   * @return		the shift, -1 if not an 8-bit mask
+   */
+  protected static int getShift(int mask) {
+    int		shift;
+
+    shift = Integer.numberOfTrailingZeros(mask);
+    if ((mask >>> shift) != 0xFF)
+      return -1;
+    return shift;
+  }
+
+  /**
+   * Checks whether the direct conversion supports the two images.
+   *
+   * @param src		the image to convert
+   * @param dest	the image to convert into
+   * @return		true if supported
+   */
+  public boolean canConvert(BufferedImage src, BufferedImage dest) {
+    SinglePixelPackedSampleModel	srcModel;
+    PixelInterleavedSampleModel		destModel;
+
+    if ((src.getWidth() != dest.getWidth()) || (src.getHeight() != dest.getHeight()))
+      return false;
+    if ((src.getType() != BufferedImage.TYPE_INT_RGB) && (src.getType() != BufferedImage.TYPE_INT_BGR))
+      return false;
+    if (!(src.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel))
+      return false;
+    if (!(src.getRaster().getDataBuffer() instanceof DataBufferInt))
+      return false;
+    if (!(dest.getRaster().getSampleModel() instanceof PixelInterleavedSampleModel))
+      return false;
+    if (!(dest.getRaster().getDataBuffer() instanceof DataBufferByte))
+      return false;
+
+    srcModel  = (SinglePixelPackedSampleModel) src.getRaster().getSampleModel();
+    destModel = (PixelInterleavedSampleModel) dest.getRaster().getSampleModel();
+    if (srcModel.getNumBands() != 3)
+      return false;
+    for (int mask: srcModel.getBitMasks()) {
+      if (getShift(mask) == -1)
+	return false;
+    }
+    if ((destModel.getNumBands() != 3) || (destModel.getPixelStride() < 3))
+      return false;
+    for (int size: destModel.getSampleSize()) {
+      if (size != 8)
+	return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Converts the rows of the image.
+   *
+   * @param src		the source data
+   * @param srcOffset	the offset of the first pixel in the source data
+   * @param srcStride	the scanline stride of the source
+   * @param shifts	the shifts for red, green, blue in the source
+   * @param dest	the destination data
+   * @param destOffset	the offset of the first pixel in the destination data
+   * @param destStride	the scanline stride of the destination
+   * @param destPixel	the pixel stride of the destination
+   * @param bands	the offsets for red, green, blue in the destination
+   * @param width	the width of the image
+   * @param fromY	the first row to convert (incl)
+   * @param toY		the last row to convert (excl)
+   */
+  protected static void convertRows(int[] src, int srcOffset, int srcStride, int[] shifts,
+				    byte[] dest, int destOffset, int destStride, int destPixel, int[] bands,
+				    int width, int fromY, int toY) {
+    int		x;
+    int		y;
+    int		s;
+    int		d;
+    int		pixel;
+    int		p0;
+    int		p1;
+    int		p2;
+    int		p3;
+    int		rShift;
+    int		gShift;
+    int		bShift;
+    int		rBand;
+    int		gBand;
+    int		bBand;
+
+    rShift = shifts[0];
+    gShift = shifts[1];
+    bShift = shifts[2];
+    rBand  = bands[0];
+    gBand  = bands[1];
+    bBand  = bands[2];
+
+    // common case: TYPE_INT_RGB -> TYPE_3BYTE_BGR
+    if ((destPixel == 3) && (bBand == 0) && (gBand == 1) && (rBand == 2) && (bShift == 0) && (gShift == 8) && (rShift == 16)) {
+      for (y = fromY; y < toY; y++) {
+	s = srcOffset + y * srcStride;
+	d = destOffset + y * destStride;
+	// four pixels are written as three little-endian ints
+	for (x = 0; x + 3 < width; x += 4) {
+	  p0 = src[s + x];
+	  p1 = src[s + x + 1];
+	  p2 = src[s + x + 2];
+	  p3 = src[s + x + 3];
+	  INT_VIEW.set(dest, d,     (p0 & 0xFFFFFF)         | (p1 << 24));
+	  INT_VIEW.set(dest, d + 4, ((p1 >>> 8) & 0xFFFF)   | (p2 << 16));
+	  INT_VIEW.set(dest, d + 8, ((p2 >>> 16) & 0xFF)    | (p3 << 8));
+	  d += 12;
+	}
+	for (; x < width; x++) {
+	  pixel       = src[s + x];
+	  dest[d]     = (byte) pixel;
+	  dest[d + 1] = (byte) (pixel >>> 8);
+	  dest[d + 2] = (byte) (pixel >>> 16);
+	  d += 3;
+	}
+      }
+      return;
+    }
+
+    for (y = fromY; y < toY; y++) {
+      s = srcOffset + y * srcStride;
+      d = destOffset + y * destStride;
+      for (x = 0; x < width; x++) {
+	pixel = src[s++];
+	dest[d + rBand] = (byte) (pixel >>> rShift);
+	dest[d + gBand] = (byte) (pixel >>> gShift);
+	dest[d + bBand] = (byte) (pixel >>> bShift);
+	d += destPixel;
+      }
+    }
+  }
+
+  /**
+   * Converts the image into the provided destination image.
+   *
+   * @param src		the image to convert
+   * @param dest	the image to convert into
+   * @return		false if the combination of images is not supported
+   * @see		#canConvert(BufferedImage, BufferedImage)
+   */
+  public boolean convert(BufferedImage src, BufferedImage dest) {
+    WritableRaster			srcRaster;
+    WritableRaster			destRaster;
+    SinglePixelPackedSampleModel	srcModel;
+    PixelInterleavedSampleModel		destModel;
+    int[]				srcData;
+    byte[]				destData;
+    int					srcOffset;
+    int					srcStride;
+    int[]				shifts;
+    int					destOffset;
+    int					destStride;
+    int					destPixel;
+    int[]				bands;
+    int					width;
+    int					height;
+    int					stripes;
+    int					rows;
+    int					i;
+
+    if (!canConvert(src, dest))
+      return false;
+
+    srcRaster  = src.getRaster();
+    srcModel   = (SinglePixelPackedSampleModel) srcRaster.getSampleModel();
+    srcData    = ((DataBufferInt) srcRaster.getDataBuffer()).getData();
+    srcOffset  = srcRaster.getDataBuffer().getOffset()
+      + srcModel.getOffset(-srcRaster.getSampleModelTranslateX(), -srcRaster.getSampleModelTranslateY());
+    srcStride  = srcModel.getScanlineStride();
+    shifts     = new int[3];
+    for (i = 0; i < shifts.length; i++)
+      shifts[i] = getShift(srcModel.getBitMasks()[i]);
+
+    destRaster = dest.getRaster();
+    destModel  = (PixelInterleavedSampleModel) destRaster.getSampleModel();
+    destData   = ((DataBufferByte) destRaster.getDataBuffer()).getData();
+    destStride = destModel.getScanlineStride();
+    destPixel  = destModel.getPixelStride();
+    destOffset = destRaster.getDataBuffer().getOffset()
+      - destRaster.getSampleModelTranslateY() * destStride
+      - destRaster.getSampleModelTranslateX() * destPixel;
+    bands      = destModel.getBandOffsets();
+
+    width  = src.getWidth();
+    height = src.getHeight();
+
+    stripes = Math.min(m_NumStripes, height / MIN_ROWS_PER_STRIPE);
+    if ((long) width * height < m_ParallelThreshold)
+      stripes = 1;
+
+    if (stripes < 2) {
+      // single-threaded, Java2D has a native loop for this combination that is hard to beat
+      if (m_PreferNative && (src.getType() == BufferedImage.TYPE_INT_RGB) && (dest.getType() == BufferedImage.TYPE_3BYTE_BGR))
+	drawImage(src, dest);
+      else
+	convertRows(srcData, srcOffset, srcStride, shifts, destData, destOffset, destStride, destPixel, bands, width, 0, height);
+    }
+    else {
+      rows = (height + stripes - 1) / stripes;
+      IntStream.range(0, stripes).parallel().forEach((int stripe) ->
+	convertRows(
+	  srcData, srcOffset, srcStride, shifts, destData, destOffset, destStride, destPixel, bands,
+	  width, stripe * rows, Math.min(height, (stripe + 1) * rows)));
+    }
+
+    return true;
+  }
+
+  /**
+   * Converts the image using Java2D.
+   *
+   * @param src		the image to convert
+   * @param dest	the image to convert into
+   */
+  protected static void drawImage(BufferedImage src, BufferedImage dest) {
+    Graphics2D	g;
+
+    g = dest.createGraphics();
+    g.setComposite(AlphaComposite.Src);
+    g.drawImage(src, 0, 0, null);
+    g.dispose();
+  }
+
+  /**
+   * Just for testing. Compares the output of the direct conversion with
+   * the one from Java2D, pixel by pixel, and outputs the timings.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) throws Exception {
+    ImageConverter	converter;
+    Random		rnd;
+    BufferedImage	src;
+    BufferedImage	expected;
+    BufferedImage	actual;
+    int[][]		sizes;
+    int[]		types;
+    long		start;
+    long		java2d;
+    long		direct;
+    int			x;
+    int			y;
+    int			i;
+    int			diff;
+
+    converter = new ImageConverter();
+    converter.setPreferNative(false);
+    rnd       = new Random(1);
+    sizes     = new int[][]{{1, 1}, {17, 5}, {641, 479}, {1920, 1080}, {3840, 2160}};
+    types     = new int[]{BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_BGR};
+
+    for (int stripes: new int[]{1, 4}) {
+      converter.setNumStripes(stripes);
+      converter.setParallelThreshold(0);
+      for (int type: types) {
+	for (int[] size: sizes) {
+	  src = new BufferedImage(size[0] + 3, size[1] + 2, type);
+	  for (y = 0; y < src.getHeight(); y++) {
+	    for (x = 0; x < src.getWidth(); x++)
+	      src.setRGB(x, y, rnd.nextInt());
+	  }
+	  // sub-image exercises offsets/strides
+	  src      = src.getSubimage(2, 1, size[0], size[1]);
+	  expected = new BufferedImage(size[0], size[1], BufferedImage.TYPE_3BYTE_BGR);
+	  actual   = new BufferedImage(size[0], size[1], BufferedImage.TYPE_3BYTE_BGR);
+
+	  start = System.nanoTime();
+	  for (i = 0; i < 50; i++)
+	    drawImage(src, expected);
+	  java2d = System.nanoTime() - start;
+
+	  start = System.nanoTime();
+	  for (i = 0; i < 50; i++) {
+	    if (!converter.convert(src, actual))
+	      throw new IllegalStateException("Conversion not supported for type " + type);
+	  }
+	  direct = System.nanoTime() - start;
+
+	  diff = 0;
+	  for (y = 0; y < src.getHeight(); y++) {
+	    for (x = 0; x < src.getWidth(); x++) {
+	      if (expected.getRGB(x, y) != actual.getRGB(x, y))
+		diff++;
+	    }
+	  }
+
+	  System.out.println(
+	    "stripes=" + stripes + ", type=" + type + ", size=" + size[0] + "x" + size[1]
+	      + ", differences=" + diff
+	      + ", java2d=" + (java2d / 50 / 1000) + "us"
+	      + ", direct=" + (direct / 50 / 1000) + "us");
+	  if (diff > 0)
+	    System.exit(1);
+	}
+      }
+    }
+  }
+}
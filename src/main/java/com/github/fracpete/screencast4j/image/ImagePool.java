@@ -0,0 +1,203 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ImagePool.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.image;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pool of reusable images, keyed by width, height and image type.
+ * Acquiring and releasing images does not allocate once the pool has
+ * warmed up.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class ImagePool {
+
+  /**
+   * The images available for a specific width/height/type.
+   */
+  protected static class Entry {
+
+    /** the width. */
+    public int width;
+
+    /** the height. */
+    public int height;
+
+    /** the image type. */
+    public int type;
+
+    /** the available images. */
+    public ArrayDeque<BufferedImage> images;
+  }
+
+  /** the maximum number of images to keep per key. */
+  protected int m_MaxPerKey;
+
+  /** the entries. */
+  protected List<Entry> m_Entries;
+
+  /** the number of requests that could be served from the pool. */
+  protected long m_NumHits;
+
+  /** the number of requests that required a new image. */
+  protected long m_NumMisses;
+
+  /**
+   * Initializes the pool.
+   *
+   * @param maxPerKey	the maximum number of images to keep per key
+   */
+  public ImagePool(int maxPerKey) {
+    m_MaxPerKey = maxPerKey;
+    m_Entries   = new ArrayList<>();
+    m_NumHits   = 0;
+    m_NumMisses = 0;
+  }
+
+  /**
+   * Sets the maximum number of images to keep per key.
+   *
+   * @param value	the maximum
+   */
+  public synchronized void setMaxPerKey(int value) {
+    m_MaxPerKey = value;
+  }
+
+  /**
+   * Returns the maximum number of images to keep per key.
+   *
+   * @return		the maximum
+   */
+  public synchronized int getMaxPerKey() {
+    return m_MaxPerKey;
+  }
+
+  /**
+   * Locates the entry for the specified key.
+   *
+   * @param width	the width
+   * @param height	the height
+   * @param type	the image type
+   * @param create	whether to create the entry if not present
+   * @return		the entry, null if not found and not created
+   */
+  protected Entry getEntry(int width, int height, int type, boolean create) {
+    Entry	result;
+    int		i;
+
+    for (i = 0; i < m_Entries.size(); i++) {
+      result = m_Entries.get(i);
+      if ((result.width == width) && (result.height == height) && (result.type == type))
+	return result;
+    }
+
+    if (!create)
+      return null;
+
+    result        = new Entry();
+    result.width  = width;
+    result.height = height;
+    result.type   = type;
+    result.images = new ArrayDeque<>(m_MaxPerKey);
+    m_Entries.add(result);
+
+    return result;
+  }
+
+  /**
+   * Returns an image with the specified dimensions and type, reusing a
+   * pooled one if available. The content of the image is undefined.
+   *
+   * @param width	the width
+   * @param height	the height
+   * @param type	the image type
+   * @return		the image
+   */
+  public synchronized BufferedImage acquire(int width, int height, int type) {
+    BufferedImage	result;
+
+    result = getEntry(width, height, type, true).images.poll();
+    if (result != null) {
+      m_NumHits++;
+    }
+    else {
+      m_NumMisses++;
+      result = new BufferedImage(width, height, type);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the image to the pool. Images whose dimensions/type were never
+   * requested or that exceed the maximum per key get discarded.
+   *
+   * @param image	the image to return, ignored if null
+   */
+  public synchronized void release(BufferedImage image) {
+    Entry	entry;
+
+    if (image == null)
+      return;
+
+    entry = getEntry(image.getWidth(), image.getHeight(), image.getType(), false);
+    if ((entry != null) && (entry.images.size() < m_MaxPerKey))
+      entry.images.push(image);
+  }
+
+  /**
+   * Removes all pooled images (but keeps the statistics).
+   */
+  public synchronized void clear() {
+    m_Entries.clear();
+  }
+
+  /**
+   * Returns the number of requests that could be served from the pool.
+   *
+   * @return		the number of hits
+   */
+  public synchronized long getNumHits() {
+    return m_NumHits;
+  }
+
+  /**
+   * Returns the number of requests that required a new image.
+   *
+   * @return		the number of misses
+   */
+  public synchronized long getNumMisses() {
+    return m_NumMisses;
+  }
+
+  /**
+   * Outputs a short description of the pool.
+   *
+   * @return		the description
+   */
+  public synchronized String toString() {
+    return getClass().getName() + ": hits=" + m_NumHits + ", misses=" + m_NumMisses;
+  }
+}
@@ -0,0 +1,945 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ImageScaler.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.image;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Scales images using area averaging, ie every pixel of the scaled image
+ * is the average of the source pixels it covers, weighted by their
+ * coverage. Works directly on the data arrays of opaque packed-int
+ * (eg TYPE_INT_RGB as obtained from java.awt.Robot) and interleaved byte
+ * images (eg TYPE_3BYTE_BGR), writing into interleaved byte images. Other
+ * combinations are scaled via Java2D.
+ * <br>
+ * The weights are fixed-point and only get recomputed when the sizes
+ * change. When scaling packed-int images down by integer factors (eg
+ * 3840x2160 to 1920x1080), boxes of pixels get averaged instead, summing
+ * up two channels at once. Large images get scaled in parallel, in
+ * horizontal stripes.
+ * Optionally, the aspect ratio gets preserved by adding black bars
+ * (letterboxing).
+ * <br>
+ * Not thread-safe, as the buffers for the sums are reused between calls.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class ImageScaler {
+
+  /**
+   * The source pixels (and their weights) that make up the pixels along
+   * one axis of the scaled image.
+   */
+  protected static class Contributions {
+
+    /** the length of the source. */
+    public final int source;
+
+    /** the length of the scaled image. */
+    public final int dest;
+
+    /** the first source pixel per scaled pixel. */
+    public final int[] start;
+
+    /** the number of source pixels per scaled pixel (padded with zero weights). */
+    public final int taps;
+
+    /** the weights per scaled pixel, taps values each, summing up to {@link #ONE}. */
+    public final int[] weights;
+
+    /** the integer scaling factor, 0 if not an integer. */
+    public final int factor;
+
+    /**
+     * Computes the contributions. Every scaled pixel uses the same number
+     * of source pixels, which keeps the inner loops simple.
+     *
+     * @param source	the length of the source
+     * @param dest	the length of the scaled image
+     */
+    public Contributions(int source, int dest) {
+      double	scale;
+      double	left;
+      double	right;
+      int[]	first;
+      int[]	last;
+      int	max;
+      int	sum;
+      int	largest;
+      int	i;
+      int	n;
+      int	w;
+
+      this.source = source;
+      this.dest   = dest;
+      this.factor = (source % dest == 0) ? source / dest : 0;
+
+      scale = (double) source / dest;
+      first = new int[dest];
+      last  = new int[dest];
+      max   = 1;
+      for (i = 0; i < dest; i++) {
+	left     = i * scale;
+	right    = Math.min(source, (i + 1) * scale);
+	first[i] = Math.min(source - 1, (int) Math.floor(left + EPSILON));
+	last[i]  = Math.max(first[i] + 1, (int) Math.ceil(right - EPSILON));
+	max      = Math.max(max, last[i] - first[i]);
+      }
+
+      this.start   = new int[dest];
+      this.taps    = max;
+      this.weights = new int[dest * max];
+      for (i = 0; i < dest; i++) {
+	left     = i * scale;
+	right    = Math.min(source, (i + 1) * scale);
+	// shift window to the left at the end of the source
+	start[i] = Math.min(first[i], source - max);
+	sum      = 0;
+	largest  = -1;
+	for (n = first[i]; n < last[i]; n++) {
+	  w = i * max + n - start[i];
+	  weights[w] = (int) Math.round((Math.min(right, n + 1) - Math.max(left, n)) / (right - left) * ONE);
+	  sum += weights[w];
+	  if ((largest == -1) || (weights[w] > weights[largest]))
+	    largest = w;
+	}
+	// rounding errors must not darken/brighten the pixel
+	weights[largest] += ONE - sum;
+      }
+    }
+  }
+
+  /** the number of fractional bits of the weights. */
+  public final static int WEIGHT_BITS = 12;
+
+  /** the weight of a source pixel that gets fully covered. */
+  public final static int ONE = 1 << WEIGHT_BITS;
+
+  /** the number of fractional bits kept after scaling horizontally. */
+  protected final static int ROW_BITS = 8;
+
+  /** the shift to apply after scaling horizontally. */
+  protected final static int ROW_SHIFT = WEIGHT_BITS - ROW_BITS;
+
+  /** the tolerance for the pixel boundaries. */
+  protected final static double EPSILON = 1e-9;
+
+  /** the maximum number of pixels that can get averaged with 16-bit sums. */
+  protected final static int MAX_BOX_AREA = 256;
+
+  /** the minimum number of (scaled) rows per stripe. */
+  public final static int MIN_ROWS_PER_STRIPE = 16;
+
+  /** the number of source pixels from which on to scale in parallel. */
+  protected int m_ParallelThreshold;
+
+  /** the number of stripes to use for parallel scaling. */
+  protected int m_NumStripes;
+
+  /** the horizontal contributions in use. */
+  protected Contributions m_ContributionsX;
+
+  /** the vertical contributions in use. */
+  protected Contributions m_ContributionsY;
+
+  /** the weighted sums of the scaled rows, per stripe. */
+  protected int[][] m_Sums;
+
+  /**
+   * Initializes the scaler.
+   */
+  public ImageScaler() {
+    m_ParallelThreshold = 1280 * 720;
+    m_NumStripes        = Runtime.getRuntime().availableProcessors();
+    m_Sums              = new int[0][];
+  }
+
+  /**
+   * Sets the number of source pixels from which on to scale in parallel.
+   *
+   * @param value	the number of pixels, use Integer.MAX_VALUE to disable
+   */
+  public void setParallelThreshold(int value) {
+    m_ParallelThreshold = value;
+  }
+
+  /**
+   * Returns the number of source pixels from which on to scale in parallel.
+   *
+   * @return		the number of pixels
+   */
+  public int getParallelThreshold() {
+    return m_ParallelThreshold;
+  }
+
+  /**
+   * Sets the number of stripes to use for parallel scaling.
+   *
+   * @param value	the number of stripes
+   */
+  public void setNumStripes(int value) {
+    if (value > 0)
+      m_NumStripes = value;
+    else
+      System.err.println("Number of stripes must be > 0, provided: " + value);
+  }
+
+  /**
+   * Returns the number of stripes to use for parallel scaling.
+   *
+   * @return		the number of stripes
+   */
+  public int getNumStripes() {
+    return m_NumStripes;
+  }
+
+  /**
+   * Calculates the area of the scaled image within the destination.
+   * With letterboxing, the largest area with the aspect ratio of the
+   * source gets centered (at even coordinates, to line up with subsampled
+   * chroma), otherwise the source gets stretched across the destination.
+   *
+   * @param srcWidth	the width of the source
+   * @param srcHeight	the height of the source
+   * @param destWidth	the width of the destination
+   * @param destHeight	the height of the destination
+   * @param letterbox	whether to preserve the aspect ratio
+   * @return		the area
+   */
+  public static Rectangle calcTarget(int srcWidth, int srcHeight, int destWidth, int destHeight, boolean letterbox) {
+    double	scale;
+    int		width;
+    int		height;
+
+    if (!letterbox || ((long) srcWidth * destHeight == (long) srcHeight * destWidth))
+      return new Rectangle(0, 0, destWidth, destHeight);
+
+    scale  = Math.min((double) destWidth / srcWidth, (double) destHeight / srcHeight);
+    width  = Math.max(1, Math.min(destWidth, (int) Math.round(srcWidth * scale)));
+    height = Math.max(1, Math.min(destHeight, (int) Math.round(srcHeight * scale)));
+
+    return new Rectangle(((destWidth - width) / 2) & ~1, ((destHeight - height) / 2) & ~1, width, height);
+  }
+
+  /**
+   * Checks whether the source image can be read directly.
+   *
+   * @param src		the image to check
+   * @return		true if supported
+   */
+  protected static boolean canRead(BufferedImage src) {
+    SinglePixelPackedSampleModel	packed;
+
+    if ((src.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel)
+      && (src.getRaster().getDataBuffer() instanceof DataBufferInt)) {
+      packed = (SinglePixelPackedSampleModel) src.getRaster().getSampleModel();
+      if (packed.getNumBands() < 3)
+	return false;
+      for (int mask: packed.getBitMasks()) {
+	if (ImageConverter.getShift(mask) == -1)
+	  return false;
+      }
+      return true;
+    }
+
+    return isInterleaved(src, 3);
+  }
+
+  /**
+   * Checks whether the image consists of interleaved 8-bit samples.
+   *
+   * @param image	the image to check
+   * @param minBands	the minimum number of bands
+   * @return		true if interleaved
+   */
+  protected static boolean isInterleaved(BufferedImage image, int minBands) {
+    PixelInterleavedSampleModel		model;
+
+    if (!(image.getRaster().getSampleModel() instanceof PixelInterleavedSampleModel))
+      return false;
+    if (!(image.getRaster().getDataBuffer() instanceof DataBufferByte))
+      return false;
+    model = (PixelInterleavedSampleModel) image.getRaster().getSampleModel();
+    if (model.getNumBands() < minBands)
+      return false;
+    for (int size: model.getSampleSize()) {
+      if (size != 8)
+	return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Checks whether the direct scaling supports the two images.
+   *
+   * @param src		the image to scale
+   * @param dest	the image to scale into
+   * @return		true if supported
+   */
+  public boolean canScale(BufferedImage src, BufferedImage dest) {
+    return canRead(src)
+      && isInterleaved(dest, 3)
+      && (dest.getRaster().getSampleModel().getNumBands() == 3);
+  }
+
+  /**
+   * Scales a row of packed-int pixels horizontally and adds it to the sums
+   * using the specified (vertical) weight.
+   *
+   * @param src		the source data
+   * @param offset	the offset of the row in the source data
+   * @param shifts	the shifts for red, green, blue in the source
+   * @param cx		the horizontal contributions
+   * @param weight	the weight of the row
+   * @param sum		the red, green, blue sums per scaled pixel
+   */
+  protected static void scaleRow(int[] src, int offset, int[] shifts, Contributions cx, int weight, int[] sum) {
+    int		x;
+    int		n;
+    int		s;
+    int		w;
+    int		w0;
+    int		w1;
+    int		pixel;
+    int		p0;
+    int		p1;
+    int		r;
+    int		g;
+    int		b;
+    int		rShift;
+    int		gShift;
+    int		bShift;
+    int		taps;
+    int[]	start;
+    int[]	weights;
+
+    rShift  = shifts[0];
+    gShift  = shifts[1];
+    bShift  = shifts[2];
+    taps    = cx.taps;
+    start   = cx.start;
+    weights = cx.weights;
+
+    // common case: scaling down by a factor of up to 2
+    if (taps == 2) {
+      for (x = 0; x < cx.dest; x++) {
+	s  = offset + start[x];
+	p0 = src[s];
+	p1 = src[s + 1];
+	w0 = weights[x * 2];
+	w1 = weights[x * 2 + 1];
+	sum[x * 3]     += ((((p0 >>> rShift) & 0xFF) * w0 + ((p1 >>> rShift) & 0xFF) * w1) >> ROW_SHIFT) * weight;
+	sum[x * 3 + 1] += ((((p0 >>> gShift) & 0xFF) * w0 + ((p1 >>> gShift) & 0xFF) * w1) >> ROW_SHIFT) * weight;
+	sum[x * 3 + 2] += ((((p0 >>> bShift) & 0xFF) * w0 + ((p1 >>> bShift) & 0xFF) * w1) >> ROW_SHIFT) * weight;
+      }
+      return;
+    }
+
+    for (x = 0; x < cx.dest; x++) {
+      s = offset + start[x];
+      w = x * taps;
+      r = 0;
+      g = 0;
+      b = 0;
+      for (n = 0; n < taps; n++) {
+	pixel = src[s + n];
+	w0    = weights[w + n];
+	r += ((pixel >>> rShift) & 0xFF) * w0;
+	g += ((pixel >>> gShift) & 0xFF) * w0;
+	b += ((pixel >>> bShift) & 0xFF) * w0;
+      }
+      sum[x * 3]     += (r >> ROW_SHIFT) * weight;
+      sum[x * 3 + 1] += (g >> ROW_SHIFT) * weight;
+      sum[x * 3 + 2] += (b >> ROW_SHIFT) * weight;
+    }
+  }
+
+  /**
+   * Scales a row of interleaved byte pixels horizontally and adds it to
+   * the sums using the specified (vertical) weight.
+   *
+   * @param src		the source data
+   * @param offset	the offset of the row in the source data
+   * @param pixelStride	the pixel stride of the source
+   * @param bands	the offsets for red, green, blue in the source
+   * @param cx		the horizontal contributions
+   * @param weight	the weight of the row
+   * @param sum		the red, green, blue sums per scaled pixel
+   */
+  protected static void scaleRow(byte[] src, int offset, int pixelStride, int[] bands, Contributions cx, int weight, int[] sum) {
+    int		x;
+    int		n;
+    int		s;
+    int		w;
+    int		w0;
+    int		w1;
+    int		r;
+    int		g;
+    int		b;
+    int		rBand;
+    int		gBand;
+    int		bBand;
+    int		taps;
+    int[]	start;
+    int[]	weights;
+
+    rBand   = bands[0];
+    gBand   = bands[1];
+    bBand   = bands[2];
+    taps    = cx.taps;
+    start   = cx.start;
+    weights = cx.weights;
+
+    // common case: scaling down by a factor of up to 2
+    if (taps == 2) {
+      for (x = 0; x < cx.dest; x++) {
+	s  = offset + start[x] * pixelStride;
+	w0 = weights[x * 2];
+	w1 = weights[x * 2 + 1];
+	sum[x * 3]     += (((src[s + rBand] & 0xFF) * w0 + (src[s + pixelStride + rBand] & 0xFF) * w1) >> ROW_SHIFT) * weight;
+	sum[x * 3 + 1] += (((src[s + gBand] & 0xFF) * w0 + (src[s + pixelStride + gBand] & 0xFF) * w1) >> ROW_SHIFT) * weight;
+	sum[x * 3 + 2] += (((src[s + bBand] & 0xFF) * w0 + (src[s + pixelStride + bBand] & 0xFF) * w1) >> ROW_SHIFT) * weight;
+      }
+      return;
+    }
+
+    for (x = 0; x < cx.dest; x++) {
+      s = offset + start[x] * pixelStride;
+      w = x * taps;
+      r = 0;
+      g = 0;
+      b = 0;
+      for (n = 0; n < taps; n++) {
+	w0 = weights[w + n];
+	r += (src[s + rBand] & 0xFF) * w0;
+	g += (src[s + gBand] & 0xFF) * w0;
+	b += (src[s + bBand] & 0xFF) * w0;
+	s += pixelStride;
+      }
+      sum[x * 3]     += (r >> ROW_SHIFT) * weight;
+      sum[x * 3 + 1] += (g >> ROW_SHIFT) * weight;
+      sum[x * 3 + 2] += (b >> ROW_SHIFT) * weight;
+    }
+  }
+
+  /**
+   * Checks whether the packed-int pixels can be averaged as boxes, ie
+   * whether red, green and blue occupy the lowest three bytes and the
+   * scaling factors are integers.
+   *
+   * @param shifts	the shifts for red, green, blue in the source
+   * @param cx		the horizontal contributions
+   * @param cy		the vertical contributions
+   * @return		true if boxes can be used
+   */
+  protected static boolean canAverageBoxes(int[] shifts, Contributions cx, Contributions cy) {
+    int		lanes;
+
+    if ((cx.factor == 0) || (cy.factor == 0) || (cx.factor * cy.factor > MAX_BOX_AREA))
+      return false;
+    lanes = 0;
+    for (int shift: shifts) {
+      if ((shift % 8 != 0) || (shift > 16))
+	return false;
+      lanes |= 1 << (shift / 8);
+    }
+
+    return (lanes == 7);
+  }
+
+  /**
+   * Scales the rows of packed-int pixels down by integer factors, by
+   * averaging boxes of pixels. The lowest and the third byte of the pixels
+   * get summed up together (in 16-bit lanes), the second byte separately.
+   *
+   * @param src		the source data
+   * @param srcOffset	the offset of the first pixel in the source data
+   * @param srcStride	the scanline stride of the source
+   * @param shifts	the shifts for red, green, blue in the source
+   * @param dest	the destination data
+   * @param destOffset	the offset of the first pixel of the target area in the destination data
+   * @param destStride	the scanline stride of the destination
+   * @param destPixel	the pixel stride of the destination
+   * @param destBands	the offsets for red, green, blue in the destination
+   * @param cx		the horizontal contributions
+   * @param cy		the vertical contributions
+   * @param fromY	the first scaled row (incl)
+   * @param toY		the last scaled row (excl)
+   */
+  protected static void averageBoxRows(int[] src, int srcOffset, int srcStride, int[] shifts,
+				       byte[] dest, int destOffset, int destStride, int destPixel, int[] destBands,
+				       Contributions cx, Contributions cy, int fromY, int toY) {
+    int		x;
+    int		y;
+    int		i;
+    int		j;
+    int		s;
+    int		d;
+    int		pixel;
+    int		sum02;
+    int		sum1;
+    int		kx;
+    int		ky;
+    int		reciprocal;
+    int[]	bands;
+    int		band0;
+    int		band1;
+    int		band2;
+
+    kx         = cx.factor;
+    ky         = cy.factor;
+    reciprocal = (65536 + kx * ky / 2) / (kx * ky);
+    // the destination band of each byte of the source pixels
+    bands      = new int[3];
+    for (i = 0; i < 3; i++)
+      bands[shifts[i] / 8] = destBands[i];
+    band0 = bands[0];
+    band1 = bands[1];
+    band2 = bands[2];
+
+    for (y = fromY; y < toY; y++) {
+      d = destOffset + y * destStride;
+      for (x = 0; x < cx.dest; x++) {
+	sum02 = 0;
+	sum1  = 0;
+	s     = srcOffset + y * ky * srcStride + x * kx;
+	for (j = 0; j < ky; j++) {
+	  for (i = 0; i < kx; i++) {
+	    pixel  = src[s + i];
+	    sum02 += pixel & 0xFF00FF;
+	    sum1  += (pixel >>> 8) & 0xFF;
+	  }
+	  s += srcStride;
+	}
+	dest[d + band0] = (byte) (((sum02 & 0xFFFF) * reciprocal + 32768) >>> 16);
+	dest[d + band1] = (byte) ((sum1 * reciprocal + 32768) >>> 16);
+	dest[d + band2] = (byte) (((sum02 >>> 16) * reciprocal + 32768) >>> 16);
+	d += destPixel;
+      }
+    }
+  }
+
+  /**
+   * Scales the rows of the image. Either the int or the byte source data
+   * must be provided.
+   *
+   * @param srcInts	the packed-int source data, null if byte data
+   * @param shifts	the shifts for red, green, blue of the int data
+   * @param srcBytes	the interleaved byte source data, null if int data
+   * @param srcPixel	the pixel stride of the byte data
+   * @param srcBands	the offsets for red, green, blue of the byte data
+   * @param srcOffset	the offset of the first pixel in the source data
+   * @param srcStride	the scanline stride of the source
+   * @param dest	the destination data
+   * @param destOffset	the offset of the first pixel of the target area in the destination data
+   * @param destStride	the scanline stride of the destination
+   * @param destPixel	the pixel stride of the destination
+   * @param destBands	the offsets for red, green, blue in the destination
+   * @param cx		the horizontal contributions
+   * @param cy		the vertical contributions
+   * @param sum		the buffer for the weighted sums of the scaled rows
+   * @param fromY	the first scaled row (incl)
+   * @param toY		the last scaled row (excl)
+   */
+  protected static void scaleRows(int[] srcInts, int[] shifts, byte[] srcBytes, int srcPixel, int[] srcBands, int srcOffset, int srcStride,
+				  byte[] dest, int destOffset, int destStride, int destPixel, int[] destBands,
+				  Contributions cx, Contributions cy, int[] sum, int fromY, int toY) {
+    int		x;
+    int		y;
+    int		n;
+    int		d;
+    int		weight;
+    int		srcRow;
+    int		round;
+    int		shift;
+    int		rBand;
+    int		gBand;
+    int		bBand;
+
+    if ((srcInts != null) && canAverageBoxes(shifts, cx, cy)) {
+      averageBoxRows(
+	srcInts, srcOffset, srcStride, shifts, dest, destOffset, destStride, destPixel, destBands,
+	cx, cy, fromY, toY);
+      return;
+    }
+
+    shift = WEIGHT_BITS + ROW_BITS;
+    round = 1 << (shift - 1);
+    rBand = destBands[0];
+    gBand = destBands[1];
+    bBand = destBands[2];
+
+    for (y = fromY; y < toY; y++) {
+      Arrays.fill(sum, 0, cx.dest * 3, 0);
+      for (n = 0; n < cy.taps; n++) {
+	weight = cy.weights[y * cy.taps + n];
+	if (weight == 0)
+	  continue;
+	srcRow = cy.start[y] + n;
+	if (srcInts != null)
+	  scaleRow(srcInts, srcOffset + srcRow * srcStride, shifts, cx, weight, sum);
+	else
+	  scaleRow(srcBytes, srcOffset + srcRow * srcStride, srcPixel, srcBands, cx, weight, sum);
+      }
+      d = destOffset + y * destStride;
+      for (x = 0; x < cx.dest; x++) {
+	dest[d + rBand] = (byte) ((sum[x * 3]     + round) >> shift);
+	dest[d + gBand] = (byte) ((sum[x * 3 + 1] + round) >> shift);
+	dest[d + bBand] = (byte) ((sum[x * 3 + 2] + round) >> shift);
+	d += destPixel;
+      }
+    }
+  }
+
+  /**
+   * Fills the destination outside the target area with black.
+   *
+   * @param dest	the image to fill
+   * @param target	the area to leave untouched
+   */
+  protected static void fillBars(BufferedImage dest, Rectangle target) {
+    WritableRaster		raster;
+    PixelInterleavedSampleModel	model;
+    byte[]			data;
+    int				offset;
+    int				stride;
+    int				pixel;
+    int				y;
+    Graphics2D			g;
+
+    if ((target.x == 0) && (target.y == 0) && (target.width == dest.getWidth()) && (target.height == dest.getHeight()))
+      return;
+
+    if (!isInterleaved(dest, 3)) {
+      g = dest.createGraphics();
+      g.setColor(Color.BLACK);
+      g.fillRect(0, 0, dest.getWidth(), target.y);
+      g.fillRect(0, target.y + target.height, dest.getWidth(), dest.getHeight() - target.y - target.height);
+      g.fillRect(0, target.y, target.x, target.height);
+      g.fillRect(target.x + target.width, target.y, dest.getWidth() - target.x - target.width, target.height);
+      g.dispose();
+      return;
+    }
+
+    raster = dest.getRaster();
+    model  = (PixelInterleavedSampleModel) raster.getSampleModel();
+    data   = ((DataBufferByte) raster.getDataBuffer()).getData();
+    stride = model.getScanlineStride();
+    pixel  = model.getPixelStride();
+    offset = raster.getDataBuffer().getOffset()
+      - raster.getSampleModelTranslateY() * stride
+      - raster.getSampleModelTranslateX() * pixel;
+    for (y = 0; y < dest.getHeight(); y++) {
+      if ((y < target.y) || (y >= target.y + target.height)) {
+	Arrays.fill(data, offset + y * stride, offset + y * stride + dest.getWidth() * pixel, (byte) 0);
+      }
+      else {
+	Arrays.fill(data, offset + y * stride, offset + y * stride + target.x * pixel, (byte) 0);
+	Arrays.fill(data, offset + y * stride + (target.x + target.width) * pixel, offset + y * stride + dest.getWidth() * pixel, (byte) 0);
+      }
+    }
+  }
+
+  /**
+   * Scales the image using Java2D.
+   *
+   * @param src		the image to scale
+   * @param dest	the image to scale into
+   * @param target	the area to scale into
+   */
+  protected static void drawImage(BufferedImage src, BufferedImage dest, Rectangle target) {
+    Graphics2D	g;
+
+    g = dest.createGraphics();
+    g.setComposite(AlphaComposite.Src);
+    g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    g.drawImage(src, target.x, target.y, target.width, target.height, null);
+    g.dispose();
+  }
+
+  /**
+   * Scales the image across the whole destination image, optionally
+   * preserving the aspect ratio.
+   *
+   * @param src		the image to scale
+   * @param dest	the image to scale into
+   * @param letterbox	whether to preserve the aspect ratio by adding black bars
+   * @see		#calcTarget(int, int, int, int, boolean)
+   */
+  public void scale(BufferedImage src, BufferedImage dest, boolean letterbox) {
+    scale(src, dest, calcTarget(src.getWidth(), src.getHeight(), dest.getWidth(), dest.getHeight(), letterbox));
+  }
+
+  /**
+   * Scales the image into the target area of the destination image. The
+   * remainder of the destination gets filled with black.
+   *
+   * @param src		the image to scale
+   * @param dest	the image to scale into
+   * @param target	the area to scale into
+   */
+  public void scale(BufferedImage src, BufferedImage dest, Rectangle target) {
+    WritableRaster			srcRaster;
+    WritableRaster			destRaster;
+    SinglePixelPackedSampleModel	packed;
+    PixelInterleavedSampleModel		interleaved;
+    PixelInterleavedSampleModel		destModel;
+    int[]				srcInts;
+    int[]				shifts;
+    byte[]				srcBytes;
+    int					srcPixel;
+    int[]				srcBands;
+    int					srcOffset;
+    int					srcStride;
+    byte[]				destData;
+    int					destOffset;
+    int					destStride;
+    int					destPixel;
+    int[]				destBands;
+    Contributions			cx;
+    Contributions			cy;
+    int					stripes;
+    int					rows;
+    int					i;
+
+    fillBars(dest, target);
+
+    if (!canScale(src, dest)) {
+      drawImage(src, dest, target);
+      return;
+    }
+
+    srcRaster = src.getRaster();
+    if (srcRaster.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+      packed    = (SinglePixelPackedSampleModel) srcRaster.getSampleModel();
+      srcInts   = ((DataBufferInt) srcRaster.getDataBuffer()).getData();
+      srcStride = packed.getScanlineStride();
+      srcOffset = srcRaster.getDataBuffer().getOffset()
+	+ packed.getOffset(-srcRaster.getSampleModelTranslateX(), -srcRaster.getSampleModelTranslateY());
+      shifts    = new int[3];
+      for (i = 0; i < shifts.length; i++)
+	shifts[i] = ImageConverter.getShift(packed.getBitMasks()[i]);
+      srcBytes  = null;
+      srcPixel  = 0;
+      srcBands  = null;
+    }
+    else {
+      interleaved = (PixelInterleavedSampleModel) srcRaster.getSampleModel();
+      srcInts     = null;
+      shifts      = null;
+      srcBytes    = ((DataBufferByte) srcRaster.getDataBuffer()).getData();
+      srcStride   = interleaved.getScanlineStride();
+      srcPixel    = interleaved.getPixelStride();
+      srcOffset   = srcRaster.getDataBuffer().getOffset()
+	- srcRaster.getSampleModelTranslateY() * srcStride
+	- srcRaster.getSampleModelTranslateX() * srcPixel;
+      srcBands    = interleaved.getBandOffsets();
+    }
+
+    destRaster = dest.getRaster();
+    destModel  = (PixelInterleavedSampleModel) destRaster.getSampleModel();
+    destData   = ((DataBufferByte) destRaster.getDataBuffer()).getData();
+    destStride = destModel.getScanlineStride();
+    destPixel  = destModel.getPixelStride();
+    destOffset = destRaster.getDataBuffer().getOffset()
+      - destRaster.getSampleModelTranslateY() * destStride
+      - destRaster.getSampleModelTranslateX() * destPixel
+      + target.y * destStride + target.x * destPixel;
+    destBands  = destModel.getBandOffsets();
+
+    if ((m_ContributionsX == null) || (m_ContributionsX.source != src.getWidth()) || (m_ContributionsX.dest != target.width))
+      m_ContributionsX = new Contributions(src.getWidth(), target.width);
+    if ((m_ContributionsY == null) || (m_ContributionsY.source != src.getHeight()) || (m_ContributionsY.dest != target.height))
+      m_ContributionsY = new Contributions(src.getHeight(), target.height);
+    cx = m_ContributionsX;
+    cy = m_ContributionsY;
+
+    stripes = Math.max(1, Math.min(m_NumStripes, target.height / MIN_ROWS_PER_STRIPE));
+    if ((long) src.getWidth() * src.getHeight() < m_ParallelThreshold)
+      stripes = 1;
+    if (m_Sums.length < stripes)
+      m_Sums = Arrays.copyOf(m_Sums, stripes);
+    for (i = 0; i < stripes; i++) {
+      if ((m_Sums[i] == null) || (m_Sums[i].length < target.width * 3))
+	m_Sums[i] = new int[target.width * 3];
+    }
+
+    if (stripes == 1) {
+      scaleRows(
+	srcInts, shifts, srcBytes, srcPixel, srcBands, srcOffset, srcStride,
+	destData, destOffset, destStride, destPixel, destBands,
+	cx, cy, m_Sums[0], 0, target.height);
+    }
+    else {
+      rows = (target.height + stripes - 1) / stripes;
+      IntStream.range(0, stripes).parallel().forEach((int stripe) ->
+	scaleRows(
+	  srcInts, shifts, srcBytes, srcPixel, srcBands, srcOffset, srcStride,
+	  destData, destOffset, destStride, destPixel, destBands,
+	  cx, cy, m_Sums[stripe], stripe * rows, Math.min(target.height, (stripe + 1) * rows)));
+    }
+  }
+
+  /**
+   * Computes the area average of a pixel of the scaled image using
+   * floating point arithmetic, as reference.
+   *
+   * @param src		the source image
+   * @param target	the area of the scaled image
+   * @param x		the x of the scaled pixel (relative to the area)
+   * @param y		the y of the scaled pixel (relative to the area)
+   * @return		the RGB value
+   */
+  protected static int referencePixel(BufferedImage src, Rectangle target, int x, int y) {
+    double	scaleX;
+    double	scaleY;
+    double	left;
+    double	right;
+    double	top;
+    double	bottom;
+    double	weight;
+    double[]	sum;
+    int		sx;
+    int		sy;
+    int		rgb;
+
+    scaleX = (double) src.getWidth() / target.width;
+    scaleY = (double) src.getHeight() / target.height;
+    left   = x * scaleX;
+    right  = (x + 1) * scaleX;
+    top    = y * scaleY;
+    bottom = (y + 1) * scaleY;
+    sum    = new double[3];
+    for (sy = (int) Math.floor(top); sy < Math.min(src.getHeight(), Math.ceil(bottom)); sy++) {
+      for (sx = (int) Math.floor(left); sx < Math.min(src.getWidth(), Math.ceil(right)); sx++) {
+	weight = (Math.min(right, sx + 1) - Math.max(left, sx)) * (Math.min(bottom, sy + 1) - Math.max(top, sy)) / (scaleX * scaleY);
+	rgb    = src.getRGB(sx, sy);
+	sum[0] += ((rgb >> 16) & 0xFF) * weight;
+	sum[1] += ((rgb >> 8) & 0xFF) * weight;
+	sum[2] += (rgb & 0xFF) * weight;
+      }
+    }
+
+    return ((int) Math.round(sum[0]) << 16) | ((int) Math.round(sum[1]) << 8) | (int) Math.round(sum[2]);
+  }
+
+  /**
+   * Just for testing. Compares the scaled images with a floating point
+   * area average (allowing a difference of 1 per channel for rounding)
+   * and outputs the timings, single-threaded and in parallel.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) throws Exception {
+    ImageScaler		scaler;
+    Random		rnd;
+    BufferedImage	src;
+    BufferedImage	dest;
+    Rectangle		target;
+    int[][]		sizes;
+    int[]		types;
+    long		start;
+    long		java2d;
+    long		direct;
+    int			x;
+    int			y;
+    int			i;
+    int			diff;
+    int			expected;
+    int			actual;
+
+    scaler = new ImageScaler();
+    scaler.setParallelThreshold(0);
+    rnd    = new Random(1);
+    // source width/height, destination width/height
+    sizes  = new int[][]{
+      {7, 5, 3, 2}, {5, 3, 7, 5}, {641, 479, 320, 240}, {1282, 962, 641, 481},
+      {1920, 1080, 1280, 720}, {2560, 1440, 1920, 1080}, {3840, 2160, 1920, 1080}, {3840, 2160, 1280, 720},
+      {2560, 1600, 1920, 1080}, {1920, 1200, 1280, 720}};
+    types  = new int[]{BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR};
+
+    for (int stripes: new int[]{1, Math.max(2, Runtime.getRuntime().availableProcessors())}) {
+      scaler.setNumStripes(stripes);
+      for (int type: types) {
+	for (int[] size: sizes) {
+	  src = new BufferedImage(size[0] + 3, size[1] + 2, type);
+	  for (y = 0; y < src.getHeight(); y++) {
+	    for (x = 0; x < src.getWidth(); x++)
+	      src.setRGB(x, y, rnd.nextInt());
+	  }
+	  // sub-image exercises offsets/strides
+	  src    = src.getSubimage(2, 1, size[0], size[1]);
+	  dest   = new BufferedImage(size[2], size[3], BufferedImage.TYPE_3BYTE_BGR);
+	  target = calcTarget(size[0], size[1], size[2], size[3], true);
+
+	  start = System.nanoTime();
+	  for (i = 0; i < 10; i++)
+	    drawImage(src, dest, target);
+	  java2d = System.nanoTime() - start;
+
+	  start = System.nanoTime();
+	  for (i = 0; i < 10; i++)
+	    scaler.scale(src, dest, true);
+	  direct = System.nanoTime() - start;
+
+	  diff = 0;
+	  for (y = 0; y < dest.getHeight(); y++) {
+	    for (x = 0; x < dest.getWidth(); x++) {
+	      actual = dest.getRGB(x, y) & 0xFFFFFF;
+	      if (target.contains(x, y))
+		expected = referencePixel(src, target, x - target.x, y - target.y);
+	      else
+		expected = 0;
+	      if ((Math.abs(((expected >> 16) & 0xFF) - ((actual >> 16) & 0xFF)) > 1)
+		|| (Math.abs(((expected >> 8) & 0xFF) - ((actual >> 8) & 0xFF)) > 1)
+		|| (Math.abs((expected & 0xFF) - (actual & 0xFF)) > 1))
+		diff++;
+	    }
+	  }
+
+	  System.out.println(
+	    "stripes=" + stripes + ", type=" + type
+	      + ", size=" + size[0] + "x" + size[1] + " -> " + size[2] + "x" + size[3]
+	      + ", target=" + target.x + "," + target.y + " " + target.width + "x" + target.height
+	      + ", differences=" + diff
+	      + ", java2d(bilinear)=" + (java2d / 10 / 1000) + "us"
+	      + ", direct=" + (direct / 10 / 1000) + "us");
+	  if (diff > 0)
+	    System.exit(1);
+	}
+      }
+    }
+  }
+}
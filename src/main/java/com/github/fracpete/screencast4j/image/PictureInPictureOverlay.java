@@ -0,0 +1,304 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PictureInPictureOverlay.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.image;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Blends a (webcam) image into frames, as picture-in-picture. Whenever a
+ * new source image is available, it gets scaled once to the size of the
+ * overlay via {@link #update(BufferedImage)}, using lookup tables that
+ * only get recomputed if the size of the source changes. The scaled
+ * pixels are then blended directly into the raster of interleaved byte
+ * frames (eg TYPE_3BYTE_BGR) with every {@link #draw(BufferedImage, int, int)},
+ * without any allocations. Other frame types are drawn via Java2D.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class PictureInPictureOverlay {
+
+  /** the width of the overlay. */
+  protected int m_Width;
+
+  /** the height of the overlay. */
+  protected int m_Height;
+
+  /** the opacity (0-255). */
+  protected int m_Alpha;
+
+  /** the scaled image. */
+  protected BufferedImage m_Image;
+
+  /** the BGR pixels of the scaled image. */
+  protected byte[] m_Pixels;
+
+  /** whether the overlay contains an image. */
+  protected boolean m_HasImage;
+
+  /** the width of the source the lookup tables were computed for. */
+  protected int m_SourceWidth;
+
+  /** the height of the source the lookup tables were computed for. */
+  protected int m_SourceHeight;
+
+  /** the source column for each column of the overlay. */
+  protected int[] m_SourceX;
+
+  /** the source row for each row of the overlay. */
+  protected int[] m_SourceY;
+
+  /** the buffer for a row of ARGB pixels of sources that aren't byte interleaved. */
+  protected int[] m_Row;
+
+  /**
+   * Initializes the overlay.
+   *
+   * @param width	the width of the overlay
+   * @param height	the height of the overlay
+   * @param opacity	the opacity (0-1)
+   */
+  public PictureInPictureOverlay(int width, int height, double opacity) {
+    m_Width    = width;
+    m_Height   = height;
+    m_Alpha    = (int) Math.round(Math.max(0.0, Math.min(1.0, opacity)) * 255);
+    m_Image    = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+    m_Pixels   = ((DataBufferByte) m_Image.getRaster().getDataBuffer()).getData();
+    m_HasImage = false;
+    m_SourceX  = new int[width];
+    m_SourceY  = new int[height];
+  }
+
+  /**
+   * Returns the width of the overlay.
+   *
+   * @return		the width
+   */
+  public int getWidth() {
+    return m_Width;
+  }
+
+  /**
+   * Returns the height of the overlay.
+   *
+   * @return		the height
+   */
+  public int getHeight() {
+    return m_Height;
+  }
+
+  /**
+   * Returns whether the overlay contains an image yet.
+   *
+   * @return		true if image available
+   */
+  public boolean hasImage() {
+    return m_HasImage;
+  }
+
+  /**
+   * Computes the lookup tables for the size of the source, sampling the
+   * center of the area that each overlay pixel covers.
+   *
+   * @param width	the width of the source
+   * @param height	the height of the source
+   */
+  protected void computeTables(int width, int height) {
+    int		i;
+
+    for (i = 0; i < m_Width; i++)
+      m_SourceX[i] = (int) Math.min(width - 1, ((2L * i + 1) * width) / (2L * m_Width));
+    for (i = 0; i < m_Height; i++)
+      m_SourceY[i] = (int) Math.min(height - 1, ((2L * i + 1) * height) / (2L * m_Height));
+    m_SourceWidth  = width;
+    m_SourceHeight = height;
+    m_Row          = null;
+  }
+
+  /**
+   * Scales the source image into the overlay.
+   *
+   * @param source	the new source image
+   */
+  public void update(BufferedImage source) {
+    WritableRaster		raster;
+    PixelInterleavedSampleModel	model;
+    byte[]			data;
+    int				red;
+    int				green;
+    int				blue;
+    int				offset;
+    int				stride;
+    int				pixel;
+    int				row;
+    int				s;
+    int				d;
+    int				x;
+    int				y;
+    int				rgb;
+
+    if ((source.getWidth() != m_SourceWidth) || (source.getHeight() != m_SourceHeight))
+      computeTables(source.getWidth(), source.getHeight());
+
+    raster = source.getRaster();
+    d      = 0;
+    if ((raster.getSampleModel() instanceof PixelInterleavedSampleModel)
+      && (raster.getDataBuffer() instanceof DataBufferByte)
+      && (raster.getNumBands() == 3)) {
+      model  = (PixelInterleavedSampleModel) raster.getSampleModel();
+      data   = ((DataBufferByte) raster.getDataBuffer()).getData();
+      red    = model.getOffset(0, 0, 0);
+      green  = model.getOffset(0, 0, 1);
+      blue   = model.getOffset(0, 0, 2);
+      stride = model.getScanlineStride();
+      pixel  = model.getPixelStride();
+      offset = raster.getDataBuffer().getOffset()
+	- raster.getSampleModelTranslateY() * stride
+	- raster.getSampleModelTranslateX() * pixel;
+      for (y = 0; y < m_Height; y++) {
+	row = offset + m_SourceY[y] * stride;
+	for (x = 0; x < m_Width; x++) {
+	  s             = row + m_SourceX[x] * pixel;
+	  m_Pixels[d++] = data[s + blue];
+	  m_Pixels[d++] = data[s + green];
+	  m_Pixels[d++] = data[s + red];
+	}
+      }
+    }
+    else {
+      if (m_Row == null)
+	m_Row = new int[m_SourceWidth];
+      for (y = 0; y < m_Height; y++) {
+	source.getRGB(0, m_SourceY[y], m_SourceWidth, 1, m_Row, 0, m_SourceWidth);
+	for (x = 0; x < m_Width; x++) {
+	  rgb           = m_Row[m_SourceX[x]];
+	  m_Pixels[d++] = (byte) rgb;
+	  m_Pixels[d++] = (byte) (rgb >> 8);
+	  m_Pixels[d++] = (byte) (rgb >> 16);
+	}
+      }
+    }
+
+    m_HasImage = true;
+  }
+
+  /**
+   * Blends a color component with the existing one.
+   *
+   * @param src		the source component (0-255)
+   * @param dest	the destination component (0-255)
+   * @param alpha	the source alpha (0-255)
+   * @return		the blended component
+   */
+  protected static int blend(int src, int dest, int alpha) {
+    return (src * alpha + dest * (255 - alpha) + 127) / 255;
+  }
+
+  /**
+   * Draws the overlay on the frame. Does nothing if no image available yet.
+   *
+   * @param frame	the frame to draw on
+   * @param x		the x position of the overlay in the frame
+   * @param y		the y position of the overlay in the frame
+   */
+  public void draw(BufferedImage frame, int x, int y) {
+    WritableRaster		raster;
+    PixelInterleavedSampleModel	model;
+    Graphics2D			g;
+    byte[]			data;
+    int				red;
+    int				green;
+    int				blue;
+    int				offset;
+    int				stride;
+    int				pixel;
+    int				fromX;
+    int				toX;
+    int				fromY;
+    int				toY;
+    int				cx;
+    int				cy;
+    int				d;
+    int				s;
+
+    // nothing to draw or outside frame?
+    if (!m_HasImage || (m_Alpha == 0))
+      return;
+    if ((x >= frame.getWidth()) || (y >= frame.getHeight()) || (x + m_Width <= 0) || (y + m_Height <= 0))
+      return;
+
+    raster = frame.getRaster();
+    if (!(raster.getSampleModel() instanceof PixelInterleavedSampleModel)
+      || !(raster.getDataBuffer() instanceof DataBufferByte)
+      || (raster.getNumBands() != 3)) {
+      g = frame.createGraphics();
+      if (m_Alpha < 255)
+	g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, m_Alpha / 255.0f));
+      g.drawImage(m_Image, x, y, null);
+      g.dispose();
+      return;
+    }
+
+    model  = (PixelInterleavedSampleModel) raster.getSampleModel();
+    data   = ((DataBufferByte) raster.getDataBuffer()).getData();
+    red    = model.getOffset(0, 0, 0);
+    green  = model.getOffset(0, 0, 1);
+    blue   = model.getOffset(0, 0, 2);
+    stride = model.getScanlineStride();
+    pixel  = model.getPixelStride();
+    offset = raster.getDataBuffer().getOffset()
+      - raster.getSampleModelTranslateY() * stride
+      - raster.getSampleModelTranslateX() * pixel;
+
+    // clip
+    fromX = Math.max(0, -x);
+    fromY = Math.max(0, -y);
+    toX   = Math.min(m_Width, frame.getWidth() - x);
+    toY   = Math.min(m_Height, frame.getHeight() - y);
+
+    for (cy = fromY; cy < toY; cy++) {
+      d = offset + (y + cy) * stride + (x + fromX) * pixel;
+      s = (cy * m_Width + fromX) * 3;
+      if ((m_Alpha == 255) && (pixel == 3) && (blue == 0) && (green == 1) && (red == 2)) {
+	// same layout as the overlay
+	System.arraycopy(m_Pixels, s, data, d, (toX - fromX) * 3);
+      }
+      else if (m_Alpha == 255) {
+	for (cx = fromX; cx < toX; cx++, d += pixel, s += 3) {
+	  data[d + red]   = m_Pixels[s + 2];
+	  data[d + green] = m_Pixels[s + 1];
+	  data[d + blue]  = m_Pixels[s];
+	}
+      }
+      else {
+	for (cx = fromX; cx < toX; cx++, d += pixel, s += 3) {
+	  data[d + red]   = (byte) blend(m_Pixels[s + 2] & 0xFF, data[d + red] & 0xFF, m_Alpha);
+	  data[d + green] = (byte) blend(m_Pixels[s + 1] & 0xFF, data[d + green] & 0xFF, m_Alpha);
+	  data[d + blue]  = (byte) blend(m_Pixels[s] & 0xFF, data[d + blue] & 0xFF, m_Alpha);
+	}
+      }
+    }
+  }
+}
@@ -31,16 +31,16 @@ public abstract class AbstractRecorder
   implements Recorder {
 
   /** the state. */
-  protected RecorderState m_State;
+  protected volatile RecorderState m_State;
 
-  /** the start time (msec). */
-  protected long m_StartTime;
+  /** the clock to use for timestamps. */
+  protected RecorderClock m_Clock;
 
-  /** the start of pause (msec). */
-  protected long m_StartPause;
+  /** whether the recorder starts/pauses/resumes the clock itself. */
+  protected boolean m_OwnsClock;
 
-  /** the cumulative time the recorder was paused (msec). */
-  protected long m_CumulativePause;
+  /** the time the recording started relative to the clock (nsec). */
+  protected volatile long m_StartOffset;
 
   /**
    * Initializes the recorder.
@@ -54,15 +54,16 @@ public abstract class AbstractRecorder
    * Initializes members.
    */
   protected void initialize() {
+    m_Clock     = new RecorderClock();
+    m_OwnsClock = true;
   }
 
   /**
    * Resets the recorder's state (but not parameters).
    */
   public void reset() {
-    m_State           = RecorderState.NONE;
-    m_StartTime       = 0;
-    m_CumulativePause = 0;
+    m_State       = RecorderState.NONE;
+    m_StartOffset = 0;
   }
 
   /**
@@ -93,6 +94,40 @@ public abstract class AbstractRecorder
     return result;
   }
 
+  /**
+   * Sets the clock to use for the timestamps. The clock is expected to be
+   * started, paused and resumed by whoever supplied it.
+   *
+   * @param value	the clock
+   */
+  public void setClock(RecorderClock value) {
+    if (m_State == RecorderState.NONE) {
+      m_Clock     = value;
+      m_OwnsClock = false;
+    }
+    else {
+      printError("Cannot set clock once recording has commenced!");
+    }
+  }
+
+  /**
+   * Returns the clock used for the timestamps.
+   *
+   * @return		the clock
+   */
+  public RecorderClock getClock() {
+    return m_Clock;
+  }
+
+  /**
+   * Returns the time the recording started, relative to the clock.
+   *
+   * @return		the offset (nsec)
+   */
+  public long getStartOffset() {
+    return m_StartOffset;
+  }
+
   /**
    * Performs a check of the setup.
    *
@@ -117,10 +152,11 @@ public abstract class AbstractRecorder
   public String start() {
     if (m_State == RecorderState.NONE) {
       try {
+	if (m_OwnsClock)
+	  m_Clock.start();
+	m_StartOffset = m_Clock.getElapsedNanos();
 	doStart();
-	m_State           = RecorderState.RECORDING;
-	m_StartTime       = System.currentTimeMillis();
-	m_CumulativePause = 0;
+	m_State = RecorderState.RECORDING;
 	return null;
       }
       catch (Exception e) {
@@ -141,6 +177,26 @@ public abstract class AbstractRecorder
     return (m_State == RecorderState.RECORDING);
   }
 
+  /**
+   * Returns the time elapsed since the start of the recording, excluding
+   * the time the clock was paused.
+   *
+   * @return		the elapsed time (nsec)
+   */
+  protected long getElapsedNanos() {
+    return m_Clock.getElapsedNanos() - m_StartOffset;
+  }
+
+  /**
+   * Returns the time elapsed since the start of the recording, excluding
+   * the time the clock was paused.
+   *
+   * @return		the elapsed time (msec)
+   */
+  protected long getElapsedTime() {
+    return getElapsedNanos() / 1000000L;
+  }
+
   /**
    * Stops the recording process.
    *
@@ -203,8 +259,9 @@ public abstract class AbstractRecorder
     if (m_State == RecorderState.RECORDING) {
       try {
 	doPause();
-	m_State      = RecorderState.PAUSED;
-	m_StartPause = System.currentTimeMillis();
+	m_State = RecorderState.PAUSED;
+	if (m_OwnsClock)
+	  m_Clock.pause();
 	return null;
       }
       catch (Exception e) {
@@ -243,9 +300,10 @@ public abstract class AbstractRecorder
   public synchronized String resume() {
     if (m_State == RecorderState.PAUSED) {
       try {
+	if (m_OwnsClock)
+	  m_Clock.resume();
 	doResume();
-	m_State            = RecorderState.RECORDING;
-	m_CumulativePause += System.currentTimeMillis() - m_StartPause;
+	m_State = RecorderState.RECORDING;
 	return null;
       }
       catch (Exception e) {
@@ -20,9 +20,21 @@
 
 package com.github.fracpete.screencast4j.record;
 
+import com.github.fracpete.screencast4j.image.ChangeDetector;
+import com.github.fracpete.screencast4j.image.ImageConverter;
+import com.github.fracpete.screencast4j.image.ImagePool;
+import com.github.fracpete.screencast4j.record.spool.SpoolReader;
+import com.github.fracpete.screencast4j.record.spool.SpoolWriter;
 import com.googlecode.jfilechooserbookmarks.core.Utils;
+import com.xuggle.mediatool.IMediaWriter;
+import com.xuggle.xuggler.IVideoPicture;
+import com.xuggle.xuggler.video.ConverterFactory;
 
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Ancestor for video recorders.
@@ -36,9 +48,84 @@ public abstract class AbstractVideoRecorder
   /** the frames per second to use. */
   protected double m_FramesPerSecond;
 
+  /** the maximum number of frames to queue for the encoder. */
+  protected int m_QueueCapacity;
+
+  /** what to do when the queue is full. */
+  protected OverflowPolicy m_OverflowPolicy;
+
+  /** what to do with frames whose deadline was missed. */
+  protected MissedFramePolicy m_MissedFramePolicy;
+
+  /** whether to only encode frames that differ from the previous one. */
+  protected boolean m_EncodeOnlyOnChange;
+
+  /** the maximum time between encoded frames when only encoding changes (msec). */
+  protected int m_KeyFrameInterval;
+
+  /** the encoder settings. */
+  protected EncoderSettings m_EncoderSettings;
+
+  /** whether to spool the frames to disk and encode them after recording. */
+  protected boolean m_SpoolFrames;
+
+  /** whether to only spool the tiles of a frame that changed. */
+  protected boolean m_SpoolCompression;
+
+  /** the spool writer in use. */
+  protected SpoolWriter m_SpoolWriter;
+
+  /** the thread transcoding the spool file. */
+  protected Thread m_TranscodeThread;
+
+  /** the progress of transcoding the spool file (0-1). */
+  protected volatile double m_TranscodeProgress;
+
   /** the runnable. */
   protected FrameGrabber m_Grabber;
 
+  /** the thread the grabber runs in. */
+  protected Thread m_GrabberThread;
+
+  /** the queue between grabber and encoder. */
+  protected FrameQueue m_Queue;
+
+  /** the encoder. */
+  protected FrameEncoder m_Encoder;
+
+  /** the thread the encoder runs in. */
+  protected Thread m_EncoderThread;
+
+  /** the pool for the converted images. */
+  protected ImagePool m_ImagePool;
+
+  /** for converting the images into the required type. */
+  protected ImageConverter m_ImageConverter;
+
+  /** for detecting unchanged frames. */
+  protected ChangeDetector m_ChangeDetector;
+
+  /** the timestamp of the last forced key frame (msec). */
+  protected long m_LastKeyFrameTimestamp;
+
+  /** the number of frames that were skipped as they didn't change. */
+  protected volatile long m_NumUnchangedFrames;
+
+  /** the last image that got encoded (used for repeating frames). */
+  protected BufferedImage m_LastImage;
+
+  /** the number of captured frames. */
+  protected volatile long m_NumCapturedFrames;
+
+  /** the total time spent on capturing (nsec). */
+  protected volatile long m_CaptureTime;
+
+  /** the number of encoded frames. */
+  protected volatile long m_NumEncodedFrames;
+
+  /** the total time spent on encoding (nsec). */
+  protected volatile long m_EncodeTime;
+
   /**
    * Initializes the members.
    */
@@ -46,8 +133,37 @@ public abstract class AbstractVideoRecorder
   protected void initialize() {
     super.initialize();
 
-    m_FramesPerSecond = 25;
-    m_Grabber         = null;
+    m_FramesPerSecond    = 25;
+    m_QueueCapacity      = 10;
+    m_OverflowPolicy     = OverflowPolicy.BLOCK;
+    m_MissedFramePolicy  = MissedFramePolicy.DUPLICATE;
+    m_EncodeOnlyOnChange = false;
+    m_KeyFrameInterval   = 2000;
+    m_EncoderSettings    = new EncoderSettings();
+    m_SpoolFrames        = false;
+    m_SpoolCompression   = true;
+    m_Grabber            = null;
+    m_Queue              = null;
+    m_Encoder            = null;
+    m_ImagePool          = new ImagePool(m_QueueCapacity + 2);
+    m_ImageConverter     = new ImageConverter();
+    m_ChangeDetector     = new ChangeDetector(32);
+  }
+
+  /**
+   * Resets the recorder's state (but not parameters).
+   */
+  @Override
+  public void reset() {
+    super.reset();
+
+    m_NumCapturedFrames     = 0;
+    m_CaptureTime           = 0;
+    m_NumEncodedFrames      = 0;
+    m_EncodeTime            = 0;
+    m_LastImage             = null;
+    m_NumUnchangedFrames    = 0;
+    m_LastKeyFrameTimestamp = 0;
   }
 
   /**
@@ -68,6 +184,221 @@ public abstract class AbstractVideoRecorder
     return m_FramesPerSecond;
   }
 
+  /**
+   * Sets the maximum number of frames to queue between capture and encoder.
+   *
+   * @param value	the capacity
+   */
+  public void setQueueCapacity(int value) {
+    if (value > 0)
+      m_QueueCapacity = value;
+    else
+      printError("Queue capacity must be > 0, provided: " + value);
+  }
+
+  /**
+   * Returns the maximum number of frames to queue between capture and encoder.
+   *
+   * @return		the capacity
+   */
+  public int getQueueCapacity() {
+    return m_QueueCapacity;
+  }
+
+  /**
+   * Sets what to do when the frame queue is full.
+   *
+   * @param value	the policy
+   */
+  public void setOverflowPolicy(OverflowPolicy value) {
+    m_OverflowPolicy = value;
+  }
+
+  /**
+   * Returns what to do when the frame queue is full.
+   *
+   * @return		the policy
+   */
+  public OverflowPolicy getOverflowPolicy() {
+    return m_OverflowPolicy;
+  }
+
+  /**
+   * Sets what to do with frames whose deadline was missed.
+   *
+   * @param value	the policy
+   */
+  public void setMissedFramePolicy(MissedFramePolicy value) {
+    m_MissedFramePolicy = value;
+  }
+
+  /**
+   * Returns what to do with frames whose deadline was missed.
+   *
+   * @return		the policy
+   */
+  public MissedFramePolicy getMissedFramePolicy() {
+    return m_MissedFramePolicy;
+  }
+
+  /**
+   * Sets whether to only encode frames that differ from the previous one,
+   * resulting in a variable frame rate.
+   *
+   * @param value	true if to encode only changes
+   */
+  public void setEncodeOnlyOnChange(boolean value) {
+    m_EncodeOnlyOnChange = value;
+  }
+
+  /**
+   * Returns whether to only encode frames that differ from the previous one,
+   * resulting in a variable frame rate.
+   *
+   * @return		true if to encode only changes
+   */
+  public boolean getEncodeOnlyOnChange() {
+    return m_EncodeOnlyOnChange;
+  }
+
+  /**
+   * Sets the maximum time between key frames when only encoding changes.
+   * Unchanged frames get encoded as forced key frames at this interval, so
+   * that static content can still be seeked in.
+   *
+   * @param value	the interval (msec)
+   */
+  public void setKeyFrameInterval(int value) {
+    if (value > 0)
+      m_KeyFrameInterval = value;
+    else
+      printError("Key frame interval must be > 0, provided: " + value);
+  }
+
+  /**
+   * Returns the maximum time between key frames when only encoding changes.
+   *
+   * @return		the interval (msec)
+   */
+  public int getKeyFrameInterval() {
+    return m_KeyFrameInterval;
+  }
+
+  /**
+   * Sets the settings for the video encoder.
+   *
+   * @param value	the settings
+   */
+  public void setEncoderSettings(EncoderSettings value) {
+    m_EncoderSettings = value;
+  }
+
+  /**
+   * Returns the settings for the video encoder.
+   *
+   * @return		the settings
+   */
+  public EncoderSettings getEncoderSettings() {
+    return m_EncoderSettings;
+  }
+
+  /**
+   * Applies the encoder settings to the coder of the specified stream of
+   * the writer. When spooling, the encoder uses all available cores unless
+   * the number of threads was set explicitly.
+   *
+   * @param writer	the writer to configure
+   * @param streamIndex	the index of the video stream
+   * @return		null if OK, otherwise error message
+   * @see		EncoderSettings#apply(IMediaWriter, int)
+   */
+  protected String applyEncoderSettings(IMediaWriter writer, int streamIndex) {
+    String	result;
+
+    result = m_EncoderSettings.apply(writer, streamIndex);
+    if (m_SpoolFrames && (m_EncoderSettings.getNumThreads() == -1)) {
+      if (writer.getContainer().getStream(streamIndex).getStreamCoder().setProperty("threads", 0) < 0)
+	result = (result == null ? "" : result + "\n") + "Failed to enable automatic number of encoder threads";
+    }
+
+    return result;
+  }
+
+  /**
+   * Sets whether to spool the frames to disk during recording and only
+   * encode them after the recording was stopped.
+   *
+   * @param value	true if to spool
+   */
+  public void setSpoolFrames(boolean value) {
+    m_SpoolFrames = value;
+  }
+
+  /**
+   * Returns whether to spool the frames to disk during recording and only
+   * encode them after the recording was stopped.
+   *
+   * @return		true if to spool
+   */
+  public boolean getSpoolFrames() {
+    return m_SpoolFrames;
+  }
+
+  /**
+   * Sets whether to only spool the tiles of a frame that changed.
+   *
+   * @param value	true if to compress
+   */
+  public void setSpoolCompression(boolean value) {
+    m_SpoolCompression = value;
+  }
+
+  /**
+   * Returns whether to only spool the tiles of a frame that changed.
+   *
+   * @return		true if to compress
+   */
+  public boolean getSpoolCompression() {
+    return m_SpoolCompression;
+  }
+
+  /**
+   * Returns the file to spool the frames to.
+   *
+   * @return		the spool file, alongside the output file
+   */
+  public File getSpoolFile() {
+    return new File(m_Output.getAbsolutePath() + ".spool");
+  }
+
+  /**
+   * Returns whether the spooled frames are currently being encoded.
+   *
+   * @return		true if transcoding
+   */
+  public boolean isTranscoding() {
+    return (m_TranscodeThread != null) && m_TranscodeThread.isAlive();
+  }
+
+  /**
+   * Returns the progress of encoding the spooled frames.
+   *
+   * @return		the progress (0-1)
+   */
+  public double getTranscodeProgress() {
+    return m_TranscodeProgress;
+  }
+
+  /**
+   * Waits for the encoding of the spooled frames to finish.
+   *
+   * @throws InterruptedException	if interrupted while waiting
+   */
+  public void waitForTranscoding() throws InterruptedException {
+    if (m_TranscodeThread != null)
+      m_TranscodeThread.join();
+  }
+
   /**
    * Starts the actual recording process.
    *
@@ -75,21 +406,153 @@ public abstract class AbstractVideoRecorder
    */
   @Override
   protected void doStart() throws Exception {
-    m_Grabber = new FrameGrabber(this);
-    new Thread(m_Grabber).start();
+    // queued frames + frame being captured + last encoded frame
+    m_ImagePool.setMaxPerKey(m_QueueCapacity + 2);
+    m_ChangeDetector.reset();
+    if (m_SpoolFrames) {
+      m_SpoolWriter = new SpoolWriter(getSpoolFile(), m_SpoolCompression);
+      m_SpoolWriter.open();
+    }
+    m_Queue         = new FrameQueue(m_QueueCapacity, getQueueOverflowPolicy());
+    m_Encoder       = new FrameEncoder(this, m_Queue);
+    m_EncoderThread = new Thread(m_Encoder, getClass().getSimpleName() + "-encoder");
+    m_EncoderThread.start();
+    if (!isEventDriven()) {
+      m_Grabber       = new FrameGrabber(this);
+      m_GrabberThread = new Thread(m_Grabber, getClass().getSimpleName() + "-grabber");
+      m_GrabberThread.start();
+    }
   }
 
   /**
-   * Stops the recording process.
+   * Returns the overflow policy for the frame queue. Event-driven
+   * recorders queue the frames on the thread that delivers them, which
+   * must not wait for the encoder, ie BLOCK gets replaced by DROP_OLDEST
+   * (see {@link #getNumDroppedFrames()}).
+   *
+   * @return		the policy
+   */
+  protected OverflowPolicy getQueueOverflowPolicy() {
+    if (isEventDriven() && (m_OverflowPolicy == OverflowPolicy.BLOCK))
+      return OverflowPolicy.DROP_OLDEST;
+    return m_OverflowPolicy;
+  }
+
+  /**
+   * Returns whether the frames get queued by the recorder itself via
+   * {@link #queueFrame(BufferedImage, long)} whenever the device delivers
+   * a new one, rather than grabbed by a {@link FrameGrabber} at the
+   * configured frame rate.
+   *
+   * @return		true if event-driven
+   */
+  protected boolean isEventDriven() {
+    return false;
+  }
+
+  /**
+   * Stops the recording process. Waits for the encoder to finish the
+   * frames that are still queued. When spooling, the spooled frames get
+   * encoded in a background thread, otherwise the writer gets closed.
    *
    * @throws Exception	if stopping fails
    */
   @Override
   protected void doStop() throws Exception {
-    m_Grabber.stop();
-    m_Grabber = null;
+    if (m_GrabberThread != null) {
+      m_Grabber.stop();
+      m_GrabberThread.join();
+      m_GrabberThread = null;
+    }
+    if (m_EncoderThread != null) {
+      m_Encoder.stop();
+      m_EncoderThread.join();
+      m_Encoder       = null;
+      m_EncoderThread = null;
+    }
+    m_LastImage = null;
+    m_ImagePool.clear();
+    if (m_SpoolWriter != null) {
+      m_SpoolWriter.close();
+      startTranscoding(m_SpoolWriter.getFile());
+      m_SpoolWriter = null;
+    }
+    else {
+      closeWriter();
+    }
+  }
+
+  /**
+   * Starts encoding the spooled frames in a background thread.
+   *
+   * @param spool	the spool file to encode
+   */
+  protected void startTranscoding(File spool) {
+    m_TranscodeProgress = 0.0;
+    m_TranscodeThread   = new Thread(() -> transcode(spool), getClass().getSimpleName() + "-transcoder");
+    m_TranscodeThread.start();
+  }
+
+  /**
+   * Encodes the spooled frames and closes the writer. The spool file gets
+   * removed if successful.
+   *
+   * @param spool	the spool file to encode
+   */
+  protected void transcode(File spool) {
+    SpoolReader		reader;
+    boolean		success;
+    boolean		keyFrame;
+    long		lastKeyFrame;
+    long		start;
+
+    reader       = new SpoolReader(spool);
+    success      = false;
+    lastKeyFrame = 0;
+    try {
+      reader.open();
+      while (reader.next()) {
+	start = System.nanoTime();
+	// the spool file doesn't store the flag, same rule as isKeyFrameDue(long)
+	keyFrame = m_EncodeOnlyOnChange && (reader.getTimestamp() - lastKeyFrame >= m_KeyFrameInterval);
+	if (keyFrame)
+	  lastKeyFrame = reader.getTimestamp();
+	writeFrame(reader.getImage(), reader.getTimestamp(), keyFrame);
+	m_EncodeTime += System.nanoTime() - start;
+	m_TranscodeProgress = reader.getProgress();
+      }
+      success = true;
+    }
+    catch (Exception e) {
+      printError("transcode", "Failed to encode spool file " + spool + "!\n" + Utils.throwableToString(e));
+    }
+    finally {
+      try {
+	reader.close();
+      }
+      catch (Exception e) {
+	// ignored
+      }
+      try {
+	closeWriter();
+      }
+      catch (Exception e) {
+	success = false;
+	printError("transcode", "Failed to close writer!\n" + Utils.throwableToString(e));
+      }
+    }
+    if (success && !spool.delete())
+      printError("transcode", "Failed to remove spool file: " + spool);
+    m_TranscodeProgress = 1.0;
   }
 
+  /**
+   * Closes the writer once all frames have been written.
+   *
+   * @throws Exception	if closing fails
+   */
+  protected abstract void closeWriter() throws Exception;
+
   /**
    * Pauses the recording process.
    *
@@ -117,22 +580,64 @@ public abstract class AbstractVideoRecorder
    */
   protected abstract int getBufferedImageType();
 
+  /**
+   * Creates an image of the type specified by
+   * {@link #getBufferedImageType()}.
+   *
+   * @param width	the width of the image
+   * @param height	the height of the image
+   * @param pooled	whether to obtain the image from the image pool (for
+   *			frames getting encoded) or to allocate it (for
+   *			images handed out, eg previews)
+   * @return		the image
+   * @see		#releaseImage(BufferedImage)
+   */
+  protected BufferedImage newImage(int width, int height, boolean pooled) {
+    if (pooled)
+      return m_ImagePool.acquire(width, height, getBufferedImageType());
+    else
+      return new BufferedImage(width, height, getBufferedImageType());
+  }
+
   /**
    * Converts the BufferedImage if the image type is not the same as the
-   * one specified by {@link #getBufferedImageType()}.
+   * one specified by {@link #getBufferedImageType()}. The converted image
+   * is obtained from the image pool. Uses the {@link ImageConverter} where
+   * possible, otherwise Java2D.
    *
    * @param frame	the frame to (potentially) correct
    * @return 		the corrected image
+   * @see		#releaseImage(BufferedImage)
    */
   protected BufferedImage convertBufferedImage(BufferedImage frame) {
+    return convertBufferedImage(frame, true);
+  }
+
+  /**
+   * Converts the BufferedImage if the image type is not the same as the
+   * one specified by {@link #getBufferedImageType()}. Uses the
+   * {@link ImageConverter} where possible, otherwise Java2D.
+   *
+   * @param frame	the frame to (potentially) correct
+   * @param pooled	whether to obtain the converted image from the image pool
+   * @return 		the corrected image
+   * @see		#newImage(int, int, boolean)
+   */
+  protected BufferedImage convertBufferedImage(BufferedImage frame, boolean pooled) {
     BufferedImage 	newFrame;
+    Graphics2D		g;
 
     if (frame == null)
       return frame;
 
     if (frame.getType() != getBufferedImageType()) {
-      newFrame = new BufferedImage(frame.getWidth(), frame.getHeight(), getBufferedImageType());
-      newFrame.getGraphics().drawImage(frame, 0, 0, null);
+      newFrame = newImage(frame.getWidth(), frame.getHeight(), pooled);
+      if (!m_ImageConverter.convert(frame, newFrame)) {
+	g = newFrame.createGraphics();
+	g.setComposite(AlphaComposite.Src);
+	g.drawImage(frame, 0, 0, null);
+	g.dispose();
+      }
       frame = newFrame;
     }
 
@@ -140,27 +645,297 @@ public abstract class AbstractVideoRecorder
   }
 
   /**
-   * Performs the actual grabbing of the frame.
+   * Hands the image back to the image pool once it is no longer in use.
    *
-   * @throws Exception	if failed to grab frame
+   * @param image	the image to release, ignored if null
    */
-  protected abstract void doGrabFrame() throws Exception;
+  protected void releaseImage(BufferedImage image) {
+    m_ImagePool.release(image);
+  }
 
   /**
-   * Grabs a frame.
+   * Performs the actual capturing of the frame.
    *
+   * @return		the captured frame
+   * @throws Exception	if failed to capture frame
+   */
+  protected abstract BufferedImage doCaptureFrame() throws Exception;
+
+  /**
+   * Writes the frame out to disk.
+   *
+   * @param frame	the frame
+   * @param timestamp	the timestamp of the frame (msec)
+   * @param keyFrame	whether to force a key frame
+   * @throws Exception	if writing fails
+   */
+  protected abstract void writeFrame(BufferedImage frame, long timestamp, boolean keyFrame) throws Exception;
+
+  /**
+   * Encodes the frame as the first video stream of the writer. Key frames
+   * get converted into a picture first, as only pictures can be flagged
+   * as key frame.
+   *
+   * @param writer	the writer to use
+   * @param frame	the frame
+   * @param timestamp	the timestamp of the frame (msec)
+   * @param keyFrame	whether to force a key frame
+   */
+  protected void encodeVideo(IMediaWriter writer, BufferedImage frame, long timestamp, boolean keyFrame) {
+    IVideoPicture	picture;
+
+    if (!keyFrame) {
+      writer.encodeVideo(0, frame, timestamp, TimeUnit.MILLISECONDS);
+      return;
+    }
+
+    picture = ConverterFactory.createConverter(frame, writer.getContainer().getStream(0).getStreamCoder().getPixelType())
+      .toPicture(frame, timestamp * 1000);
+    picture.setKeyFrame(true);
+    writer.encodeVideo(0, picture);
+  }
+
+  /**
+   * Grabs a frame and queues it for encoding.
+   *
+   * @return		null if OK, otherwise error message
+   */
+  public String grabFrame() {
+    return grabFrame(getElapsedTime());
+  }
+
+  /**
+   * Grabs a frame and queues it for encoding.
+   *
+   * @param timestamp	the timestamp to use for the frame (msec)
    * @return		null if OK, otherwise error message
    */
-  public synchronized String grabFrame() {
+  public String grabFrame(long timestamp) {
+    BufferedImage	image;
+    long		start;
+
     if (!isRecording())
       return "Not recording";
     try {
-      doGrabFrame();
-      return null;
+      start = System.nanoTime();
+      image = doCaptureFrame();
+      m_CaptureTime += System.nanoTime() - start;
+      m_NumCapturedFrames++;
+      if (image == null)
+	return printError("grabFrame", "No frame captured!");
     }
     catch (Exception e) {
       return printError("grabFrame", "Failed to grab frame!\n" + Utils.throwableToString(e));
     }
+
+    return queueFrame(image, timestamp);
+  }
+
+  /**
+   * Checks whether a key frame has to be forced when only encoding
+   * changes, ie whether the key frame interval has passed. Updates the
+   * time of the last key frame if so.
+   *
+   * @param timestamp	the timestamp of the frame (msec)
+   * @return		true if to force a key frame
+   */
+  protected boolean isKeyFrameDue(long timestamp) {
+    if (!m_EncodeOnlyOnChange || (timestamp - m_LastKeyFrameTimestamp < m_KeyFrameInterval))
+      return false;
+    m_LastKeyFrameTimestamp = timestamp;
+    return true;
+  }
+
+  /**
+   * Queues a captured frame for encoding, unless it didn't change and
+   * only changes get encoded. Unchanged frames still get encoded as key
+   * frame once the key frame interval has passed.
+   *
+   * @param image	the image, obtained from the image pool
+   * @param timestamp	the timestamp of the frame (msec)
+   * @return		null if OK, otherwise error message
+   */
+  protected String queueFrame(BufferedImage image, long timestamp) {
+    Frame	dropped;
+    boolean	changed;
+    boolean	keyFrame;
+
+    try {
+      changed  = !m_EncodeOnlyOnChange || m_ChangeDetector.hasChanged(image);
+      keyFrame = isKeyFrameDue(timestamp);
+      if (!changed && !keyFrame) {
+	releaseImage(image);
+	m_NumUnchangedFrames++;
+	return null;
+      }
+      dropped = m_Queue.put(new Frame(image, timestamp, keyFrame));
+      if (dropped != null) {
+	releaseImage(dropped.getImage());
+	if (m_EncodeOnlyOnChange) {
+	  // the change detector already compared against the dropped frame,
+	  // ie the next frame has to get encoded, even if identical
+	  m_ChangeDetector.reset();
+	  if (dropped.isKeyFrame())
+	    m_LastKeyFrameTimestamp -= m_KeyFrameInterval;
+	}
+      }
+      return null;
+    }
+    catch (Exception e) {
+      return printError("queueFrame", "Failed to queue frame!\n" + Utils.throwableToString(e));
+    }
+  }
+
+  /**
+   * Queues the last frame once more for encoding. When only encoding
+   * changes, the frame only gets queued (as key frame) once the key frame
+   * interval has passed.
+   *
+   * @param timestamp	the timestamp to use for the frame (msec)
+   * @return		null if OK, otherwise error message
+   */
+  public String repeatFrame(long timestamp) {
+    boolean	keyFrame;
+
+    if (!isRecording())
+      return "Not recording";
+    keyFrame = isKeyFrameDue(timestamp);
+    if (m_EncodeOnlyOnChange && !keyFrame)
+      return null;
+    try {
+      m_Queue.put(new Frame(null, timestamp, keyFrame));
+      return null;
+    }
+    catch (Exception e) {
+      return printError("repeatFrame", "Failed to repeat frame!\n" + Utils.throwableToString(e));
+    }
+  }
+
+  /**
+   * Encodes a previously grabbed frame. A frame without an image repeats
+   * the last encoded image. When spooling, the frame gets appended to the
+   * spool file instead.
+   *
+   * @param frame	the frame to encode
+   * @return		null if OK, otherwise error message
+   */
+  public String encodeFrame(Frame frame) {
+    long	start;
+
+    if (frame.getImage() != null) {
+      if (m_LastImage != frame.getImage())
+	releaseImage(m_LastImage);
+      m_LastImage = frame.getImage();
+    }
+    if (m_LastImage == null)
+      return null;
+
+    try {
+      start = System.nanoTime();
+      if (m_SpoolWriter != null) {
+	m_SpoolWriter.write(frame.getImage(), frame.getTimestamp());
+      }
+      else {
+	writeFrame(m_LastImage, frame.getTimestamp(), frame.isKeyFrame());
+	m_EncodeTime += System.nanoTime() - start;
+      }
+      m_NumEncodedFrames++;
+      return null;
+    }
+    catch (Exception e) {
+      return printError("encodeFrame", "Failed to encode frame!\n" + Utils.throwableToString(e));
+    }
+  }
+
+  /**
+   * Returns the number of frames currently waiting to be encoded.
+   *
+   * @return		the number of frames
+   */
+  public int getQueueSize() {
+    if (m_Queue == null)
+      return 0;
+    return m_Queue.size();
+  }
+
+  /**
+   * Returns the number of frames that got dropped due to a full queue.
+   *
+   * @return		the number of frames
+   */
+  public long getNumDroppedFrames() {
+    if (m_Queue == null)
+      return 0;
+    return m_Queue.getNumDropped();
+  }
+
+  /**
+   * Returns the number of frames whose deadline was missed.
+   *
+   * @return		the number of frames
+   */
+  public long getNumMissedFrames() {
+    if (m_Grabber == null)
+      return 0;
+    return m_Grabber.getNumMissed();
+  }
+
+  /**
+   * Returns the number of frames that were not encoded as they didn't change.
+   *
+   * @return		the number of frames
+   */
+  public long getNumUnchangedFrames() {
+    return m_NumUnchangedFrames;
+  }
+
+  /**
+   * Returns the number of images that could be reused from the image pool.
+   *
+   * @return		the number of images
+   */
+  public long getNumImagePoolHits() {
+    return m_ImagePool.getNumHits();
+  }
+
+  /**
+   * Returns the number of images that had to be allocated by the image pool.
+   *
+   * @return		the number of images
+   */
+  public long getNumImagePoolMisses() {
+    return m_ImagePool.getNumMisses();
+  }
+
+  /**
+   * Returns the number of frames that got encoded.
+   *
+   * @return		the number of frames
+   */
+  public long getNumEncodedFrames() {
+    return m_NumEncodedFrames;
+  }
+
+  /**
+   * Returns the average time it took to capture a frame.
+   *
+   * @return		the time in msec
+   */
+  public double getAverageCaptureTime() {
+    if (m_NumCapturedFrames == 0)
+      return 0;
+    return m_CaptureTime / 1000000.0 / m_NumCapturedFrames;
+  }
+
+  /**
+   * Returns the average time it took to encode a frame.
+   *
+   * @return		the time in msec
+   */
+  public double getAverageEncodeTime() {
+    if (m_NumEncodedFrames == 0)
+      return 0;
+    return m_EncodeTime / 1000000.0 / m_NumEncodedFrames;
   }
 
   /**
@@ -0,0 +1,352 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EncoderSettings.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record;
+
+import com.sun.management.OperatingSystemMXBean;
+import com.xuggle.mediatool.IMediaWriter;
+import com.xuggle.mediatool.ToolFactory;
+import com.xuggle.xuggler.ICodec.ID;
+import com.xuggle.xuggler.IPixelFormat;
+import com.xuggle.xuggler.IStreamCoder;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings for the H.264 video encoder. Unset values (empty strings,
+ * negative numbers) leave FFmpeg's defaults in place.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class EncoderSettings {
+
+  /** the available x264 presets, from fastest to slowest. */
+  public final static String[] PRESETS = {
+    "ultrafast", "superfast", "veryfast", "faster", "fast", "medium", "slow", "slower", "veryslow"
+  };
+
+  /** the available x264 tunings. */
+  public final static String[] TUNES = {
+    "film", "animation", "grain", "stillimage", "psnr", "ssim", "fastdecode", "zerolatency"
+  };
+
+  /** the preset (empty for default). */
+  protected String m_Preset;
+
+  /** the tuning (empty for default). */
+  protected String m_Tune;
+
+  /** the constant rate factor (-1 for default). */
+  protected int m_CRF;
+
+  /** the bit rate in bits/sec (-1 for default). */
+  protected int m_BitRate;
+
+  /** the number of frames in a group of pictures, ie keyframe interval (-1 for default). */
+  protected int m_GOPSize;
+
+  /** the maximum number of consecutive B-frames (-1 for default). */
+  protected int m_BFrames;
+
+  /** the number of encoder threads (0 = automatic, -1 for default). */
+  protected int m_NumThreads;
+
+  /** the pixel format to encode in. */
+  protected IPixelFormat.Type m_PixelFormat;
+
+  /**
+   * Initializes the settings with FFmpeg's defaults.
+   */
+  public EncoderSettings() {
+    m_Preset      = "";
+    m_Tune        = "";
+    m_CRF         = -1;
+    m_BitRate     = -1;
+    m_GOPSize     = -1;
+    m_BFrames     = -1;
+    m_NumThreads  = -1;
+    m_PixelFormat = IPixelFormat.Type.YUV420P;
+  }
+
+  /**
+   * Sets the preset.
+   *
+   * @param value	the preset, empty for default
+   * @see		#PRESETS
+   */
+  public void setPreset(String value) {
+    m_Preset = value;
+  }
+
+  /**
+   * Returns the preset.
+   *
+   * @return		the preset, empty for default
+   */
+  public String getPreset() {
+    return m_Preset;
+  }
+
+  /**
+   * Sets the tuning.
+   *
+   * @param value	the tuning, empty for default
+   * @see		#TUNES
+   */
+  public void setTune(String value) {
+    m_Tune = value;
+  }
+
+  /**
+   * Returns the tuning.
+   *
+   * @return		the tuning, empty for default
+   */
+  public String getTune() {
+    return m_Tune;
+  }
+
+  /**
+   * Sets the constant rate factor (0-51, lower is better quality).
+   *
+   * @param value	the factor, -1 for default
+   */
+  public void setCRF(int value) {
+    m_CRF = value;
+  }
+
+  /**
+   * Returns the constant rate factor (0-51, lower is better quality).
+   *
+   * @return		the factor, -1 for default
+   */
+  public int getCRF() {
+    return m_CRF;
+  }
+
+  /**
+   * Sets the bit rate.
+   *
+   * @param value	the bit rate in bits/sec, -1 for default
+   */
+  public void setBitRate(int value) {
+    m_BitRate = value;
+  }
+
+  /**
+   * Returns the bit rate.
+   *
+   * @return		the bit rate in bits/sec, -1 for default
+   */
+  public int getBitRate() {
+    return m_BitRate;
+  }
+
+  /**
+   * Sets the number of frames in a group of pictures (keyframe interval).
+   *
+   * @param value	the number of frames, -1 for default
+   */
+  public void setGOPSize(int value) {
+    m_GOPSize = value;
+  }
+
+  /**
+   * Returns the number of frames in a group of pictures (keyframe interval).
+   *
+   * @return		the number of frames, -1 for default
+   */
+  public int getGOPSize() {
+    return m_GOPSize;
+  }
+
+  /**
+   * Sets the maximum number of consecutive B-frames.
+   *
+   * @param value	the number of frames, -1 for default
+   */
+  public void setBFrames(int value) {
+    m_BFrames = value;
+  }
+
+  /**
+   * Returns the maximum number of consecutive B-frames.
+   *
+   * @return		the number of frames, -1 for default
+   */
+  public int getBFrames() {
+    return m_BFrames;
+  }
+
+  /**
+   * Sets the number of encoder threads.
+   *
+   * @param value	the number of threads, 0 for automatic, -1 for default
+   */
+  public void setNumThreads(int value) {
+    m_NumThreads = value;
+  }
+
+  /**
+   * Returns the number of encoder threads.
+   *
+   * @return		the number of threads, 0 for automatic, -1 for default
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Sets the pixel format to encode in.
+   *
+   * @param value	the format
+   */
+  public void setPixelFormat(IPixelFormat.Type value) {
+    m_PixelFormat = value;
+  }
+
+  /**
+   * Returns the pixel format to encode in.
+   *
+   * @return		the format
+   */
+  public IPixelFormat.Type getPixelFormat() {
+    return m_PixelFormat;
+  }
+
+  /**
+   * Applies the settings to the coder, which must not have been opened yet.
+   *
+   * @param coder	the coder to configure
+   * @return		null if OK, otherwise error message about the settings that failed
+   */
+  public String apply(IStreamCoder coder) {
+    List<String>	errors;
+
+    errors = new ArrayList<>();
+
+    coder.setPixelType(m_PixelFormat);
+    if (!m_Preset.isEmpty() && (coder.setProperty("preset", m_Preset) < 0))
+      errors.add("preset=" + m_Preset);
+    if (!m_Tune.isEmpty() && (coder.setProperty("tune", m_Tune) < 0))
+      errors.add("tune=" + m_Tune);
+    if ((m_CRF > -1) && (coder.setProperty("crf", "" + m_CRF) < 0))
+      errors.add("crf=" + m_CRF);
+    if (m_BitRate > -1)
+      coder.setBitRate(m_BitRate);
+    if (m_GOPSize > -1)
+      coder.setNumPicturesInGroupOfPictures(m_GOPSize);
+    if ((m_BFrames > -1) && (coder.setProperty("bf", m_BFrames) < 0))
+      errors.add("bf=" + m_BFrames);
+    if ((m_NumThreads > -1) && (coder.setProperty("threads", m_NumThreads) < 0))
+      errors.add("threads=" + m_NumThreads);
+
+    if (errors.isEmpty())
+      return null;
+    else
+      return "Failed to apply encoder setting(s): " + String.join(", ", errors);
+  }
+
+  /**
+   * Applies the settings to the coder of the specified stream of the writer.
+   *
+   * @param writer	the writer to configure
+   * @param streamIndex	the index of the video stream
+   * @return		null if OK, otherwise error message about the settings that failed
+   * @see		#apply(IStreamCoder)
+   */
+  public String apply(IMediaWriter writer, int streamIndex) {
+    return apply(writer.getContainer().getStream(streamIndex).getStreamCoder());
+  }
+
+  /**
+   * Returns a short description of the settings.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    return "preset=" + m_Preset + ", tune=" + m_Tune + ", crf=" + m_CRF
+      + ", bitrate=" + m_BitRate + ", gop=" + m_GOPSize + ", bframes=" + m_BFrames
+      + ", threads=" + m_NumThreads + ", pixfmt=" + m_PixelFormat;
+  }
+
+  /**
+   * Benchmark: encodes synthetic frames with each preset and outputs the
+   * achieved fps and the CPU time used.
+   *
+   * @param args	optional: width, height, number of frames
+   */
+  public static void main(String[] args) throws Exception {
+    OperatingSystemMXBean	os;
+    EncoderSettings		settings;
+    IMediaWriter		writer;
+    BufferedImage		frame;
+    byte[]			data;
+    File			output;
+    int				width;
+    int				height;
+    int				frames;
+    int				i;
+    int				n;
+    long			wall;
+    long			cpu;
+
+    width  = (args.length > 0) ? Integer.parseInt(args[0]) : 1920;
+    height = (args.length > 1) ? Integer.parseInt(args[1]) : 1080;
+    frames = (args.length > 2) ? Integer.parseInt(args[2]) : 250;
+    os     = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    frame  = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+    data   = ((DataBufferByte) frame.getRaster().getDataBuffer()).getData();
+    output = new File(System.getProperty("java.io.tmpdir") + File.separator + "encoder-benchmark.mp4");
+
+    System.out.println("preset,fps,cpu_sec,cpu_per_frame_msec");
+    for (String preset: PRESETS) {
+      settings = new EncoderSettings();
+      settings.setPreset(preset);
+      writer = ToolFactory.makeWriter(output.getAbsolutePath());
+      writer.addVideoStream(0, 0, ID.CODEC_ID_H264, width, height);
+      settings.apply(writer, 0);
+      wall = System.nanoTime();
+      cpu  = os.getProcessCpuTime();
+      for (n = 0; n < frames; n++) {
+	// a moving band of changed pixels, similar to scrolling text
+	for (i = (n * 3 * width) % data.length; i < data.length; i += 7919)
+	  data[i] = (byte) (data[i] + n);
+	writer.encodeVideo(0, frame, n * 40, TimeUnit.MILLISECONDS);
+      }
+      writer.close();
+      wall = System.nanoTime() - wall;
+      cpu  = os.getProcessCpuTime() - cpu;
+      System.out.println(
+	preset + ","
+	  + String.format("%.1f", frames / (wall / 1000000000.0)) + ","
+	  + String.format("%.2f", cpu / 1000000000.0) + ","
+	  + String.format("%.2f", cpu / 1000000.0 / frames));
+    }
+    output.delete();
+  }
+}
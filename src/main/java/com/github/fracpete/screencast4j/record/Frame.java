@@ -0,0 +1,91 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Frame.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Container for a captured frame, the time it was captured at and whether
+ * it has to be encoded as key frame.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class Frame {
+
+  /** the image. */
+  protected BufferedImage m_Image;
+
+  /** the timestamp (msec, relative to start of recording). */
+  protected long m_Timestamp;
+
+  /** whether to force a key frame. */
+  protected boolean m_KeyFrame;
+
+  /**
+   * Initializes the frame.
+   *
+   * @param image	the image
+   * @param timestamp	the timestamp (msec, relative to start of recording)
+   */
+  public Frame(BufferedImage image, long timestamp) {
+    this(image, timestamp, false);
+  }
+
+  /**
+   * Initializes the frame.
+   *
+   * @param image	the image
+   * @param timestamp	the timestamp (msec, relative to start of recording)
+   * @param keyFrame	whether to force a key frame
+   */
+  public Frame(BufferedImage image, long timestamp, boolean keyFrame) {
+    m_Image     = image;
+    m_Timestamp = timestamp;
+    m_KeyFrame  = keyFrame;
+  }
+
+  /**
+   * Returns the image.
+   *
+   * @return		the image
+   */
+  public BufferedImage getImage() {
+    return m_Image;
+  }
+
+  /**
+   * Returns the timestamp.
+   *
+   * @return		the timestamp (msec, relative to start of recording)
+   */
+  public long getTimestamp() {
+    return m_Timestamp;
+  }
+
+  /**
+   * Returns whether to force a key frame.
+   *
+   * @return		true if key frame
+   */
+  public boolean isKeyFrame() {
+    return m_KeyFrame;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * FrameEncoder.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runnable for encoding the frames that the {@link FrameGrabber} queued up.
+ * Once stopped, the remaining frames in the queue still get encoded.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class FrameEncoder
+  implements Runnable {
+
+  /** the owner. */
+  protected VideoRecorder m_Owner;
+
+  /** the queue to drain. */
+  protected FrameQueue m_Queue;
+
+  /** whether encoding is active. */
+  protected volatile boolean m_Running;
+
+  /**
+   * Initializes the runnable.
+   *
+   * @param owner	the recorder to encode the frames with
+   * @param queue	the queue to obtain the frames from
+   */
+  public FrameEncoder(VideoRecorder owner, FrameQueue queue) {
+    m_Owner   = owner;
+    m_Queue   = queue;
+    m_Running = true;
+  }
+
+  /**
+   * Performs the encoding.
+   */
+  @Override
+  public void run() {
+    Frame	frame;
+
+    while (m_Running || (m_Queue.size() > 0)) {
+      try {
+	frame = m_Queue.poll(50, TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException e) {
+	break;
+      }
+      if (frame != null)
+	m_Owner.encodeFrame(frame);
+    }
+  }
+
+  /**
+   * Returns whether the encoding is active.
+   *
+   * @return		true if active
+   */
+  public boolean isRunning() {
+    return m_Running;
+  }
+
+  /**
+   * Stops the encoding, once the queue has been drained.
+   */
+  public void stop() {
+    m_Running = false;
+  }
+}
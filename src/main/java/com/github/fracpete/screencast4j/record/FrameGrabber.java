@@ -20,26 +20,78 @@
 
 package com.github.fracpete.screencast4j.record;
 
+import java.util.concurrent.locks.LockSupport;
+
 /**
- * Runnable for grabbing frames.
+ * Runnable for grabbing frames. Frames are scheduled against absolute
+ * deadlines (n * period) on the owner's {@link RecorderClock}, which
+ * avoids accumulating errors and supports fractional frame rates. As the
+ * clock excludes pauses, the schedule simply continues after resuming.
+ * Deadlines that could not be met are handled according to the owner's
+ * {@link MissedFramePolicy}.
  *
  * @author FracPete (fracpete at waikato dot ac dot nz)
  */
 public class FrameGrabber
   implements Runnable {
 
+  /** the time before a deadline (nsec) from which on to spin rather than park. */
+  public final static long SPIN_THRESHOLD = 1000000L;
+
+  /** the interval for checking whether the owner got resumed (nsec). */
+  public final static long PAUSE_INTERVAL = 50000000L;
+
   /** the owner. */
   protected VideoRecorder m_Owner;
 
   /** whether frame grabbing is active. */
-  protected boolean m_Running;
+  protected volatile boolean m_Running;
+
+  /** the thread executing the runnable. */
+  protected volatile Thread m_Thread;
+
+  /** the number of frames whose deadline was missed. */
+  protected volatile long m_NumMissed;
 
   /**
    * Initializes the runnable.
+   *
+   * @param owner	the recorder to grab the frames with
    */
   public FrameGrabber(VideoRecorder owner) {
-    m_Owner   = owner;
-    m_Running = false;
+    m_Owner     = owner;
+    m_Running   = true;
+    m_NumMissed = 0;
+  }
+
+  /**
+   * Returns the time elapsed since the owner started recording.
+   *
+   * @return		the elapsed time (nsec)
+   */
+  protected long getElapsedNanos() {
+    return m_Owner.getClock().getElapsedNanos() - m_Owner.getStartOffset();
+  }
+
+  /**
+   * Waits until the specified deadline is reached (or grabbing stopped or
+   * the owner is no longer recording). Parks the thread for the bulk of the
+   * time and spins for the last {@link #SPIN_THRESHOLD} nanoseconds.
+   *
+   * @param deadline	the deadline (nsec, relative to the start of the recording)
+   */
+  protected void waitUntil(long deadline) {
+    long	left;
+
+    while (m_Running && m_Owner.isRecording()) {
+      left = deadline - getElapsedNanos();
+      if (left <= 0)
+	break;
+      if (left > SPIN_THRESHOLD)
+	LockSupport.parkNanos(this, left - SPIN_THRESHOLD);
+      else
+	Thread.onSpinWait();
+    }
   }
 
   /**
@@ -47,50 +99,59 @@ public class FrameGrabber
    */
   @Override
   public void run() {
-    int 	msec;
-    long	before;
-    long	after;
-    long	left;
+    double		period;
+    long		index;
+    long		missed;
+    long		counted;
+    MissedFramePolicy	policy;
 
-    m_Running = true;
-    msec = (int) (1000.0 / m_Owner.getFramesPerSecond());
+    m_Thread = Thread.currentThread();
+    period   = 1000000000.0 / m_Owner.getFramesPerSecond();
+    policy   = m_Owner.getMissedFramePolicy();
+    index    = 0;
+    counted  = 0;
 
     while (m_Running) {
-      // idle while paused
-      if (m_Owner.isPaused()) {
-	try {
-	  synchronized (this) {
-	    wait(50);
-	  }
-	}
-	catch (Exception e) {
-	  // ignored
-	}
+      // idle while paused or not yet recording
+      if (!m_Owner.isRecording()) {
+	LockSupport.parkNanos(this, m_Owner.isPaused() ? PAUSE_INTERVAL : SPIN_THRESHOLD);
 	continue;
       }
 
-      if (!m_Running)
+      // wait for next frame
+      waitUntil(Math.round(index * period));
+      if (!m_Running || !m_Owner.isRecording())
 	continue;
 
       // grab frame
-      before = System.currentTimeMillis();
-      m_Owner.grabFrame();
-      after = System.currentTimeMillis();
+      m_Owner.grabFrame(Math.round(index * period / 1000000.0));
+      index++;
 
-      if (!m_Running)
+      // missed any deadlines?
+      missed = (long) ((getElapsedNanos() - index * period) / period);
+      if (missed <= 0)
 	continue;
-
-      // wait for next frame
-      left = msec - (after - before);
-      if (left > 0) {
-	try {
-	  synchronized(this) {
-	    wait(left);
+      // when catching up, the same deadlines are still overdue after the
+      // next frame, ie only count the ones that weren't counted yet
+      if (index + missed > counted) {
+	m_NumMissed += index + missed - Math.max(index, counted);
+	counted      = index + missed;
+      }
+      switch (policy) {
+	case SKIP:
+	  index += missed;
+	  break;
+	case DUPLICATE:
+	  for (long i = 0; i < missed; i++) {
+	    m_Owner.repeatFrame(Math.round(index * period / 1000000.0));
+	    index++;
 	  }
-	}
-	catch (Exception e) {
-	  // ignored
-	}
+	  break;
+	case CATCH_UP:
+	  // deadlines are in the past, frames get grabbed without waiting
+	  break;
+	default:
+	  throw new IllegalStateException("Unhandled missed frame policy: " + policy);
       }
     }
   }
@@ -104,10 +165,24 @@ public class FrameGrabber
     return m_Running;
   }
 
+  /**
+   * Returns the number of frames whose deadline was missed.
+   *
+   * @return		the number of frames
+   */
+  public long getNumMissed() {
+    return m_NumMissed;
+  }
+
   /**
    * Stops the frame grabbing.
    */
   public void stop() {
+    Thread	thread;
+
     m_Running = false;
+    thread    = m_Thread;
+    if (thread != null)
+      LockSupport.unpark(thread);
   }
 }
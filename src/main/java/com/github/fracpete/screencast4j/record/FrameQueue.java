@@ -0,0 +1,146 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * FrameQueue.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue that hands frames from the capture thread to the encoder
+ * thread.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class FrameQueue {
+
+  /** the underlying queue. */
+  protected ArrayBlockingQueue<Frame> m_Queue;
+
+  /** the maximum number of frames. */
+  protected int m_Capacity;
+
+  /** what to do when full. */
+  protected OverflowPolicy m_Policy;
+
+  /** the number of frames that got dropped. */
+  protected AtomicLong m_NumDropped;
+
+  /**
+   * Initializes the queue.
+   *
+   * @param capacity	the maximum number of frames to queue
+   * @param policy	what to do when the queue is full
+   */
+  public FrameQueue(int capacity, OverflowPolicy policy) {
+    m_Queue      = new ArrayBlockingQueue<>(capacity);
+    m_Capacity   = capacity;
+    m_Policy     = policy;
+    m_NumDropped = new AtomicLong();
+  }
+
+  /**
+   * Adds the frame to the queue, applying the overflow policy if full.
+   *
+   * @param frame	the frame to add
+   * @return		the frame that got dropped, null if none
+   * @throws InterruptedException	if interrupted while waiting
+   */
+  public Frame put(Frame frame) throws InterruptedException {
+    Frame	result;
+
+    result = null;
+
+    switch (m_Policy) {
+      case BLOCK:
+	m_Queue.put(frame);
+	break;
+
+      case DROP_NEWEST:
+	if (!m_Queue.offer(frame)) {
+	  result = frame;
+	  m_NumDropped.incrementAndGet();
+	}
+	break;
+
+      case DROP_OLDEST:
+	while (!m_Queue.offer(frame)) {
+	  result = m_Queue.poll();
+	  if (result != null)
+	    m_NumDropped.incrementAndGet();
+	}
+	break;
+
+      default:
+	throw new IllegalStateException("Unhandled overflow policy: " + m_Policy);
+    }
+
+    return result;
+  }
+
+  /**
+   * Removes the next frame from the queue, waiting if necessary.
+   *
+   * @param timeout	how long to wait
+   * @param unit	the unit of the timeout
+   * @return		the frame, null if none available within timeout
+   * @throws InterruptedException	if interrupted while waiting
+   */
+  public Frame poll(long timeout, TimeUnit unit) throws InterruptedException {
+    return m_Queue.poll(timeout, unit);
+  }
+
+  /**
+   * Returns the number of frames currently queued.
+   *
+   * @return		the number of frames
+   */
+  public int size() {
+    return m_Queue.size();
+  }
+
+  /**
+   * Returns the maximum number of frames that can be queued.
+   *
+   * @return		the capacity
+   */
+  public int getCapacity() {
+    return m_Capacity;
+  }
+
+  /**
+   * Returns the overflow policy in use.
+   *
+   * @return		the policy
+   */
+  public OverflowPolicy getPolicy() {
+    return m_Policy;
+  }
+
+  /**
+   * Returns the number of frames that got dropped so far.
+   *
+   * @return		the number of frames
+   */
+  public long getNumDropped() {
+    return m_NumDropped.get();
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MissedFramePolicy.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record;
+
+/**
+ * What the {@link FrameGrabber} does with frames whose deadline passed
+ * before they could be grabbed.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public enum MissedFramePolicy {
+  /** the frames are left out, resulting in a gap in the timestamps. */
+  SKIP,
+  /** the last frame gets repeated for each missed frame. */
+  DUPLICATE,
+  /** the missed frames get grabbed back-to-back until on schedule again. */
+  CATCH_UP,
+}
@@ -23,12 +23,29 @@ package com.github.fracpete.screencast4j.record;
 import com.github.fracpete.screencast4j.record.screen.XuggleScreenRecorder;
 import com.github.fracpete.screencast4j.record.sound.SampledSoundRecorder;
 import com.github.fracpete.screencast4j.record.webcam.SarxosWebcamRecorder;
+import com.googlecode.jfilechooserbookmarks.core.Utils;
 
 import java.awt.Dimension;
 import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
- * Combines multiple recorders.
+ * Combines multiple recorders. All recorders share the same clock, which
+ * is managed by this recorder. The recorders get set up in parallel and
+ * are started together once all of them are ready, with the remaining
+ * difference in start times available via {@link #getStartSkew()}. If a
+ * manifest file is set, the start offset of each stream gets stored in
+ * it once recording stops, which allows the files to be lined up
+ * afterwards.
  *
  * @author FracPete (fracpete at waikato dot ac dot nz)
  */
@@ -38,6 +55,12 @@ public class MultiRecorder
   /** the recorders to use. */
   protected Recorder[] m_Recorders;
 
+  /** the manifest file to write (null for none). */
+  protected File m_Manifest;
+
+  /** the difference between the earliest and latest start of the recorders (nsec). */
+  protected long m_StartSkew;
+
   /**
    * Initializes members.
    */
@@ -46,6 +69,16 @@ public class MultiRecorder
     super.initialize();
 
     m_Recorders = new Recorder[0];
+    m_Manifest  = null;
+  }
+
+  /**
+   * Resets the recorder's state (but not parameters).
+   */
+  @Override
+  public void reset() {
+    super.reset();
+    m_StartSkew = 0;
   }
 
   /**
@@ -66,6 +99,64 @@ public class MultiRecorder
     return m_Recorders;
   }
 
+  /**
+   * Sets the manifest file to write the stream offsets to.
+   *
+   * @param value	the file, null for none
+   */
+  public void setManifest(File value) {
+    m_Manifest = value;
+  }
+
+  /**
+   * Returns the manifest file to write the stream offsets to.
+   *
+   * @return		the file, null for none
+   */
+  public File getManifest() {
+    return m_Manifest;
+  }
+
+  /**
+   * Returns the difference between the earliest and latest start of the
+   * recorders.
+   *
+   * @return		the skew (nsec)
+   */
+  public long getStartSkew() {
+    return m_StartSkew;
+  }
+
+  /**
+   * Executes the tasks in parallel, one thread per task, and waits for
+   * them to finish.
+   *
+   * @param tasks	the tasks to execute
+   * @param prefix	the prefix for the thread names
+   * @return		the results of the tasks, in the same order
+   * @throws Exception	if a task fails or waiting got interrupted
+   */
+  protected List<String> executeInParallel(List<Callable<String>> tasks, String prefix) throws Exception {
+    List<String>		result;
+    List<Future<String>>	futures;
+    ExecutorService		executor;
+    int[]			counter;
+
+    result   = new ArrayList<>();
+    counter  = new int[]{0};
+    executor = Executors.newFixedThreadPool(tasks.size(), (Runnable r) -> new Thread(r, getClass().getSimpleName() + "-" + prefix + "-" + (counter[0]++)));
+    try {
+      futures = executor.invokeAll(tasks);
+      for (Future<String> future: futures)
+	result.add(future.get());
+    }
+    finally {
+      executor.shutdown();
+    }
+
+    return result;
+  }
+
   /**
    * Performs a check of the setup.
    *
@@ -73,17 +164,29 @@ public class MultiRecorder
    */
   @Override
   public String setUp() {
-    String	result;
+    String			result;
+    List<Callable<String>>	tasks;
 
     result = super.setUp();
 
     if (result == null) {
       if (m_Recorders.length == 0)
 	return "No recorders defined!";
+      tasks = new ArrayList<>();
       for (Recorder rec: m_Recorders) {
-	result = rec.setUp();
-	if (result != null)
-	  break;
+	rec.setClock(m_Clock);
+	tasks.add(rec::setUp);
+      }
+      try {
+	for (String msg: executeInParallel(tasks, "setUp")) {
+	  if (msg != null) {
+	    result = msg;
+	    break;
+	  }
+	}
+      }
+      catch (Exception e) {
+	result = printError("setUp", "Failed to set up recorders: " + Utils.throwableToString(e));
       }
     }
 
@@ -91,14 +194,49 @@ public class MultiRecorder
   }
 
   /**
-   * Starts the actual recording process.
+   * Starts the actual recording process. The recorders get started in
+   * parallel, released together through a barrier once all threads are
+   * ready. If any of them fails to start, the others get stopped again.
    *
    * @throws Exception	if starting of recording fails
    */
   @Override
   protected void doStart() throws Exception {
-    for (Recorder rec: m_Recorders)
-      rec.start();
+    List<Callable<String>>	tasks;
+    CyclicBarrier		barrier;
+    StringBuilder		errors;
+    long			min;
+    long			max;
+
+    barrier = new CyclicBarrier(m_Recorders.length);
+    tasks   = new ArrayList<>();
+    for (Recorder rec: m_Recorders) {
+      tasks.add(() -> {
+	barrier.await();
+	return rec.start();
+      });
+    }
+
+    errors = new StringBuilder();
+    for (String msg: executeInParallel(tasks, "start")) {
+      if (msg != null)
+	errors.append("\n").append(msg);
+    }
+    if (errors.length() > 0) {
+      for (Recorder rec: m_Recorders) {
+	if (rec.isRecording() || rec.isPaused())
+	  rec.stop();
+      }
+      throw new Exception("Failed to start recorder(s):" + errors);
+    }
+
+    min = Long.MAX_VALUE;
+    max = Long.MIN_VALUE;
+    for (Recorder rec: m_Recorders) {
+      min = Math.min(min, rec.getStartOffset());
+      max = Math.max(max, rec.getStartOffset());
+    }
+    m_StartSkew = max - min;
   }
 
   /**
@@ -108,8 +246,64 @@ public class MultiRecorder
    */
   @Override
   protected void doStop() throws Exception {
+    String	msg;
+
     for (Recorder rec: m_Recorders)
       rec.stop();
+    if (m_Manifest != null) {
+      msg = writeManifest(m_Manifest);
+      if (msg != null)
+	printError("stop", msg);
+    }
+  }
+
+  /**
+   * Writes the manifest with the start offsets of the streams, relative
+   * to the shared clock. For sound streams, the nominal and measured
+   * sample rates get stored as well.
+   *
+   * @param file	the file to write to
+   * @return		null if OK, otherwise error message
+   */
+  public String writeManifest(File file) {
+    Properties		props;
+    Recorder		rec;
+    SampledSoundRecorder	sound;
+    SarxosWebcamRecorder	webcam;
+    int			i;
+
+    props = new Properties();
+    props.setProperty("clock.wallclock_start", "" + m_Clock.getWallClockStart());
+    props.setProperty("clock.duration_us", "" + m_Clock.getElapsedNanos() / 1000);
+    props.setProperty("clock.paused_us", "" + m_Clock.getCumulativePause() / 1000);
+    props.setProperty("clock.start_skew_us", "" + m_StartSkew / 1000);
+    props.setProperty("streams", "" + m_Recorders.length);
+    for (i = 0; i < m_Recorders.length; i++) {
+      rec = m_Recorders[i];
+      props.setProperty("stream." + i + ".recorder", rec.getClass().getName());
+      if (rec instanceof FileBasedRecorder)
+	props.setProperty("stream." + i + ".file", ((FileBasedRecorder) rec).getOutput().getAbsolutePath());
+      props.setProperty("stream." + i + ".offset_us", "" + rec.getStartOffset() / 1000);
+      if (rec instanceof SampledSoundRecorder) {
+	sound = (SampledSoundRecorder) rec;
+	props.setProperty("stream." + i + ".sample_rate", "" + sound.getFrequency());
+	props.setProperty("stream." + i + ".measured_sample_rate", "" + sound.getMeasuredFrequency());
+	props.setProperty("stream." + i + ".drift_corrected", "" + sound.getDriftCorrection());
+      }
+      if ((rec instanceof SarxosWebcamRecorder) && ((SarxosWebcamRecorder) rec).getEventDriven()) {
+	webcam = (SarxosWebcamRecorder) rec;
+	props.setProperty("stream." + i + ".device_fps", "" + webcam.getDeviceFramesPerSecond());
+	props.setProperty("stream." + i + ".duplicate_frames", "" + webcam.getNumDuplicateFrames());
+      }
+    }
+
+    try (Writer writer = new FileWriter(file)) {
+      props.store(writer, "screencast4j stream manifest, offsets relative to start of recording");
+      return null;
+    }
+    catch (Exception e) {
+      return "Failed to write manifest to " + file + ": " + Utils.throwableToString(e);
+    }
   }
 
   /**
@@ -168,8 +362,19 @@ public class MultiRecorder
     sound.setFrequency(44100.0f);
     MultiRecorder multi = new MultiRecorder();
     multi.setRecorders(new Recorder[]{screen, webcam, sound});
-    multi.setUp();
-    multi.start();
+    multi.setManifest(new File(System.getProperty("java.io.tmpdir") + File.separator + "manifest.properties"));
+    long start = System.nanoTime();
+    String msg = multi.setUp();
+    if (msg != null) {
+      System.err.println(msg);
+      return;
+    }
+    msg = multi.start();
+    if (msg != null) {
+      System.err.println(msg);
+      return;
+    }
+    System.out.println("Time to recording: " + (System.nanoTime() - start) / 1000000 + "ms, start skew: " + multi.getStartSkew() / 1000 + "us");
     for (int i = 0; i < 200; i++)
       Thread.sleep(100);
     multi.stop();
@@ -0,0 +1,35 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * OverflowPolicy.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record;
+
+/**
+ * What to do when the frame queue between capture and encoder is full.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public enum OverflowPolicy {
+  /** the capture thread waits for the encoder. */
+  BLOCK,
+  /** the oldest queued frame gets discarded. */
+  DROP_OLDEST,
+  /** the new frame gets discarded. */
+  DROP_NEWEST,
+}
@@ -34,6 +34,28 @@ public interface Recorder {
    */
   public String setUp();
 
+  /**
+   * Sets the clock to use for the timestamps. The clock is expected to be
+   * started, paused and resumed by whoever supplied it.
+   *
+   * @param value	the clock
+   */
+  public void setClock(RecorderClock value);
+
+  /**
+   * Returns the clock used for the timestamps.
+   *
+   * @return		the clock
+   */
+  public RecorderClock getClock();
+
+  /**
+   * Returns the time the recording started, relative to the clock.
+   *
+   * @return		the offset (nsec)
+   */
+  public long getStartOffset();
+
   /**
    * Starts the recording process.
    *
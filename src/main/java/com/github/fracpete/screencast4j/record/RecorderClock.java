@@ -0,0 +1,192 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * RecorderClock.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record;
+
+/**
+ * Monotonic clock based on {@link System#nanoTime()}, which excludes the
+ * time it was paused. Shared by all the recorders of a {@link MultiRecorder},
+ * so that their timestamps are relative to the same origin and unaffected
+ * by adjustments of the wall clock.
+ * <br>
+ * As all the capture threads query the clock continuously, reading it
+ * doesn't lock. Starting, pausing and resuming replace an immutable
+ * snapshot of the state instead.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class RecorderClock {
+
+  /**
+   * Immutable state of the clock.
+   */
+  protected static class State {
+
+    /** whether the clock has been started. */
+    public final boolean started;
+
+    /** the time the clock was started (nsec). */
+    public final long origin;
+
+    /** the wall clock time the clock was started (msec since epoch). */
+    public final long wallClockStart;
+
+    /** whether the clock is paused. */
+    public final boolean paused;
+
+    /** the time the clock got paused (nsec). */
+    public final long pauseStart;
+
+    /** the cumulative time the clock was paused (nsec). */
+    public final long cumulativePause;
+
+    /**
+     * Initializes the state.
+     *
+     * @param started		whether started
+     * @param origin		the start time (nsec)
+     * @param wallClockStart	the wall clock start time (msec since epoch)
+     * @param paused		whether paused
+     * @param pauseStart	the time the pause started (nsec)
+     * @param cumulativePause	the cumulative pause (nsec)
+     */
+    public State(boolean started, long origin, long wallClockStart, boolean paused, long pauseStart, long cumulativePause) {
+      this.started         = started;
+      this.origin          = origin;
+      this.wallClockStart  = wallClockStart;
+      this.paused          = paused;
+      this.pauseStart      = pauseStart;
+      this.cumulativePause = cumulativePause;
+    }
+  }
+
+  /** the current state. */
+  protected volatile State m_State = new State(false, 0, 0, false, 0, 0);
+
+  /**
+   * (Re-)starts the clock.
+   */
+  public synchronized void start() {
+    m_State = new State(true, System.nanoTime(), System.currentTimeMillis(), false, 0, 0);
+  }
+
+  /**
+   * Returns whether the clock has been started.
+   *
+   * @return		true if started
+   */
+  public boolean isStarted() {
+    return m_State.started;
+  }
+
+  /**
+   * Pauses the clock. Does nothing if not started or already paused.
+   */
+  public synchronized void pause() {
+    State	state;
+
+    state = m_State;
+    if (!state.started || state.paused)
+      return;
+    m_State = new State(true, state.origin, state.wallClockStart, true, System.nanoTime(), state.cumulativePause);
+  }
+
+  /**
+   * Resumes the clock. Does nothing if not paused.
+   */
+  public synchronized void resume() {
+    State	state;
+
+    state = m_State;
+    if (!state.paused)
+      return;
+    m_State = new State(
+      true, state.origin, state.wallClockStart, false, 0,
+      state.cumulativePause + System.nanoTime() - state.pauseStart);
+  }
+
+  /**
+   * Returns whether the clock is paused.
+   *
+   * @return		true if paused
+   */
+  public boolean isPaused() {
+    return m_State.paused;
+  }
+
+  /**
+   * Returns the time elapsed since the clock was started, excluding the
+   * time it was paused.
+   *
+   * @return		the elapsed time (nsec), 0 if not started
+   */
+  public long getElapsedNanos() {
+    State	state;
+
+    state = m_State;
+    if (!state.started)
+      return 0;
+    return (state.paused ? state.pauseStart : System.nanoTime()) - state.origin - state.cumulativePause;
+  }
+
+  /**
+   * Returns the time elapsed since the clock was started, excluding the
+   * time it was paused.
+   *
+   * @return		the elapsed time (msec), 0 if not started
+   */
+  public long getElapsedTime() {
+    return getElapsedNanos() / 1000000L;
+  }
+
+  /**
+   * Returns the cumulative time the clock was paused, including a
+   * pause that is still ongoing.
+   *
+   * @return		the time (nsec)
+   */
+  public long getCumulativePause() {
+    State	state;
+
+    state = m_State;
+    if (state.paused)
+      return state.cumulativePause + System.nanoTime() - state.pauseStart;
+    return state.cumulativePause;
+  }
+
+  /**
+   * Returns the wall clock time the clock was started.
+   *
+   * @return		the time (msec since epoch)
+   */
+  public long getWallClockStart() {
+    return m_State.wallClockStart;
+  }
+
+  /**
+   * Returns a short description of the clock.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    return "started=" + isStarted() + ", paused=" + isPaused() + ", elapsed=" + getElapsedTime() + "ms";
+  }
+}
@@ -44,12 +44,236 @@ public interface VideoRecorder
   public double getFramesPerSecond();
 
   /**
-   * Grabs a frame.
+   * Sets the maximum number of frames to queue between capture and encoder.
+   *
+   * @param value	the capacity
+   */
+  public void setQueueCapacity(int value);
+
+  /**
+   * Returns the maximum number of frames to queue between capture and encoder.
+   *
+   * @return		the capacity
+   */
+  public int getQueueCapacity();
+
+  /**
+   * Sets what to do when the frame queue is full.
+   *
+   * @param value	the policy
+   */
+  public void setOverflowPolicy(OverflowPolicy value);
+
+  /**
+   * Returns what to do when the frame queue is full.
+   *
+   * @return		the policy
+   */
+  public OverflowPolicy getOverflowPolicy();
+
+  /**
+   * Sets what to do with frames whose deadline was missed.
+   *
+   * @param value	the policy
+   */
+  public void setMissedFramePolicy(MissedFramePolicy value);
+
+  /**
+   * Returns what to do with frames whose deadline was missed.
+   *
+   * @return		the policy
+   */
+  public MissedFramePolicy getMissedFramePolicy();
+
+  /**
+   * Sets whether to only encode frames that differ from the previous one,
+   * resulting in a variable frame rate.
+   *
+   * @param value	true if to encode only changes
+   */
+  public void setEncodeOnlyOnChange(boolean value);
+
+  /**
+   * Returns whether to only encode frames that differ from the previous one,
+   * resulting in a variable frame rate.
+   *
+   * @return		true if to encode only changes
+   */
+  public boolean getEncodeOnlyOnChange();
+
+  /**
+   * Sets the maximum time between key frames when only encoding changes.
+   *
+   * @param value	the interval (msec)
+   */
+  public void setKeyFrameInterval(int value);
+
+  /**
+   * Returns the maximum time between key frames when only encoding changes.
+   *
+   * @return		the interval (msec)
+   */
+  public int getKeyFrameInterval();
+
+  /**
+   * Sets the settings for the video encoder.
+   *
+   * @param value	the settings
+   */
+  public void setEncoderSettings(EncoderSettings value);
+
+  /**
+   * Returns the settings for the video encoder.
+   *
+   * @return		the settings
+   */
+  public EncoderSettings getEncoderSettings();
+
+  /**
+   * Sets whether to spool the frames to disk during recording and only
+   * encode them after the recording was stopped.
+   *
+   * @param value	true if to spool
+   */
+  public void setSpoolFrames(boolean value);
+
+  /**
+   * Returns whether to spool the frames to disk during recording and only
+   * encode them after the recording was stopped.
+   *
+   * @return		true if to spool
+   */
+  public boolean getSpoolFrames();
+
+  /**
+   * Sets whether to only spool the tiles of a frame that changed.
+   *
+   * @param value	true if to compress
+   */
+  public void setSpoolCompression(boolean value);
+
+  /**
+   * Returns whether to only spool the tiles of a frame that changed.
+   *
+   * @return		true if to compress
+   */
+  public boolean getSpoolCompression();
+
+  /**
+   * Returns whether the spooled frames are currently being encoded.
+   *
+   * @return		true if transcoding
+   */
+  public boolean isTranscoding();
+
+  /**
+   * Returns the progress of encoding the spooled frames.
+   *
+   * @return		the progress (0-1)
+   */
+  public double getTranscodeProgress();
+
+  /**
+   * Waits for the encoding of the spooled frames to finish.
+   *
+   * @throws InterruptedException	if interrupted while waiting
+   */
+  public void waitForTranscoding() throws InterruptedException;
+
+  /**
+   * Grabs a frame and queues it for encoding.
    *
    * @return		null if OK, otherwise error message
    */
   public String grabFrame();
 
+  /**
+   * Grabs a frame and queues it for encoding.
+   *
+   * @param timestamp	the timestamp to use for the frame (msec)
+   * @return		null if OK, otherwise error message
+   */
+  public String grabFrame(long timestamp);
+
+  /**
+   * Queues the last frame once more for encoding.
+   *
+   * @param timestamp	the timestamp to use for the frame (msec)
+   * @return		null if OK, otherwise error message
+   */
+  public String repeatFrame(long timestamp);
+
+  /**
+   * Encodes a previously grabbed frame.
+   *
+   * @param frame	the frame to encode
+   * @return		null if OK, otherwise error message
+   */
+  public String encodeFrame(Frame frame);
+
+  /**
+   * Returns the number of frames currently waiting to be encoded.
+   *
+   * @return		the number of frames
+   */
+  public int getQueueSize();
+
+  /**
+   * Returns the number of frames that got dropped due to a full queue.
+   *
+   * @return		the number of frames
+   */
+  public long getNumDroppedFrames();
+
+  /**
+   * Returns the number of frames whose deadline was missed.
+   *
+   * @return		the number of frames
+   */
+  public long getNumMissedFrames();
+
+  /**
+   * Returns the number of frames that were not encoded as they didn't change.
+   *
+   * @return		the number of frames
+   */
+  public long getNumUnchangedFrames();
+
+  /**
+   * Returns the number of images that could be reused from the image pool.
+   *
+   * @return		the number of images
+   */
+  public long getNumImagePoolHits();
+
+  /**
+   * Returns the number of images that had to be allocated by the image pool.
+   *
+   * @return		the number of images
+   */
+  public long getNumImagePoolMisses();
+
+  /**
+   * Returns the number of frames that got encoded.
+   *
+   * @return		the number of frames
+   */
+  public long getNumEncodedFrames();
+
+  /**
+   * Returns the average time it took to capture a frame.
+   *
+   * @return		the time in msec
+   */
+  public double getAverageCaptureTime();
+
+  /**
+   * Returns the average time it took to encode a frame.
+   *
+   * @return		the time in msec
+   */
+  public double getAverageEncodeTime();
+
   /**
    * Grabs an image and returns it.
    *
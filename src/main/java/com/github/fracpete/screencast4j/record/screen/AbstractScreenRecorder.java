@@ -21,22 +21,30 @@
 package com.github.fracpete.screencast4j.record.screen;
 
 import com.github.fracpete.screencast4j.gui.GUIHelper;
+import com.github.fracpete.screencast4j.image.CursorOverlay;
+import com.github.fracpete.screencast4j.image.ImageScaler;
 import com.github.fracpete.screencast4j.record.AbstractVideoRecorder;
 import com.googlecode.jfilechooserbookmarks.core.Utils;
 
 import javax.swing.ImageIcon;
-import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.GraphicsDevice;
 import java.awt.GraphicsEnvironment;
 import java.awt.Image;
 import java.awt.MouseInfo;
+import java.awt.Point;
 import java.awt.PointerInfo;
 import java.awt.Rectangle;
 import java.awt.Robot;
 import java.awt.image.BufferedImage;
 
 /**
- * Ancestor for screen recorders.
+ * Ancestor for screen recorders. The captured screen portion can be
+ * scaled to a different output size (see {@link #setOutputWidth(int)} and
+ * {@link #setOutputHeight(int)}) straight after capture, which saves
+ * considerable encoding time when recording a high-resolution screen for
+ * publishing at a lower resolution. The scaling also takes care of the
+ * conversion into the image type of the encoder.
  *
  * @author FracPete (fracpete at waikato dot ac dot nz)
  */
@@ -62,17 +70,38 @@ public abstract class AbstractScreenRecorder
   /** whether to capture the mouse cursor. */
   protected boolean m_CaptureMouse;
 
+  /** the width of the encoded frames (-1 = as captured). */
+  protected int m_OutputWidth;
+
+  /** the height of the encoded frames (-1 = as captured). */
+  protected int m_OutputHeight;
+
+  /** whether to preserve the aspect ratio when scaling. */
+  protected boolean m_Letterbox;
+
   /** performs the screenshots. */
   protected Robot m_Robot;
 
   /** the screen portion to grab. */
   protected Rectangle m_ScreenPortion;
 
+  /** the size of the encoded frames. */
+  protected Dimension m_OutputSize;
+
+  /** for scaling the captured frames. */
+  protected ImageScaler m_Scaler;
+
   /** the image of the normal cursor. */
   protected Image m_Cursor;
 
-  /** the background color. */
-  protected Color m_BackgroundColor;
+  /** for drawing the cursor. */
+  protected CursorOverlay m_CursorOverlay;
+
+  /** the last known X position of the pointer (screen coordinates). */
+  protected int m_PointerX;
+
+  /** the last known Y position of the pointer (screen coordinates). */
+  protected int m_PointerY;
 
   /**
    * Initializes the members.
@@ -83,14 +112,19 @@ public abstract class AbstractScreenRecorder
 
     super.initialize();
 
-    m_X       = 0;
-    m_Y       = 0;
-    m_Width   = -1;
-    m_Height  = -1;
-    image     = GUIHelper.getIcon(MOUSE_CURSOR);
-    if (image != null)
-      m_Cursor = image.getImage();
-    m_BackgroundColor = new Color(255, 255, 255, 0);
+    m_X            = 0;
+    m_Y            = 0;
+    m_Width        = -1;
+    m_Height       = -1;
+    m_OutputWidth  = -1;
+    m_OutputHeight = -1;
+    m_Letterbox    = true;
+    m_Scaler       = new ImageScaler();
+    image          = GUIHelper.getIcon(MOUSE_CURSOR);
+    if (image != null) {
+      m_Cursor        = image.getImage();
+      m_CursorOverlay = new CursorOverlay(m_Cursor);
+    }
   }
 
   /**
@@ -101,6 +135,7 @@ public abstract class AbstractScreenRecorder
     super.reset();
 
     m_ScreenPortion = null;
+    m_OutputSize    = null;
   }
 
   /**
@@ -205,6 +240,81 @@ public abstract class AbstractScreenRecorder
     return m_CaptureMouse;
   }
 
+  /**
+   * Sets the width of the encoded frames (-1 = width of screen portion,
+   * or according to aspect ratio if the height is set).
+   *
+   * @param value	the width
+   */
+  public void setOutputWidth(int value) {
+    if ((value == -1) || (value > 0))
+      m_OutputWidth = value;
+    else
+      printError("Output width must be -1 or > 0, provided: " + value);
+  }
+
+  /**
+   * Returns the width of the encoded frames (-1 = width of screen portion,
+   * or according to aspect ratio if the height is set).
+   *
+   * @return		the width
+   */
+  public int getOutputWidth() {
+    return m_OutputWidth;
+  }
+
+  /**
+   * Sets the height of the encoded frames (-1 = height of screen portion,
+   * or according to aspect ratio if the width is set).
+   *
+   * @param value	the height
+   */
+  public void setOutputHeight(int value) {
+    if ((value == -1) || (value > 0))
+      m_OutputHeight = value;
+    else
+      printError("Output height must be -1 or > 0, provided: " + value);
+  }
+
+  /**
+   * Returns the height of the encoded frames (-1 = height of screen portion,
+   * or according to aspect ratio if the width is set).
+   *
+   * @return		the height
+   */
+  public int getOutputHeight() {
+    return m_OutputHeight;
+  }
+
+  /**
+   * Sets whether to preserve the aspect ratio of the screen portion when
+   * scaling, by adding black bars.
+   *
+   * @param value	true if to letterbox
+   */
+  public void setLetterbox(boolean value) {
+    m_Letterbox = value;
+  }
+
+  /**
+   * Returns whether to preserve the aspect ratio of the screen portion when
+   * scaling, by adding black bars.
+   *
+   * @return		true if to letterbox
+   */
+  public boolean getLetterbox() {
+    return m_Letterbox;
+  }
+
+  /**
+   * Returns the size of the encoded frames.
+   *
+   * @return		the size, null if not set up
+   */
+  public Dimension getOutputSize() {
+    return m_OutputSize;
+  }
+
   /**
    * Calculates the screen portion to grab.
    *
@@ -232,6 +342,56 @@ public abstract class AbstractScreenRecorder
     return result;
   }
 
+  /**
+   * Calculates the size of the encoded frames. If only one of width and
+   * height is specified, the other one gets derived from the aspect ratio
+   * of the screen portion (rounded to an even number, as required by most
+   * codecs).
+   *
+   * @param portion	the screen portion to grab
+   * @return		the size
+   */
+  protected Dimension calcOutputSize(Rectangle portion) {
+    int		width;
+    int		height;
+
+    width  = m_OutputWidth;
+    height = m_OutputHeight;
+    if ((width == -1) && (height == -1)) {
+      width  = portion.width;
+      height = portion.height;
+    }
+    else if (width == -1) {
+      width = Math.max(2, (int) Math.round((double) portion.width * height / portion.height / 2) * 2);
+    }
+    else if (height == -1) {
+      height = Math.max(2, (int) Math.round((double) portion.height * width / portion.width / 2) * 2);
+    }
+
+    return new Dimension(width, height);
+  }
+
+  /**
+   * Returns whether the captured frames get scaled.
+   *
+   * @param portion	the screen portion to grab
+   * @param size	the size of the encoded frames
+   * @return		true if scaled
+   */
+  protected boolean isScaling(Rectangle portion, Dimension size) {
+    return (portion.width != size.width) || (portion.height != size.height);
+  }
+
+  /**
+   * Returns whether the frames get captured with java.awt.Robot, ie
+   * whether a robot has to be created in {@link #setUp()}.
+   *
+   * @return		true if a robot is required
+   */
+  protected boolean usesRobot() {
+    return true;
+  }
+
   /**
    * Performs a check of the setup.
    *
@@ -251,11 +411,14 @@ public abstract class AbstractScreenRecorder
       if (m_Height == 0)
 	return "Height must be -1 or > 0!";
       m_ScreenPortion = calcScreenPortion();
-      try {
-	m_Robot = new Robot();
-      }
-      catch (Exception e) {
-	return "Failed to instantiate robot: " + Utils.throwableToString(e);
+      m_OutputSize    = calcOutputSize(m_ScreenPortion);
+      if (usesRobot()) {
+	try {
+	  m_Robot = new Robot();
+	}
+	catch (Exception e) {
+	  return "Failed to instantiate robot: " + Utils.throwableToString(e);
+	}
       }
     }
 
@@ -274,70 +437,108 @@ public abstract class AbstractScreenRecorder
   }
 
   /**
-   * Writes the frame out to disk.
-   *
-   * @param frame	the frame
-   * @throws Exception	if writing fails
+   * Updates the cached pointer position. Keeps the last known position if
+   * the pointer cannot be located (eg on another screen device).
    */
-  protected abstract void writeFrame(BufferedImage frame) throws Exception;
+  protected void updatePointer() {
+    PointerInfo 	pointer;
+    Point		location;
+
+    pointer = MouseInfo.getPointerInfo();
+    if (pointer == null)
+      return;
+    location   = pointer.getLocation();
+    m_PointerX = location.x;
+    m_PointerY = location.y;
+  }
 
   /**
-   * Draws the cursor on the frame, if required.
+   * Draws the cursor on the frame, if required. Nothing gets drawn if the
+   * pointer is outside the captured screen portion. On scaled frames, the
+   * position gets scaled, but not the cursor itself, to keep it legible.
    *
    * @param frame	the frame to update
+   * @param portion	the screen portion the frame was captured from
+   * @param target	the area of the frame the screen portion got scaled into, null if not scaled
    * @return		the (potentially) updated frame
    */
-  protected BufferedImage drawCursor(BufferedImage frame) {
-    PointerInfo 	pointer;
-
-    if (m_CaptureMouse && (m_Cursor != null)) {
-      pointer = MouseInfo.getPointerInfo();
-      frame.getGraphics().drawImage(
-	m_Cursor,
-	(int) pointer.getLocation().getX() - m_X,
-	(int) pointer.getLocation().getY() - m_Y,
-	m_Cursor.getWidth(null),
-	m_Cursor.getHeight(null),
-	m_BackgroundColor,
-	null);
+  protected BufferedImage drawCursor(BufferedImage frame, Rectangle portion, Rectangle target) {
+    int		x;
+    int		y;
+
+    if (m_CaptureMouse && (m_CursorOverlay != null)) {
+      updatePointer();
+      x = m_PointerX - portion.x;
+      y = m_PointerY - portion.y;
+      if (target != null) {
+	if ((x < 0) || (y < 0) || (x >= portion.width) || (y >= portion.height))
+	  return frame;
+	x = target.x + (int) ((long) x * target.width / portion.width);
+	y = target.y + (int) ((long) y * target.height / portion.height);
+      }
+      m_CursorOverlay.draw(frame, x, y);
     }
 
     return frame;
   }
 
   /**
-   * Performs the actual grabbing of the frame.
+   * Turns the screenshot into a frame of the output size and image type,
+   * including the cursor.
    *
-   * @throws Exception	true if failed to grab frame
+   * @param screenshot	the screenshot to turn into a frame
+   * @param portion	the screen portion of the screenshot
+   * @param size	the size of the frame
+   * @param scaler	the scaler to use
+   * @param pooled	whether to obtain scaled or converted frames from the
+   *			image pool, ie whether they get encoded
+   * @return		the frame
    */
-  @Override
-  protected void doGrabFrame() throws Exception {
-    BufferedImage 	frame;
+  protected BufferedImage toFrame(BufferedImage screenshot, Rectangle portion, Dimension size, ImageScaler scaler, boolean pooled) {
+    BufferedImage	result;
+    Rectangle		target;
+
+    if (!isScaling(portion, size)) {
+      result = convertBufferedImage(screenshot, pooled);
+      drawCursor(result, portion, null);
+    }
+    else {
+      target = ImageScaler.calcTarget(portion.width, portion.height, size.width, size.height, m_Letterbox);
+      result = newImage(size.width, size.height, pooled);
+      scaler.scale(screenshot, result, target);
+      drawCursor(result, portion, target);
+    }
 
-    frame = m_Robot.createScreenCapture(m_ScreenPortion);
-    frame = convertBufferedImage(frame);
-    drawCursor(frame);
-    writeFrame(frame);
+    return result;
   }
 
   /**
-   * Performs the actual grabbing of the image.
+   * Performs the actual capturing of the frame.
+   *
+   * @return		the captured frame
+   * @throws Exception	if failed to capture frame
+   */
+  @Override
+  protected BufferedImage doCaptureFrame() throws Exception {
+    return toFrame(m_Robot.createScreenCapture(m_ScreenPortion), m_ScreenPortion, m_OutputSize, m_Scaler, true);
+  }
+
+  /**
+   * Performs the actual grabbing of the image. Uses its own scaler, as
+   * images can get grabbed while recording, and does not use the image
+   * pool, as the images don't get released.
    *
    * @return 		the image
    * @throws Exception	if failed to grab image
    */
   protected BufferedImage doGrabImage() throws Exception {
-    BufferedImage	result;
     Robot		robot;
     Rectangle 		portion;
 
     portion = calcScreenPortion();
     robot   = new Robot();
-    result  = robot.createScreenCapture(portion);
-    result  = convertBufferedImage(result);
-    drawCursor(result);
 
-    return result;
+    return toFrame(robot.createScreenCapture(portion), portion, calcOutputSize(portion), new ImageScaler(), false);
   }
 
   /**
@@ -348,6 +549,7 @@ public abstract class AbstractScreenRecorder
   public String toString() {
     return super.toString()
       + ", x=" + m_X + ", y=" + m_Y
-      + ", w=" + m_Width + ", h=" + m_Height;
+      + ", w=" + m_Width + ", h=" + m_Height
+      + ", outW=" + m_OutputWidth + ", outH=" + m_OutputHeight;
   }
 }
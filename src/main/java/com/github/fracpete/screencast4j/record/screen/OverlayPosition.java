@@ -0,0 +1,37 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * OverlayPosition.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.screen;
+
+/**
+ * The corner of the frame to place an overlay in.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public enum OverlayPosition {
+  /** the top-left corner. */
+  TOP_LEFT,
+  /** the top-right corner. */
+  TOP_RIGHT,
+  /** the bottom-left corner. */
+  BOTTOM_LEFT,
+  /** the bottom-right corner. */
+  BOTTOM_RIGHT,
+}
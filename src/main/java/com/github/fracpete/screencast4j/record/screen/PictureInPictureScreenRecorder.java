@@ -0,0 +1,516 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PictureInPictureScreenRecorder.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.screen;
+
+import com.github.fracpete.screencast4j.image.ImageScaler;
+import com.github.fracpete.screencast4j.image.PictureInPictureOverlay;
+import com.github.fracpete.screencast4j.record.webcam.SharedWebcam;
+import com.github.fracpete.screencast4j.record.webcam.WebcamBroker;
+import com.googlecode.jfilechooserbookmarks.core.Utils;
+import com.sun.management.OperatingSystemMXBean;
+import com.xuggle.mediatool.IMediaWriter;
+import com.xuggle.mediatool.ToolFactory;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the screen with the webcam blended into one of its corners
+ * (picture-in-picture), encoding a single video stream. The webcam gets
+ * obtained from the {@link WebcamBroker} in non-blocking mode, i.e., the
+ * most recent webcam image gets used for each screen frame. New webcam
+ * images get scaled once to the size of the overlay, which gets blended
+ * directly into the raster of each frame.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class PictureInPictureScreenRecorder
+  extends XuggleScreenRecorder {
+
+  /** the ID of the webcam to use. */
+  protected String m_WebcamID;
+
+  /** the size to use for the webcam. */
+  protected Dimension m_WebcamSize;
+
+  /** the corner to place the webcam in. */
+  protected OverlayPosition m_Position;
+
+  /** the width of the webcam as fraction of the width of the frame. */
+  protected double m_OverlayScale;
+
+  /** the distance of the webcam from the edges of the frame (pixels). */
+  protected int m_Margin;
+
+  /** the opacity of the webcam (0-1). */
+  protected double m_Opacity;
+
+  /** the webcam in use. */
+  protected SharedWebcam m_Webcam;
+
+  /** the overlay. */
+  protected PictureInPictureOverlay m_Overlay;
+
+  /** the x position of the overlay. */
+  protected int m_OverlayX;
+
+  /** the y position of the overlay. */
+  protected int m_OverlayY;
+
+  /** the webcam image currently in the overlay. */
+  protected BufferedImage m_LastWebcamImage;
+
+  /**
+   * Initializes the members.
+   */
+  @Override
+  protected void initialize() {
+    super.initialize();
+
+    m_WebcamID     = "";
+    m_WebcamSize   = new Dimension(320, 240);
+    m_Position     = OverlayPosition.BOTTOM_RIGHT;
+    m_OverlayScale = 0.25;
+    m_Margin       = 16;
+    m_Opacity      = 1.0;
+  }
+
+  /**
+   * Sets the ID of the webcam to use. Empty string for default.
+   *
+   * @param value	the ID
+   */
+  public void setWebcamID(String value) {
+    m_WebcamID = value;
+  }
+
+  /**
+   * Returns the ID of the webcam in use. Empty string for default.
+   *
+   * @return		the ID
+   */
+  public String getWebcamID() {
+    return m_WebcamID;
+  }
+
+  /**
+   * Sets the size to use for the webcam.
+   *
+   * @param value	the size
+   */
+  public void setWebcamSize(Dimension value) {
+    m_WebcamSize = value;
+  }
+
+  /**
+   * Returns the size in use for the webcam.
+   *
+   * @return		the size
+   */
+  public Dimension getWebcamSize() {
+    return m_WebcamSize;
+  }
+
+  /**
+   * Sets the corner to place the webcam in.
+   *
+   * @param value	the corner
+   */
+  public void setPosition(OverlayPosition value) {
+    m_Position = value;
+  }
+
+  /**
+   * Returns the corner to place the webcam in.
+   *
+   * @return		the corner
+   */
+  public OverlayPosition getPosition() {
+    return m_Position;
+  }
+
+  /**
+   * Sets the width of the webcam as fraction of the width of the frame.
+   *
+   * @param value	the fraction (0-1]
+   */
+  public void setOverlayScale(double value) {
+    if ((value > 0) && (value <= 1))
+      m_OverlayScale = value;
+    else
+      printError("Overlay scale must be in (0, 1], provided: " + value);
+  }
+
+  /**
+   * Returns the width of the webcam as fraction of the width of the frame.
+   *
+   * @return		the fraction
+   */
+  public double getOverlayScale() {
+    return m_OverlayScale;
+  }
+
+  /**
+   * Sets the distance of the webcam from the edges of the frame.
+   *
+   * @param value	the distance (pixels)
+   */
+  public void setMargin(int value) {
+    if (value >= 0)
+      m_Margin = value;
+    else
+      printError("Margin must be >= 0, provided: " + value);
+  }
+
+  /**
+   * Returns the distance of the webcam from the edges of the frame.
+   *
+   * @return		the distance (pixels)
+   */
+  public int getMargin() {
+    return m_Margin;
+  }
+
+  /**
+   * Sets the opacity of the webcam.
+   *
+   * @param value	the opacity (0-1)
+   */
+  public void setOpacity(double value) {
+    if ((value >= 0) && (value <= 1))
+      m_Opacity = value;
+    else
+      printError("Opacity must be in [0, 1], provided: " + value);
+  }
+
+  /**
+   * Returns the opacity of the webcam.
+   *
+   * @return		the opacity (0-1)
+   */
+  public double getOpacity() {
+    return m_Opacity;
+  }
+
+  /**
+   * Creates the overlay for the specified frame size and places it in the
+   * configured corner.
+   *
+   * @param width	the width of the frame
+   * @param height	the height of the frame
+   */
+  protected void initOverlay(int width, int height) {
+    int		w;
+    int		h;
+
+    w = Math.max(1, (int) Math.round(width * m_OverlayScale));
+    h = Math.max(1, (int) Math.round((double) w * m_WebcamSize.height / m_WebcamSize.width));
+    m_Overlay         = new PictureInPictureOverlay(w, h, m_Opacity);
+    m_LastWebcamImage = null;
+    switch (m_Position) {
+      case TOP_LEFT:
+	m_OverlayX = m_Margin;
+	m_OverlayY = m_Margin;
+	break;
+      case TOP_RIGHT:
+	m_OverlayX = width - w - m_Margin;
+	m_OverlayY = m_Margin;
+	break;
+      case BOTTOM_LEFT:
+	m_OverlayX = m_Margin;
+	m_OverlayY = height - h - m_Margin;
+	break;
+      case BOTTOM_RIGHT:
+	m_OverlayX = width - w - m_Margin;
+	m_OverlayY = height - h - m_Margin;
+	break;
+      default:
+	throw new IllegalStateException("Unhandled overlay position: " + m_Position);
+    }
+  }
+
+  /**
+   * Performs a check of the setup. The webcam gets acquired before the
+   * writer gets created, so that nothing is left open if that fails.
+   *
+   * @return		null if OK, otherwise error message
+   */
+  @Override
+  public String setUp() {
+    String	result;
+
+    WebcamBroker.getSingleton().release(m_Webcam);
+    try {
+      m_Webcam = WebcamBroker.getSingleton().acquire(m_WebcamID, m_WebcamSize, true);
+    }
+    catch (Exception e) {
+      m_Webcam = null;
+      return "Failed to open webcam: " + Utils.throwableToString(e);
+    }
+
+    result = super.setUp();
+
+    if (result == null) {
+      initOverlay(m_OutputSize.width, m_OutputSize.height);
+    }
+    else {
+      WebcamBroker.getSingleton().release(m_Webcam);
+      m_Webcam = null;
+    }
+
+    return result;
+  }
+
+  /**
+   * Blends the most recent webcam image into the frame. Only scales the
+   * webcam image if it changed since the last frame.
+   *
+   * @param frame	the frame to draw on
+   */
+  protected void drawWebcam(BufferedImage frame) {
+    BufferedImage	image;
+
+    if ((m_Webcam == null) || (m_Overlay == null))
+      return;
+
+    image = m_Webcam.getImage();
+    if ((image != null) && (image != m_LastWebcamImage)) {
+      m_Overlay.update(image);
+      m_LastWebcamImage = image;
+    }
+    m_Overlay.draw(frame, m_OverlayX, m_OverlayY);
+  }
+
+  /**
+   * Performs the actual capturing of the frame.
+   *
+   * @return		the captured frame
+   * @throws Exception	if failed to capture frame
+   */
+  @Override
+  protected BufferedImage doCaptureFrame() throws Exception {
+    BufferedImage	result;
+
+    result = super.doCaptureFrame();
+    if (result != null)
+      drawWebcam(result);
+
+    return result;
+  }
+
+  /**
+   * Performs the actual grabbing of the image.
+   *
+   * @return 		the image
+   * @throws Exception	if failed to grab image
+   */
+  @Override
+  protected BufferedImage doGrabImage() throws Exception {
+    BufferedImage	result;
+
+    result = super.doGrabImage();
+    if (result != null) {
+      // the overlay of an ongoing recording stays as is
+      if (!isRecording() && !isPaused())
+	initOverlay(result.getWidth(), result.getHeight());
+      if (m_Webcam == null)
+	m_Webcam = WebcamBroker.getSingleton().acquire(m_WebcamID, m_WebcamSize, true);
+      drawWebcam(result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Stops the recording process.
+   *
+   * @throws Exception	if stopping fails
+   */
+  @Override
+  protected void doStop() throws Exception {
+    super.doStop();
+    WebcamBroker.getSingleton().release(m_Webcam);
+    m_Webcam = null;
+  }
+
+  /**
+   * Releases the webcam as well.
+   */
+  @Override
+  public void cleanUp() {
+    super.cleanUp();
+    if (!isRecording() && !isPaused()) {
+      WebcamBroker.getSingleton().release(m_Webcam);
+      m_Webcam = null;
+    }
+  }
+
+  /**
+   * Benchmark: encodes synthetic screenshots and webcam images, once as
+   * separate screen and webcam streams, the way a screen and a webcam
+   * recorder would, and once with the webcam blended into the screen
+   * frames (a single stream). Outputs the CPU time per frame used for
+   * preparing the frames (converting, blending) and for encoding, and the
+   * CPU time saved by blending.
+   *
+   * @param frames	the number of frames per run
+   */
+  protected static void benchmark(int frames) throws Exception {
+    OperatingSystemMXBean		os;
+    PictureInPictureScreenRecorder	rec;
+    ImageScaler				scaler;
+    IMediaWriter			writer;
+    IMediaWriter			camWriter;
+    BufferedImage			screenshot;
+    BufferedImage			webcam;
+    BufferedImage			frame;
+    BufferedImage			camFrame;
+    Graphics2D				g;
+    Graphics2D				gw;
+    Rectangle				portion;
+    Dimension				camSize;
+    File				output;
+    File				camOutput;
+    int[][]				screens;
+    double[]				total;
+    long				cpu;
+    long				cpuFrame;
+    long				cpuEncode;
+    int					i;
+    int					n;
+
+    os        = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    output    = new File(System.getProperty("java.io.tmpdir") + File.separator + "pip-benchmark.mp4");
+    camOutput = new File(System.getProperty("java.io.tmpdir") + File.separator + "pip-benchmark-webcam.mp4");
+    camSize   = new Dimension(640, 480);
+    screens   = new int[][]{{1280, 720}, {1920, 1080}, {2560, 1440}};
+    webcam    = new BufferedImage(camSize.width, camSize.height, BufferedImage.TYPE_3BYTE_BGR);
+    gw        = webcam.createGraphics();
+
+    System.out.println("screen,webcam,mode,frame_msec,encode_msec,total_msec,saved_percent");
+    for (int[] screen: screens) {
+      portion    = new Rectangle(0, 0, screen[0], screen[1]);
+      screenshot = new BufferedImage(screen[0], screen[1], BufferedImage.TYPE_INT_RGB);
+      g          = screenshot.createGraphics();
+      g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 14));
+      for (i = 0; i < screen[1]; i += 18) {
+	g.setColor(new Color(i * 7919 % 0xFFFFFF));
+	g.drawString("The quick brown fox jumps over the lazy dog " + i, 10 + i % 200, i + 14);
+      }
+      total = new double[2];
+      for (i = 0; i < 2; i++) {
+	rec    = new PictureInPictureScreenRecorder();
+	rec.setWebcamSize(camSize);
+	rec.initOverlay(screen[0], screen[1]);
+	scaler = new ImageScaler();
+	writer = ToolFactory.makeWriter(output.getAbsolutePath());
+	writer.addVideoStream(0, 0, CAPTURE_FORMAT, screen[0], screen[1]);
+	rec.getEncoderSettings().apply(writer, 0);
+	camWriter = null;
+	if (i == 0) {
+	  camWriter = ToolFactory.makeWriter(camOutput.getAbsolutePath());
+	  camWriter.addVideoStream(0, 0, CAPTURE_FORMAT, camSize.width, camSize.height);
+	  rec.getEncoderSettings().apply(camWriter, 0);
+	}
+	cpuFrame  = 0;
+	cpuEncode = 0;
+	for (n = 0; n < frames; n++) {
+	  // a moving window on the screen and a new webcam image per frame
+	  g.setColor(new Color(n * 31 % 256, 128, 255 - n * 31 % 256));
+	  g.fillRect((n * 16) % (screen[0] / 2), (n * 9) % (screen[1] / 2), screen[0] / 4, screen[1] / 4);
+	  gw.setColor(new Color(255 - n * 31 % 256, n * 17 % 256, 128));
+	  gw.fillRect((n * 8) % (camSize.width / 2), (n * 6) % (camSize.height / 2), camSize.width / 2, camSize.height / 2);
+	  cpu   = os.getProcessCpuTime();
+	  frame = rec.toFrame(screenshot, portion, portion.getSize(), scaler, true);
+	  if (camWriter == null) {
+	    rec.m_Overlay.update(webcam);
+	    rec.m_Overlay.draw(frame, rec.m_OverlayX, rec.m_OverlayY);
+	    camFrame = null;
+	  }
+	  else {
+	    camFrame = rec.convertBufferedImage(webcam);
+	  }
+	  cpuFrame += os.getProcessCpuTime() - cpu;
+	  cpu       = os.getProcessCpuTime();
+	  writer.encodeVideo(0, frame, n * 40, TimeUnit.MILLISECONDS);
+	  if (camWriter != null)
+	    camWriter.encodeVideo(0, camFrame, n * 40, TimeUnit.MILLISECONDS);
+	  cpuEncode += os.getProcessCpuTime() - cpu;
+	  rec.releaseImage(frame);
+	  if (camFrame != webcam)
+	    rec.releaseImage(camFrame);
+	}
+	writer.close();
+	if (camWriter != null)
+	  camWriter.close();
+	total[i] = (cpuFrame + cpuEncode) / 1000000.0 / frames;
+	System.out.println(
+	  screen[0] + "x" + screen[1] + "," + camSize.width + "x" + camSize.height + ","
+	    + ((i == 0) ? "separate" : "pip") + ","
+	    + String.format("%.2f", cpuFrame / 1000000.0 / frames) + ","
+	    + String.format("%.2f", cpuEncode / 1000000.0 / frames) + ","
+	    + String.format("%.2f", total[i]) + ","
+	    + ((i == 0) ? "" : String.format("%.1f", (total[0] - total[1]) / total[0] * 100)));
+      }
+      g.dispose();
+    }
+    gw.dispose();
+    output.delete();
+    camOutput.delete();
+  }
+
+  /**
+   * Just for testing. Use "-benchmark [frames]" to compare the CPU time of
+   * blending the webcam into the screen frames with encoding screen and
+   * webcam as separate streams.
+   *
+   * @param args	the arguments
+   */
+  public static void main(String[] args) throws Exception {
+    if ((args.length > 0) && args[0].equals("-benchmark")) {
+      benchmark((args.length > 1) ? Integer.parseInt(args[1]) : 100);
+      return;
+    }
+
+    PictureInPictureScreenRecorder rec = new PictureInPictureScreenRecorder();
+    rec.setOutput(new File(System.getProperty("java.io.tmpdir") + File.separator + "screen-pip.mp4"));
+    rec.setCaptureMouse(true);
+    rec.setFramesPerSecond(25);
+    rec.setWebcamSize(new Dimension(640, 480));
+    String msg = rec.setUp();
+    if (msg != null) {
+      System.err.println(msg);
+      return;
+    }
+    rec.start();
+    for (int i = 0; i < 200; i++)
+      Thread.sleep(100);
+    rec.stop();
+    System.out.println("Encoded frames: " + rec.getNumEncodedFrames() + ", average encode time: " + rec.getAverageEncodeTime() + "ms");
+  }
+}
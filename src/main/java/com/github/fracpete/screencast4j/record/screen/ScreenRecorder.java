@@ -87,6 +87,54 @@ public interface ScreenRecorder
    */
   public int getHeight();
 
+  /**
+   * Sets the width of the encoded frames (-1 = width of screen portion,
+   * or according to aspect ratio if the height is set).
+   *
+   * @param value	the width
+   */
+  public void setOutputWidth(int value);
+
+  /**
+   * Returns the width of the encoded frames (-1 = width of screen portion,
+   * or according to aspect ratio if the height is set).
+   *
+   * @return		the width
+   */
+  public int getOutputWidth();
+
+  /**
+   * Sets the height of the encoded frames (-1 = height of screen portion,
+   * or according to aspect ratio if the width is set).
+   *
+   * @param value	the height
+   */
+  public void setOutputHeight(int value);
+
+  /**
+   * Returns the height of the encoded frames (-1 = height of screen portion,
+   * or according to aspect ratio if the width is set).
+   *
+   * @return		the height
+   */
+  public int getOutputHeight();
+
+  /**
+   * Sets whether to preserve the aspect ratio of the screen portion when
+   * scaling, by adding black bars.
+   *
+   * @param value	true if to letterbox
+   */
+  public void setLetterbox(boolean value);
+
+  /**
+   * Returns whether to preserve the aspect ratio of the screen portion when
+   * scaling, by adding black bars.
+   *
+   * @return		true if to letterbox
+   */
+  public boolean getLetterbox();
+
   /**
    * Sets whether to capture the mouse cursor.
    *
@@ -0,0 +1,342 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * X11GrabScreenRecorder.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.screen;
+
+import com.github.fracpete.screencast4j.image.ImageScaler;
+import com.github.fracpete.screencast4j.record.MissedFramePolicy;
+import com.googlecode.jfilechooserbookmarks.core.Utils;
+import com.xuggle.xuggler.ICodec;
+import com.xuggle.xuggler.IContainer;
+import com.xuggle.xuggler.IContainerFormat;
+import com.xuggle.xuggler.IError;
+import com.xuggle.xuggler.IMetaData;
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IStreamCoder;
+import com.xuggle.xuggler.IVideoPicture;
+import com.xuggle.xuggler.IVideoResampler;
+
+import java.awt.GraphicsEnvironment;
+import java.io.File;
+
+/**
+ * Records the screen of an X11 display using FFmpeg's x11grab input device
+ * rather than java.awt.Robot. The raw frames get decoded, converted into
+ * the pixel format of the encoder and encoded without ever creating a
+ * BufferedImage. The device also takes care of pacing and of drawing the
+ * mouse cursor. As frames get encoded straight away, spooling, encoding
+ * only changed frames and missed frame policies other than DUPLICATE are
+ * not supported. A sound recorder gets started, paused, resumed and
+ * stopped along with the reader. Scaling to the output size is done by
+ * FFmpeg as part of the pixel format conversion, which cannot add black
+ * bars, ie letterboxing is only possible if the aspect ratio doesn't
+ * change.
+ * <br>
+ * No robot gets created, ie the recorder works in a headless JVM as
+ * well, provided width and height of the screen portion are specified.
+ * <br>
+ * Uses the DISPLAY environment variable, eg for testing against Xvfb:
+ * <pre>
+ * Xvfb :99 -screen 0 1280x1024x24 &amp;
+ * DISPLAY=:99 java -cp ... com.github.fracpete.screencast4j.record.screen.X11GrabScreenRecorder
+ * </pre>
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class X11GrabScreenRecorder
+  extends XuggleScreenRecorder {
+
+  /** the name of the input format. */
+  public final static String INPUT_FORMAT = "x11grab";
+
+  /** the display to use if DISPLAY is not set. */
+  public final static String DEFAULT_DISPLAY = ":0.0";
+
+  /** the input container. */
+  protected IContainer m_Input;
+
+  /** the index of the video stream in the input. */
+  protected int m_StreamIndex;
+
+  /** the decoder for the raw frames. */
+  protected IStreamCoder m_Decoder;
+
+  /** the decoded picture. */
+  protected IVideoPicture m_RawPicture;
+
+  /** converts the raw frames into the encoder's pixel format. */
+  protected IVideoResampler m_Resampler;
+
+  /** the picture to encode. */
+  protected IVideoPicture m_Picture;
+
+  /** the thread reading from the display. */
+  protected Thread m_ReaderThread;
+
+  /** whether reading is active. */
+  protected volatile boolean m_Reading;
+
+  /**
+   * Returns the name of the X11 display to grab from.
+   *
+   * @return		the display, including screen portion offset
+   */
+  protected String getDisplay() {
+    String	result;
+
+    result = System.getenv("DISPLAY");
+    if ((result == null) || result.isEmpty())
+      result = DEFAULT_DISPLAY;
+
+    return result + "+" + m_ScreenPortion.x + "," + m_ScreenPortion.y;
+  }
+
+  /**
+   * Turns the Xuggler error code into a message.
+   *
+   * @param code	the error code
+   * @return		the message
+   */
+  protected String errorToString(int code) {
+    return IError.make(code).getDescription();
+  }
+
+  /**
+   * Opens the x11grab input.
+   *
+   * @return		null if OK, otherwise error message
+   */
+  protected String openInput() {
+    IContainerFormat	format;
+    IMetaData		options;
+    int			ret;
+    int			i;
+
+    format = IContainerFormat.make();
+    if (format.setInputFormat(INPUT_FORMAT) < 0)
+      return "Input format not supported by FFmpeg build: " + INPUT_FORMAT;
+
+    options = IMetaData.make();
+    options.setValue("video_size", m_ScreenPortion.width + "x" + m_ScreenPortion.height);
+    options.setValue("framerate", "" + m_FramesPerSecond);
+    options.setValue("draw_mouse", m_CaptureMouse ? "1" : "0");
+
+    m_Input = IContainer.make();
+    ret = m_Input.open(getDisplay(), IContainer.Type.READ, format, false, true, options, null);
+    if (ret < 0)
+      return "Failed to open display '" + getDisplay() + "': " + errorToString(ret);
+
+    m_StreamIndex = -1;
+    for (i = 0; i < m_Input.getNumStreams(); i++) {
+      if (m_Input.getStream(i).getStreamCoder().getCodecType() == ICodec.Type.CODEC_TYPE_VIDEO) {
+	m_StreamIndex = i;
+	m_Decoder     = m_Input.getStream(i).getStreamCoder();
+	break;
+      }
+    }
+    if (m_Decoder == null)
+      return "No video stream available from display: " + getDisplay();
+
+    ret = m_Decoder.open(null, null);
+    if (ret < 0)
+      return "Failed to open decoder: " + errorToString(ret);
+
+    m_RawPicture = IVideoPicture.make(m_Decoder.getPixelType(), m_Decoder.getWidth(), m_Decoder.getHeight());
+    m_Picture    = IVideoPicture.make(m_EncoderSettings.getPixelFormat(), m_OutputSize.width, m_OutputSize.height);
+    m_Resampler  = IVideoResampler.make(
+      m_OutputSize.width, m_OutputSize.height, m_EncoderSettings.getPixelFormat(),
+      m_Decoder.getWidth(), m_Decoder.getHeight(), m_Decoder.getPixelType());
+    if (m_Resampler == null)
+      return "Failed to create resampler for pixel format: " + m_Decoder.getPixelType();
+
+    return null;
+  }
+
+  /**
+   * Closes the x11grab input.
+   */
+  protected void closeInput() {
+    if (m_Decoder != null) {
+      m_Decoder.close();
+      m_Decoder = null;
+    }
+    if (m_Input != null) {
+      m_Input.close();
+      m_Input = null;
+    }
+    m_RawPicture = null;
+    m_Picture    = null;
+    m_Resampler  = null;
+  }
+
+  /**
+   * Returns whether the frames get captured with java.awt.Robot.
+   *
+   * @return		always false, the x11grab device captures the frames
+   */
+  @Override
+  protected boolean usesRobot() {
+    return false;
+  }
+
+  /**
+   * Performs a check of the setup.
+   *
+   * @return		null if OK, otherwise error message
+   */
+  @Override
+  public String setUp() {
+    String	result;
+
+    if (m_SpoolFrames)
+      return "Spooling is not supported, frames get encoded straight away!";
+    if (m_EncodeOnlyOnChange)
+      return "Encoding only changed frames is not supported, frames get encoded straight away!";
+    if (m_MissedFramePolicy != MissedFramePolicy.DUPLICATE)
+      return "Missed frame policy " + m_MissedFramePolicy + " is not supported, pacing is done by the " + INPUT_FORMAT + " device!";
+    // the size of the screen is only available via AWT
+    if (GraphicsEnvironment.isHeadless() && ((m_Width == -1) || (m_Height == -1)))
+      return "Width and height must be specified in a headless JVM!";
+
+    result = super.setUp();
+
+    if ((result == null) && isScaling(m_ScreenPortion, m_OutputSize) && m_Letterbox) {
+      if (!ImageScaler.calcTarget(m_ScreenPortion.width, m_ScreenPortion.height, m_OutputSize.width, m_OutputSize.height, true).getSize().equals(m_OutputSize))
+	result = "Letterboxing is not supported, either adjust the output size to the aspect ratio of the screen portion or turn it off!";
+    }
+
+    if (result == null) {
+      result = openInput();
+      if (result != null) {
+	closeInput();
+	discardWriter();
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Reads the frames from the display and encodes them. Frames that arrive
+   * while paused get discarded.
+   */
+  protected void readFrames() {
+    IPacket	packet;
+    int		offset;
+    int		ret;
+    long	start;
+
+    packet = IPacket.make();
+    while (m_Reading && (m_Input.readNextPacket(packet) >= 0)) {
+      if (packet.getStreamIndex() != m_StreamIndex)
+	continue;
+      start  = System.nanoTime();
+      offset = 0;
+      while (offset < packet.getSize()) {
+	ret = m_Decoder.decodeVideo(m_RawPicture, packet, offset);
+	if (ret < 0) {
+	  printError("read", "Failed to decode frame: " + errorToString(ret));
+	  break;
+	}
+	offset += ret;
+	if (!m_RawPicture.isComplete() || !isRecording())
+	  continue;
+	m_NumCapturedFrames++;
+	try {
+	  if (m_Resampler.resample(m_Picture, m_RawPicture) < 0) {
+	    printError("read", "Failed to convert frame");
+	    continue;
+	  }
+	  m_Picture.setTimeStamp(getElapsedTime() * 1000);
+	  synchronized(m_Writer) {
+	    if (!isStopped())
+	      m_Writer.encodeVideo(0, m_Picture);
+	  }
+	  m_EncodeTime += System.nanoTime() - start;
+	  m_NumEncodedFrames++;
+	}
+	catch (Exception e) {
+	  printError("read", "Failed to encode frame: " + Utils.throwableToString(e));
+	}
+      }
+    }
+  }
+
+  /**
+   * Starts the actual recording process, including the sound recorder.
+   * Does not start the encoder and grabber threads of the superclass, as
+   * the reader encodes the frames itself.
+   *
+   * @throws Exception	if starting of recording fails
+   */
+  @Override
+  protected void doStart() throws Exception {
+    String	msg;
+
+    m_Reading      = true;
+    m_ReaderThread = new Thread(this::readFrames, getClass().getSimpleName() + "-reader");
+    m_ReaderThread.start();
+
+    if (m_SoundRecorder != null) {
+      msg = m_SoundRecorder.start();
+      if (msg != null) {
+	doStop();
+	throw new IllegalStateException("Failed to start sound recorder: " + msg);
+      }
+    }
+  }
+
+  /**
+   * Stops the recording process, including the sound recorder (see
+   * {@link XuggleScreenRecorder#doStop()}).
+   *
+   * @throws Exception	if stopping fails
+   */
+  @Override
+  protected void doStop() throws Exception {
+    m_Reading = false;
+    m_ReaderThread.join();
+    m_ReaderThread = null;
+    closeInput();
+    super.doStop();
+  }
+
+  /**
+   * Just for testing.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) throws Exception {
+    X11GrabScreenRecorder rec = new X11GrabScreenRecorder();
+    rec.setOutput(new File(System.getProperty("java.io.tmpdir") + File.separator + "screen-x11grab.mp4"));
+    rec.setCaptureMouse(true);
+    rec.setFramesPerSecond(25);
+    String msg = rec.setUp();
+    if (msg != null) {
+      System.err.println(msg);
+      return;
+    }
+    rec.start();
+    for (int i = 0; i < 200; i++)
+      Thread.sleep(100);
+    rec.stop();
+    System.out.println("Encoded frames: " + rec.getNumEncodedFrames());
+  }
+}
@@ -20,17 +20,30 @@
 
 package com.github.fracpete.screencast4j.record.screen;
 
+import com.github.fracpete.screencast4j.image.ImageScaler;
+import com.github.fracpete.screencast4j.record.sound.XuggleSoundRecorder;
+import com.sun.management.OperatingSystemMXBean;
 import com.xuggle.mediatool.IMediaWriter;
 import com.xuggle.mediatool.ToolFactory;
 import com.xuggle.xuggler.ICodec;
 import com.xuggle.xuggler.ICodec.ID;
 
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Records the screen.
+ * Records the screen. Optionally, a sound recorder can be attached, whose
+ * audio gets stored as additional stream in the same file (see
+ * {@link #setSoundRecorder(XuggleSoundRecorder)}). The sound recorder
+ * shares the clock and gets started, paused, resumed and stopped along
+ * with this recorder. Not available when encoding after recording.
  *
  * @author FracPete (fracpete at waikato dot ac dot nz)
  */
@@ -40,9 +53,33 @@ public class XuggleScreenRecorder
   /** the format used for capturing the video stream. */
   public final static ICodec.ID CAPTURE_FORMAT = ID.CODEC_ID_H264;
 
+  /** the index of the audio stream. */
+  public final static int AUDIO_STREAM = 1;
+
   /** the writer in use. */
   protected IMediaWriter m_Writer;
 
+  /** the sound recorder to store the audio with the video, null if none. */
+  protected XuggleSoundRecorder m_SoundRecorder;
+
+  /**
+   * Sets the sound recorder whose audio to store in the same file.
+   *
+   * @param value	the recorder, null for video only
+   */
+  public void setSoundRecorder(XuggleSoundRecorder value) {
+    m_SoundRecorder = value;
+  }
+
+  /**
+   * Returns the sound recorder whose audio gets stored in the same file.
+   *
+   * @return		the recorder, null for video only
+   */
+  public XuggleSoundRecorder getSoundRecorder() {
+    return m_SoundRecorder;
+  }
+
   /**
    * Returns the type of BufferedImage to create.
    *
@@ -70,54 +107,252 @@ public class XuggleScreenRecorder
   @Override
   public String setUp() {
     String		result;
+    String		msg;
 
     result = super.setUp();
 
+    if ((result == null) && (m_SoundRecorder != null) && m_SpoolFrames)
+      result = "Sound cannot be stored with the video when encoding after recording!";
+
     if (result == null) {
       m_Writer = ToolFactory.makeWriter(m_Output.getAbsolutePath());
-      m_Writer.addVideoStream(0, 0, CAPTURE_FORMAT, m_ScreenPortion.width, m_ScreenPortion.height);
+      m_Writer.addVideoStream(0, 0, CAPTURE_FORMAT, m_OutputSize.width, m_OutputSize.height);
+      msg = applyEncoderSettings(m_Writer, 0);
+      if (msg != null)
+	printError(msg);
+      // all streams must be present before the first frame gets written
+      if (m_SoundRecorder != null) {
+	m_SoundRecorder.setClock(getClock());
+	m_SoundRecorder.setSharedWriter(m_Writer, AUDIO_STREAM, this);
+	msg = m_SoundRecorder.setUp();
+	if (msg != null) {
+	  discardWriter();
+	  result = "Failed to set up sound recorder: " + msg;
+	}
+      }
     }
 
     return result;
   }
 
   /**
-   * Stops the recording process.
+   * Starts the recording process, including the sound recorder.
+   *
+   * @throws Exception	if starting of recording fails
+   */
+  @Override
+  protected void doStart() throws Exception {
+    String	msg;
+
+    super.doStart();
+
+    if (m_SoundRecorder != null) {
+      msg = m_SoundRecorder.start();
+      if (msg != null) {
+	super.doStop();
+	throw new IllegalStateException("Failed to start sound recorder: " + msg);
+      }
+    }
+  }
+
+  /**
+   * Stops the recording process. The sound recorder gets stopped first,
+   * as the writer gets closed afterwards.
    *
    * @throws Exception	if stopping fails
    */
   @Override
   protected void doStop() throws Exception {
+    String	msg;
+
+    if ((m_SoundRecorder != null) && (m_SoundRecorder.isRecording() || m_SoundRecorder.isPaused())) {
+      msg = m_SoundRecorder.stop();
+      if (msg != null)
+	printError("stop", "Failed to stop sound recorder: " + msg);
+    }
+
     super.doStop();
+  }
+
+  /**
+   * Pauses the recording process, including the sound recorder.
+   *
+   * @throws Exception	if pausing fails
+   */
+  @Override
+  protected void doPause() throws Exception {
+    super.doPause();
+    if (m_SoundRecorder != null)
+      m_SoundRecorder.pause();
+  }
+
+  /**
+   * Resumes the recording process, including the sound recorder.
+   *
+   * @throws Exception	if resuming fails
+   */
+  @Override
+  protected void doResume() throws Exception {
+    super.doResume();
+    if (m_SoundRecorder != null)
+      m_SoundRecorder.resume();
+  }
+
+  /**
+   * Cleans up the sound recorder as well.
+   */
+  @Override
+  public void cleanUp() {
+    super.cleanUp();
+    if (m_SoundRecorder != null)
+      m_SoundRecorder.cleanUp();
+  }
+
+  /**
+   * Closes the writer once all frames have been written.
+   *
+   * @throws Exception	if closing fails
+   */
+  @Override
+  protected void closeWriter() throws Exception {
+    if (m_Writer == null)
+      return;
     synchronized(m_Writer) {
       m_Writer.close();
     }
     m_Writer = null;
   }
 
+  /**
+   * Closes the writer after the set up failed, ignoring any errors.
+   */
+  protected void discardWriter() {
+    try {
+      closeWriter();
+    }
+    catch (Exception e) {
+      // ignored
+    }
+    m_Writer = null;
+  }
+
   /**
    * Writes the frame out to disk.
    *
    * @param frame	the frame
+   * @param timestamp	the timestamp of the frame (msec)
+   * @param keyFrame	whether to force a key frame
    * @throws Exception	if writing fails
    */
-  protected void writeFrame(BufferedImage frame) throws Exception {
+  @Override
+  protected void writeFrame(BufferedImage frame, long timestamp, boolean keyFrame) throws Exception {
     synchronized(m_Writer) {
-      if (!isStopped())
-	m_Writer.encodeVideo(0, frame, System.currentTimeMillis() - m_StartTime - m_CumulativePause, TimeUnit.MILLISECONDS);
+      encodeVideo(m_Writer, frame, timestamp, keyFrame);
+    }
+  }
+
+  /**
+   * Benchmark: turns synthetic screenshots into frames and encodes them,
+   * once at the size of the screenshot and once scaled to the output size,
+   * for common pairs of resolutions. Outputs the CPU time per frame used
+   * for converting/scaling and for encoding, and the CPU time saved by
+   * scaling.
+   *
+   * @param frames	the number of frames per run
+   */
+  protected static void benchmark(int frames) throws Exception {
+    OperatingSystemMXBean	os;
+    XuggleScreenRecorder	rec;
+    ImageScaler			scaler;
+    IMediaWriter		writer;
+    BufferedImage		screenshot;
+    BufferedImage		frame;
+    Graphics2D			g;
+    Rectangle			portion;
+    Dimension			size;
+    File			output;
+    int[][]			pairs;
+    double[]			total;
+    long			cpu;
+    long			cpuFrame;
+    long			cpuEncode;
+    int				i;
+    int				n;
+
+    os     = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    output = new File(System.getProperty("java.io.tmpdir") + File.separator + "scaling-benchmark.mp4");
+    // screen width/height, output width/height
+    pairs  = new int[][]{
+      {3840, 2160, 1920, 1080}, {3840, 2160, 1280, 720}, {2560, 1440, 1920, 1080},
+      {1920, 1080, 1280, 720}, {2560, 1600, 1920, 1080}};
+
+    System.out.println("screen,output,frame_msec,encode_msec,total_msec,saved_percent");
+    for (int[] pair: pairs) {
+      portion    = new Rectangle(0, 0, pair[0], pair[1]);
+      screenshot = new BufferedImage(pair[0], pair[1], BufferedImage.TYPE_INT_RGB);
+      g          = screenshot.createGraphics();
+      g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 14));
+      for (i = 0; i < pair[1]; i += 18) {
+	g.setColor(new Color(i * 7919 % 0xFFFFFF));
+	g.drawString("The quick brown fox jumps over the lazy dog " + i, 10 + i % 200, i + 14);
+      }
+      total = new double[2];
+      for (i = 0; i < 2; i++) {
+	rec    = new XuggleScreenRecorder();
+	scaler = new ImageScaler();
+	size   = (i == 0) ? portion.getSize() : new Dimension(pair[2], pair[3]);
+	writer = ToolFactory.makeWriter(output.getAbsolutePath());
+	writer.addVideoStream(0, 0, CAPTURE_FORMAT, size.width, size.height);
+	rec.getEncoderSettings().apply(writer, 0);
+	cpuFrame  = 0;
+	cpuEncode = 0;
+	for (n = 0; n < frames; n++) {
+	  // a moving window, similar to dragging
+	  g.setColor(new Color(n * 31 % 256, 128, 255 - n * 31 % 256));
+	  g.fillRect((n * 16) % (pair[0] / 2), (n * 9) % (pair[1] / 2), pair[0] / 4, pair[1] / 4);
+	  cpu       = os.getProcessCpuTime();
+	  frame     = rec.toFrame(screenshot, portion, size, scaler, true);
+	  cpuFrame += os.getProcessCpuTime() - cpu;
+	  cpu        = os.getProcessCpuTime();
+	  writer.encodeVideo(0, frame, n * 40, TimeUnit.MILLISECONDS);
+	  cpuEncode += os.getProcessCpuTime() - cpu;
+	  rec.releaseImage(frame);
+	}
+	writer.close();
+	total[i] = (cpuFrame + cpuEncode) / 1000000.0 / frames;
+	System.out.println(
+	  pair[0] + "x" + pair[1] + "," + size.width + "x" + size.height + ","
+	    + String.format("%.2f", cpuFrame / 1000000.0 / frames) + ","
+	    + String.format("%.2f", cpuEncode / 1000000.0 / frames) + ","
+	    + String.format("%.2f", total[i]) + ","
+	    + ((i == 0) ? "" : String.format("%.1f", (total[0] - total[1]) / total[0] * 100)));
+      }
+      g.dispose();
     }
+    output.delete();
   }
 
   /**
-   * Just for testing.
+   * Just for testing. Use "-sound" as first argument to store sound as well.
+   * Use "-benchmark [frames]" to compare the CPU time of encoding at screen
+   * resolution with scaling to lower resolutions first.
    *
-   * @param args	ignored
+   * @param args	the arguments
    */
   public static void main(String[] args) throws Exception {
+    if ((args.length > 0) && args[0].equals("-benchmark")) {
+      benchmark((args.length > 1) ? Integer.parseInt(args[1]) : 100);
+      return;
+    }
+
     XuggleScreenRecorder rec = new XuggleScreenRecorder();
     rec.setOutput(new File(System.getProperty("java.io.tmpdir") + File.separator + "screen.ts"));
     rec.setCaptureMouse(true);
     rec.setFramesPerSecond(25);
+    if ((args.length > 0) && args[0].equals("-sound")) {
+      rec.setOutput(new File(System.getProperty("java.io.tmpdir") + File.separator + "screen.mp4"));
+      rec.setSoundRecorder(new XuggleSoundRecorder());
+    }
     rec.setUp();
     rec.start();
     for (int i = 0; i < 200; i++)
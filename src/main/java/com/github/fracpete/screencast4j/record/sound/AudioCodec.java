@@ -0,0 +1,84 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * AudioCodec.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.sound;
+
+import com.xuggle.xuggler.ICodec;
+
+/**
+ * The codecs for compressing audio on the fly.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public enum AudioCodec {
+  /** lossy AAC in an MPEG-4 container. */
+  AAC(ICodec.ID.CODEC_ID_AAC, "m4a", true),
+  /** lossless FLAC. */
+  FLAC(ICodec.ID.CODEC_ID_FLAC, "flac", false);
+
+  /** the Xuggle codec. */
+  private final ICodec.ID m_ID;
+
+  /** the file extension. */
+  private final String m_Extension;
+
+  /** whether the codec is lossy. */
+  private final boolean m_Lossy;
+
+  /**
+   * Initializes the codec.
+   *
+   * @param id		the Xuggle codec
+   * @param extension	the file extension (no dot)
+   * @param lossy	whether the codec is lossy
+   */
+  AudioCodec(ICodec.ID id, String extension, boolean lossy) {
+    m_ID        = id;
+    m_Extension = extension;
+    m_Lossy     = lossy;
+  }
+
+  /**
+   * Returns the Xuggle codec.
+   *
+   * @return		the codec
+   */
+  public ICodec.ID getID() {
+    return m_ID;
+  }
+
+  /**
+   * Returns the file extension to use.
+   *
+   * @return		the extension (no dot)
+   */
+  public String getExtension() {
+    return m_Extension;
+  }
+
+  /**
+   * Returns whether the codec is lossy, ie whether the bit rate applies.
+   *
+   * @return		true if lossy
+   */
+  public boolean isLossy() {
+    return m_Lossy;
+  }
+}
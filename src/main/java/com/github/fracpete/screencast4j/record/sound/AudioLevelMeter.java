@@ -0,0 +1,262 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * AudioLevelMeter.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.sound;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Determines peak and RMS level of chunks of PCM samples, directly on the
+ * bytes and without creating any objects. The levels of the most recent
+ * chunk are published as a single value, ie other threads (eg the GUI)
+ * can poll them cheaply and always obtain a consistent pair.
+ * <br>
+ * If the peak level stays below the silence threshold for the specified
+ * duration of audio, the meter signals silence (see {@link #isSilent()}),
+ * eg when the microphone is muted or unplugged.
+ * <br>
+ * Supports 8 bit unsigned and 16, 24 and 32 bit signed little-endian
+ * samples.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class AudioLevelMeter {
+
+  /** the format of the samples. */
+  protected AudioFormat m_Format;
+
+  /** the number of bytes per sample. */
+  protected int m_BytesPerSample;
+
+  /** the maximum absolute sample value. */
+  protected double m_FullScale;
+
+  /** the peak level below which audio counts as silence (0-1). */
+  protected double m_SilenceThreshold;
+
+  /** the duration of silence after which to signal silence (sec). */
+  protected double m_SilenceDuration;
+
+  /** the most recent levels, peak in the upper and RMS in the lower half (float bits). */
+  protected final AtomicLong m_Levels;
+
+  /** the number of consecutive silent frames. */
+  protected volatile long m_SilentFrames;
+
+  /**
+   * Initializes the meter.
+   *
+   * @param format	the format of the samples
+   */
+  public AudioLevelMeter(AudioFormat format) {
+    m_Format           = format;
+    m_BytesPerSample   = format.getSampleSizeInBits() / 8;
+    m_FullScale        = 1L << (format.getSampleSizeInBits() - 1);
+    m_SilenceThreshold = 0.001;
+    m_SilenceDuration  = 5.0;
+    m_Levels           = new AtomicLong();
+  }
+
+  /**
+   * Sets the peak level below which audio counts as silence.
+   *
+   * @param value	the level (0-1), default is 0.001 (-60dBFS)
+   */
+  public void setSilenceThreshold(double value) {
+    m_SilenceThreshold = value;
+  }
+
+  /**
+   * Returns the peak level below which audio counts as silence.
+   *
+   * @return		the level (0-1)
+   */
+  public double getSilenceThreshold() {
+    return m_SilenceThreshold;
+  }
+
+  /**
+   * Sets the duration of silence after which to signal silence.
+   *
+   * @param value	the duration (sec)
+   */
+  public void setSilenceDuration(double value) {
+    m_SilenceDuration = value;
+  }
+
+  /**
+   * Returns the duration of silence after which to signal silence.
+   *
+   * @return		the duration (sec)
+   */
+  public double getSilenceDuration() {
+    return m_SilenceDuration;
+  }
+
+  /**
+   * Returns the sample at the specified position.
+   *
+   * @param data	the samples
+   * @param pos		the position of the sample
+   * @return		the sample
+   */
+  protected int getSample(byte[] data, int pos) {
+    switch (m_BytesPerSample) {
+      case 1:
+	return (data[pos] & 0xFF) - 128;
+      case 2:
+	return (data[pos] & 0xFF) | (data[pos + 1] << 8);
+      case 3:
+	return (data[pos] & 0xFF) | ((data[pos + 1] & 0xFF) << 8) | (data[pos + 2] << 16);
+      default:
+	return (data[pos] & 0xFF) | ((data[pos + 1] & 0xFF) << 8) | ((data[pos + 2] & 0xFF) << 16) | (data[pos + 3] << 24);
+    }
+  }
+
+  /**
+   * Determines the levels of the chunk and publishes them.
+   *
+   * @param data	the samples
+   * @param offset	the offset of the chunk
+   * @param length	the length of the chunk in bytes
+   */
+  public void process(byte[] data, int offset, int length) {
+    int		pos;
+    int		end;
+    long	sample;
+    long	max;
+    double	sum;
+    int		count;
+    float	peak;
+    float	rms;
+
+    end   = offset + length;
+    max   = 0;
+    sum   = 0;
+    count = 0;
+    for (pos = offset; pos < end; pos += m_BytesPerSample) {
+      sample = getSample(data, pos);
+      if (sample < 0)
+	sample = -sample;
+      if (sample > max)
+	max = sample;
+      sum += (double) sample * sample;
+      count++;
+    }
+    if (count == 0)
+      return;
+
+    peak = (float) Math.min(1.0, max / m_FullScale);
+    rms  = (float) Math.min(1.0, Math.sqrt(sum / count) / m_FullScale);
+    m_Levels.set(((long) Float.floatToIntBits(peak) << 32) | (Float.floatToIntBits(rms) & 0xFFFFFFFFL));
+    if (peak < m_SilenceThreshold)
+      m_SilentFrames += count / m_Format.getChannels();
+    else
+      m_SilentFrames = 0;
+  }
+
+  /**
+   * Returns the levels of the most recent chunk as a single value, to be
+   * decoded with {@link #getPeak(long)} and {@link #getRMS(long)}.
+   *
+   * @return		the levels
+   */
+  public long getLevels() {
+    return m_Levels.get();
+  }
+
+  /**
+   * Extracts the peak level.
+   *
+   * @param levels	the levels
+   * @return		the peak level (0-1)
+   * @see		#getLevels()
+   */
+  public static float getPeak(long levels) {
+    return Float.intBitsToFloat((int) (levels >>> 32));
+  }
+
+  /**
+   * Extracts the RMS level.
+   *
+   * @param levels	the levels
+   * @return		the RMS level (0-1)
+   * @see		#getLevels()
+   */
+  public static float getRMS(long levels) {
+    return Float.intBitsToFloat((int) levels);
+  }
+
+  /**
+   * Returns the peak level of the most recent chunk.
+   *
+   * @return		the level (0-1)
+   */
+  public float getPeak() {
+    return getPeak(getLevels());
+  }
+
+  /**
+   * Returns the RMS level of the most recent chunk.
+   *
+   * @return		the level (0-1)
+   */
+  public float getRMS() {
+    return getRMS(getLevels());
+  }
+
+  /**
+   * Returns the duration of the silence so far.
+   *
+   * @return		the duration (sec), 0 if not silent
+   */
+  public double getSilenceTime() {
+    return m_SilentFrames / m_Format.getFrameRate();
+  }
+
+  /**
+   * Returns whether the audio has been silent for at least the silence
+   * duration.
+   *
+   * @return		true if silent
+   */
+  public boolean isSilent() {
+    return getSilenceTime() >= m_SilenceDuration;
+  }
+
+  /**
+   * Clears the levels and the silence.
+   */
+  public void reset() {
+    m_Levels.set(0);
+    m_SilentFrames = 0;
+  }
+
+  /**
+   * Turns the level into decibels relative to full scale.
+   *
+   * @param level	the level (0-1)
+   * @return		the level (dBFS), negative infinity for 0
+   */
+  public static double toDecibels(double level) {
+    return 20.0 * Math.log10(level);
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * AudioRingBuffer.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.sound;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free ring buffer for samples, with a single thread writing and a
+ * single thread reading. The writer never blocks: if there is not enough
+ * space, the samples get dropped and counted. Reads and writes are in
+ * whole frames.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class AudioRingBuffer {
+
+  /** the samples. */
+  protected final byte[] m_Data;
+
+  /** the size of a frame in bytes. */
+  protected final int m_FrameSize;
+
+  /** the total number of bytes written. */
+  protected volatile long m_Written;
+
+  /** the total number of bytes read. */
+  protected volatile long m_Read;
+
+  /** whether no more samples get written. */
+  protected volatile boolean m_Closed;
+
+  /** the thread reading from the buffer. */
+  protected volatile Thread m_Reader;
+
+  /** the number of writes that did not fit. */
+  protected volatile long m_NumOverflows;
+
+  /** the number of bytes dropped. */
+  protected volatile long m_NumDroppedBytes;
+
+  /** the maximum number of bytes that were waiting to be read. */
+  protected volatile int m_MaxFill;
+
+  /**
+   * Initializes the buffer.
+   *
+   * @param capacity	the capacity in bytes, gets rounded down to whole frames
+   * @param frameSize	the size of a frame in bytes
+   */
+  public AudioRingBuffer(int capacity, int frameSize) {
+    if (capacity < frameSize)
+      throw new IllegalArgumentException("Capacity must be at least one frame (" + frameSize + "), provided: " + capacity);
+    m_FrameSize = frameSize;
+    m_Data      = new byte[capacity / frameSize * frameSize];
+  }
+
+  /**
+   * Returns the capacity.
+   *
+   * @return		the capacity in bytes
+   */
+  public int getCapacity() {
+    return m_Data.length;
+  }
+
+  /**
+   * Returns the number of bytes waiting to be read.
+   *
+   * @return		the number of bytes
+   */
+  public int available() {
+    return (int) (m_Written - m_Read);
+  }
+
+  /**
+   * Appends the samples, unless there is not enough space.
+   *
+   * @param data	the samples, from position to limit
+   * @return		true if written, false if dropped
+   */
+  public boolean write(ByteBuffer data) {
+    int		length;
+    int		pos;
+    int		first;
+    int		fill;
+    Thread	reader;
+
+    length = data.remaining();
+    if (m_Closed || (length > m_Data.length - available())) {
+      m_NumOverflows++;
+      m_NumDroppedBytes += length;
+      data.position(data.limit());
+      return false;
+    }
+
+    pos   = (int) (m_Written % m_Data.length);
+    first = Math.min(length, m_Data.length - pos);
+    data.get(m_Data, pos, first);
+    if (first < length)
+      data.get(m_Data, 0, length - first);
+    // publishes the samples to the reader
+    m_Written += length;
+
+    fill = available();
+    if (fill > m_MaxFill)
+      m_MaxFill = fill;
+    reader = m_Reader;
+    if (reader != null)
+      LockSupport.unpark(reader);
+
+    return true;
+  }
+
+  /**
+   * Returns the total number of bytes written so far.
+   *
+   * @return		the number of bytes
+   */
+  public long getNumWritten() {
+    return m_Written;
+  }
+
+  /**
+   * Returns the total number of bytes read (or skipped) so far.
+   *
+   * @return		the number of bytes
+   */
+  public long getNumRead() {
+    return m_Read;
+  }
+
+  /**
+   * Waits until the requested amount is available, the buffer got closed
+   * or the timeout expired.
+   *
+   * @param length	the number of bytes to wait for
+   * @param timeout	the maximum time to wait (nsec)
+   * @return		the number of bytes available
+   * @throws InterruptedException	if interrupted while waiting
+   */
+  public int await(int length, long timeout) throws InterruptedException {
+    long	deadline;
+    long	remaining;
+
+    m_Reader = Thread.currentThread();
+    deadline = System.nanoTime() + timeout;
+    while ((available() < length) && !m_Closed) {
+      remaining = deadline - System.nanoTime();
+      if (remaining <= 0)
+	break;
+      LockSupport.parkNanos(this, remaining);
+      if (Thread.interrupted())
+	throw new InterruptedException();
+    }
+
+    return available();
+  }
+
+  /**
+   * Reads samples, waiting until the requested amount is available, the
+   * buffer got closed or the timeout expired.
+   *
+   * @param dest	the array to read into
+   * @param offset	the offset in the array
+   * @param length	the maximum number of bytes to read
+   * @param timeout	the maximum time to wait (nsec)
+   * @return		the number of bytes read (whole frames), -1 if closed and empty
+   * @throws InterruptedException	if interrupted while waiting
+   */
+  public int read(byte[] dest, int offset, int length, long timeout) throws InterruptedException {
+    int		result;
+    int		pos;
+    int		first;
+
+    result = Math.min(await(length, timeout), length) / m_FrameSize * m_FrameSize;
+    if (result == 0)
+      return (m_Closed && (available() == 0)) ? -1 : 0;
+
+    pos   = (int) (m_Read % m_Data.length);
+    first = Math.min(result, m_Data.length - pos);
+    System.arraycopy(m_Data, pos, dest, offset, first);
+    if (first < result)
+      System.arraycopy(m_Data, 0, dest, offset + first, result - first);
+    // frees the space for the writer
+    m_Read += result;
+
+    return result;
+  }
+
+  /**
+   * Discards samples that are waiting, without copying them.
+   *
+   * @param length	the maximum number of bytes to discard
+   * @return		the number of bytes discarded (whole frames)
+   */
+  public int skip(int length) {
+    int		result;
+
+    result = Math.min(available(), length) / m_FrameSize * m_FrameSize;
+    // frees the space for the writer
+    m_Read += result;
+
+    return result;
+  }
+
+  /**
+   * Signals that no more samples get written. The reader can still read
+   * the samples that are waiting.
+   */
+  public void close() {
+    Thread	reader;
+
+    m_Closed = true;
+    reader   = m_Reader;
+    if (reader != null)
+      LockSupport.unpark(reader);
+  }
+
+  /**
+   * Returns whether the buffer got closed.
+   *
+   * @return		true if closed
+   */
+  public boolean isClosed() {
+    return m_Closed;
+  }
+
+  /**
+   * Returns the number of writes that got dropped due to lack of space.
+   *
+   * @return		the number of overflows
+   */
+  public long getNumOverflows() {
+    return m_NumOverflows;
+  }
+
+  /**
+   * Returns the number of bytes that got dropped due to lack of space.
+   *
+   * @return		the number of bytes
+   */
+  public long getNumDroppedBytes() {
+    return m_NumDroppedBytes;
+  }
+
+  /**
+   * Returns the maximum number of bytes that were waiting to be read.
+   *
+   * @return		the number of bytes
+   */
+  public int getMaxFill() {
+    return m_MaxFill;
+  }
+}
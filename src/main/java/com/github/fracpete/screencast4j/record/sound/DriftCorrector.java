@@ -0,0 +1,385 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DriftCorrector.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.sound;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Measures the actual sample rate of a sound card against the recording
+ * clock and compensates the drift between the two by lightly resampling
+ * 16 bit signed little-endian samples.
+ * <br>
+ * The rate is obtained via a least squares fit of the chunk timestamps
+ * against the number of frames captured, which averages out the jitter of
+ * the individual timestamps. Once enough audio has been captured, the
+ * samples get resampled via linear interpolation. The resampling ratio is
+ * the ratio of nominal and measured rate, adjusted slowly to also remove
+ * the offset that accumulated before correction started.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class DriftCorrector {
+
+  /** the minimum duration before correcting (sec). */
+  public final static double MIN_DURATION = 5.0;
+
+  /** the time over which to remove an accumulated offset (sec). */
+  public final static double CONVERGENCE_TIME = 10.0;
+
+  /** the maximum relative change of the rate. */
+  public final static double MAX_ADJUSTMENT = 0.005;
+
+  /** the nominal sample rate. */
+  protected double m_NominalRate;
+
+  /** the number of channels. */
+  protected int m_Channels;
+
+  /** the number of chunks used for the fit. */
+  protected long m_NumPoints;
+
+  /** the timestamp of the first chunk (nsec). */
+  protected long m_FirstTimestamp;
+
+  /** the sum of the frame positions (frames). */
+  protected double m_SumX;
+
+  /** the sum of the timestamps (sec). */
+  protected double m_SumY;
+
+  /** the sum of the squared frame positions. */
+  protected double m_SumXX;
+
+  /** the sum of the products of frame positions and timestamps. */
+  protected double m_SumXY;
+
+  /** the number of frames passed in. */
+  protected long m_InputFrames;
+
+  /** the number of frames passed in before the current chunk. */
+  protected long m_ChunkStart;
+
+  /** the number of frames output. */
+  protected long m_OutputFrames;
+
+  /** the input frames per output frame. */
+  protected double m_Step;
+
+  /** the read position, relative to the last frame of the previous chunk. */
+  protected double m_Position;
+
+  /** the last frame of the previous chunk. */
+  protected short[] m_Previous;
+
+  /** the resampled output. */
+  protected byte[] m_Output;
+
+  /** the output buffer. */
+  protected ByteBuffer m_OutputBuffer;
+
+  /**
+   * Initializes the corrector.
+   *
+   * @param nominalRate	the nominal sample rate (frames/sec)
+   * @param channels	the number of channels
+   */
+  public DriftCorrector(double nominalRate, int channels) {
+    m_NominalRate = nominalRate;
+    m_Channels    = channels;
+    m_Previous    = new short[channels];
+    m_Output      = new byte[0];
+    reset();
+  }
+
+  /**
+   * Resets the measurements and the resampling state.
+   */
+  public void reset() {
+    m_NumPoints    = 0;
+    m_SumX         = 0;
+    m_SumY         = 0;
+    m_SumXX        = 0;
+    m_SumXY        = 0;
+    m_InputFrames  = 0;
+    m_ChunkStart   = 0;
+    m_OutputFrames = 0;
+    m_Step         = 1.0;
+    m_Position     = -1;
+  }
+
+  /**
+   * Returns the nominal sample rate.
+   *
+   * @return		the rate (frames/sec)
+   */
+  public double getNominalRate() {
+    return m_NominalRate;
+  }
+
+  /**
+   * Records the next chunk for the measurement.
+   *
+   * @param timestamp	the time the first frame of the chunk was captured (nsec)
+   * @param frames	the number of frames in the chunk
+   */
+  public void update(long timestamp, int frames) {
+    double	x;
+    double	y;
+
+    if (m_NumPoints == 0)
+      m_FirstTimestamp = timestamp;
+    x = m_InputFrames;
+    y = (timestamp - m_FirstTimestamp) / 1.0E9;
+    m_SumX  += x;
+    m_SumY  += y;
+    m_SumXX += x * x;
+    m_SumXY += x * y;
+    m_NumPoints++;
+    m_ChunkStart   = m_InputFrames;
+    m_InputFrames += frames;
+  }
+
+  /**
+   * Returns the measured duration of a frame, ie the slope of the fit.
+   *
+   * @return		the duration (sec), 0 if not enough data yet
+   */
+  protected double getFrameDuration() {
+    double	denom;
+
+    if (m_NumPoints < 2)
+      return 0;
+    denom = m_NumPoints * m_SumXX - m_SumX * m_SumX;
+    if (denom <= 0)
+      return 0;
+    return (m_NumPoints * m_SumXY - m_SumX * m_SumY) / denom;
+  }
+
+  /**
+   * Returns the measured duration of the audio.
+   *
+   * @return		the duration (sec)
+   */
+  public double getMeasuredDuration() {
+    return m_InputFrames / m_NominalRate;
+  }
+
+  /**
+   * Returns the measured sample rate.
+   *
+   * @return		the rate (frames/sec), the nominal one if not enough data yet
+   */
+  public double getMeasuredRate() {
+    double	duration;
+
+    duration = getFrameDuration();
+    if (duration <= 0)
+      return m_NominalRate;
+    return 1.0 / duration;
+  }
+
+  /**
+   * Returns the deviation of the measured from the nominal sample rate.
+   *
+   * @return		the deviation (parts per million)
+   */
+  public double getDriftPPM() {
+    return (getMeasuredRate() / m_NominalRate - 1.0) * 1.0E6;
+  }
+
+  /**
+   * Returns the number of frames passed in.
+   *
+   * @return		the number of frames
+   */
+  public long getInputFrames() {
+    return m_InputFrames;
+  }
+
+  /**
+   * Returns the number of frames output by the resampling.
+   *
+   * @return		the number of frames
+   */
+  public long getOutputFrames() {
+    return m_OutputFrames;
+  }
+
+  /**
+   * Returns the current number of output frames per input frame.
+   *
+   * @return		the ratio
+   */
+  public double getRatio() {
+    return 1.0 / m_Step;
+  }
+
+  /**
+   * Updates the resampling ratio, using the measured rate and the offset
+   * between the frames output and the frames expected for the clock at
+   * the start of the current chunk.
+   */
+  protected void updateRatio() {
+    double	duration;
+    double	expected;
+    double	ratio;
+
+    duration = getFrameDuration();
+    if ((duration <= 0) || (getMeasuredDuration() < MIN_DURATION))
+      return;
+    expected = m_ChunkStart * duration * m_NominalRate;
+    ratio    = duration * m_NominalRate * (1.0 - (m_OutputFrames - expected) / (m_NominalRate * CONVERGENCE_TIME));
+    ratio    = Math.max(1.0 - MAX_ADJUSTMENT, Math.min(1.0 + MAX_ADJUSTMENT, ratio));
+    m_Step   = 1.0 / ratio;
+  }
+
+  /**
+   * Returns the sample of the extended chunk, ie the last frame of the
+   * previous chunk followed by the current one.
+   *
+   * @param data	the current chunk
+   * @param offset	the position of the chunk in the buffer
+   * @param frame	the frame in the extended chunk
+   * @param channel	the channel
+   * @return		the sample
+   */
+  protected short getSample(ByteBuffer data, int offset, int frame, int channel) {
+    int		pos;
+
+    if (frame == 0)
+      return m_Previous[channel];
+    pos = offset + ((frame - 1) * m_Channels + channel) * 2;
+    return (short) ((data.get(pos) & 0xFF) | (data.get(pos + 1) << 8));
+  }
+
+  /**
+   * Resamples the chunk, which must have been passed to
+   * {@link #update(long, int)} before. The returned buffer gets reused
+   * with the next call.
+   *
+   * @param data	the chunk, from position to limit
+   * @return		the resampled chunk
+   */
+  public ByteBuffer resample(ByteBuffer data) {
+    int		frames;
+    int		offset;
+    int		maxFrames;
+    int		out;
+    int		index;
+    int		channel;
+    int		pos;
+    double	frac;
+    int		sample;
+    short	a;
+    short	b;
+
+    updateRatio();
+    offset = data.position();
+    frames = data.remaining() / m_Channels / 2;
+    if (frames == 0) {
+      data.position(data.limit());
+      m_OutputBuffer.clear().limit(0);
+      return m_OutputBuffer;
+    }
+
+    maxFrames = (int) Math.ceil(frames / m_Step) + 2;
+    if (m_Output.length < maxFrames * m_Channels * 2) {
+      m_Output       = new byte[maxFrames * m_Channels * 2];
+      m_OutputBuffer = ByteBuffer.wrap(m_Output);
+    }
+    // the very first frame is output as is
+    if (m_Position < 0) {
+      for (channel = 0; channel < m_Channels; channel++)
+	m_Previous[channel] = getSample(data, offset, 1, channel);
+      m_Position = 0;
+    }
+
+    out = 0;
+    pos = 0;
+    while (m_Position < frames) {
+      index = (int) m_Position;
+      frac  = m_Position - index;
+      for (channel = 0; channel < m_Channels; channel++) {
+	a      = getSample(data, offset, index, channel);
+	b      = getSample(data, offset, index + 1, channel);
+	sample = (int) Math.round(a + (b - a) * frac);
+	m_Output[pos++] = (byte) sample;
+	m_Output[pos++] = (byte) (sample >> 8);
+      }
+      out++;
+      m_Position += m_Step;
+    }
+    m_Position -= frames;
+    for (channel = 0; channel < m_Channels; channel++)
+      m_Previous[channel] = getSample(data, offset, frames, channel);
+    m_OutputFrames += out;
+    data.position(data.limit());
+
+    m_OutputBuffer.clear();
+    m_OutputBuffer.limit(pos);
+    return m_OutputBuffer;
+  }
+
+  /**
+   * Validates the correction with a simulated sound card whose clock runs
+   * too fast or too slow, and jittery timestamps. Outputs the measured
+   * drift and the offset between audio and clock after one hour, with and
+   * without correction.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    double	rate     = 44100.0;
+    int		channels = 2;
+    int		chunk    = 882;
+    double	hour     = 3600.0;
+    Random	rand     = new Random(1);
+    byte[]	data     = new byte[chunk * channels * 2];
+
+    // the content is irrelevant for the timing, a 441Hz tone
+    for (int i = 0; i < chunk; i++) {
+      short s = (short) (8000 * Math.sin(2 * Math.PI * i / 100));
+      for (int c = 0; c < channels; c++) {
+	data[(i * channels + c) * 2]     = (byte) s;
+	data[(i * channels + c) * 2 + 1] = (byte) (s >> 8);
+      }
+    }
+
+    for (double ppm: new double[]{-300, -50, 0, 50, 300}) {
+      DriftCorrector corrector = new DriftCorrector(rate, channels);
+      double actual = rate * (1.0 + ppm / 1.0E6);
+      long frames = 0;
+      while (frames / actual < hour) {
+	// the sound card's frames, timestamped by the clock with up to 5ms of jitter
+	long timestamp = Math.round(frames / actual * 1.0E9 + rand.nextDouble() * 5.0E6);
+	corrector.update(timestamp, chunk);
+	corrector.resample(ByteBuffer.wrap(data));
+	frames += chunk;
+      }
+      double clock = frames / actual;
+      System.out.println("Simulated drift: " + ppm + "ppm");
+      System.out.println("  measured: " + corrector.getDriftPPM() + "ppm");
+      System.out.println("  offset without correction: " + (frames / rate - clock) * 1000 + "ms");
+      System.out.println("  offset with correction: " + (corrector.getOutputFrames() / rate - clock) * 1000 + "ms");
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MixerInput.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.sound;
+
+/**
+ * An input of the {@link MixingSoundRecorder}: the mixer to capture from
+ * and the gain to apply to its samples.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class MixerInput {
+
+  /** the name of the mixer, empty for the system's default. */
+  protected String m_Mixer;
+
+  /** the gain to apply. */
+  protected float m_Gain;
+
+  /**
+   * Initializes the input with the default mixer and a gain of 1.
+   */
+  public MixerInput() {
+    this("", 1.0f);
+  }
+
+  /**
+   * Initializes the input.
+   *
+   * @param mixer	the name of the mixer, empty for the system's default
+   * @param gain	the gain to apply
+   */
+  public MixerInput(String mixer, float gain) {
+    setMixer(mixer);
+    setGain(gain);
+  }
+
+  /**
+   * Sets the name of the mixer to capture from.
+   *
+   * @param value	the name, empty or null for the system's default
+   */
+  public void setMixer(String value) {
+    m_Mixer = (value == null) ? "" : value;
+  }
+
+  /**
+   * Returns the name of the mixer to capture from.
+   *
+   * @return		the name, empty for the system's default
+   */
+  public String getMixer() {
+    return m_Mixer;
+  }
+
+  /**
+   * Sets the gain to apply to the samples.
+   *
+   * @param value	the gain, 1 leaves the samples unchanged
+   */
+  public void setGain(float value) {
+    m_Gain = value;
+  }
+
+  /**
+   * Returns the gain to apply to the samples.
+   *
+   * @return		the gain
+   */
+  public float getGain() {
+    return m_Gain;
+  }
+
+  /**
+   * Returns a short description of the input.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    return (m_Mixer.isEmpty() ? "<default>" : m_Mixer) + " (gain=" + m_Gain + ")";
+  }
+}
@@ -0,0 +1,721 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MixingSoundRecorder.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.sound;
+
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.TargetDataLine;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records from several lines at once (eg microphone and loopback) and
+ * mixes them into a single stream, applying a gain per input.
+ * <br>
+ * Each line gets read by its own capture thread into a ring buffer. The
+ * mixer thread takes a chunk from the first input, which acts as the
+ * reference for the timestamps, and the same number of frames from each
+ * of the other inputs, so that the inputs stay aligned sample by sample.
+ * Should another input not have enough frames available in time, it gets
+ * padded with silence (see {@link #getNumUnderruns()}) and the same number
+ * of frames gets discarded once they arrive (see
+ * {@link #getNumDiscardedFrames()}). Frames that an input lost (line
+ * overrun or mixer falling behind) get replaced with silence at the
+ * position they were lost, and inputs that started later than the first
+ * one get preceded by silence. Since every line runs on its own clock,
+ * the other inputs get resampled to the rate of the first one before
+ * mixing (if drift correction is enabled). Mixing uses preallocated
+ * primitive buffers, ie no objects get created while recording (apart
+ * from recording the positions of lost frames).
+ * <br>
+ * Only 16 bit samples are supported.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class MixingSoundRecorder
+  extends SampledSoundRecorder {
+
+  /** the maximum time to wait for the first input (nsec). */
+  protected final static long READ_TIMEOUT = 100000000L;
+
+  /** the size of the ring buffer per input (msec). */
+  protected final static int RING_BUFFER_DURATION = 1000;
+
+  /** the inputs to mix. */
+  protected MixerInput[] m_Inputs;
+
+  /** the lines of the inputs. */
+  protected TargetDataLine[] m_Lines;
+
+  /** the ring buffers between capture threads and mixer. */
+  protected AudioRingBuffer[] m_RingBuffers;
+
+  /** the buffers for the capture threads. */
+  protected byte[][] m_CaptureBuffers;
+
+  /** the buffers for the mixer. */
+  protected byte[][] m_InputBuffers;
+
+  /** the gains of the inputs. */
+  protected float[] m_Gains;
+
+  /** the mixed samples before clipping. */
+  protected float[] m_Mix;
+
+  /** the capture threads. */
+  protected Thread[] m_CaptureThreads;
+
+  /** the number of overruns per input. */
+  protected AtomicLongArray m_InputOverruns;
+
+  /** the number of frames lost due to overruns per input. */
+  protected AtomicLongArray m_InputLostFrames;
+
+  /** the gaps per input, ie position in the ring buffer (bytes) and number of frames lost. */
+  protected List<Queue<long[]>> m_Gaps;
+
+  /** the number of frames per input that got padded and still need discarding. */
+  protected long[] m_Debts;
+
+  /** the drift correctors that resample the inputs to the rate of the first one. */
+  protected DriftCorrector[] m_InputCorrectors;
+
+  /** the number of times an input had to be padded with silence. */
+  protected volatile long m_NumUnderruns;
+
+  /** the number of frames that got discarded to realign inputs. */
+  protected volatile long m_NumDiscardedFrames;
+
+  /** the number of samples that had to be clipped. */
+  protected volatile long m_NumClippedSamples;
+
+  /**
+   * Initializes the members.
+   */
+  @Override
+  protected void initialize() {
+    super.initialize();
+
+    m_Inputs = new MixerInput[]{new MixerInput()};
+  }
+
+  /**
+   * Resets the recorder's state (but not parameters).
+   */
+  @Override
+  public void reset() {
+    super.reset();
+
+    m_NumUnderruns       = 0;
+    m_NumDiscardedFrames = 0;
+    m_NumClippedSamples  = 0;
+  }
+
+  /**
+   * Sets the inputs to mix. The first one is used as reference.
+   *
+   * @param value	the inputs
+   */
+  public void setInputs(MixerInput[] value) {
+    if (value.length > 0)
+      m_Inputs = value;
+    else
+      printError("At least one input required!");
+  }
+
+  /**
+   * Returns the inputs to mix.
+   *
+   * @return		the inputs
+   */
+  public MixerInput[] getInputs() {
+    return m_Inputs;
+  }
+
+  /**
+   * Returns the names of the mixers that offer lines for recording.
+   *
+   * @return		the names
+   */
+  public static String[] getCaptureMixers() {
+    List<String>	result;
+    Line.Info		info;
+    Mixer		mixer;
+
+    result = new ArrayList<>();
+    info   = new Line.Info(TargetDataLine.class);
+    for (Mixer.Info mi: AudioSystem.getMixerInfo()) {
+      mixer = AudioSystem.getMixer(mi);
+      if (mixer.isLineSupported(info))
+	result.add(mi.getName());
+    }
+
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * Returns the number of times the line buffer of any input overran.
+   *
+   * @return		the number of overruns
+   */
+  @Override
+  public long getNumOverruns() {
+    long	result;
+    int		i;
+
+    result = 0;
+    if (m_InputOverruns != null) {
+      for (i = 0; i < m_InputOverruns.length(); i++)
+	result += m_InputOverruns.get(i);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the number of frames that got lost due to overruns, summed up
+   * across the inputs.
+   *
+   * @return		the number of frames
+   */
+  @Override
+  public long getNumLostFrames() {
+    long	result;
+    int		i;
+
+    result = 0;
+    if (m_InputLostFrames != null) {
+      for (i = 0; i < m_InputLostFrames.length(); i++)
+	result += m_InputLostFrames.get(i);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the number of times an input did not have enough frames
+   * available and got padded with silence.
+   *
+   * @return		the number of underruns
+   */
+  public long getNumUnderruns() {
+    return m_NumUnderruns;
+  }
+
+  /**
+   * Returns the number of frames that arrived after the input had already
+   * been padded with silence and therefore got discarded.
+   *
+   * @return		the number of frames
+   */
+  public long getNumDiscardedFrames() {
+    return m_NumDiscardedFrames;
+  }
+
+  /**
+   * Returns the drift of the input's clock relative to the first input.
+   *
+   * @param index	the index of the input
+   * @return		the drift in ppm, 0 if not measured
+   */
+  public double getInputDriftPPM(int index) {
+    if ((m_InputCorrectors == null) || (m_InputCorrectors[index] == null))
+      return 0.0;
+    return m_InputCorrectors[index].getDriftPPM();
+  }
+
+  /**
+   * Returns the number of mixed samples that exceeded the value range and
+   * got clipped.
+   *
+   * @return		the number of samples
+   */
+  public long getNumClippedSamples() {
+    return m_NumClippedSamples;
+  }
+
+  /**
+   * Opens the lines of all inputs.
+   *
+   * @return		the line of the first input
+   * @throws Exception	if a mixer is not available or failed to open a line
+   */
+  @Override
+  protected TargetDataLine openLine() throws Exception {
+    int		i;
+
+    m_Lines = new TargetDataLine[m_Inputs.length];
+    try {
+      for (i = 0; i < m_Inputs.length; i++)
+	m_Lines[i] = openLine(m_Inputs[i]);
+    }
+    catch (Exception e) {
+      closeLines();
+      throw e;
+    }
+
+    return m_Lines[0];
+  }
+
+  /**
+   * Opens the line of the input.
+   *
+   * @param input	the input to open the line for
+   * @return		the opened line
+   * @throws Exception	if the mixer is not available or failed to open the line
+   */
+  protected TargetDataLine openLine(MixerInput input) throws Exception {
+    if (input.getMixer().isEmpty())
+      return openLine((TargetDataLine) AudioSystem.getLine(m_DataLineInfo));
+
+    for (Mixer.Info info: AudioSystem.getMixerInfo()) {
+      if (info.getName().equals(input.getMixer()))
+	return openLine((TargetDataLine) AudioSystem.getMixer(info).getLine(m_DataLineInfo));
+    }
+
+    throw new IllegalStateException("Mixer not available: " + input.getMixer());
+  }
+
+  /**
+   * Closes all the lines that were opened.
+   */
+  protected void closeLines() {
+    int		i;
+
+    if (m_Lines == null)
+      return;
+    for (i = 0; i < m_Lines.length; i++) {
+      if (m_Lines[i] != null)
+	m_Lines[i].close();
+    }
+  }
+
+  /**
+   * Performs a check of the setup.
+   *
+   * @return		null if OK, otherwise error message
+   */
+  @Override
+  public String setUp() {
+    String	result;
+    int		i;
+
+    if (m_SampleSizeInBits != 16)
+      return "Only 16 bit samples can be mixed, provided: " + m_SampleSizeInBits;
+
+    result = super.setUp();
+
+    if (result == null) {
+      m_RingBuffers     = new AudioRingBuffer[m_Lines.length];
+      m_CaptureBuffers  = new byte[m_Lines.length][];
+      m_InputBuffers    = new byte[m_Lines.length][];
+      m_Gains           = new float[m_Lines.length];
+      m_Gaps            = new ArrayList<>();
+      m_Debts           = new long[m_Lines.length];
+      m_InputCorrectors = new DriftCorrector[m_Lines.length];
+      for (i = 0; i < m_Lines.length; i++) {
+	m_RingBuffers[i]    = new AudioRingBuffer(toBytes(RING_BUFFER_DURATION), m_AudioFormat.getFrameSize());
+	m_CaptureBuffers[i] = new byte[m_Buffer.length];
+	m_InputBuffers[i]   = new byte[m_Buffer.length];
+	m_Gains[i]          = m_Inputs[i].getGain();
+	m_Gaps.add(new ConcurrentLinkedQueue<>());
+	// the first input is the reference clock
+	if ((i > 0) && isCorrectingDrift())
+	  m_InputCorrectors[i] = new DriftCorrector(m_AudioFormat.getFrameRate(), m_AudioFormat.getChannels());
+      }
+      m_Mix             = new float[m_Buffer.length / 2];
+      m_InputOverruns   = new AtomicLongArray(m_Lines.length);
+      m_InputLostFrames = new AtomicLongArray(m_Lines.length);
+    }
+
+    return result;
+  }
+
+  /**
+   * Records that the input lost frames after the samples written to its
+   * ring buffer so far. The mixer replaces them with silence.
+   *
+   * @param index	the index of the input
+   * @param frames	the number of frames lost
+   */
+  protected void addGap(int index, long frames) {
+    m_Gaps.get(index).offer(new long[]{m_RingBuffers[index].getNumWritten(), frames});
+  }
+
+  /**
+   * Reads the samples of the input's line into its ring buffer until
+   * stopped. Inputs other than the first one get resampled to the rate
+   * of the first one, using the first input's frame position as clock.
+   *
+   * @param index	the index of the input
+   */
+  protected void captureSamples(int index) {
+    TargetDataLine	line;
+    TargetDataLine	reference;
+    DriftCorrector	corrector;
+    byte[]		buffer;
+    ByteBuffer		data;
+    ByteBuffer		samples;
+    int			frameSize;
+    int			frames;
+    int			read;
+    long		framesRead;
+    long		position;
+    long		backlog;
+    long		lost;
+    double		nanosPerFrame;
+
+    line          = m_Lines[index];
+    reference     = m_Lines[0];
+    corrector     = m_InputCorrectors[index];
+    buffer        = m_CaptureBuffers[index];
+    data          = ByteBuffer.wrap(buffer);
+    frameSize     = m_AudioFormat.getFrameSize();
+    framesRead    = 0;
+    nanosPerFrame = 1.0E9 / m_AudioFormat.getFrameRate();
+    while (m_Reading) {
+      read = line.read(buffer, 0, buffer.length);
+      if (read <= 0)
+	continue;
+      frames      = read / frameSize;
+      framesRead += frames;
+      // see updateStatistics(int) for the reasoning
+      position = line.getLongFramePosition();
+      backlog  = line.available() / frameSize;
+      lost     = position - framesRead - backlog;
+      if (lost > m_InputLostFrames.get(index)) {
+	m_InputOverruns.incrementAndGet(index);
+	printError("capture", "Line buffer overrun on input #" + (index + 1) + ", lost " + (lost - m_InputLostFrames.get(index)) + " frames");
+	addGap(index, lost - m_InputLostFrames.get(index));
+	m_InputLostFrames.set(index, lost);
+      }
+      data.clear();
+      data.limit(read);
+      samples = data;
+      if (corrector != null) {
+	corrector.update(Math.round((reference.getLongFramePosition() - frames - backlog) * nanosPerFrame), frames);
+	samples = corrector.resample(data);
+      }
+      frames = samples.remaining() / frameSize;
+      if (!m_RingBuffers[index].write(samples)) {
+	printError("capture", "Mixer fell behind, dropped " + frames + " frames of input #" + (index + 1));
+	addGap(index, frames);
+      }
+    }
+  }
+
+  /**
+   * Creates the capture thread for the input.
+   *
+   * @param index	the index of the input
+   * @return		the thread
+   */
+  protected Thread createCaptureThread(int index) {
+    Thread	result;
+
+    result = new Thread(() -> captureSamples(index), getClass().getSimpleName() + "-capture-" + (index + 1));
+    result.setPriority(Thread.MAX_PRIORITY);
+
+    return result;
+  }
+
+  /**
+   * Reads the next frames of the input into its buffer. Gaps get filled
+   * with silence and frames that were already padded get discarded.
+   *
+   * @param index	the index of the input
+   * @param length	the maximum number of bytes to read
+   * @param timeout	the maximum time to wait (nsec)
+   * @return		the number of bytes read (whole frames)
+   * @throws InterruptedException	if interrupted while waiting
+   */
+  protected int readInput(int index, int length, long timeout) throws InterruptedException {
+    AudioRingBuffer	ring;
+    Queue<long[]>	gaps;
+    byte[]		buffer;
+    long[]		gap;
+    long		deadline;
+    long		remaining;
+    long		read;
+    long		end;
+    int			frameSize;
+    int			filled;
+    int			n;
+
+    ring      = m_RingBuffers[index];
+    gaps      = m_Gaps.get(index);
+    buffer    = m_InputBuffers[index];
+    frameSize = m_AudioFormat.getFrameSize();
+    deadline  = System.nanoTime() + timeout;
+    filled    = 0;
+    while (filled < length) {
+      read = ring.getNumRead();
+      // gaps get recorded before the samples following them are written
+      end  = ring.getNumWritten();
+      gap  = gaps.peek();
+      if ((gap != null) && (gap[0] <= read)) {
+	if (m_Debts[index] > 0) {
+	  n               = (int) Math.min(gap[1], m_Debts[index]);
+	  m_Debts[index] -= n;
+	}
+	else {
+	  n = (int) Math.min(gap[1], (length - filled) / frameSize);
+	  Arrays.fill(buffer, filled, filled + n * frameSize, (byte) 0);
+	  filled += n * frameSize;
+	}
+	gap[1] -= n;
+	if (gap[1] == 0)
+	  gaps.poll();
+	continue;
+      }
+      if (gap != null)
+	end = Math.min(end, gap[0]);
+      if (end <= read) {
+	remaining = deadline - System.nanoTime();
+	if ((remaining <= 0) || (ring.isClosed() && (ring.available() == 0)))
+	  break;
+	ring.await(frameSize, remaining);
+	continue;
+      }
+      if (m_Debts[index] > 0) {
+	n                     = ring.skip((int) Math.min(end - read, m_Debts[index] * frameSize)) / frameSize;
+	m_Debts[index]       -= n;
+	m_NumDiscardedFrames += n;
+      }
+      else {
+	filled += ring.read(buffer, filled, (int) Math.min(end - read, length - filled), 0);
+      }
+    }
+
+    return filled;
+  }
+
+  /**
+   * Takes the next chunk from the first input and the same number of
+   * frames from the other inputs and mixes them.
+   *
+   * @return		the number of bytes mixed
+   */
+  @Override
+  protected int readChunk() {
+    int		read;
+    int		available;
+    int		i;
+
+    try {
+      read = readInput(0, m_Buffer.length, READ_TIMEOUT);
+      if (read <= 0)
+	return 0;
+      for (i = 1; i < m_RingBuffers.length; i++) {
+	// wait a little for inputs that lag behind the first one
+	available = readInput(i, read, READ_TIMEOUT / 20);
+	if (available < read) {
+	  // the frames that arrive later get discarded to stay aligned
+	  Arrays.fill(m_InputBuffers[i], available, read, (byte) 0);
+	  m_Debts[i] += (read - available) / m_AudioFormat.getFrameSize();
+	  m_NumUnderruns++;
+	}
+      }
+    }
+    catch (InterruptedException e) {
+      return 0;
+    }
+
+    mix(read);
+
+    return read;
+  }
+
+  /**
+   * Mixes the samples of the input buffers into the output buffer,
+   * applying the gains and clipping the result.
+   *
+   * @param length	the number of bytes to mix
+   */
+  protected void mix(int length) {
+    int		numSamples;
+    int		clipped;
+    int		sample;
+    int		i;
+    int		n;
+    byte[]	input;
+    float	gain;
+
+    numSamples = length / 2;
+    Arrays.fill(m_Mix, 0, numSamples, 0.0f);
+    for (i = 0; i < m_InputBuffers.length; i++) {
+      input = m_InputBuffers[i];
+      gain  = m_Gains[i];
+      for (n = 0; n < numSamples; n++)
+	m_Mix[n] += gain * (short) ((input[2*n] & 0xFF) | (input[2*n + 1] << 8));
+    }
+
+    clipped = 0;
+    for (n = 0; n < numSamples; n++) {
+      sample = Math.round(m_Mix[n]);
+      if (sample > Short.MAX_VALUE) {
+	sample = Short.MAX_VALUE;
+	clipped++;
+      }
+      else if (sample < Short.MIN_VALUE) {
+	sample = Short.MIN_VALUE;
+	clipped++;
+      }
+      m_Buffer[2*n]     = (byte) sample;
+      m_Buffer[2*n + 1] = (byte) (sample >> 8);
+    }
+    if (clipped > 0)
+      m_NumClippedSamples += clipped;
+  }
+
+  /**
+   * Updates the backlog statistics after mixing a chunk. Overruns get
+   * detected by the capture threads.
+   *
+   * @param frames	the number of frames that were mixed
+   * @return		the number of frames of the first input still waiting
+   */
+  @Override
+  protected long updateStatistics(int frames) {
+    long	backlog;
+
+    m_FramesRead += frames;
+    m_NumChunks++;
+    backlog = (m_Lines[0].available() + m_RingBuffers[0].available()) / m_AudioFormat.getFrameSize();
+    m_TotalBacklog += backlog;
+    if (backlog > m_MaxBacklog)
+      m_MaxBacklog = backlog;
+
+    return backlog;
+  }
+
+  /**
+   * Starts the actual recording process.
+   *
+   * @throws Exception	if starting of recording fails
+   */
+  @Override
+  protected void doStart() throws Exception {
+    int		i;
+    long[]	started;
+    long	before;
+    long	late;
+
+    openSink();
+    m_Reading        = true;
+    m_CaptureThreads = new Thread[m_Lines.length];
+    for (i = 0; i < m_Lines.length; i++) {
+      m_CaptureThreads[i] = createCaptureThread(i);
+      m_Gaps.get(i).clear();
+      m_Debts[i] = 0;
+      if (m_InputCorrectors[i] != null)
+	m_InputCorrectors[i].reset();
+    }
+    m_ReaderThread = new Thread(this::readSamples, getClass().getSimpleName() + "-mixer");
+    m_ReaderThread.setPriority(Thread.MAX_PRIORITY);
+    started = new long[m_Lines.length];
+    for (i = 0; i < m_Lines.length; i++) {
+      before = System.nanoTime();
+      m_Lines[i].start();
+      started[i] = (before + System.nanoTime()) / 2;
+    }
+    // align the inputs to the instant the first one started
+    for (i = 1; i < m_Lines.length; i++) {
+      late = Math.round((started[i] - started[0]) * m_AudioFormat.getFrameRate() / 1.0E9);
+      if (late > 0)
+	m_Gaps.get(i).offer(new long[]{0, late});
+      else if (late < 0)
+	m_Debts[i] = -late;
+    }
+    for (i = 0; i < m_Lines.length; i++)
+      m_CaptureThreads[i].start();
+    m_ReaderThread.start();
+  }
+
+  /**
+   * Stops the recording process. Returns once the output is complete.
+   *
+   * @throws Exception	if stopping fails
+   */
+  @Override
+  protected void doStop() throws Exception {
+    int		i;
+
+    m_Reading = false;
+    for (i = 0; i < m_Lines.length; i++)
+      m_Lines[i].stop();
+    if (m_CaptureThreads != null) {
+      for (i = 0; i < m_CaptureThreads.length; i++)
+	m_CaptureThreads[i].join();
+      m_CaptureThreads = null;
+    }
+    if (m_ReaderThread != null) {
+      m_ReaderThread.join();
+      m_ReaderThread = null;
+    }
+    closeLines();
+    closeSink();
+  }
+
+  /**
+   * Just for testing. Records from the specified mixers (or the default one).
+   *
+   * @param args	the names of the mixers to record from
+   */
+  public static void main(String[] args) throws Exception {
+    System.out.println("Available mixers:");
+    for (String mixer: getCaptureMixers())
+      System.out.println("- " + mixer);
+
+    MixerInput[] inputs = new MixerInput[Math.max(1, args.length)];
+    inputs[0] = new MixerInput();
+    for (int i = 0; i < args.length; i++)
+      inputs[i] = new MixerInput(args[i], 1.0f / args.length);
+
+    MixingSoundRecorder rec = new MixingSoundRecorder();
+    rec.setOutput(new File(System.getProperty("java.io.tmpdir") + File.separator + "mixed.wav"));
+    rec.setFrequency(44100.0f);
+    rec.setInputs(inputs);
+    String msg = rec.setUp();
+    if (msg != null) {
+      System.err.println(msg);
+      return;
+    }
+    rec.start();
+    for (int i = 0; i < 100; i++)
+      Thread.sleep(100);
+    rec.stop();
+    System.out.println("Chunks: " + rec.getNumChunks());
+    System.out.println("Overruns: " + rec.getNumOverruns() + " (" + rec.getNumLostFrames() + " frames lost)");
+    System.out.println("Underruns: " + rec.getNumUnderruns() + " (" + rec.getNumDiscardedFrames() + " frames discarded)");
+    for (int i = 1; i < inputs.length; i++)
+      System.out.println("Drift of input #" + (i + 1) + ": " + rec.getInputDriftPPM(i) + "ppm");
+    System.out.println("Clipped samples: " + rec.getNumClippedSamples());
+    System.out.println("Backlog: avg=" + rec.getAverageBacklog() + "ms, max=" + rec.getMaxBacklog() + "ms");
+  }
+}
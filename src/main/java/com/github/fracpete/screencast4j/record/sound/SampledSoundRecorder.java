@@ -22,16 +22,34 @@ package com.github.fracpete.screencast4j.record.sound;
 
 import com.googlecode.jfilechooserbookmarks.core.Utils;
 
-import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.DataLine;
 import javax.sound.sampled.TargetDataLine;
 import java.io.File;
+import java.nio.ByteBuffer;
 
 /**
- * For recording sound using Java's sampled.
+ * For recording sound using Java's sampled. A high-priority reader thread
+ * reads the samples from the line in fixed-size chunks, timestamps them and
+ * hands them to the sink, a WAV file by default. Samples that arrive while
+ * paused get dropped.
+ * <br>
+ * Overruns of the line's buffer (ie the reader falling behind) get detected
+ * by comparing the line's frame position with the frames read and are
+ * available as metrics, as is the backlog of the reader.
+ * <br>
+ * The actual sample rate of the sound card gets measured against the
+ * recording clock, and, for 16 bit samples, the drift between the two gets
+ * corrected by lightly resampling (see {@link DriftCorrector}), so that
+ * long recordings stay in sync with the video.
+ * <br>
+ * The levels of each chunk read, including while paused, are available
+ * via {@link #getLevelMeter()}.
+ * <br>
+ * Derived classes can write to other sinks by overriding
+ * {@link #openSink()}, {@link #writeSink(ByteBuffer, long)} and
+ * {@link #closeSink()}.
  *
  * @author FracPete (fracpete at waikato dot ac dot nz)
  */
@@ -47,8 +65,316 @@ public class SampledSoundRecorder
   /** the target line. */
   protected TargetDataLine m_TargetDataLine;
 
-  /** the input stream. */
-  protected AudioInputStream m_AudioInputStream;
+  /** the buffer for reading from the line. */
+  protected byte[] m_Buffer;
+
+  /** the reader thread. */
+  protected Thread m_ReaderThread;
+
+  /** whether the reader is active. */
+  protected volatile boolean m_Reading;
+
+  /** the WAV writer. */
+  protected WavWriter m_WavWriter;
+
+  /** the number of bits per sample. */
+  protected int m_SampleSizeInBits;
+
+  /** the number of channels. */
+  protected int m_Channels;
+
+  /** the size of the line's buffer (msec). */
+  protected int m_LineBufferDuration;
+
+  /** the duration of audio to read at a time (msec). */
+  protected int m_ChunkDuration;
+
+  /** the number of frames read from the line. */
+  protected long m_FramesRead;
+
+  /** the number of chunks read. */
+  protected volatile long m_NumChunks;
+
+  /** the number of frames dropped while paused. */
+  protected volatile long m_NumPausedFrames;
+
+  /** the number of overruns detected. */
+  protected volatile long m_NumOverruns;
+
+  /** the number of frames lost due to overruns. */
+  protected volatile long m_NumLostFrames;
+
+  /** the maximum number of frames waiting in the line's buffer after a read. */
+  protected volatile long m_MaxBacklog;
+
+  /** the total number of frames waiting in the line's buffer after a read. */
+  protected volatile long m_TotalBacklog;
+
+  /** the timestamp of the last chunk (nsec). */
+  protected volatile long m_LastChunkTimestamp;
+
+  /** the time the recording was last resumed (nsec, relative to the start of the recording). */
+  protected volatile long m_ResumeTimestamp;
+
+  /** whether to correct the drift between sound card and clock. */
+  protected boolean m_DriftCorrection;
+
+  /** for measuring and correcting the drift. */
+  protected DriftCorrector m_DriftCorrector;
+
+  /** the measured sample rate (frames/sec). */
+  protected volatile double m_MeasuredFrequency;
+
+  /** the meter for the levels of the chunks. */
+  protected AudioLevelMeter m_LevelMeter;
+
+  /**
+   * Initializes the members.
+   */
+  @Override
+  protected void initialize() {
+    super.initialize();
+
+    m_SampleSizeInBits   = 16;
+    m_Channels           = 2;
+    m_LineBufferDuration = 500;
+    m_ChunkDuration      = 20;
+    m_DriftCorrection    = true;
+  }
+
+  /**
+   * Resets the recorder's state (but not parameters).
+   */
+  @Override
+  public void reset() {
+    super.reset();
+
+    m_FramesRead         = 0;
+    m_NumChunks          = 0;
+    m_NumPausedFrames    = 0;
+    m_NumOverruns        = 0;
+    m_NumLostFrames      = 0;
+    m_MaxBacklog         = 0;
+    m_TotalBacklog       = 0;
+    m_LastChunkTimestamp = 0;
+    m_ResumeTimestamp    = Long.MIN_VALUE;
+    m_MeasuredFrequency  = 0;
+  }
+
+  /**
+   * Sets the number of bits per sample.
+   *
+   * @param value	the number of bits (8, 16, 24 or 32)
+   */
+  public void setSampleSizeInBits(int value) {
+    if ((value == 8) || (value == 16) || (value == 24) || (value == 32))
+      m_SampleSizeInBits = value;
+    else
+      printError("Sample size must be 8, 16, 24 or 32 bits, provided: " + value);
+  }
+
+  /**
+   * Returns the number of bits per sample.
+   *
+   * @return		the number of bits
+   */
+  public int getSampleSizeInBits() {
+    return m_SampleSizeInBits;
+  }
+
+  /**
+   * Sets the number of channels.
+   *
+   * @param value	the number of channels
+   */
+  public void setChannels(int value) {
+    if (value > 0)
+      m_Channels = value;
+    else
+      printError("Number of channels must be > 0, provided: " + value);
+  }
+
+  /**
+   * Returns the number of channels.
+   *
+   * @return		the number of channels
+   */
+  public int getChannels() {
+    return m_Channels;
+  }
+
+  /**
+   * Sets the size of the line's buffer. Larger buffers tolerate longer
+   * stalls of the reader, smaller ones reduce the latency.
+   *
+   * @param value	the size (msec), 0 for the line's default
+   */
+  public void setLineBufferDuration(int value) {
+    if (value >= 0)
+      m_LineBufferDuration = value;
+    else
+      printError("Line buffer duration must be >= 0, provided: " + value);
+  }
+
+  /**
+   * Returns the size of the line's buffer.
+   *
+   * @return		the size (msec), 0 for the line's default
+   */
+  public int getLineBufferDuration() {
+    return m_LineBufferDuration;
+  }
+
+  /**
+   * Sets the duration of audio to read at a time.
+   *
+   * @param value	the duration (msec)
+   */
+  public void setChunkDuration(int value) {
+    if (value > 0)
+      m_ChunkDuration = value;
+    else
+      printError("Chunk duration must be > 0, provided: " + value);
+  }
+
+  /**
+   * Returns the duration of audio to read at a time.
+   *
+   * @return		the duration (msec)
+   */
+  public int getChunkDuration() {
+    return m_ChunkDuration;
+  }
+
+  /**
+   * Sets whether to correct the drift between the sound card's sample
+   * rate and the recording clock. Only available for 16 bit samples, the
+   * drift gets measured regardless.
+   *
+   * @param value	true if to correct
+   */
+  public void setDriftCorrection(boolean value) {
+    m_DriftCorrection = value;
+  }
+
+  /**
+   * Returns whether to correct the drift between the sound card's sample
+   * rate and the recording clock.
+   *
+   * @return		true if to correct
+   */
+  public boolean getDriftCorrection() {
+    return m_DriftCorrection;
+  }
+
+  /**
+   * Returns whether the drift actually gets corrected.
+   *
+   * @return		true if corrected
+   */
+  protected boolean isCorrectingDrift() {
+    return m_DriftCorrection && (m_SampleSizeInBits == 16);
+  }
+
+  /**
+   * Returns the sample rate of the sound card, measured against the
+   * recording clock.
+   *
+   * @return		the rate (frames/sec), 0 if not measured yet
+   */
+  public double getMeasuredFrequency() {
+    return m_MeasuredFrequency;
+  }
+
+  /**
+   * Returns the deviation of the measured from the nominal sample rate.
+   *
+   * @return		the deviation (parts per million), 0 if not measured yet
+   */
+  public double getDriftPPM() {
+    if (m_MeasuredFrequency == 0)
+      return 0;
+    return (m_MeasuredFrequency / m_Frequency - 1.0) * 1.0E6;
+  }
+
+  /**
+   * Returns the meter for the levels of the chunks read.
+   *
+   * @return		the meter, null if not set up yet
+   */
+  public AudioLevelMeter getLevelMeter() {
+    return m_LevelMeter;
+  }
+
+  /**
+   * Returns the number of chunks read from the line.
+   *
+   * @return		the number of chunks
+   */
+  public long getNumChunks() {
+    return m_NumChunks;
+  }
+
+  /**
+   * Returns the number of frames that got dropped as the recorder was paused.
+   *
+   * @return		the number of frames
+   */
+  public long getNumPausedFrames() {
+    return m_NumPausedFrames;
+  }
+
+  /**
+   * Returns the number of times the line's buffer overran, ie the reader
+   * did not keep up.
+   *
+   * @return		the number of overruns
+   */
+  public long getNumOverruns() {
+    return m_NumOverruns;
+  }
+
+  /**
+   * Returns the number of frames that got lost due to overruns.
+   *
+   * @return		the number of frames
+   */
+  public long getNumLostFrames() {
+    return m_NumLostFrames;
+  }
+
+  /**
+   * Returns the maximum amount of audio that was waiting in the line's
+   * buffer after reading a chunk.
+   *
+   * @return		the backlog (msec)
+   */
+  public double getMaxBacklog() {
+    if (m_AudioFormat == null)
+      return 0;
+    return m_MaxBacklog * 1000.0 / m_AudioFormat.getFrameRate();
+  }
+
+  /**
+   * Returns the average amount of audio that was waiting in the line's
+   * buffer after reading a chunk.
+   *
+   * @return		the backlog (msec)
+   */
+  public double getAverageBacklog() {
+    if ((m_AudioFormat == null) || (m_NumChunks == 0))
+      return 0;
+    return m_TotalBacklog * 1000.0 / m_AudioFormat.getFrameRate() / m_NumChunks;
+  }
+
+  /**
+   * Returns the timestamp of the start of the last chunk that was read.
+   *
+   * @return		the timestamp (nsec, relative to the start of the recording)
+   */
+  public long getLastChunkTimestamp() {
+    return m_LastChunkTimestamp;
+  }
 
   /**
    * Returns the default file extension to use.
@@ -60,6 +386,67 @@ public class SampledSoundRecorder
     return "wav";
   }
 
+  /**
+   * Returns the format to record in.
+   *
+   * @return		the format
+   */
+  protected AudioFormat createAudioFormat() {
+    return new AudioFormat(
+      (m_SampleSizeInBits == 8) ? AudioFormat.Encoding.PCM_UNSIGNED : AudioFormat.Encoding.PCM_SIGNED,
+      m_Frequency, m_SampleSizeInBits, m_Channels, m_SampleSizeInBits / 8 * m_Channels, m_Frequency, false);
+  }
+
+  /**
+   * Returns the number of bytes to read from the line at a time.
+   *
+   * @return		the number of bytes, a multiple of the frame size
+   */
+  protected int getChunkSize() {
+    return toBytes(m_ChunkDuration);
+  }
+
+  /**
+   * Turns the duration into number of bytes, using whole frames.
+   *
+   * @param duration	the duration (msec)
+   * @return		the number of bytes, at least one frame
+   */
+  protected int toBytes(int duration) {
+    return Math.max(1, Math.round(m_AudioFormat.getFrameRate() * duration / 1000)) * m_AudioFormat.getFrameSize();
+  }
+
+  /**
+   * Obtains and opens the line to record from.
+   *
+   * @return		the opened line
+   * @throws Exception	if line not available or failed to open
+   */
+  protected TargetDataLine openLine() throws Exception {
+    return openLine((TargetDataLine) AudioSystem.getLine(m_DataLineInfo));
+  }
+
+  /**
+   * Opens the line with the audio format and line buffer size.
+   *
+   * @param line	the line to open
+   * @return		the opened line
+   * @throws Exception	if failed to open
+   */
+  protected TargetDataLine openLine(TargetDataLine line) throws Exception {
+    if (m_LineBufferDuration > 0)
+      line.open(m_AudioFormat, toBytes(m_LineBufferDuration));
+    else
+      line.open(m_AudioFormat);
+
+    return line;
+  }
+
+  /**
+   * Performs a check of the setup.
+   *
+   * @return		null if OK, otherwise error message
+   */
   @Override
   public String setUp() {
     String	result;
@@ -67,63 +454,180 @@ public class SampledSoundRecorder
     result = super.setUp();
 
     if (result == null) {
-      m_AudioFormat = new AudioFormat(
-	AudioFormat.Encoding.PCM_SIGNED,
-	m_Frequency, 16, 2, 4, m_Frequency, false);
+      m_AudioFormat  = createAudioFormat();
       m_DataLineInfo = new DataLine.Info(TargetDataLine.class, m_AudioFormat);
       try {
-	m_TargetDataLine = (TargetDataLine) AudioSystem.getLine(m_DataLineInfo);
-	m_TargetDataLine.open(m_AudioFormat);
+	m_TargetDataLine = openLine();
       }
       catch (Exception e) {
 	return "Unable to get recording line: " + Utils.throwableToString(e);
       }
-      m_AudioInputStream = new AudioInputStream(m_TargetDataLine);
+      m_Buffer         = new byte[getChunkSize()];
+      m_DriftCorrector = new DriftCorrector(m_AudioFormat.getFrameRate(), m_AudioFormat.getChannels());
+      m_LevelMeter     = new AudioLevelMeter(m_AudioFormat);
     }
 
     return result;
   }
 
   /**
-   * Starts the actual recording process.
+   * Opens the sink for the samples.
    *
-   * @throws Exception	if starting of recording fails
+   * @throws Exception	if opening fails
    */
-  @Override
-  protected void doStart() throws Exception {
-    m_TargetDataLine.start();
-    new Thread(() -> {
+  protected void openSink() throws Exception {
+    m_WavWriter = new WavWriter(m_Output, m_AudioFormat);
+    m_WavWriter.open();
+  }
+
+  /**
+   * Writes the samples to the sink.
+   *
+   * @param data	the samples, from position to limit
+   * @param timestamp	the time the first sample was captured (nsec, relative to the start of the recording)
+   * @throws Exception	if writing fails
+   */
+  protected void writeSink(ByteBuffer data, long timestamp) throws Exception {
+    m_WavWriter.write(data);
+  }
+
+  /**
+   * Closes the sink, finalizing the output.
+   *
+   * @throws Exception	if closing fails
+   */
+  protected void closeSink() throws Exception {
+    if (m_WavWriter != null) {
+      m_WavWriter.close();
+      m_WavWriter = null;
+    }
+  }
+
+  /**
+   * Updates the backlog and overrun statistics after reading a chunk.
+   *
+   * @param frames	the number of frames that were read
+   * @return		the number of frames still waiting in the line's buffer
+   */
+  protected long updateStatistics(int frames) {
+    long	position;
+    long	backlog;
+    long	lost;
+
+    m_FramesRead += frames;
+    m_NumChunks++;
+    // frames captured by the line that were neither read nor are still buffered got lost;
+    // the position is obtained first, as the buffer can only have grown since
+    position = m_TargetDataLine.getLongFramePosition();
+    backlog  = m_TargetDataLine.available() / m_AudioFormat.getFrameSize();
+    lost     = position - m_FramesRead - backlog;
+    if (lost > m_NumLostFrames) {
+      m_NumOverruns++;
+      printError("read", "Line buffer overrun, lost " + (lost - m_NumLostFrames) + " frames");
+      m_NumLostFrames = lost;
+    }
+    m_TotalBacklog += backlog;
+    if (backlog > m_MaxBacklog)
+      m_MaxBacklog = backlog;
+
+    return backlog;
+  }
+
+  /**
+   * Reads the next chunk of samples into the buffer.
+   *
+   * @return		the number of bytes read
+   */
+  protected int readChunk() {
+    return m_TargetDataLine.read(m_Buffer, 0, m_Buffer.length);
+  }
+
+  /**
+   * Reads the samples from the line until stopped. Samples captured while
+   * paused get dropped, including those that were still buffered by the
+   * line when resuming.
+   */
+  protected void readSamples() {
+    ByteBuffer	data;
+    int		read;
+    int		frames;
+    int		skip;
+    long	backlog;
+    long	timestamp;
+    double	nanosPerFrame;
+
+    data          = ByteBuffer.wrap(m_Buffer);
+    nanosPerFrame = 1000000000.0 / m_AudioFormat.getFrameRate();
+    while (m_Reading) {
+      read = readChunk();
+      if (read <= 0)
+	continue;
+      m_LevelMeter.process(m_Buffer, 0, read);
+      frames    = read / m_AudioFormat.getFrameSize();
+      backlog   = updateStatistics(frames);
+      timestamp = getElapsedNanos() - Math.round((frames + backlog) * nanosPerFrame);
+      skip      = 0;
+      if (timestamp < m_ResumeTimestamp)
+	skip = (int) Math.min(frames, Math.ceil((m_ResumeTimestamp - timestamp) / nanosPerFrame));
+      if (isPaused() || (skip == frames)) {
+	m_NumPausedFrames += frames;
+	continue;
+      }
+      m_NumPausedFrames   += skip;
+      timestamp           += Math.round(skip * nanosPerFrame);
+      m_LastChunkTimestamp = timestamp;
+      data.clear();
+      data.limit(read);
+      data.position(skip * m_AudioFormat.getFrameSize());
+      m_DriftCorrector.update(timestamp, frames - skip);
+      m_MeasuredFrequency = m_DriftCorrector.getMeasuredRate();
       try {
-	AudioSystem.write(m_AudioInputStream, AudioFileFormat.Type.WAVE, m_Output);
+	if (isCorrectingDrift())
+	  writeSink(m_DriftCorrector.resample(data), timestamp);
+	else
+	  writeSink(data, timestamp);
       }
       catch (Exception e) {
-	printError("record", "Failed to record: " + Utils.throwableToString(e));
+	printError("read", "Failed to write samples: " + Utils.throwableToString(e));
+	m_Reading = false;
       }
-    }).start();
+    }
   }
 
   /**
-   * Stops the recording process.
+   * Starts the actual recording process.
    *
-   * @throws Exception	if stopping fails
+   * @throws Exception	if starting of recording fails
    */
   @Override
-  protected void doStop() throws Exception {
-    m_TargetDataLine.stop();
-    m_TargetDataLine.close();
+  protected void doStart() throws Exception {
+    openSink();
+    m_Reading      = true;
+    m_ReaderThread = new Thread(this::readSamples, getClass().getSimpleName() + "-reader");
+    m_ReaderThread.setPriority(Thread.MAX_PRIORITY);
+    m_TargetDataLine.start();
+    m_ReaderThread.start();
   }
 
   /**
-   * Indicates whether recorder can be paused and resumed.
+   * Stops the recording process. Returns once the output is complete.
    *
-   * @return		true if pause/resume supported
+   * @throws Exception	if stopping fails
    */
-  public boolean canPauseAndResume() {
-    return false;
+  @Override
+  protected void doStop() throws Exception {
+    m_Reading = false;
+    m_TargetDataLine.stop();
+    if (m_ReaderThread != null) {
+      m_ReaderThread.join();
+      m_ReaderThread = null;
+    }
+    m_TargetDataLine.close();
+    closeSink();
   }
 
   /**
-   * Does nothing.
+   * Does nothing, the samples get dropped while paused.
    *
    * @throws Exception	if pausing fails
    */
@@ -132,12 +636,13 @@ public class SampledSoundRecorder
   }
 
   /**
-   * Does nothing.
+   * Records the time of resuming, samples captured before get dropped.
    *
    * @throws Exception	if resuming fails
    */
   @Override
   protected void doResume() throws Exception {
+    m_ResumeTimestamp = getElapsedNanos();
   }
 
   /**
@@ -154,5 +659,9 @@ public class SampledSoundRecorder
     for (int i = 0; i < 200; i++)
       Thread.sleep(100);
     rec.stop();
+    System.out.println("Chunks: " + rec.getNumChunks());
+    System.out.println("Drift: " + rec.getDriftPPM() + "ppm (measured rate: " + rec.getMeasuredFrequency() + ")");
+    System.out.println("Overruns: " + rec.getNumOverruns() + " (" + rec.getNumLostFrames() + " frames lost)");
+    System.out.println("Backlog: avg=" + rec.getAverageBacklog() + "ms, max=" + rec.getMaxBacklog() + "ms");
   }
 }
@@ -0,0 +1,214 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * WavWriter.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.sound;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes PCM samples to a WAV file in a streaming fashion. The header gets
+ * written with placeholder sizes, which get patched once the file is
+ * closed.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class WavWriter {
+
+  /** the size of the header. */
+  public final static int HEADER_SIZE = 44;
+
+  /** the offset of the RIFF chunk size. */
+  protected final static int OFFSET_RIFF_SIZE = 4;
+
+  /** the offset of the data chunk size. */
+  protected final static int OFFSET_DATA_SIZE = 40;
+
+  /** the maximum size of the data chunk. */
+  protected final static long MAX_DATA_SIZE = 0xFFFFFFFFL - (HEADER_SIZE - 8);
+
+  /** the file to write to. */
+  protected File m_File;
+
+  /** the format of the samples. */
+  protected AudioFormat m_Format;
+
+  /** the channel to write to. */
+  protected FileChannel m_Channel;
+
+  /** the number of bytes of sample data written. */
+  protected long m_DataSize;
+
+  /**
+   * Initializes the writer.
+   *
+   * @param file	the file to write to
+   * @param format	the format of the samples
+   */
+  public WavWriter(File file, AudioFormat format) {
+    m_File   = file;
+    m_Format = format;
+  }
+
+  /**
+   * Returns the file being written to.
+   *
+   * @return		the file
+   */
+  public File getFile() {
+    return m_File;
+  }
+
+  /**
+   * Returns the format of the samples.
+   *
+   * @return		the format
+   */
+  public AudioFormat getFormat() {
+    return m_Format;
+  }
+
+  /**
+   * Checks whether the format can be stored in a WAV file.
+   *
+   * @param format	the format to check
+   * @return		null if supported, otherwise error message
+   */
+  public static String checkFormat(AudioFormat format) {
+    if (format.getEncoding().equals(AudioFormat.Encoding.PCM_UNSIGNED)) {
+      if (format.getSampleSizeInBits() != 8)
+	return "Unsigned samples are only supported with 8 bits, provided: " + format.getSampleSizeInBits();
+    }
+    else if (format.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED)) {
+      if (format.getSampleSizeInBits() <= 8)
+	return "Signed samples require more than 8 bits, provided: " + format.getSampleSizeInBits();
+      if (format.isBigEndian())
+	return "Samples must be little-endian";
+    }
+    else if (format.getEncoding().equals(AudioFormat.Encoding.PCM_FLOAT)) {
+      if (format.isBigEndian())
+	return "Samples must be little-endian";
+    }
+    else {
+      return "Unsupported encoding: " + format.getEncoding();
+    }
+    return null;
+  }
+
+  /**
+   * Returns the header, using the current data size.
+   *
+   * @return		the header
+   */
+  protected ByteBuffer createHeader() {
+    ByteBuffer	result;
+    long	dataSize;
+
+    dataSize = Math.min(m_DataSize, MAX_DATA_SIZE);
+    result   = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    result.put(new byte[]{'R', 'I', 'F', 'F'});
+    result.putInt((int) (dataSize + HEADER_SIZE - 8));
+    result.put(new byte[]{'W', 'A', 'V', 'E'});
+    result.put(new byte[]{'f', 'm', 't', ' '});
+    result.putInt(16);
+    result.putShort((short) (m_Format.getEncoding().equals(AudioFormat.Encoding.PCM_FLOAT) ? 3 : 1));
+    result.putShort((short) m_Format.getChannels());
+    result.putInt(Math.round(m_Format.getSampleRate()));
+    result.putInt(Math.round(m_Format.getSampleRate()) * m_Format.getFrameSize());
+    result.putShort((short) m_Format.getFrameSize());
+    result.putShort((short) m_Format.getSampleSizeInBits());
+    result.put(new byte[]{'d', 'a', 't', 'a'});
+    result.putInt((int) dataSize);
+    result.flip();
+
+    return result;
+  }
+
+  /**
+   * Opens the file and writes the header with placeholder sizes.
+   *
+   * @throws IOException	if format not supported or opening fails
+   */
+  public void open() throws IOException {
+    String	msg;
+
+    msg = checkFormat(m_Format);
+    if (msg != null)
+      throw new IOException(msg);
+
+    m_DataSize = 0;
+    m_Channel  = FileChannel.open(
+      m_File.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    m_Channel.write(createHeader());
+  }
+
+  /**
+   * Appends the samples.
+   *
+   * @param data	the samples, from position to limit
+   * @throws IOException	if writing fails
+   */
+  public void write(ByteBuffer data) throws IOException {
+    m_DataSize += data.remaining();
+    while (data.hasRemaining())
+      m_Channel.write(data);
+  }
+
+  /**
+   * Returns the number of bytes of sample data written so far.
+   *
+   * @return		the number of bytes
+   */
+  public long getDataSize() {
+    return m_DataSize;
+  }
+
+  /**
+   * Patches the sizes in the header and closes the file.
+   *
+   * @throws IOException	if patching or closing fails
+   */
+  public void close() throws IOException {
+    ByteBuffer	header;
+
+    if (m_Channel == null)
+      return;
+
+    try {
+      header = createHeader();
+      header.position(OFFSET_RIFF_SIZE);
+      header.limit(OFFSET_RIFF_SIZE + 4);
+      m_Channel.write(header, OFFSET_RIFF_SIZE);
+      header.limit(OFFSET_DATA_SIZE + 4);
+      header.position(OFFSET_DATA_SIZE);
+      m_Channel.write(header, OFFSET_DATA_SIZE);
+      m_Channel.force(false);
+    }
+    finally {
+      m_Channel.close();
+      m_Channel = null;
+    }
+  }
+}
@@ -0,0 +1,504 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * XuggleSoundRecorder.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.sound;
+
+import com.github.fracpete.screencast4j.record.Recorder;
+import com.googlecode.jfilechooserbookmarks.core.Utils;
+import com.xuggle.mediatool.IMediaWriter;
+import com.xuggle.mediatool.ToolFactory;
+import com.xuggle.xuggler.IAudioSamples;
+import com.xuggle.xuggler.IStreamCoder;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Compresses the recorded sound on the fly, using AAC or FLAC via Xuggle.
+ * The reader thread only copies the samples into a ring buffer, the
+ * encoding happens on a separate worker thread. Should the worker fall
+ * behind by more than the size of the ring buffer, samples get dropped
+ * (see {@link #getNumDroppedFrames()}).
+ * <br>
+ * The timestamps of the encoded samples are based on the timestamp of the
+ * first chunk and the number of samples since, including dropped ones.
+ * Drops get recorded with their position in the ring buffer, ie the
+ * timeline only advances by the dropped samples once the encoder reaches
+ * that position.
+ * <br>
+ * Instead of writing to its own file, the recorder can add its stream to
+ * the writer of another recorder (see
+ * {@link #setSharedWriter(IMediaWriter, int, Recorder)}), eg for storing
+ * sound and video in a single file. In that case, the timestamps are
+ * relative to the start of the other recorder, which should share its
+ * clock with this one.
+ * <br>
+ * The CPU time of the worker thread gets measured, to determine the cost
+ * of the codec per minute of audio (see {@link #getCpuTimePerMinute()}).
+ * Only 16 bit samples are supported.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class XuggleSoundRecorder
+  extends SampledSoundRecorder {
+
+  /** the maximum time to wait for samples (nsec). */
+  protected final static long READ_TIMEOUT = 100000000L;
+
+  /** the codec to use. */
+  protected AudioCodec m_Codec;
+
+  /** the bit rate to use for lossy codecs (bits/sec). */
+  protected int m_BitRate;
+
+  /** the size of the buffer between reader and encoder (msec). */
+  protected int m_EncodeBufferDuration;
+
+  /** the writer. */
+  protected IMediaWriter m_Writer;
+
+  /** the index of the audio stream in the writer. */
+  protected int m_StreamIndex;
+
+  /** whether the writer is shared with another recorder. */
+  protected boolean m_SharedWriter;
+
+  /** the recorder whose start is the origin of the timestamps, null for this one. */
+  protected Recorder m_TimeBase;
+
+  /** the buffer between reader and encoder. */
+  protected AudioRingBuffer m_RingBuffer;
+
+  /** the drops, ie position in the ring buffer (bytes) and number of frames dropped. */
+  protected Queue<long[]> m_Drops;
+
+  /** the samples passed on to the encoder, get reused. */
+  protected IAudioSamples m_Samples;
+
+  /** the encoder thread. */
+  protected Thread m_EncoderThread;
+
+  /** the timestamp of the first chunk (nsec, relative to the start of the recording). */
+  protected volatile long m_FirstTimestamp;
+
+  /** the number of frames encoded. */
+  protected volatile long m_NumEncodedFrames;
+
+  /** the CPU time used by the encoder thread (nsec). */
+  protected volatile long m_EncodeCpuTime;
+
+  /**
+   * Initializes the members.
+   */
+  @Override
+  protected void initialize() {
+    super.initialize();
+
+    m_Codec                = AudioCodec.AAC;
+    m_BitRate              = 128000;
+    m_EncodeBufferDuration = 2000;
+  }
+
+  /**
+   * Resets the recorder's state (but not parameters).
+   */
+  @Override
+  public void reset() {
+    super.reset();
+
+    m_FirstTimestamp   = -1;
+    m_NumEncodedFrames = 0;
+    m_EncodeCpuTime    = 0;
+  }
+
+  /**
+   * Sets the codec to use.
+   *
+   * @param value	the codec
+   */
+  public void setCodec(AudioCodec value) {
+    m_Codec = value;
+  }
+
+  /**
+   * Returns the codec in use.
+   *
+   * @return		the codec
+   */
+  public AudioCodec getCodec() {
+    return m_Codec;
+  }
+
+  /**
+   * Sets the bit rate to use for lossy codecs.
+   *
+   * @param value	the bit rate (bits/sec)
+   */
+  public void setBitRate(int value) {
+    if (value > 0)
+      m_BitRate = value;
+    else
+      printError("Bit rate must be > 0, provided: " + value);
+  }
+
+  /**
+   * Returns the bit rate to use for lossy codecs.
+   *
+   * @return		the bit rate (bits/sec)
+   */
+  public int getBitRate() {
+    return m_BitRate;
+  }
+
+  /**
+   * Sets the size of the buffer between reader and encoder, ie for how
+   * long the encoder can fall behind without losing samples.
+   *
+   * @param value	the size (msec)
+   */
+  public void setEncodeBufferDuration(int value) {
+    if (value > 0)
+      m_EncodeBufferDuration = value;
+    else
+      printError("Encode buffer duration must be > 0, provided: " + value);
+  }
+
+  /**
+   * Returns the size of the buffer between reader and encoder.
+   *
+   * @return		the size (msec)
+   */
+  public int getEncodeBufferDuration() {
+    return m_EncodeBufferDuration;
+  }
+
+  /**
+   * Lets the recorder add its stream to the writer of another recorder
+   * rather than writing to its own file. The stream gets added when
+   * setting up, ie before the other recorder writes any data. The writer
+   * gets synchronized on when encoding and must be closed by its owner,
+   * once this recorder has stopped.
+   *
+   * @param writer	the writer to add the audio stream to, null to write to own file
+   * @param streamIndex	the index for the audio stream
+   * @param timeBase	the recorder whose start is the origin of the timestamps
+   */
+  public void setSharedWriter(IMediaWriter writer, int streamIndex, Recorder timeBase) {
+    m_Writer       = writer;
+    m_StreamIndex  = (writer == null) ? 0 : streamIndex;
+    m_SharedWriter = (writer != null);
+    m_TimeBase     = (writer == null) ? null : timeBase;
+  }
+
+  /**
+   * Returns whether the recorder adds its stream to the writer of another
+   * recorder.
+   *
+   * @return		true if shared
+   */
+  public boolean isSharedWriter() {
+    return m_SharedWriter;
+  }
+
+  /**
+   * Returns the default file extension to use.
+   *
+   * @return		the extension (no dot)
+   */
+  @Override
+  public String getDefaultExtension() {
+    return m_Codec.getExtension();
+  }
+
+  /**
+   * Returns the number of frames that got encoded.
+   *
+   * @return		the number of frames
+   */
+  public long getNumEncodedFrames() {
+    return m_NumEncodedFrames;
+  }
+
+  /**
+   * Returns the number of frames that got dropped as the encoder fell
+   * behind.
+   *
+   * @return		the number of frames
+   */
+  public long getNumDroppedFrames() {
+    if ((m_RingBuffer == null) || (m_AudioFormat == null))
+      return 0;
+    return m_RingBuffer.getNumDroppedBytes() / m_AudioFormat.getFrameSize();
+  }
+
+  /**
+   * Returns the maximum amount of audio that was waiting for the encoder.
+   *
+   * @return		the backlog (msec)
+   */
+  public double getMaxEncodeBacklog() {
+    if ((m_RingBuffer == null) || (m_AudioFormat == null))
+      return 0;
+    return m_RingBuffer.getMaxFill() * 1000.0 / m_AudioFormat.getFrameSize() / m_AudioFormat.getFrameRate();
+  }
+
+  /**
+   * Returns the duration of the audio encoded so far.
+   *
+   * @return		the duration (msec)
+   */
+  public double getEncodedDuration() {
+    if (m_AudioFormat == null)
+      return 0;
+    return m_NumEncodedFrames * 1000.0 / m_AudioFormat.getFrameRate();
+  }
+
+  /**
+   * Returns the CPU time used by the encoder thread so far.
+   *
+   * @return		the CPU time (msec), 0 if not supported by the JVM
+   */
+  public double getEncodeCpuTime() {
+    return m_EncodeCpuTime / 1000000.0;
+  }
+
+  /**
+   * Returns the CPU time the encoder requires per minute of audio.
+   *
+   * @return		the CPU time (msec), 0 if nothing encoded yet or not supported by the JVM
+   */
+  public double getCpuTimePerMinute() {
+    double	duration;
+
+    duration = getEncodedDuration();
+    if (duration == 0)
+      return 0;
+    return getEncodeCpuTime() / duration * 60000.0;
+  }
+
+  /**
+   * Performs a check of the setup.
+   *
+   * @return		null if OK, otherwise error message
+   */
+  @Override
+  public String setUp() {
+    String	result;
+
+    if (m_SampleSizeInBits != 16)
+      return "Only 16 bit samples can be encoded, provided: " + m_SampleSizeInBits;
+
+    result = super.setUp();
+
+    if ((result == null) && m_SharedWriter)
+      addAudioStream();
+
+    return result;
+  }
+
+  /**
+   * Adds the audio stream to the writer and configures the encoder.
+   */
+  protected void addAudioStream() {
+    IStreamCoder	coder;
+
+    m_Writer.addAudioStream(m_StreamIndex, m_StreamIndex, m_Codec.getID(), m_AudioFormat.getChannels(), Math.round(m_AudioFormat.getSampleRate()));
+    coder = m_Writer.getContainer().getStream(m_StreamIndex).getStreamCoder();
+    if (m_Codec.isLossy())
+      coder.setBitRate(m_BitRate);
+    // FFmpeg's own AAC encoder is flagged as experimental
+    if (m_Codec == AudioCodec.AAC)
+      coder.setStandardsCompliance(IStreamCoder.CodecStandardsCompliance.COMPLIANCE_EXPERIMENTAL);
+  }
+
+  /**
+   * Opens the writer (unless shared) and starts the encoder thread.
+   *
+   * @throws Exception	if opening fails
+   */
+  @Override
+  protected void openSink() throws Exception {
+    if (!m_SharedWriter) {
+      m_Writer = ToolFactory.makeWriter(m_Output.getAbsolutePath());
+      addAudioStream();
+    }
+
+    m_FirstTimestamp   = -1;
+    m_NumEncodedFrames = 0;
+    m_EncodeCpuTime    = 0;
+    m_RingBuffer       = new AudioRingBuffer(toBytes(m_EncodeBufferDuration), m_AudioFormat.getFrameSize());
+    m_Drops            = new ConcurrentLinkedQueue<>();
+    m_Samples          = IAudioSamples.make(getChunkSize() / m_AudioFormat.getFrameSize(), m_AudioFormat.getChannels());
+    m_EncoderThread    = new Thread(this::encodeSamples, getClass().getSimpleName() + "-encoder");
+    m_EncoderThread.start();
+  }
+
+  /**
+   * Hands the samples to the encoder thread.
+   *
+   * @param data	the samples, from position to limit
+   * @param timestamp	the time the first sample was captured (nsec, relative to the start of the recording)
+   * @throws Exception	if writing fails
+   */
+  @Override
+  protected void writeSink(ByteBuffer data, long timestamp) throws Exception {
+    int		frames;
+
+    if (m_FirstTimestamp == -1)
+      m_FirstTimestamp = timestamp;
+    frames = data.remaining() / m_AudioFormat.getFrameSize();
+    if (!m_RingBuffer.write(data)) {
+      printError("read", "Encoder fell behind, dropped " + frames + " frames");
+      // the samples queued so far precede the drop
+      m_Drops.offer(new long[]{m_RingBuffer.getNumWritten(), frames});
+    }
+  }
+
+  /**
+   * Encodes the samples from the ring buffer until it gets closed and
+   * has been drained.
+   */
+  protected void encodeSamples() {
+    ThreadMXBean	bean;
+    boolean		measure;
+    long		cpuStart;
+    byte[]		buffer;
+    long[]		drop;
+    int			read;
+    int			frames;
+    int			frameSize;
+    int			sampleRate;
+    int			channels;
+    long		readPos;
+    long		end;
+    long		dropped;
+    long		position;
+    long		origin;
+    long		pts;
+
+    bean       = ManagementFactory.getThreadMXBean();
+    measure    = bean.isCurrentThreadCpuTimeSupported() && bean.isThreadCpuTimeEnabled();
+    cpuStart   = measure ? bean.getCurrentThreadCpuTime() : 0;
+    buffer     = new byte[getChunkSize()];
+    frameSize  = m_AudioFormat.getFrameSize();
+    sampleRate = Math.round(m_AudioFormat.getSampleRate());
+    channels   = m_AudioFormat.getChannels();
+    origin     = -1;
+    dropped    = 0;
+    try {
+      while (true) {
+	readPos = m_RingBuffer.getNumRead();
+	// drops get recorded before the samples following them are written
+	end     = m_RingBuffer.getNumWritten();
+	drop    = m_Drops.peek();
+	if ((drop != null) && (drop[0] <= readPos)) {
+	  dropped += drop[1];
+	  m_Drops.poll();
+	  continue;
+	}
+	if (drop != null)
+	  end = Math.min(end, drop[0]);
+	if (end <= readPos) {
+	  if (m_RingBuffer.isClosed() && (m_RingBuffer.available() == 0))
+	    break;
+	  m_RingBuffer.await(frameSize, READ_TIMEOUT);
+	  continue;
+	}
+	read = m_RingBuffer.read(buffer, 0, (int) Math.min(buffer.length, end - readPos), 0);
+	if (origin == -1) {
+	  origin = m_FirstTimestamp;
+	  if (m_TimeBase != null)
+	    origin += getStartOffset() - m_TimeBase.getStartOffset();
+	}
+	frames   = read / frameSize;
+	// dropped samples still advance the timeline
+	position = m_NumEncodedFrames + dropped;
+	pts      = origin / 1000 + position * 1000000L / sampleRate;
+	m_Samples.put(buffer, 0, 0, read);
+	m_Samples.setComplete(true, frames, sampleRate, channels, IAudioSamples.Format.FMT_S16, pts);
+	synchronized(m_Writer) {
+	  m_Writer.encodeAudio(m_StreamIndex, m_Samples);
+	}
+	m_NumEncodedFrames += frames;
+	if (measure)
+	  m_EncodeCpuTime = bean.getCurrentThreadCpuTime() - cpuStart;
+      }
+    }
+    catch (Exception e) {
+      printError("encode", "Failed to encode samples: " + Utils.throwableToString(e));
+      m_Reading = false;
+    }
+  }
+
+  /**
+   * Waits for the encoder thread to finish and closes the writer, unless
+   * shared.
+   *
+   * @throws Exception	if closing fails
+   */
+  @Override
+  protected void closeSink() throws Exception {
+    if (m_RingBuffer != null)
+      m_RingBuffer.close();
+    if (m_EncoderThread != null) {
+      m_EncoderThread.join();
+      m_EncoderThread = null;
+    }
+    if ((m_Writer != null) && !m_SharedWriter) {
+      m_Writer.close();
+      m_Writer = null;
+    }
+    if (m_Samples != null) {
+      m_Samples.delete();
+      m_Samples = null;
+    }
+  }
+
+  /**
+   * Records 10 seconds with each codec and outputs the CPU time they require.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) throws Exception {
+    for (AudioCodec codec: AudioCodec.values()) {
+      XuggleSoundRecorder rec = new XuggleSoundRecorder();
+      rec.setCodec(codec);
+      rec.setOutput(new File(System.getProperty("java.io.tmpdir") + File.separator + "sound." + rec.getDefaultExtension()));
+      rec.setFrequency(44100.0f);
+      String msg = rec.setUp();
+      if (msg != null) {
+	System.err.println(msg);
+	return;
+      }
+      rec.start();
+      for (int i = 0; i < 100; i++)
+	Thread.sleep(100);
+      rec.stop();
+      System.out.println(codec + ": " + rec.getOutput());
+      System.out.println("  Encoded: " + rec.getEncodedDuration() + "ms (" + rec.getNumDroppedFrames() + " frames dropped)");
+      System.out.println("  Encode backlog: max=" + rec.getMaxEncodeBacklog() + "ms");
+      System.out.println("  CPU: " + rec.getEncodeCpuTime() + "ms, " + rec.getCpuTimePerMinute() + "ms per minute of audio");
+    }
+  }
+}
@@ -0,0 +1,275 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SpoolReader.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.spool;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Reads the frames back from a spool file generated by {@link SpoolWriter}.
+ * All frames get decoded into the same image, which must not be modified.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @see SpoolWriter
+ */
+public class SpoolReader {
+
+  /** the size of the read buffer. */
+  public final static int BUFFER_SIZE = 4 * 1024 * 1024;
+
+  /** the spool file. */
+  protected File m_File;
+
+  /** the stream to read from. */
+  protected DataInputStream m_Stream;
+
+  /** the length of the file. */
+  protected long m_Length;
+
+  /** the number of bytes read so far. */
+  protected long m_Position;
+
+  /** the current frame. */
+  protected BufferedImage m_Image;
+
+  /** the pixels of the current frame. */
+  protected byte[] m_Pixels;
+
+  /** the timestamp of the current frame (msec). */
+  protected long m_Timestamp;
+
+  /** the tile flags. */
+  protected byte[] m_Flags;
+
+  /**
+   * Initializes the reader.
+   *
+   * @param file	the spool file to read
+   */
+  public SpoolReader(File file) {
+    m_File = file;
+  }
+
+  /**
+   * Returns the spool file.
+   *
+   * @return		the file
+   */
+  public File getFile() {
+    return m_File;
+  }
+
+  /**
+   * Opens the spool file and checks the header.
+   *
+   * @throws IOException	if opening fails or not a spool file
+   */
+  public void open() throws IOException {
+    m_Length   = m_File.length();
+    m_Stream   = new DataInputStream(new BufferedInputStream(new FileInputStream(m_File), BUFFER_SIZE));
+    m_Position = 0;
+    m_Image    = null;
+    m_Pixels   = null;
+    if (readInt() != SpoolWriter.MAGIC) {
+      close();
+      throw new IOException("Not a spool file: " + m_File);
+    }
+    if (readInt() != SpoolWriter.VERSION) {
+      close();
+      throw new IOException("Unsupported spool file version: " + m_File);
+    }
+  }
+
+  /**
+   * Reads an int from the stream.
+   *
+   * @return		the value
+   * @throws IOException	if reading fails
+   */
+  protected int readInt() throws IOException {
+    m_Position += 4;
+    return m_Stream.readInt();
+  }
+
+  /**
+   * Reads a long from the stream.
+   *
+   * @return		the value
+   * @throws IOException	if reading fails
+   */
+  protected long readLong() throws IOException {
+    m_Position += 8;
+    return m_Stream.readLong();
+  }
+
+  /**
+   * Reads bytes from the stream.
+   *
+   * @param buffer	the buffer to fill
+   * @param offset	the offset in the buffer
+   * @param length	the number of bytes to read
+   * @throws IOException	if reading fails
+   */
+  protected void readFully(byte[] buffer, int offset, int length) throws IOException {
+    m_Stream.readFully(buffer, offset, length);
+    m_Position += length;
+  }
+
+  /**
+   * Reads the next frame.
+   *
+   * @return		true if a frame was read, false if the end of the spool was reached
+   * @throws IOException	if reading fails or the spool is corrupt
+   */
+  public boolean next() throws IOException {
+    int		encoding;
+    int		width;
+    int		height;
+    int		type;
+    int		length;
+
+    try {
+      if ((m_Length - m_Position < 4) || (readInt() != SpoolWriter.RECORD))
+	return false;
+      m_Timestamp = readLong();
+      encoding    = readInt();
+      if (encoding == SpoolWriter.ENCODING_REPEAT) {
+	// nothing to repeat yet
+	if (m_Image == null)
+	  return next();
+	return true;
+      }
+      width  = readInt();
+      height = readInt();
+      type   = readInt();
+      length = readInt();
+      if ((m_Image == null) || (m_Image.getWidth() != width) || (m_Image.getHeight() != height) || (m_Image.getType() != type)) {
+	if (encoding != SpoolWriter.ENCODING_RAW)
+	  throw new IOException("Delta frame without previous frame at offset " + m_Position);
+	m_Image  = new BufferedImage(width, height, type);
+	m_Pixels = ((DataBufferByte) m_Image.getRaster().getDataBuffer()).getData();
+      }
+      switch (encoding) {
+	case SpoolWriter.ENCODING_RAW:
+	  if (length != m_Pixels.length)
+	    throw new IOException("Expected " + m_Pixels.length + " bytes, but found " + length + " at offset " + m_Position);
+	  readFully(m_Pixels, 0, length);
+	  break;
+	case SpoolWriter.ENCODING_TILES:
+	  readTiles(width, height);
+	  break;
+	default:
+	  throw new IOException("Unknown encoding " + encoding + " at offset " + m_Position);
+      }
+      return true;
+    }
+    catch (EOFException e) {
+      // incomplete last record
+      return false;
+    }
+  }
+
+  /**
+   * Reads the tiles that changed into the current frame.
+   *
+   * @param width	the width of the frame
+   * @param height	the height of the frame
+   * @throws IOException	if reading fails
+   */
+  protected void readTiles(int width, int height) throws IOException {
+    int		pixelStride;
+    int		stride;
+    int		numTiles;
+    int		tile;
+    int		tileX;
+    int		tileY;
+    int		rowLength;
+    int		rows;
+    int		y;
+
+    pixelStride = m_Pixels.length / width / height;
+    stride      = width * pixelStride;
+    numTiles    = SpoolWriter.tileCount(width, height);
+    if ((m_Flags == null) || (m_Flags.length != numTiles))
+      m_Flags = new byte[numTiles];
+    readFully(m_Flags, 0, numTiles);
+
+    tile = 0;
+    for (tileY = 0; tileY < height; tileY += SpoolWriter.TILE_SIZE) {
+      rows = Math.min(SpoolWriter.TILE_SIZE, height - tileY);
+      for (tileX = 0; tileX < width; tileX += SpoolWriter.TILE_SIZE) {
+	if (m_Flags[tile] != 0) {
+	  rowLength = Math.min(SpoolWriter.TILE_SIZE, width - tileX) * pixelStride;
+	  for (y = tileY; y < tileY + rows; y++)
+	    readFully(m_Pixels, y * stride + tileX * pixelStride, rowLength);
+	}
+	tile++;
+      }
+    }
+  }
+
+  /**
+   * Returns the current frame.
+   *
+   * @return		the frame, null if none read yet
+   */
+  public BufferedImage getImage() {
+    return m_Image;
+  }
+
+  /**
+   * Returns the timestamp of the current frame.
+   *
+   * @return		the timestamp (msec)
+   */
+  public long getTimestamp() {
+    return m_Timestamp;
+  }
+
+  /**
+   * Returns how much of the spool file has been read.
+   *
+   * @return		the progress (0-1)
+   */
+  public double getProgress() {
+    if (m_Length == 0)
+      return 1.0;
+    return Math.min(1.0, (double) m_Position / m_Length);
+  }
+
+  /**
+   * Closes the spool file.
+   *
+   * @throws IOException	if closing fails
+   */
+  public void close() throws IOException {
+    if (m_Stream != null) {
+      m_Stream.close();
+      m_Stream = null;
+    }
+  }
+}
@@ -0,0 +1,397 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SpoolWriter.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.spool;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Appends raw frames to a memory-mapped spool file, to be encoded once
+ * recording has finished. Only images backed by bytes are supported
+ * (eg TYPE_3BYTE_BGR).
+ * <br>
+ * With compression enabled, a frame only stores the tiles that differ
+ * from the previous frame. Frames with a different size and the first
+ * frame are always stored in full.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @see SpoolReader
+ */
+public class SpoolWriter {
+
+  /** the magic number at the start of the file. */
+  public final static int MAGIC = 0x53433453;
+
+  /** the version of the file format. */
+  public final static int VERSION = 1;
+
+  /** the marker at the start of each record. */
+  public final static int RECORD = 0x46524D45;
+
+  /** the frame is stored in full. */
+  public final static int ENCODING_RAW = 0;
+
+  /** the frame only stores the tiles that changed. */
+  public final static int ENCODING_TILES = 1;
+
+  /** the frame repeats the previous one. */
+  public final static int ENCODING_REPEAT = 2;
+
+  /** the width/height of a tile in pixels. */
+  public final static int TILE_SIZE = 64;
+
+  /** the size of the file regions that get mapped at a time. */
+  public final static int REGION_SIZE = 64 * 1024 * 1024;
+
+  /** the record header: marker, timestamp, encoding, width, height, type, length. */
+  protected final static int HEADER_SIZE = 4 + 8 + 4 + 4 + 4 + 4 + 4;
+
+  /** the spool file. */
+  protected File m_File;
+
+  /** whether to only store changed tiles. */
+  protected boolean m_Compress;
+
+  /** the file. */
+  protected RandomAccessFile m_RandomAccessFile;
+
+  /** the channel of the file. */
+  protected FileChannel m_Channel;
+
+  /** the currently mapped region. */
+  protected MappedByteBuffer m_Buffer;
+
+  /** the file position of the mapped region. */
+  protected long m_RegionStart;
+
+  /** the pixels of the previous frame. */
+  protected byte[] m_Previous;
+
+  /** the width of the previous frame. */
+  protected int m_PreviousWidth;
+
+  /** the height of the previous frame. */
+  protected int m_PreviousHeight;
+
+  /** the type of the previous frame. */
+  protected int m_PreviousType;
+
+  /** for copying pixels from images with non-contiguous data. */
+  protected byte[] m_Scratch;
+
+  /** the number of frames written. */
+  protected long m_NumFrames;
+
+  /**
+   * Initializes the writer.
+   *
+   * @param file	the spool file to write to
+   * @param compress	whether to only store the tiles that changed
+   */
+  public SpoolWriter(File file, boolean compress) {
+    m_File     = file;
+    m_Compress = compress;
+  }
+
+  /**
+   * Returns the spool file.
+   *
+   * @return		the file
+   */
+  public File getFile() {
+    return m_File;
+  }
+
+  /**
+   * Returns whether only tiles that changed are stored.
+   *
+   * @return		true if compressing
+   */
+  public boolean getCompress() {
+    return m_Compress;
+  }
+
+  /**
+   * Opens the spool file, overwriting any existing file.
+   *
+   * @throws IOException	if opening fails
+   */
+  public void open() throws IOException {
+    m_RandomAccessFile = new RandomAccessFile(m_File, "rw");
+    m_RandomAccessFile.setLength(0);
+    m_Channel     = m_RandomAccessFile.getChannel();
+    m_RegionStart = 0;
+    m_Buffer      = m_Channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_SIZE);
+    m_Previous    = null;
+    m_NumFrames   = 0;
+    m_Buffer.putInt(MAGIC);
+    m_Buffer.putInt(VERSION);
+  }
+
+  /**
+   * Returns the number of bytes written so far.
+   *
+   * @return		the number of bytes
+   */
+  public long getSize() {
+    if (m_Buffer == null)
+      return 0;
+    return m_RegionStart + m_Buffer.position();
+  }
+
+  /**
+   * Returns the number of frames written so far.
+   *
+   * @return		the number of frames
+   */
+  public long getNumFrames() {
+    return m_NumFrames;
+  }
+
+  /**
+   * Makes sure that the mapped region can hold the specified number of bytes,
+   * mapping the next region of the file if necessary.
+   *
+   * @param size	the number of bytes required
+   * @throws IOException	if mapping fails
+   */
+  protected void ensureCapacity(long size) throws IOException {
+    long	start;
+
+    if (m_Buffer.remaining() >= size)
+      return;
+    start         = getSize();
+    m_Buffer      = m_Channel.map(FileChannel.MapMode.READ_WRITE, start, Math.max(REGION_SIZE, size));
+    m_RegionStart = start;
+  }
+
+  /**
+   * Returns the pixels of the image, either the backing array or a copy.
+   *
+   * @param image	the image to get the pixels from
+   * @return		the pixels, row by row without padding
+   */
+  protected byte[] getPixels(BufferedImage image) {
+    Raster	raster;
+    int		size;
+
+    raster = image.getRaster();
+    if (raster.getTransferType() != DataBuffer.TYPE_BYTE)
+      throw new IllegalArgumentException("Only byte based images supported, provided type: " + image.getType());
+    size = raster.getWidth() * raster.getHeight() * raster.getNumDataElements();
+    if ((raster.getDataBuffer() instanceof DataBufferByte)
+      && (raster.getSampleModel() instanceof PixelInterleavedSampleModel)
+      && (raster.getParent() == null)
+      && (raster.getDataBuffer().getOffset() == 0)
+      && (((DataBufferByte) raster.getDataBuffer()).getData().length == size))
+      return ((DataBufferByte) raster.getDataBuffer()).getData();
+
+    if ((m_Scratch == null) || (m_Scratch.length != size))
+      m_Scratch = new byte[size];
+    raster.getDataElements(0, 0, raster.getWidth(), raster.getHeight(), m_Scratch);
+    return m_Scratch;
+  }
+
+  /**
+   * Appends the frame to the spool file.
+   *
+   * @param image	the frame, null to repeat the previous frame
+   * @param timestamp	the timestamp of the frame (msec)
+   * @throws IOException	if writing fails
+   */
+  public void write(BufferedImage image, long timestamp) throws IOException {
+    byte[]	pixels;
+    int		width;
+    int		height;
+    boolean	full;
+
+    if (image == null) {
+      ensureCapacity(4 + 8 + 4);
+      m_Buffer.putInt(RECORD);
+      m_Buffer.putLong(timestamp);
+      m_Buffer.putInt(ENCODING_REPEAT);
+      m_NumFrames++;
+      return;
+    }
+
+    pixels = getPixels(image);
+    width  = image.getWidth();
+    height = image.getHeight();
+    full   = !m_Compress
+      || (m_Previous == null)
+      || (m_PreviousWidth != width)
+      || (m_PreviousHeight != height)
+      || (m_PreviousType != image.getType());
+
+    ensureCapacity(HEADER_SIZE + tileCount(width, height) + pixels.length);
+    m_Buffer.putInt(RECORD);
+    m_Buffer.putLong(timestamp);
+    m_Buffer.putInt(full ? ENCODING_RAW : ENCODING_TILES);
+    m_Buffer.putInt(width);
+    m_Buffer.putInt(height);
+    m_Buffer.putInt(image.getType());
+    if (full)
+      writeFull(pixels);
+    else
+      writeTiles(pixels, width, height);
+
+    m_PreviousWidth  = width;
+    m_PreviousHeight = height;
+    m_PreviousType   = image.getType();
+    m_NumFrames++;
+  }
+
+  /**
+   * Returns the number of tiles for the given frame size.
+   *
+   * @param width	the width of the frame
+   * @param height	the height of the frame
+   * @return		the number of tiles
+   */
+  public static int tileCount(int width, int height) {
+    return ((width + TILE_SIZE - 1) / TILE_SIZE) * ((height + TILE_SIZE - 1) / TILE_SIZE);
+  }
+
+  /**
+   * Writes all the pixels.
+   *
+   * @param pixels	the pixels to write
+   */
+  protected void writeFull(byte[] pixels) {
+    m_Buffer.putInt(pixels.length);
+    m_Buffer.put(pixels);
+    if (m_Compress) {
+      if ((m_Previous == null) || (m_Previous.length != pixels.length))
+	m_Previous = new byte[pixels.length];
+      System.arraycopy(pixels, 0, m_Previous, 0, pixels.length);
+    }
+  }
+
+  /**
+   * Writes a flag per tile whether it changed, followed by the rows of the
+   * tiles that changed. Rows get compared in full and only get split into
+   * tiles once a difference was found.
+   *
+   * @param pixels	the pixels to write
+   * @param width	the width of the frame
+   * @param height	the height of the frame
+   */
+  protected void writeTiles(byte[] pixels, int width, int height) {
+    boolean[]	changed;
+    int		pixelStride;
+    int		stride;
+    int		tileStride;
+    int		numCols;
+    int		lengthPos;
+    int		flagsPos;
+    int		tile;
+    int		col;
+    int		tileY;
+    int		rowStart;
+    int		rowLength;
+    int		rows;
+    int		offset;
+    int		diff;
+    int		y;
+
+    pixelStride = pixels.length / width / height;
+    stride      = width * pixelStride;
+    tileStride  = TILE_SIZE * pixelStride;
+    numCols     = (width + TILE_SIZE - 1) / TILE_SIZE;
+    changed     = new boolean[numCols];
+    lengthPos   = m_Buffer.position();
+    m_Buffer.putInt(0);
+    flagsPos    = m_Buffer.position();
+    m_Buffer.position(flagsPos + tileCount(width, height));
+
+    tile = 0;
+    for (tileY = 0; tileY < height; tileY += TILE_SIZE) {
+      rows = Math.min(TILE_SIZE, height - tileY);
+      Arrays.fill(changed, false);
+      for (y = tileY; y < tileY + rows; y++) {
+	rowStart = y * stride;
+	offset   = 0;
+	while (offset < stride) {
+	  diff = Arrays.mismatch(pixels, rowStart + offset, rowStart + stride, m_Previous, rowStart + offset, rowStart + stride);
+	  if (diff == -1)
+	    break;
+	  col          = (offset + diff) / tileStride;
+	  changed[col] = true;
+	  offset       = (col + 1) * tileStride;
+	  // skip tiles already known to have changed
+	  while ((offset < stride) && changed[offset / tileStride])
+	    offset += tileStride;
+	}
+      }
+      for (col = 0; col < numCols; col++) {
+	m_Buffer.put(flagsPos + tile, (byte) (changed[col] ? 1 : 0));
+	if (changed[col]) {
+	  rowLength = Math.min(tileStride, stride - col * tileStride);
+	  for (y = tileY; y < tileY + rows; y++) {
+	    rowStart = y * stride + col * tileStride;
+	    m_Buffer.put(pixels, rowStart, rowLength);
+	    System.arraycopy(pixels, rowStart, m_Previous, rowStart, rowLength);
+	  }
+	}
+	tile++;
+      }
+    }
+
+    m_Buffer.putInt(lengthPos, m_Buffer.position() - flagsPos);
+  }
+
+  /**
+   * Closes the spool file, truncating it to the data written.
+   *
+   * @throws IOException	if closing fails
+   */
+  public void close() throws IOException {
+    long	size;
+
+    if (m_Channel == null)
+      return;
+
+    size = getSize();
+    m_Buffer.force();
+    m_Buffer   = null;
+    m_Previous = null;
+    m_Scratch  = null;
+    try {
+      m_Channel.truncate(size);
+    }
+    catch (IOException e) {
+      // some platforms don't allow truncating mapped files, the reader stops at the first missing record marker
+    }
+    m_Channel.close();
+    m_RandomAccessFile.close();
+    m_Channel          = null;
+    m_RandomAccessFile = null;
+  }
+}
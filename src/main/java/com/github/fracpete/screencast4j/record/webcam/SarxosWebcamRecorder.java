@@ -20,20 +20,44 @@
 
 package com.github.fracpete.screencast4j.record.webcam;
 
-import com.github.sarxos.webcam.Webcam;
+import com.github.fracpete.screencast4j.image.ChangeDetector;
+import com.github.sarxos.webcam.WebcamDevice;
 import com.googlecode.jfilechooserbookmarks.core.Utils;
 import com.xuggle.mediatool.IMediaWriter;
 import com.xuggle.mediatool.ToolFactory;
 import com.xuggle.xuggler.ICodec;
 import com.xuggle.xuggler.ICodec.ID;
+import com.xuggle.xuggler.IPixelFormat;
+import com.xuggle.xuggler.IVideoPicture;
+import com.xuggle.xuggler.IVideoResampler;
 
 import java.awt.Dimension;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.io.File;
-import java.util.concurrent.TimeUnit;
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 /**
- * Webcam access using Sarxos.
+ * Webcam access using Sarxos. The webcam gets obtained from the
+ * {@link WebcamBroker}, i.e., recording and previews share the same open
+ * device. In blocking mode, the recorder is the sole reader of the device
+ * while recording and previews get served from its frames.
+ * <br>
+ * If the webcam is opened in blocking mode and the driver supports buffer
+ * access, the frames get read straight into the pixel arrays of pooled
+ * images and handed from there to the encoder via reused native pictures,
+ * i.e., no memory gets allocated per frame.
+ * <br>
+ * In event-driven mode, the webcam gets opened in non-blocking mode and
+ * frames get queued whenever the broker hands on a new image, using the
+ * time of the notification as timestamp. Images that are identical to the
+ * previous one get dropped as duplicates. As the images get queued on the
+ * broker's thread, which is shared with previews and other recorders,
+ * queuing never waits for the encoder: the BLOCK overflow policy gets
+ * treated as DROP_OLDEST. The frame rate the device actually delivers is
+ * available via {@link #getDeviceFramesPerSecond()}.
  *
  * @author FracPete (fracpete at waikato dot ac dot nz)
  */
@@ -44,56 +68,181 @@ public class SarxosWebcamRecorder
   public final static ICodec.ID CAPTURE_FORMAT = ID.CODEC_ID_H264;
 
   /** the webcam in use. */
-  protected Webcam m_Webcam;
+  protected SharedWebcam m_Webcam;
 
   /** the webcam in use for grabbing images. */
-  protected Webcam m_GrabWebcam;
+  protected SharedWebcam m_GrabWebcam;
 
   /** the writer in use. */
   protected IMediaWriter m_Writer;
 
+  /** whether to read the frames directly into the pooled images if possible. */
+  protected boolean m_DirectCapture;
+
+  /** whether the frames get read directly into the pooled images. */
+  protected boolean m_BufferAccess;
+
+  /** the buffers wrapping the pixel arrays of the pooled images. */
+  protected Map<BufferedImage,ByteBuffer> m_ImageBuffers;
+
+  /** the picture with the BGR pixels of the frame. */
+  protected IVideoPicture m_RawPicture;
+
+  /** the picture in the pixel format of the encoder. */
+  protected IVideoPicture m_Picture;
+
+  /** for converting the BGR pixels into the pixel format of the encoder. */
+  protected IVideoResampler m_Resampler;
+
+  /** whether to queue frames when the driver delivers them rather than at a fixed rate. */
+  protected boolean m_EventDriven;
+
+  /** the listener for new images in event-driven mode. */
+  protected WebcamFrameListener m_Listener;
+
+  /** for synchronizing the queueing of new images with stopping. */
+  protected final Object m_EventLock = new Object();
+
+  /** whether new images get queued. */
+  protected boolean m_Listening;
+
+  /** the last image obtained from the driver. */
+  protected BufferedImage m_LastObtained;
+
+  /** for detecting images that are identical to the previous one. */
+  protected ChangeDetector m_DuplicateDetector;
+
+  /** the number of images that were dropped as duplicates. */
+  protected volatile long m_NumDuplicateFrames;
+
+  /** the number of new images obtained from the driver. */
+  protected volatile long m_NumNewFrames;
+
+  /** the time the first new image was obtained (nsec). */
+  protected volatile long m_FirstNewFrame;
+
+  /** the time the last new image was obtained (nsec). */
+  protected volatile long m_LastNewFrame;
+
   /**
-   * Returns the type of BufferedImage to create.
+   * Initializes the members.
+   */
+  @Override
+  protected void initialize() {
+    super.initialize();
+
+    m_DirectCapture     = true;
+    m_BufferAccess      = false;
+    m_ImageBuffers      = new IdentityHashMap<>();
+    m_EventDriven       = false;
+    m_DuplicateDetector = new ChangeDetector(64);
+  }
+
+  /**
+   * Sets whether to read the frames directly into the pooled images,
+   * if the webcam driver supports it.
    *
-   * @return		the type
+   * @param value	true if to read directly
+   */
+  public void setDirectCapture(boolean value) {
+    m_DirectCapture = value;
+  }
+
+  /**
+   * Returns whether to read the frames directly into the pooled images,
+   * if the webcam driver supports it.
+   *
+   * @return		true if to read directly
+   */
+  public boolean getDirectCapture() {
+    return m_DirectCapture;
+  }
+
+  /**
+   * Sets whether to queue frames whenever the driver delivers a new image,
+   * rather than grabbing them at the configured frame rate.
+   *
+   * @param value	true if event-driven
+   */
+  public void setEventDriven(boolean value) {
+    m_EventDriven = value;
+  }
+
+  /**
+   * Returns whether to queue frames whenever the driver delivers a new image,
+   * rather than grabbing them at the configured frame rate.
+   *
+   * @return		true if event-driven
+   */
+  public boolean getEventDriven() {
+    return m_EventDriven;
+  }
+
+  /**
+   * Returns whether the frames get queued whenever the driver delivers a
+   * new image.
+   *
+   * @return		true if event-driven
    */
   @Override
-  protected int getBufferedImageType() {
-    return BufferedImage.TYPE_3BYTE_BGR;
+  protected boolean isEventDriven() {
+    return m_EventDriven;
   }
 
   /**
-   * Returns the default file extension to use.
+   * Returns the number of images that were dropped in event-driven mode
+   * as they were identical to the previous one.
    *
-   * @return		the extension (no dot)
+   * @return		the number of images
    */
-  public String getDefaultExtension() {
-    return "mp4";
+  public long getNumDuplicateFrames() {
+    return m_NumDuplicateFrames;
   }
 
   /**
-   * Tries to obtain the requested webcam.
+   * Returns the frame rate that the device actually delivered in
+   * event-driven mode, excluding duplicates.
    *
-   * @return		the webcam, null if failed to obtain
+   * @return		the frames per second, 0 if not available
    */
-  protected Webcam getWebcam() {
-    Webcam 	result;
+  public double getDeviceFramesPerSecond() {
+    long	num;
+    long	duration;
 
-    result = null;
+    num      = m_NumNewFrames;
+    duration = m_LastNewFrame - m_FirstNewFrame;
+    if ((num < 2) || (duration <= 0))
+      return 0;
+    return (num - 1) * 1000000000.0 / duration;
+  }
 
-    if (m_WebcamID.isEmpty()) {
-      result = Webcam.getDefault();
-    }
-    else {
-      for (Webcam webcam: Webcam.getWebcams()) {
-	if (webcam.getName().equals(m_WebcamID)) {
-	  result = webcam;
-	  break;
-	}
-      }
-    }
+  /**
+   * Returns whether the frames are read directly into the pooled images.
+   * Only available after {@link #setUp()}.
+   *
+   * @return		true if read directly
+   */
+  public boolean isBufferAccess() {
+    return m_BufferAccess;
+  }
 
-    return result;
+  /**
+   * Returns the type of BufferedImage to create.
+   *
+   * @return		the type
+   */
+  @Override
+  protected int getBufferedImageType() {
+    return BufferedImage.TYPE_3BYTE_BGR;
+  }
+
+  /**
+   * Returns the default file extension to use.
+   *
+   * @return		the extension (no dot)
+   */
+  public String getDefaultExtension() {
+    return "mp4";
   }
 
   /**
@@ -104,27 +253,107 @@ public class SarxosWebcamRecorder
   @Override
   public String setUp() {
     String		result;
+    String		msg;
 
     result = super.setUp();
 
     if (result == null) {
       try {
-	m_Webcam = getWebcam();
-	if (m_Webcam == null)
-	  return "No webcam found for ID: " + (m_WebcamID.isEmpty() ? "-default-" : m_WebcamID);
-	m_Webcam.setViewSize(m_Size);
-	m_Webcam.open();
+	m_Webcam = WebcamBroker.getSingleton().acquire(m_WebcamID, m_Size, m_EventDriven);
       }
       catch (Exception e) {
 	return "Failed to open webcam: " + Utils.throwableToString(e);
       }
+      if (m_EventDriven && !m_Webcam.isNonBlocking()) {
+	WebcamBroker.getSingleton().release(m_Webcam);
+	m_Webcam = null;
+	return "Event-driven mode requires non-blocking webcam, but already in use in blocking mode: " + m_WebcamID;
+      }
+      m_BufferAccess = m_DirectCapture && !m_Webcam.isNonBlocking()
+	&& (m_Webcam.getWebcam().getDevice() instanceof WebcamDevice.BufferAccess);
       m_Writer = ToolFactory.makeWriter(m_Output.getAbsolutePath());
       m_Writer.addVideoStream(0, 0, CAPTURE_FORMAT, m_Size.width, m_Size.height);
+      msg = applyEncoderSettings(m_Writer, 0);
+      if (msg != null)
+	printError(msg);
+      m_RawPicture = IVideoPicture.make(IPixelFormat.Type.BGR24, m_Size.width, m_Size.height);
+      m_Picture    = IVideoPicture.make(m_EncoderSettings.getPixelFormat(), m_Size.width, m_Size.height);
+      m_Resampler  = IVideoResampler.make(
+	m_Size.width, m_Size.height, m_EncoderSettings.getPixelFormat(),
+	m_Size.width, m_Size.height, IPixelFormat.Type.BGR24);
+      if (m_Resampler == null)
+	printError("Failed to create resampler for pixel format: " + m_EncoderSettings.getPixelFormat());
     }
 
     return result;
   }
 
+  /**
+   * Starts the actual recording process.
+   *
+   * @throws Exception	if starting of recording fails
+   */
+  @Override
+  protected void doStart() throws Exception {
+    // previews get served from the recorder's images in blocking mode
+    if (!m_Webcam.isNonBlocking() && !m_Webcam.claimReader(this))
+      throw new IllegalStateException("Webcam already read by another recorder: " + m_Webcam.getName());
+    super.doStart();
+    if (!m_EventDriven)
+      return;
+
+    m_DuplicateDetector.reset();
+    m_LastObtained       = null;
+    m_NumDuplicateFrames = 0;
+    m_NumNewFrames       = 0;
+    m_Listening          = true;
+    m_Listener           = (SharedWebcam source, BufferedImage image) -> imageObtained(image);
+    m_Webcam.addSubscriber(m_Listener);
+  }
+
+  /**
+   * Gets called in event-driven mode whenever the webcam obtained an image.
+   * Queues the image with the current time as timestamp, unless it is
+   * identical to the previous one.
+   *
+   * @param obtained	the image from the webcam
+   */
+  protected void imageObtained(BufferedImage obtained) {
+    BufferedImage	image;
+    long		timestamp;
+    long		now;
+    long		start;
+
+    if ((obtained == null) || !isRecording())
+      return;
+
+    synchronized(m_EventLock) {
+      if (!m_Listening)
+	return;
+      if (obtained == m_LastObtained) {
+	m_NumDuplicateFrames++;
+	return;
+      }
+      timestamp      = getElapsedTime();
+      start          = System.nanoTime();
+      m_LastObtained = obtained;
+      image          = convertBufferedImage(obtained);
+      if (!m_DuplicateDetector.hasChanged(image)) {
+	releaseImage(image);
+	m_NumDuplicateFrames++;
+	return;
+      }
+      now = getClock().getElapsedNanos();
+      if (m_NumNewFrames == 0)
+	m_FirstNewFrame = now;
+      m_LastNewFrame = now;
+      m_NumNewFrames++;
+      m_CaptureTime += System.nanoTime() - start;
+      m_NumCapturedFrames++;
+      queueFrame(image, timestamp);
+    }
+  }
+
   /**
    * Stops the recording process.
    *
@@ -132,32 +361,143 @@ public class SarxosWebcamRecorder
    */
   @Override
   protected void doStop() throws Exception {
-    super.doStop();
-    if (m_Webcam != null) {
-      if (m_Webcam.isOpen())
-	m_Webcam.close();
-      m_Webcam = null;
+    if (m_Listener != null) {
+      m_Webcam.removeSubscriber(m_Listener);
+      synchronized(m_EventLock) {
+	m_Listening = false;
+      }
+      m_Listener = null;
     }
+    super.doStop();
+    m_Webcam.releaseReader(this);
+    WebcamBroker.getSingleton().release(m_Webcam);
+    m_Webcam = null;
+    m_ImageBuffers.clear();
+  }
+
+  /**
+   * Closes the writer once all frames have been written.
+   *
+   * @throws Exception	if closing fails
+   */
+  @Override
+  protected void closeWriter() throws Exception {
+    if (m_Writer == null)
+      return;
     synchronized(m_Writer) {
       m_Writer.close();
     }
     m_Writer = null;
+    if (m_RawPicture != null) {
+      m_RawPicture.delete();
+      m_RawPicture = null;
+    }
+    if (m_Picture != null) {
+      m_Picture.delete();
+      m_Picture = null;
+    }
+    m_Resampler = null;
   }
 
   /**
-   * Performs the actual grabbing of the frame.
+   * Returns the pixel array of the image, which must be of type
+   * {@link BufferedImage#TYPE_3BYTE_BGR}.
    *
-   * @throws Exception	true if failed to grab frame
+   * @param image	the image to get the pixels for
+   * @return		the pixels, one byte each for blue, green and red
    */
-  protected void doGrabFrame() throws Exception {
-    BufferedImage	frame;
+  protected byte[] getPixels(BufferedImage image) {
+    return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+  }
 
-    frame = convertBufferedImage(m_Webcam.getImage());
-    writeFrame(frame);
+  /**
+   * Returns the buffer wrapping the pixel array of the pooled image.
+   * The buffer gets created once per image and then reused.
+   *
+   * @param image	the image to get the buffer for
+   * @return		the buffer, cleared
+   */
+  protected ByteBuffer getImageBuffer(BufferedImage image) {
+    ByteBuffer	result;
+
+    result = m_ImageBuffers.get(image);
+    if (result == null) {
+      result = ByteBuffer.wrap(getPixels(image));
+      m_ImageBuffers.put(image, result);
+    }
+    result.clear();
+
+    return result;
   }
 
   /**
-   * Performs the actual grabbing of the image.
+   * Swaps the red and blue bytes of the pixels in place, turning RGB
+   * into BGR.
+   *
+   * @param pixels	the pixels to swap
+   */
+  protected void swapRedBlue(byte[] pixels) {
+    int		i;
+    byte	b;
+
+    for (i = 0; i < pixels.length - 2; i += 3) {
+      b             = pixels[i];
+      pixels[i]     = pixels[i + 2];
+      pixels[i + 2] = b;
+    }
+  }
+
+  /**
+   * Creates a copy of the image, which must be of type
+   * {@link BufferedImage#TYPE_3BYTE_BGR}.
+   *
+   * @param image	the image to copy
+   * @return		the copy
+   */
+  protected BufferedImage copyImage(BufferedImage image) {
+    BufferedImage	result;
+    byte[]		pixels;
+
+    result = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+    pixels = getPixels(image);
+    System.arraycopy(pixels, 0, getPixels(result), 0, pixels.length);
+
+    return result;
+  }
+
+  /**
+   * Performs the actual capturing of the frame.
+   *
+   * @return		the captured frame
+   * @throws Exception	if failed to capture frame
+   */
+  @Override
+  protected BufferedImage doCaptureFrame() throws Exception {
+    BufferedImage	result;
+
+    if (!m_BufferAccess)
+      return convertBufferedImage(m_Webcam.isNonBlocking() ? m_Webcam.getImage() : m_Webcam.readImage());
+
+    // the driver delivers RGB, the image is BGR
+    result = m_ImagePool.acquire(m_Size.width, m_Size.height, getBufferedImageType());
+    try {
+      m_Webcam.readImageBytes(getImageBuffer(result));
+    }
+    catch (Exception e) {
+      releaseImage(result);
+      throw e;
+    }
+    swapRedBlue(getPixels(result));
+    // the pooled image gets reused, previews get a copy
+    if (m_Webcam.isImageRequested())
+      m_Webcam.publish(copyImage(result));
+
+    return result;
+  }
+
+  /**
+   * Performs the actual grabbing of the image. Does not use the image
+   * pool, as the images don't get released.
    *
    * @return 		the image
    * @throws Exception	if failed to grab image
@@ -165,17 +505,13 @@ public class SarxosWebcamRecorder
   protected BufferedImage doGrabImage() throws Exception {
     BufferedImage	result;
 
-    if (m_GrabWebcam == null)
-      m_GrabWebcam = getWebcam();
-    if (m_GrabWebcam == null)
-      throw new Exception("Failed to obtain webcam instance!");
-    if (!m_GrabWebcam.isOpen() || !m_GrabWebcam.getViewSize().equals(m_Size)) {
-      if (m_GrabWebcam.isOpen())
-	m_GrabWebcam.close();
-      m_GrabWebcam.setViewSize(m_Size);
-      m_GrabWebcam.open();
+    if ((m_GrabWebcam != null) && !m_GrabWebcam.getSize().equals(m_Size)) {
+      WebcamBroker.getSingleton().release(m_GrabWebcam);
+      m_GrabWebcam = null;
     }
-    result = convertBufferedImage(m_GrabWebcam.getImage());
+    if (m_GrabWebcam == null)
+      m_GrabWebcam = WebcamBroker.getSingleton().acquire(m_WebcamID, m_Size, true);
+    result = convertBufferedImage(m_GrabWebcam.getImage(), false);
 
     return result;
   }
@@ -184,12 +520,31 @@ public class SarxosWebcamRecorder
    * Writes the frame out to disk.
    *
    * @param frame	the frame
+   * @param timestamp	the timestamp of the frame (msec)
+   * @param keyFrame	whether to force a key frame
    * @throws Exception	if writing fails
    */
-  protected void writeFrame(BufferedImage frame) throws Exception {
+  @Override
+  protected void writeFrame(BufferedImage frame, long timestamp, boolean keyFrame) throws Exception {
+    byte[]	pixels;
+
+    if ((m_Resampler == null) || (frame.getType() != BufferedImage.TYPE_3BYTE_BGR)
+      || (frame.getWidth() != m_Size.width) || (frame.getHeight() != m_Size.height)) {
+      synchronized(m_Writer) {
+	encodeVideo(m_Writer, frame, timestamp, keyFrame);
+      }
+      return;
+    }
+
+    pixels = getPixels(frame);
+    m_RawPicture.put(pixels, 0, 0, pixels.length);
+    m_RawPicture.setComplete(true, IPixelFormat.Type.BGR24, m_Size.width, m_Size.height, timestamp * 1000);
+    if (m_Resampler.resample(m_Picture, m_RawPicture) < 0)
+      throw new Exception("Failed to convert frame");
+    m_Picture.setTimeStamp(timestamp * 1000);
+    m_Picture.setKeyFrame(keyFrame);
     synchronized(m_Writer) {
-      if (!isStopped())
-	m_Writer.encodeVideo(0, frame, System.currentTimeMillis() - m_StartTime - m_CumulativePause, TimeUnit.MILLISECONDS);
+      m_Writer.encodeVideo(0, m_Picture);
     }
   }
 
@@ -198,27 +553,34 @@ public class SarxosWebcamRecorder
    */
   public void cleanUp() {
     super.cleanUp();
-    if (m_GrabWebcam != null) {
-      if (m_GrabWebcam.isOpen())
-	m_GrabWebcam.close();
-      m_GrabWebcam = null;
+    WebcamBroker.getSingleton().release(m_GrabWebcam);
+    m_GrabWebcam = null;
+    if (!isRecording() && !isPaused()) {
+      WebcamBroker.getSingleton().release(m_Webcam);
+      m_Webcam = null;
     }
   }
 
   /**
    * Just for testing.
    *
-   * @param args	ignored
+   * @param args	use "-events" for event-driven mode
    */
   public static void main(String[] args) throws Exception {
     SarxosWebcamRecorder rec = new SarxosWebcamRecorder();
     rec.setOutput(new File(System.getProperty("java.io.tmpdir") + File.separator + "webcam.ts"));
     rec.setFramesPerSecond(25);
     rec.setSize(new Dimension(640, 480));
+    rec.setEventDriven(args.length > 0 && args[0].equals("-events"));
     rec.setUp();
     rec.start();
     for (int i = 0; i < 200; i++)
       Thread.sleep(100);
     rec.stop();
+    System.out.println("Buffer access: " + rec.isBufferAccess());
+    System.out.println("Devices opened: " + WebcamBroker.getSingleton().getNumOpened());
+    if (rec.getEventDriven())
+      System.out.println("Device fps: " + rec.getDeviceFramesPerSecond() + ", duplicates: " + rec.getNumDuplicateFrames());
+    System.out.println("Image pool hits/misses: " + rec.getNumImagePoolHits() + "/" + rec.getNumImagePoolMisses());
   }
 }
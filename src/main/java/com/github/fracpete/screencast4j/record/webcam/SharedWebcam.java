@@ -0,0 +1,318 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SharedWebcam.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.webcam;
+
+import com.github.sarxos.webcam.Webcam;
+import com.github.sarxos.webcam.WebcamEvent;
+import com.github.sarxos.webcam.WebcamListener;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A webcam that was opened by the {@link WebcamBroker} and is shared by
+ * all the parties that acquired it. In non-blocking mode, a single thread
+ * reads the device and the images get handed to all the subscribed
+ * {@link WebcamFrameListener}s, while polling via {@link #getImage()}
+ * returns the most recent image without accessing the device. In blocking
+ * mode, a recorder can claim the device as its sole reader (see
+ * {@link #claimReader(Object)}) and hands its images on via
+ * {@link #publish(BufferedImage)}. While claimed, polling returns the most
+ * recent published image and subscribers get notified as well. Otherwise
+ * the device gets read when polled.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class SharedWebcam {
+
+  /** the underlying webcam. */
+  protected Webcam m_Webcam;
+
+  /** the size the webcam was opened with. */
+  protected Dimension m_Size;
+
+  /** whether the webcam was opened in non-blocking mode. */
+  protected boolean m_NonBlocking;
+
+  /** the number of parties that acquired the webcam. */
+  protected volatile int m_ReferenceCount;
+
+  /** the listeners to hand the images to. */
+  protected List<WebcamFrameListener> m_Subscribers;
+
+  /** the listener registered with the webcam. */
+  protected WebcamListener m_Listener;
+
+  /** the pending closing of the webcam, null if none. */
+  protected ScheduledFuture<?> m_PendingClose;
+
+  /** the party reading the device in blocking mode, null if none. */
+  protected volatile Object m_Reader;
+
+  /** the most recent image published by the reader. */
+  protected volatile BufferedImage m_LatestImage;
+
+  /** whether a polling party is waiting for the reader to publish an image. */
+  protected volatile boolean m_ImageRequested;
+
+  /**
+   * Initializes the shared webcam.
+   *
+   * @param webcam	the webcam to share
+   * @param size	the size to open the webcam with
+   * @param nonBlocking	whether to open the webcam in non-blocking mode
+   */
+  protected SharedWebcam(Webcam webcam, Dimension size, boolean nonBlocking) {
+    m_Webcam         = webcam;
+    m_Size           = new Dimension(size);
+    m_NonBlocking    = nonBlocking;
+    m_ReferenceCount = 0;
+    m_Subscribers    = new CopyOnWriteArrayList<>();
+    m_Listener       = new WebcamListener() {
+      @Override
+      public void webcamOpen(WebcamEvent we) {
+      }
+      @Override
+      public void webcamClosed(WebcamEvent we) {
+      }
+      @Override
+      public void webcamDisposed(WebcamEvent we) {
+      }
+      @Override
+      public void webcamImageObtained(WebcamEvent we) {
+	notifySubscribers(we.getImage());
+      }
+    };
+  }
+
+  /**
+   * Opens the webcam.
+   */
+  protected void open() {
+    m_Webcam.setViewSize(m_Size);
+    m_Webcam.addWebcamListener(m_Listener);
+    m_Webcam.open(m_NonBlocking);
+  }
+
+  /**
+   * Closes the webcam.
+   */
+  protected void close() {
+    m_Webcam.removeWebcamListener(m_Listener);
+    if (m_Webcam.isOpen())
+      m_Webcam.close();
+  }
+
+  /**
+   * Returns the underlying webcam.
+   *
+   * @return		the webcam
+   */
+  public Webcam getWebcam() {
+    return m_Webcam;
+  }
+
+  /**
+   * Returns the name of the webcam.
+   *
+   * @return		the name
+   */
+  public String getName() {
+    return m_Webcam.getName();
+  }
+
+  /**
+   * Returns the size the webcam was opened with.
+   *
+   * @return		the size
+   */
+  public Dimension getSize() {
+    return new Dimension(m_Size);
+  }
+
+  /**
+   * Returns whether the webcam was opened in non-blocking mode.
+   *
+   * @return		true if non-blocking
+   */
+  public boolean isNonBlocking() {
+    return m_NonBlocking;
+  }
+
+  /**
+   * Returns the number of parties that currently hold the webcam.
+   *
+   * @return		the number
+   */
+  public int getReferenceCount() {
+    return m_ReferenceCount;
+  }
+
+  /**
+   * Returns whether the webcam is open.
+   *
+   * @return		true if open
+   */
+  public boolean isOpen() {
+    return m_Webcam.isOpen();
+  }
+
+  /**
+   * Claims the device as sole reader in blocking mode, ie other parties
+   * no longer access the device when polling.
+   *
+   * @param reader	the party reading the device
+   * @return		true if claimed, false if already claimed by another party
+   */
+  public synchronized boolean claimReader(Object reader) {
+    if ((m_Reader != null) && (m_Reader != reader))
+      return false;
+    m_Reader = reader;
+    return true;
+  }
+
+  /**
+   * Releases the claim of the reader.
+   *
+   * @param reader	the party that claimed the device
+   */
+  public synchronized void releaseReader(Object reader) {
+    if (m_Reader == reader) {
+      m_Reader         = null;
+      m_LatestImage    = null;
+      m_ImageRequested = false;
+    }
+  }
+
+  /**
+   * Returns the most recent image in non-blocking mode or if a reader
+   * claimed the device, otherwise reads the next image from the device.
+   *
+   * @return		the image, null if none available
+   */
+  public BufferedImage getImage() {
+    if (m_NonBlocking || (m_Reader == null))
+      return m_Webcam.getImage();
+    m_ImageRequested = true;
+    return m_LatestImage;
+  }
+
+  /**
+   * Reads the next image from the device and publishes it. For the reader
+   * that claimed the device.
+   *
+   * @return		the image, null if none available
+   */
+  public BufferedImage readImage() {
+    BufferedImage	result;
+
+    result = m_Webcam.getImage();
+    if (result != null)
+      publish(result);
+
+    return result;
+  }
+
+  /**
+   * Reads the next image from the device straight into the buffer. For
+   * the reader that claimed the device, which should publish a copy of
+   * the image if requested (see {@link #isImageRequested()}).
+   *
+   * @param buffer	the buffer to read into
+   */
+  public void readImageBytes(ByteBuffer buffer) {
+    m_Webcam.getImageBytes(buffer);
+  }
+
+  /**
+   * Returns whether a polling party is waiting for an image to be
+   * published, ie whether the reader should publish a copy of the image
+   * it read into its own buffer.
+   *
+   * @return		true if requested
+   */
+  public boolean isImageRequested() {
+    return m_ImageRequested || !m_Subscribers.isEmpty();
+  }
+
+  /**
+   * Hands on an image read by the reader to the polling parties and the
+   * subscribers. The image must not get modified afterwards.
+   *
+   * @param image	the image to publish
+   */
+  public void publish(BufferedImage image) {
+    m_LatestImage    = image;
+    m_ImageRequested = false;
+    notifySubscribers(image);
+  }
+
+  /**
+   * Adds the listener to be notified about new images.
+   *
+   * @param l		the listener to add
+   */
+  public void addSubscriber(WebcamFrameListener l) {
+    m_Subscribers.add(l);
+  }
+
+  /**
+   * Removes the listener.
+   *
+   * @param l		the listener to remove
+   */
+  public void removeSubscriber(WebcamFrameListener l) {
+    m_Subscribers.remove(l);
+  }
+
+  /**
+   * Returns the number of subscribed listeners.
+   *
+   * @return		the number
+   */
+  public int getNumSubscribers() {
+    return m_Subscribers.size();
+  }
+
+  /**
+   * Hands the image to all subscribed listeners.
+   *
+   * @param image	the image to hand on
+   */
+  protected void notifySubscribers(BufferedImage image) {
+    for (WebcamFrameListener l: m_Subscribers)
+      l.frameObtained(this, image);
+  }
+
+  /**
+   * Returns a short description of the webcam.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    return getName() + " " + m_Size.width + "x" + m_Size.height + (m_NonBlocking ? ", non-blocking" : ", blocking") + ", references=" + getReferenceCount() + ", subscribers=" + getNumSubscribers();
+  }
+}
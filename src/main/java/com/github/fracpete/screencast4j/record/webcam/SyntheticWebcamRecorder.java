@@ -0,0 +1,255 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SyntheticWebcamRecorder.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.webcam;
+
+import com.github.fracpete.screencast4j.record.MultiRecorder;
+import com.github.fracpete.screencast4j.record.Recorder;
+import com.xuggle.mediatool.IMediaWriter;
+import com.xuggle.mediatool.ToolFactory;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Webcam recorder that renders a moving test pattern instead of accessing
+ * a device. Useful for testing and benchmarking the capture and encoding
+ * pipeline without (enough) webcams attached.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class SyntheticWebcamRecorder
+  extends AbstractWebcamRecorder {
+
+  /** the writer in use. */
+  protected IMediaWriter m_Writer;
+
+  /** the number of frames rendered so far. */
+  protected int m_NumRendered;
+
+  /**
+   * Returns the type of BufferedImage to create.
+   *
+   * @return		the type
+   */
+  @Override
+  protected int getBufferedImageType() {
+    return BufferedImage.TYPE_3BYTE_BGR;
+  }
+
+  /**
+   * Returns the default file extension to use.
+   *
+   * @return		the extension (no dot)
+   */
+  public String getDefaultExtension() {
+    return "mp4";
+  }
+
+  /**
+   * Performs a check of the setup.
+   *
+   * @return		null if OK, otherwise error message
+   */
+  @Override
+  public String setUp() {
+    String	result;
+    String	msg;
+
+    result = super.setUp();
+
+    if (result == null) {
+      m_NumRendered = 0;
+      m_Writer      = ToolFactory.makeWriter(m_Output.getAbsolutePath());
+      m_Writer.addVideoStream(0, 0, SarxosWebcamRecorder.CAPTURE_FORMAT, m_Size.width, m_Size.height);
+      msg = applyEncoderSettings(m_Writer, 0);
+      if (msg != null)
+	printError(msg);
+    }
+
+    return result;
+  }
+
+  /**
+   * Renders the test pattern, diagonal stripes that move with every frame.
+   *
+   * @param image	the image to render into
+   */
+  protected void render(BufferedImage image) {
+    byte[]	pixels;
+    int		x;
+    int		y;
+    int		i;
+    int		w;
+    int		h;
+    int		phase;
+
+    pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    w      = image.getWidth();
+    h      = image.getHeight();
+    phase  = m_NumRendered++ * 4;
+    i      = 0;
+    for (y = 0; y < h; y++) {
+      for (x = 0; x < w; x++) {
+	pixels[i++] = (byte) (x + y + phase);
+	pixels[i++] = (byte) (x - y - phase);
+	pixels[i++] = (byte) (y * 2 + phase);
+      }
+    }
+  }
+
+  /**
+   * Performs the actual capturing of the frame.
+   *
+   * @return		the captured frame
+   * @throws Exception	if failed to capture frame
+   */
+  @Override
+  protected BufferedImage doCaptureFrame() throws Exception {
+    BufferedImage	result;
+
+    result = m_ImagePool.acquire(m_Size.width, m_Size.height, getBufferedImageType());
+    render(result);
+
+    return result;
+  }
+
+  /**
+   * Performs the actual grabbing of the image.
+   *
+   * @return 		the image
+   * @throws Exception	if failed to grab image
+   */
+  @Override
+  protected BufferedImage doGrabImage() throws Exception {
+    BufferedImage	result;
+
+    result = new BufferedImage(m_Size.width, m_Size.height, getBufferedImageType());
+    render(result);
+
+    return result;
+  }
+
+  /**
+   * Writes the frame out to disk.
+   *
+   * @param frame	the frame
+   * @param timestamp	the timestamp of the frame (msec)
+   * @param keyFrame	whether to force a key frame
+   * @throws Exception	if writing fails
+   */
+  @Override
+  protected void writeFrame(BufferedImage frame, long timestamp, boolean keyFrame) throws Exception {
+    synchronized(m_Writer) {
+      encodeVideo(m_Writer, frame, timestamp, keyFrame);
+    }
+  }
+
+  /**
+   * Closes the writer once all frames have been written.
+   *
+   * @throws Exception	if closing fails
+   */
+  @Override
+  protected void closeWriter() throws Exception {
+    if (m_Writer == null)
+      return;
+    synchronized(m_Writer) {
+      m_Writer.close();
+    }
+    m_Writer = null;
+  }
+
+  /**
+   * Benchmarks recording from an increasing number of webcams in parallel,
+   * all sharing the same clock, and outputs the frame rate achieved per
+   * webcam. Uses synthetic webcams unless "-real" is specified.
+   * <br>
+   * Options: [-real] [max webcams (default: number of cores)] [seconds (default: 10)]
+   * [fps (default: 25)] [width (default: 640)] [height (default: 480)]
+   *
+   * @param args	the options
+   */
+  public static void main(String[] args) throws Exception {
+    boolean real = (args.length > 0) && args[0].equals("-real");
+    int offset = real ? 1 : 0;
+    List<WebcamInfo> webcams = null;
+    if (real) {
+      WebcamRegistry.getSingleton().waitForDiscovery();
+      webcams = WebcamRegistry.getSingleton().getWebcams();
+    }
+    int max = (args.length > offset) ? Integer.parseInt(args[offset]) : Runtime.getRuntime().availableProcessors();
+    if (real)
+      max = Math.min(max, webcams.size());
+    int seconds = (args.length > offset + 1) ? Integer.parseInt(args[offset + 1]) : 10;
+    int fps = (args.length > offset + 2) ? Integer.parseInt(args[offset + 2]) : 25;
+    Dimension size = new Dimension(
+      (args.length > offset + 3) ? Integer.parseInt(args[offset + 3]) : 640,
+      (args.length > offset + 4) ? Integer.parseInt(args[offset + 4]) : 480);
+    com.sun.management.OperatingSystemMXBean os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+    System.out.println("webcams: " + (real ? "real" : "synthetic") + ", " + size.width + "x" + size.height + " @ " + fps + "fps, " + seconds + "s, cores: " + Runtime.getRuntime().availableProcessors());
+    System.out.println("n\tmin fps\tavg fps\tdropped\tmissed\tcpu (cores)");
+    for (int n = 1; n <= max; n++) {
+      Recorder[] recorders = new Recorder[n];
+      for (int i = 0; i < n; i++) {
+	AbstractWebcamRecorder rec = real ? new SarxosWebcamRecorder() : new SyntheticWebcamRecorder();
+	if (real)
+	  rec.setWebcamID(webcams.get(i).getName());
+	rec.setOutput(new File(System.getProperty("java.io.tmpdir") + File.separator + "benchmark-webcam-" + n + "-" + i + ".mp4"));
+	rec.setFramesPerSecond(fps);
+	rec.setSize(size);
+	recorders[i] = rec;
+      }
+      MultiRecorder multi = new MultiRecorder();
+      multi.setRecorders(recorders);
+      String msg = multi.setUp();
+      if (msg != null) {
+	System.err.println(msg);
+	return;
+      }
+      long cpu = os.getProcessCpuTime();
+      long start = System.nanoTime();
+      multi.start();
+      Thread.sleep(seconds * 1000L);
+      multi.stop();
+      double duration = (System.nanoTime() - start) / 1000000000.0;
+      cpu = os.getProcessCpuTime() - cpu;
+      double min = Double.MAX_VALUE;
+      double sum = 0;
+      long dropped = 0;
+      long missed = 0;
+      for (Recorder r: recorders) {
+	AbstractWebcamRecorder rec = (AbstractWebcamRecorder) r;
+	double achieved = rec.getNumEncodedFrames() / duration;
+	min = Math.min(min, achieved);
+	sum += achieved;
+	dropped += rec.getNumDroppedFrames();
+	missed += rec.getNumMissedFrames();
+	rec.getOutput().delete();
+      }
+      System.out.println(n + "\t" + String.format("%.1f", min) + "\t" + String.format("%.1f", sum / n) + "\t" + dropped + "\t" + missed + "\t" + String.format("%.2f", cpu / 1000000000.0 / duration));
+    }
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * WebcamBroker.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.webcam;
+
+import com.github.sarxos.webcam.Webcam;
+
+import java.awt.Dimension;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide broker for webcams, which keeps a single open device per
+ * webcam, shared by recorders and previews alike. Parties acquire a
+ * {@link SharedWebcam} for a webcam ID and size and release it once
+ * finished. The device gets opened with the first acquisition and closed
+ * once the last party released it and it wasn't acquired again within
+ * the linger time, avoiding reopening the device when settings change.
+ * <br>
+ * A webcam can only be open with a single size and mode. Acquiring it
+ * with a different size fails while it is in use, whereas the mode of the
+ * party that opened the webcam wins. In blocking mode, the recorder
+ * claims the device as reader (see {@link SharedWebcam#claimReader(Object)})
+ * and previews get served from its images, ie only a single thread ever
+ * reads the device.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class WebcamBroker {
+
+  /** the default time to keep devices open after the last release (msec). */
+  public final static int DEFAULT_LINGER = 2000;
+
+  /** the singleton. */
+  protected static WebcamBroker m_Singleton;
+
+  /** the shared webcams, with the webcam name as key. */
+  protected Map<String,SharedWebcam> m_Webcams;
+
+  /** the time to keep devices open after the last release (msec). */
+  protected int m_Linger;
+
+  /** for closing devices after the linger time. */
+  protected ScheduledExecutorService m_Closer;
+
+  /** the number of times a device got opened. */
+  protected long m_NumOpened;
+
+  /**
+   * Initializes the broker.
+   */
+  protected WebcamBroker() {
+    m_Webcams   = new HashMap<>();
+    m_Linger    = DEFAULT_LINGER;
+    m_NumOpened = 0;
+    m_Closer    = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+      Thread t = new Thread(r, WebcamBroker.class.getSimpleName() + "-closer");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Sets the time to keep devices open after the last release.
+   *
+   * @param value	the time (msec), 0 to close immediately
+   */
+  public synchronized void setLinger(int value) {
+    m_Linger = Math.max(0, value);
+  }
+
+  /**
+   * Returns the time to keep devices open after the last release.
+   *
+   * @return		the time (msec)
+   */
+  public synchronized int getLinger() {
+    return m_Linger;
+  }
+
+  /**
+   * Returns the number of times a device got opened so far.
+   *
+   * @return		the number
+   */
+  public synchronized long getNumOpened() {
+    return m_NumOpened;
+  }
+
+  /**
+   * Tries to find the webcam for the specified ID, using the
+   * {@link WebcamRegistry}.
+   *
+   * @param id		the ID of the webcam, empty string for default
+   * @return		the webcam, null if not found
+   */
+  protected Webcam findWebcam(String id) {
+    WebcamInfo	info;
+
+    info = WebcamRegistry.getSingleton().getWebcam(id);
+    if (info == null)
+      return null;
+
+    return info.getWebcam();
+  }
+
+  /**
+   * Acquires the webcam, opening it if not already open. Needs to be
+   * released via {@link #release(SharedWebcam)} once no longer needed.
+   *
+   * @param id		the ID of the webcam, empty string for default
+   * @param size	the size to use
+   * @param nonBlocking	whether to open the webcam in non-blocking mode
+   * @return		the webcam
+   * @throws Exception	if webcam not found, in use with a different size or failed to open
+   */
+  public synchronized SharedWebcam acquire(String id, Dimension size, boolean nonBlocking) throws Exception {
+    SharedWebcam	result;
+    Webcam		webcam;
+
+    webcam = findWebcam(id);
+    if (webcam == null)
+      throw new Exception("No webcam found for ID: " + (id.isEmpty() ? "-default-" : id));
+
+    result = m_Webcams.get(webcam.getName());
+    if ((result != null) && !result.getSize().equals(size) && (result.getReferenceCount() > 0))
+      throw new Exception(
+	"Webcam '" + webcam.getName() + "' already in use with size "
+	  + result.getSize().width + "x" + result.getSize().height);
+    // reopen lingering webcam if size or mode differs
+    if ((result != null) && (result.getReferenceCount() == 0)
+      && (!result.getSize().equals(size) || (result.isNonBlocking() != nonBlocking))) {
+      close(result);
+      result = null;
+    }
+
+    if (result == null) {
+      result = new SharedWebcam(webcam, size, nonBlocking);
+      result.open();
+      m_Webcams.put(webcam.getName(), result);
+      m_NumOpened++;
+    }
+    else if (result.m_PendingClose != null) {
+      result.m_PendingClose.cancel(false);
+      result.m_PendingClose = null;
+    }
+    result.m_ReferenceCount++;
+
+    return result;
+  }
+
+  /**
+   * Releases the webcam. Gets closed after the linger time if no longer
+   * in use.
+   *
+   * @param webcam	the webcam to release, ignored if null
+   */
+  public synchronized void release(SharedWebcam webcam) {
+    if ((webcam == null) || (webcam.getReferenceCount() == 0))
+      return;
+
+    webcam.m_ReferenceCount--;
+    if (webcam.getReferenceCount() > 0)
+      return;
+
+    if (m_Linger == 0)
+      close(webcam);
+    else
+      webcam.m_PendingClose = m_Closer.schedule(() -> closeIfUnused(webcam), m_Linger, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Closes the webcam if it hasn't been acquired again in the meantime.
+   *
+   * @param webcam	the webcam to close
+   */
+  protected synchronized void closeIfUnused(SharedWebcam webcam) {
+    if (webcam.getReferenceCount() == 0)
+      close(webcam);
+  }
+
+  /**
+   * Closes the webcam and removes it from the broker.
+   *
+   * @param webcam	the webcam to close
+   */
+  protected synchronized void close(SharedWebcam webcam) {
+    if (webcam.m_PendingClose != null) {
+      webcam.m_PendingClose.cancel(false);
+      webcam.m_PendingClose = null;
+    }
+    if (m_Webcams.get(webcam.getName()) == webcam)
+      m_Webcams.remove(webcam.getName());
+    webcam.close();
+  }
+
+  /**
+   * Returns the singleton of the broker.
+   *
+   * @return		the broker
+   */
+  public static synchronized WebcamBroker getSingleton() {
+    if (m_Singleton == null)
+      m_Singleton = new WebcamBroker();
+    return m_Singleton;
+  }
+}
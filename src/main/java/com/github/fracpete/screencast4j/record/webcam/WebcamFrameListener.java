@@ -0,0 +1,42 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * WebcamFrameListener.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.webcam;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Interface for classes that get notified about new images of a
+ * {@link SharedWebcam}.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public interface WebcamFrameListener {
+
+  /**
+   * Gets called whenever the webcam obtained a new image. Gets called from
+   * the thread reading the device, hence must return quickly. The image
+   * is shared with the other listeners and must not be modified.
+   *
+   * @param source	the webcam that obtained the image
+   * @param image	the image
+   */
+  public void frameObtained(SharedWebcam source, BufferedImage image);
+}
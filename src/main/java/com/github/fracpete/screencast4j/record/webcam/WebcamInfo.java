@@ -0,0 +1,120 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * WebcamInfo.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.webcam;
+
+import com.github.sarxos.webcam.Webcam;
+
+import java.awt.Dimension;
+
+/**
+ * Cached information about a webcam, as discovered by the
+ * {@link WebcamRegistry}.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class WebcamInfo {
+
+  /** the webcam. */
+  protected Webcam m_Webcam;
+
+  /** the name of the webcam. */
+  protected String m_Name;
+
+  /** the supported view sizes. */
+  protected Dimension[] m_ViewSizes;
+
+  /**
+   * Initializes the information from the webcam.
+   *
+   * @param webcam	the webcam to obtain the information from
+   */
+  public WebcamInfo(Webcam webcam) {
+    Dimension[]	sizes;
+    int		i;
+
+    m_Webcam = webcam;
+    m_Name   = webcam.getName();
+    sizes    = webcam.getViewSizes();
+    if (sizes == null)
+      sizes = new Dimension[0];
+    m_ViewSizes = new Dimension[sizes.length];
+    for (i = 0; i < sizes.length; i++)
+      m_ViewSizes[i] = new Dimension(sizes[i]);
+  }
+
+  /**
+   * Returns the webcam.
+   *
+   * @return		the webcam
+   */
+  public Webcam getWebcam() {
+    return m_Webcam;
+  }
+
+  /**
+   * Returns the name of the webcam, which is used as ID.
+   *
+   * @return		the name
+   */
+  public String getName() {
+    return m_Name;
+  }
+
+  /**
+   * Returns the supported view sizes.
+   *
+   * @return		the sizes
+   */
+  public Dimension[] getViewSizes() {
+    return m_ViewSizes.clone();
+  }
+
+  /**
+   * Returns whether the view size is supported.
+   *
+   * @param size	the size to check
+   * @return		true if supported
+   */
+  public boolean supportsViewSize(Dimension size) {
+    for (Dimension dim: m_ViewSizes) {
+      if (dim.equals(size))
+	return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns a short description of the webcam.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    StringBuilder	result;
+
+    result = new StringBuilder(m_Name);
+    result.append(":");
+    for (Dimension dim: m_ViewSizes)
+      result.append(" ").append(dim.width).append("x").append(dim.height);
+
+    return result.toString();
+  }
+}
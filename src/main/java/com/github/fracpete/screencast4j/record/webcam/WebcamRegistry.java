@@ -0,0 +1,340 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * WebcamRegistry.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.webcam;
+
+import com.github.sarxos.webcam.Webcam;
+import com.googlecode.jfilechooserbookmarks.core.Utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide cache of the available webcams and their supported view
+ * sizes. Discovery happens in a background thread, first when the
+ * registry gets created and then again whenever the cache is older than
+ * the time-to-live, which picks up webcams that got plugged in or
+ * removed. Listeners get notified about such changes.
+ * <br>
+ * Lookups by ID only access the cache, they wait for the first discovery
+ * to finish, though.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class WebcamRegistry {
+
+  /** the default time-to-live of the cache (msec). */
+  public final static int DEFAULT_TTL = 10000;
+
+  /** the minimum age of the cache before an unknown ID triggers a discovery (msec). */
+  public final static int MIN_REDISCOVERY_AGE = 1000;
+
+  /** the singleton. */
+  protected static WebcamRegistry m_Singleton;
+
+  /** the discovered webcams, with the name as key (in discovery order, first is default). */
+  protected volatile Map<String,WebcamInfo> m_Webcams;
+
+  /** the time of the last discovery (msec since epoch). */
+  protected volatile long m_LastDiscovery;
+
+  /** the number of discoveries performed. */
+  protected volatile long m_NumDiscoveries;
+
+  /** signals the end of the first discovery. */
+  protected CountDownLatch m_Discovered;
+
+  /** the time-to-live of the cache (msec). */
+  protected int m_TTL;
+
+  /** the listeners to notify about changes. */
+  protected List<WebcamRegistryListener> m_Listeners;
+
+  /** for performing the discovery in the background. */
+  protected ScheduledExecutorService m_Executor;
+
+  /** the scheduled periodic discovery. */
+  protected ScheduledFuture<?> m_Schedule;
+
+  /**
+   * Initializes the registry.
+   */
+  protected WebcamRegistry() {
+    m_Webcams        = Collections.emptyMap();
+    m_LastDiscovery  = 0;
+    m_NumDiscoveries = 0;
+    m_Discovered     = new CountDownLatch(1);
+    m_TTL            = DEFAULT_TTL;
+    m_Listeners      = new CopyOnWriteArrayList<>();
+    m_Executor       = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+      Thread t = new Thread(r, WebcamRegistry.class.getSimpleName() + "-discovery");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Starts the periodic discovery, with the first one happening immediately.
+   */
+  protected synchronized void start() {
+    if (m_Schedule != null)
+      m_Schedule.cancel(false);
+    m_Schedule = m_Executor.scheduleWithFixedDelay(this::discover, 0, m_TTL, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Sets the time-to-live of the cache, i.e., the interval for discovering
+   * changes.
+   *
+   * @param value	the time (msec)
+   */
+  public synchronized void setTTL(int value) {
+    if (value <= 0) {
+      System.err.println("TTL must be >0, provided: " + value);
+      return;
+    }
+    m_TTL = value;
+    if (m_Schedule != null) {
+      m_Schedule.cancel(false);
+      m_Schedule = m_Executor.scheduleWithFixedDelay(this::discover, m_TTL, m_TTL, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Returns the time-to-live of the cache.
+   *
+   * @return		the time (msec)
+   */
+  public synchronized int getTTL() {
+    return m_TTL;
+  }
+
+  /**
+   * Adds the listener to be notified about changes.
+   *
+   * @param l		the listener to add
+   */
+  public void addListener(WebcamRegistryListener l) {
+    m_Listeners.add(l);
+  }
+
+  /**
+   * Removes the listener.
+   *
+   * @param l		the listener to remove
+   */
+  public void removeListener(WebcamRegistryListener l) {
+    m_Listeners.remove(l);
+  }
+
+  /**
+   * Queries the available webcams. Blocks the calling thread, as it
+   * accesses the devices.
+   *
+   * @return		the webcams, with the name as key
+   */
+  protected Map<String,WebcamInfo> queryWebcams() {
+    Map<String,WebcamInfo>	result;
+
+    result = new LinkedHashMap<>();
+    for (Webcam webcam: Webcam.getWebcams())
+      result.put(webcam.getName(), new WebcamInfo(webcam));
+
+    return result;
+  }
+
+  /**
+   * Performs the discovery and notifies the listeners if anything changed.
+   * Gets executed by the discovery thread.
+   */
+  protected void discover() {
+    Map<String,WebcamInfo>	previous;
+    Map<String,WebcamInfo>	current;
+    List<String>		added;
+    List<String>		removed;
+    boolean			first;
+    boolean			changed;
+
+    previous = m_Webcams;
+    try {
+      current = Collections.unmodifiableMap(queryWebcams());
+    }
+    catch (Exception e) {
+      System.err.println("Failed to discover webcams: " + Utils.throwableToString(e));
+      m_Discovered.countDown();
+      return;
+    }
+
+    added   = new ArrayList<>();
+    removed = new ArrayList<>();
+    changed = false;
+    for (String name: current.keySet()) {
+      if (!previous.containsKey(name))
+	added.add(name);
+      else if (!previous.get(name).toString().equals(current.get(name).toString()))
+	changed = true;
+    }
+    for (String name: previous.keySet()) {
+      if (!current.containsKey(name))
+	removed.add(name);
+    }
+
+    m_Webcams       = current;
+    m_LastDiscovery = System.currentTimeMillis();
+    m_NumDiscoveries++;
+    first           = (m_Discovered.getCount() > 0);
+    m_Discovered.countDown();
+
+    if (first || changed || !added.isEmpty() || !removed.isEmpty()) {
+      for (WebcamRegistryListener l: m_Listeners)
+	l.webcamsChanged(this, added, removed);
+    }
+  }
+
+  /**
+   * Triggers a discovery in the background.
+   */
+  public void refresh() {
+    m_Executor.execute(this::discover);
+  }
+
+  /**
+   * Waits for the first discovery to finish.
+   *
+   * @return		true if finished, false if interrupted
+   */
+  public boolean waitForDiscovery() {
+    try {
+      m_Discovered.await();
+      return true;
+    }
+    catch (InterruptedException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns whether the first discovery has finished.
+   *
+   * @return		true if finished
+   */
+  public boolean isDiscovered() {
+    return (m_Discovered.getCount() == 0);
+  }
+
+  /**
+   * Returns the time of the last discovery.
+   *
+   * @return		the time (msec since epoch), 0 if none yet
+   */
+  public long getLastDiscovery() {
+    return m_LastDiscovery;
+  }
+
+  /**
+   * Returns the number of discoveries performed so far.
+   *
+   * @return		the number
+   */
+  public long getNumDiscoveries() {
+    return m_NumDiscoveries;
+  }
+
+  /**
+   * Returns the currently cached webcams, without waiting for the first
+   * discovery to finish.
+   *
+   * @return		the webcams, default first
+   */
+  public List<WebcamInfo> getWebcams() {
+    return new ArrayList<>(m_Webcams.values());
+  }
+
+  /**
+   * Returns the webcam for the ID. Waits for the first discovery to finish.
+   * Performs a discovery in the calling thread if the ID is unknown and the
+   * cache is not fresh, in case the webcam got plugged in just now.
+   *
+   * @param id		the ID of the webcam, empty string for default
+   * @return		the webcam, null if not found
+   */
+  public WebcamInfo getWebcam(String id) {
+    WebcamInfo	result;
+
+    if (!waitForDiscovery())
+      return null;
+
+    result = getCachedWebcam(id);
+    if ((result == null) && (System.currentTimeMillis() - m_LastDiscovery >= MIN_REDISCOVERY_AGE)) {
+      try {
+	m_Executor.submit(this::discover).get();
+      }
+      catch (Exception e) {
+	return null;
+      }
+      result = getCachedWebcam(id);
+    }
+
+    return result;
+  }
+
+  /**
+   * Looks up the webcam in the cache, without waiting for the first
+   * discovery to finish.
+   *
+   * @param id		the ID of the webcam, empty string for default
+   * @return		the webcam, null if not found
+   */
+  public WebcamInfo getCachedWebcam(String id) {
+    Map<String,WebcamInfo>	webcams;
+
+    webcams = m_Webcams;
+    if (id.isEmpty()) {
+      if (webcams.isEmpty())
+	return null;
+      return webcams.values().iterator().next();
+    }
+
+    return webcams.get(id);
+  }
+
+  /**
+   * Returns the singleton of the registry, starting the discovery if
+   * necessary.
+   *
+   * @return		the registry
+   */
+  public static synchronized WebcamRegistry getSingleton() {
+    if (m_Singleton == null) {
+      m_Singleton = new WebcamRegistry();
+      m_Singleton.start();
+    }
+    return m_Singleton;
+  }
+}
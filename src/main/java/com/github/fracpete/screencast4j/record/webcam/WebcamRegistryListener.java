@@ -0,0 +1,42 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * WebcamRegistryListener.java
+ * Copyright (C) 2026 FracPete (fracpete at gmail dot com)
+ */
+
+package com.github.fracpete.screencast4j.record.webcam;
+
+import java.util.List;
+
+/**
+ * Interface for classes that get notified when the {@link WebcamRegistry}
+ * discovered changes in the available webcams.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public interface WebcamRegistryListener {
+
+  /**
+   * Gets called after a discovery that found changes, as well as after
+   * the first discovery. Gets called from the discovery thread.
+   *
+   * @param registry	the registry that performed the discovery
+   * @param added	the names of the webcams that were added
+   * @param removed	the names of the webcams that were removed
+   */
+  public void webcamsChanged(WebcamRegistry registry, List<String> added, List<String> removed);
+}